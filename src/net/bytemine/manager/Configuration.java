@@ -52,6 +52,58 @@ public class Configuration {
     // switch on to import users coming from passwd file on synchronisation
     public boolean IMPORT_USERS_ON_SYNCHRONISATION = false;
 
+    // number of servers synchronized in parallel by the batch synchronisation
+    public int BATCH_SYNC_THREADS = 4;
+
+    // seconds an unused ssh session stays connected
+    public int SSH_IDLE_TIMEOUT = 300;
+    // seconds between ssh keepalive messages, 0 to disable
+    public int SSH_KEEPALIVE_INTERVAL = 60;
+    // maximum number of channels opened on one ssh session at the same time
+    public int SSH_MAX_CHANNELS = 8;
+
+    // number of RSA key pairs kept ready per key strength, 0 to disable
+    public int KEYPAIR_POOL_SIZE = 5;
+    // keep the pooled key pairs encrypted in the database on exit
+    public boolean KEYPAIR_POOL_PERSIST = false;
+
+    // issue delta CRLs on revocations instead of complete CRLs
+    public boolean CRL_DELTA = false;
+    // changes since the complete CRL, above a new complete CRL is issued
+    public int CRL_DELTA_MAX_CHANGES = 500;
+
+    // number of threads writing the files when all certificates are exported
+    public int EXPORT_THREADS = 4;
+    // export all certificates into one zip archive instead of single files
+    public boolean EXPORT_ARCHIVE = false;
+
+    // PBE algorithm of the PKCS#12 containers built in batches
+    public String PKCS12_PBE_ALGORITHM = "PBEWithSHAAnd3-KeyTripleDES-CBC";
+    // PBE iteration count of the PKCS#12 containers built in batches
+    public int PKCS12_PBE_ITERATIONS = 2048;
+
+    // number of threads generating DH parameters in the background, all but one processor by default
+    public int DH_PARAMETER_THREADS = Math.max(1, Runtime.getRuntime().availableProcessors() - 1);
+    // generate the DH parameters of all supported key strengths, not only the configured one
+    public boolean DH_PARAMETER_PRECOMPUTE = true;
+
+    // renew the certificates expiring within this number of days automatically, 0 to disable
+    public int RENEW_DAYS_BEFORE_EXPIRY = 0;
+    // hours between the checks for expiring certificates
+    public int RENEW_CHECK_INTERVAL = 24;
+
+    // record the traffic and sessions of the VPN servers and clients
+    public boolean TRAFFIC_STATS_ENABLED = true;
+    // how long the traffic is kept per minute, in hours
+    public int TRAFFIC_RETENTION_MINUTES = 48;
+    // how long the traffic is kept per hour, in days
+    public int TRAFFIC_RETENTION_HOURS = 31;
+    // how long the traffic is kept per day, in days
+    public int TRAFFIC_RETENTION_DAYS = 730;
+
+    // the lines kept by each log and debug view of the control center
+    public int CONTROL_CENTER_LOG_LINES = 5000;
+
     // path to the icon
     public String ICON_PATH = null;
     // path to the banner
@@ -226,6 +278,85 @@ public class Configuration {
         } catch (NumberFormatException e) {
             logger.warning("manager.properties could not be processed");
         }
+
+        if (configBundle != null) {
+            setBatchSyncThreads(getIntProperty(configBundle, "batch_sync_threads", BATCH_SYNC_THREADS));
+            setSshIdleTimeout(getIntProperty(configBundle, "ssh_idle_timeout", SSH_IDLE_TIMEOUT));
+            setSshKeepaliveInterval(getIntProperty(configBundle, "ssh_keepalive_interval", SSH_KEEPALIVE_INTERVAL));
+            setSshMaxChannels(getIntProperty(configBundle, "ssh_max_channels", SSH_MAX_CHANNELS));
+            setKeypairPoolSize(getIntProperty(configBundle, "keypair_pool_size", KEYPAIR_POOL_SIZE));
+            setKeypairPoolPersist(getBooleanProperty(configBundle, "keypair_pool_persist", KEYPAIR_POOL_PERSIST));
+            setCrlDelta(getBooleanProperty(configBundle, "crl_delta", CRL_DELTA));
+            setCrlDeltaMaxChanges(getIntProperty(configBundle, "crl_delta_max_changes", CRL_DELTA_MAX_CHANGES));
+            setExportThreads(getIntProperty(configBundle, "export_threads", EXPORT_THREADS));
+            setExportArchive(getBooleanProperty(configBundle, "export_archive", EXPORT_ARCHIVE));
+            setPkcs12PbeAlgorithm(getStringProperty(configBundle, "pkcs12_pbe_algorithm", PKCS12_PBE_ALGORITHM));
+            setPkcs12PbeIterations(getIntProperty(configBundle, "pkcs12_pbe_iterations", PKCS12_PBE_ITERATIONS));
+            setDhParameterThreads(getIntProperty(configBundle, "dh_parameter_threads", 0));
+            setDhParameterPrecompute(getBooleanProperty(configBundle, "dh_parameter_precompute", DH_PARAMETER_PRECOMPUTE));
+            setRenewDaysBeforeExpiry(getIntProperty(configBundle, "renew_days_before_expiry", RENEW_DAYS_BEFORE_EXPIRY));
+            setRenewCheckInterval(getIntProperty(configBundle, "renew_check_interval", RENEW_CHECK_INTERVAL));
+            setTrafficStatsEnabled(getBooleanProperty(configBundle, "traffic_stats_enabled", TRAFFIC_STATS_ENABLED));
+            setTrafficRetention(
+                    getIntProperty(configBundle, "traffic_retention_minutes", TRAFFIC_RETENTION_MINUTES),
+                    getIntProperty(configBundle, "traffic_retention_hours", TRAFFIC_RETENTION_HOURS),
+                    getIntProperty(configBundle, "traffic_retention_days", TRAFFIC_RETENTION_DAYS));
+            setControlCenterLogLines(getIntProperty(configBundle, "control_center_log_lines", CONTROL_CENTER_LOG_LINES));
+        }
+    }
+
+
+    /**
+     * Reads an optional integer value from the properties file
+     *
+     * @param configBundle The bundle to read from
+     * @param key The key of the property
+     * @param fallback The value to use if the key is missing or invalid
+     * @return the value of the property or the fallback
+     */
+    private int getIntProperty(ResourceBundle configBundle, String key, int fallback) {
+        try {
+            return Integer.parseInt(configBundle.getString(key).trim());
+        } catch (MissingResourceException | NumberFormatException e) {
+            logger.info("no valid value for " + key + " in manager.properties, using " + fallback);
+            return fallback;
+        }
+    }
+
+
+    /**
+     * Reads an optional boolean value from the properties file
+     *
+     * @param configBundle The bundle to read from
+     * @param key The key of the property
+     * @param fallback The value to use if the key is missing
+     * @return the value of the property or the fallback
+     */
+    private boolean getBooleanProperty(ResourceBundle configBundle, String key, boolean fallback) {
+        try {
+            return Boolean.parseBoolean(configBundle.getString(key).trim());
+        } catch (MissingResourceException e) {
+            logger.info("no value for " + key + " in manager.properties, using " + fallback);
+            return fallback;
+        }
+    }
+
+
+    /**
+     * Reads an optional string value from the properties file
+     *
+     * @param configBundle The bundle to read from
+     * @param key The key of the property
+     * @param fallback The value to use if the key is missing
+     * @return the trimmed value of the property or the fallback
+     */
+    private String getStringProperty(ResourceBundle configBundle, String key, String fallback) {
+        try {
+            return configBundle.getString(key).trim();
+        } catch (MissingResourceException e) {
+            logger.info("no value for " + key + " in manager.properties, using " + fallback);
+            return fallback;
+        }
     }
 
 
@@ -550,6 +681,186 @@ public class Configuration {
         ConfigurationQueries.setValue(ConfigurationQueries.USE_PAM, usePAM + "");
     }
 
+    /**
+     * Sets the number of servers synchronized in parallel
+     *
+     * @param threads The number of threads, at least 1
+     */
+    private void setBatchSyncThreads(int threads) {
+        this.BATCH_SYNC_THREADS = Math.max(1, threads);
+    }
+
+    /**
+     * Sets the time an unused ssh session stays connected
+     *
+     * @param seconds The idle timeout in seconds
+     */
+    private void setSshIdleTimeout(int seconds) {
+        this.SSH_IDLE_TIMEOUT = Math.max(0, seconds);
+    }
+
+    /**
+     * Sets the interval of the ssh keepalive messages
+     *
+     * @param seconds The interval in seconds, 0 to disable
+     */
+    private void setSshKeepaliveInterval(int seconds) {
+        this.SSH_KEEPALIVE_INTERVAL = Math.max(0, seconds);
+    }
+
+    /**
+     * Sets the maximum number of channels opened on one ssh session
+     *
+     * @param channels The number of channels, at least 1
+     */
+    private void setSshMaxChannels(int channels) {
+        this.SSH_MAX_CHANNELS = Math.max(1, channels);
+    }
+
+    /**
+     * Sets the number of key pairs kept ready per key strength
+     *
+     * @param size The number of key pairs, 0 to disable the pool
+     */
+    public void setKeypairPoolSize(int size) {
+        this.KEYPAIR_POOL_SIZE = Math.max(0, size);
+    }
+
+    /**
+     * Keep the pooled key pairs in the database on exit or not
+     *
+     * @param persist true, if the key pairs will be stored
+     */
+    public void setKeypairPoolPersist(boolean persist) {
+        this.KEYPAIR_POOL_PERSIST = persist;
+    }
+
+    /**
+     * Issue delta CRLs on revocations or not
+     *
+     * @param delta true, if delta CRLs will be issued
+     */
+    public void setCrlDelta(boolean delta) {
+        this.CRL_DELTA = delta;
+    }
+
+    /**
+     * Sets the number of changes a delta CRL may contain
+     *
+     * @param changes The number of changes, at least 1
+     */
+    public void setCrlDeltaMaxChanges(int changes) {
+        this.CRL_DELTA_MAX_CHANGES = Math.max(1, changes);
+    }
+
+    /**
+     * Sets the number of threads writing the exported certificates
+     *
+     * @param threads The number of threads, at least 1
+     */
+    public void setExportThreads(int threads) {
+        this.EXPORT_THREADS = Math.max(1, threads);
+    }
+
+    /**
+     * Export all certificates into a zip archive or not
+     *
+     * @param archive true, if the certificates will be exported into one archive
+     */
+    public void setExportArchive(boolean archive) {
+        this.EXPORT_ARCHIVE = archive;
+    }
+
+    /**
+     * Sets the PBE algorithm of PKCS#12 containers built in batches
+     *
+     * @param algorithm The algorithm, see PKCS12BatchExporter
+     */
+    public void setPkcs12PbeAlgorithm(String algorithm) {
+        this.PKCS12_PBE_ALGORITHM = algorithm;
+    }
+
+    /**
+     * Sets the PBE iteration count of PKCS#12 containers built in batches
+     *
+     * @param iterations The iteration count, at least 1
+     */
+    public void setPkcs12PbeIterations(int iterations) {
+        this.PKCS12_PBE_ITERATIONS = Math.max(1, iterations);
+    }
+
+    /**
+     * Sets the number of threads generating DH parameters
+     *
+     * @param threads The number of threads, 0 for all but one processor
+     */
+    public void setDhParameterThreads(int threads) {
+        if (threads > 0)
+            this.DH_PARAMETER_THREADS = threads;
+        else
+            this.DH_PARAMETER_THREADS = Math.max(1, Runtime.getRuntime().availableProcessors() - 1);
+    }
+
+    /**
+     * Generate the DH parameters of all supported key strengths or not
+     *
+     * @param precompute true, if all key strengths will be generated in the background
+     */
+    public void setDhParameterPrecompute(boolean precompute) {
+        this.DH_PARAMETER_PRECOMPUTE = precompute;
+    }
+
+    /**
+     * Sets the number of days before the expiry the certificates are renewed
+     *
+     * @param days The number of days, 0 disables the automatic renewal
+     */
+    public void setRenewDaysBeforeExpiry(int days) {
+        this.RENEW_DAYS_BEFORE_EXPIRY = Math.max(0, days);
+    }
+
+    /**
+     * Sets the hours between the checks for expiring certificates
+     *
+     * @param hours The number of hours, at least 1
+     */
+    public void setRenewCheckInterval(int hours) {
+        this.RENEW_CHECK_INTERVAL = Math.max(1, hours);
+    }
+
+    /**
+     * Enables or disables the recording of the traffic statistics
+     *
+     * @param enabled true, if the traffic is recorded
+     */
+    public void setTrafficStatsEnabled(boolean enabled) {
+        this.TRAFFIC_STATS_ENABLED = enabled;
+    }
+
+    /**
+     * Sets how long the traffic statistics are kept in each resolution,
+     * a coarser resolution is kept at least as long as a finer one
+     *
+     * @param minuteHours The hours the traffic is kept per minute
+     * @param hourDays    The days the traffic is kept per hour
+     * @param dayDays     The days the traffic is kept per day
+     */
+    public void setTrafficRetention(int minuteHours, int hourDays, int dayDays) {
+        this.TRAFFIC_RETENTION_MINUTES = Math.max(1, minuteHours);
+        this.TRAFFIC_RETENTION_HOURS = Math.max((TRAFFIC_RETENTION_MINUTES + 23) / 24, hourDays);
+        this.TRAFFIC_RETENTION_DAYS = Math.max(TRAFFIC_RETENTION_HOURS, dayDays);
+    }
+
+    /**
+     * Sets the number of lines kept by each log and debug view
+     * of the control center, older lines are dropped
+     *
+     * @param lines The number of lines
+     */
+    public void setControlCenterLogLines(int lines) {
+        this.CONTROL_CENTER_LOG_LINES = Math.max(100, lines);
+    }
+
     /**
      * Sets the icon path
      */
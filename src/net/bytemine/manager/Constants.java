@@ -55,6 +55,8 @@ public class Constants {
     public static final String DEFAULT_CERT_EXTENSION = "crt";
     public static final String DEFAULT_PKCS12_EXTENSION = "p12";
     public static final String DEFAULT_CRL_FILENAME = "crl.pem";
+    public static final String DEFAULT_DELTA_CRL_FILENAME = "delta-crl.pem";
+    public static final String DEFAULT_EXPORT_ARCHIVE_FILENAME = "certificates.zip";
 
     public static final int DEFAULT_X509_VERSION = 3;
     public static final int DEFAULT_CRL_VERSION = 2;
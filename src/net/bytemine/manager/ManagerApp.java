@@ -30,6 +30,9 @@ import net.bytemine.manager.db.schema.SchemaUpdater;
 import net.bytemine.manager.exception.VisualException;
 import net.bytemine.manager.gui.ManagerGUI;
 import net.bytemine.manager.i18n.ResourceBundleMgmt;
+import net.bytemine.manager.utility.CertificateRenewalScheduler;
+import net.bytemine.manager.utility.DHParameterService;
+import net.bytemine.manager.utility.KeyPairPool;
 
 import org.bouncycastle.jce.provider.BouncyCastleProvider;
 
@@ -187,6 +190,23 @@ public class ManagerApp {
 
                 // build up the application
                 new ManagerGUI();
+
+                // keep key pairs ready for new certificates
+                try {
+                    KeyPairPool.getInstance().start(Integer.parseInt(config.X509_KEY_STRENGTH));
+                } catch (NumberFormatException e) {
+                    logger.warning("no valid key strength specified, the key pair pool is not started");
+                }
+
+                // generate the missing DH parameters in the background
+                try {
+                    DHParameterService.getInstance().start(Integer.parseInt(config.X509_KEY_STRENGTH));
+                } catch (NumberFormatException e) {
+                    logger.warning("no valid key strength specified, no DH parameters are generated");
+                }
+
+                // renew the expiring certificates automatically, if configured
+                CertificateRenewalScheduler.getInstance().start();
                 
             }
         });
@@ -9,12 +9,13 @@
 package net.bytemine.manager.action;
 
 import java.security.PrivateKey;
+import java.text.MessageFormat;
 import java.security.cert.X509Certificate;
 
 import java.util.Iterator;
+import java.util.List;
 import java.util.MissingResourceException;
 import java.util.ResourceBundle;
-import java.util.Vector;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -22,7 +23,6 @@ import javax.swing.SwingWorker;
 
 import net.bytemine.manager.Configuration;
 import net.bytemine.manager.Constants;
-import net.bytemine.manager.ManagerApp;
 import net.bytemine.manager.ThreadMgmt;
 import net.bytemine.manager.bean.Server;
 import net.bytemine.manager.bean.User;
@@ -30,12 +30,12 @@ import net.bytemine.manager.bean.X509;
 import net.bytemine.manager.db.ServerQueries;
 import net.bytemine.manager.db.UserQueries;
 import net.bytemine.manager.db.X509DAO;
-import net.bytemine.manager.db.X509Queries;
 import net.bytemine.manager.exception.VisualException;
 import net.bytemine.manager.gui.CustomJOptionPane;
 import net.bytemine.manager.gui.Dialogs;
 import net.bytemine.manager.gui.ManagerGUI;
 import net.bytemine.manager.i18n.ResourceBundleMgmt;
+import net.bytemine.manager.utility.CAMaterialCache;
 import net.bytemine.manager.utility.PKCS12Exporter;
 import net.bytemine.manager.utility.X509Exporter;
 import net.bytemine.manager.utility.X509Serializer;
@@ -51,6 +51,9 @@ import net.bytemine.utility.FileUtils;
 public class X509Action {
     
     private static Logger logger = Logger.getLogger(X509Action.class.getName());
+
+    // number of errors listed after exporting all certificates
+    private static final int REPORTED_ERRORS = 20;
     
     /**
      * Exports all certificates into the export path
@@ -61,21 +64,18 @@ public class X509Action {
         SwingWorker<String, Void> exportWorker = new SwingWorker<String, Void>() {
             Thread t;
             int count = 0;
+            X509BulkExporter exporter = new X509BulkExporter();
 
             protected String doInBackground() {
                 t = Thread.currentThread();
                 ThreadMgmt.getInstance().addThread(t, rb.getString("statusBar.certExport"));
 
-                Vector<String> ids = X509Queries.getAllX509Ids();
-                ids.forEach(id -> {
-                    try {
-                        String result = exportToFilesystem(id);
-                        if (result != null)
-                            count++;
-                    } catch (Exception e) {
-                        new VisualException(e.getMessage());
-                    }
-                });
+                try {
+                    count = exporter.export();
+                } catch (Exception e) {
+                    logger.log(Level.SEVERE, "error exporting all certificates", e);
+                    new VisualException(rb.getString("dialog.cert.exporterror"));
+                }
 
                 return "";
             }
@@ -87,7 +87,9 @@ public class X509Action {
                 String message = count + " " + 
                     rb.getString("export.message") + 
                     "\n" +
-                    Configuration.getInstance().CERT_EXPORT_PATH;
+                    exporter.getTarget() +
+                    getPKCS12Timing(exporter.getPKCS12Timing()) +
+                    getErrorReport(exporter.getErrors());
                 CustomJOptionPane.showMessageDialog(ManagerGUI.mainFrame, 
                         message, rb.getString("export.title"));
             }
@@ -95,6 +97,40 @@ public class X509Action {
         };
         exportWorker.execute();
     }
+
+
+    /**
+     * Formats the timing of the PKCS#12 containers of an export
+     * @param timing The number of containers and the time in ms or null
+     * @return the timing, or an empty string
+     */
+    private static String getPKCS12Timing(long[] timing) {
+        if (timing == null)
+            return "";
+
+        ResourceBundle rb = ResourceBundleMgmt.getInstance().getUserBundle();
+        return "\n" + MessageFormat.format(rb.getString("export.pkcs12.timing"), timing[0], timing[1]);
+    }
+
+
+    /**
+     * Lists the first errors of an export
+     * @param errors The errors
+     * @return the report, or an empty string without errors
+     */
+    private static String getErrorReport(List<String> errors) {
+        if (errors.isEmpty())
+            return "";
+
+        ResourceBundle rb = ResourceBundleMgmt.getInstance().getUserBundle();
+        StringBuilder report = new StringBuilder("\n\n");
+        report.append(rb.getString("export.errors"));
+        for (String error : errors.subList(0, Math.min(errors.size(), REPORTED_ERRORS)))
+            report.append("\n").append(error);
+        if (errors.size() > REPORTED_ERRORS)
+            report.append("\n").append(errors.size() - REPORTED_ERRORS).append(" ").append(rb.getString("export.errors.more"));
+        return report.toString();
+    }
     
     
     /**
@@ -104,34 +140,50 @@ public class X509Action {
      * @throws Exception
      */
     public static String exportToFilesystem(String x509idstr) throws Exception {
+        int x509id = Integer.parseInt(x509idstr);
+        X509 x509 = new X509(x509id);
+        x509 = X509DAO.getInstance().read(x509);
+
+        if (x509 == null)
+            return null;
+
+        User user = null;
+        Server server = null;
+        if (x509.getType() == X509.X509_TYPE_CLIENT || x509.getType() == X509.X509_TYPE_PKCS12)
+            user = UserQueries.getUserByX509id(x509id);
+        else if (x509.getType() == X509.X509_TYPE_SERVER)
+            server = ServerQueries.getServerByX509id(x509id);
+
+        return exportToFilesystem(x509, user, server);
+    }
+
+
+    /**
+     * Exports a loaded certificate to the filesystem
+     * @param x509 The certificate
+     * @param user The user of a client certificate or null
+     * @param server The server of a server certificate
+     * @return Path where the certificates where exported
+     * @throws Exception
+     */
+    static String exportToFilesystem(X509 x509, User user, Server server) throws Exception {
         String friendlyName;
         ResourceBundle rb = ResourceBundleMgmt.getInstance().getUserBundle();
         try {
-            int x509id = Integer.parseInt(x509idstr);
-            X509 x509 = new X509(x509id);
-            x509 = X509DAO.getInstance().read(x509);
-            
-            if (x509 == null)
-                return null;
-            
-            User user = null;
-            Server server = null;
+            int x509id = x509.getX509id();
             int serverid = -1;
             if (x509.getType() == X509.X509_TYPE_CLIENT || x509.getType() == X509.X509_TYPE_PKCS12) {
-                user = UserQueries.getUserByX509id(x509id);
                 // create export directory and export the root crt
                 if (user != null)
                     UserAction.prepareFilesystem(user.getUsername());
             } else if (x509.getType() == X509.X509_TYPE_SERVER) {
-                server = ServerQueries.getServerByX509id(x509id);
                 if (server == null)
                     return null;
                 ServerAction.prepareFilesystem(server.getName());
                 serverid = server.getServerid();
             }
             
-            X509Serializer xs = X509Serializer.getInstance();
-            X509Certificate cert = (X509Certificate)xs.fromXML(x509.getCertSerialized());
+            X509Certificate cert = X509Utils.decodeCertificate(x509);
             
             X509Exporter exporter = new X509Exporter(
                         x509.getType(),
@@ -171,12 +223,7 @@ public class X509Action {
                 }
             } else if (Configuration.getInstance().CERTIFICATE_TYPE == Constants.CERTIFICATE_TYPE_PKCS12) {
                 try {
-                    X509 signingX509;
-                    signingX509 = ManagerApp.intermediate ? X509Utils.loadIntermediateX509() : X509Utils.loadRootX509();
-                    X509Certificate signingCert = (X509Certificate)
-                            X509Serializer.getInstance().fromXML(
-                                    signingX509.getCertSerialized()
-                            );
+                    X509Certificate signingCert = CAMaterialCache.getInstance().getSigning().getCertificate();
                     PrivateKey privKey = (PrivateKey)X509Serializer.getInstance().fromXML(x509.getKey());
 
                     String dialogHeadline = rb.getString("dialog.pkcs12password.headline1");
@@ -0,0 +1,478 @@
+/*************************************************************************
+ * Written by / Copyright (C) 2009-2012 bytemine GmbH                     *
+ * Author: Daniel Rauer                     E-Mail:    rauer@bytemine.net *
+ *                                                                        *
+ * http://www.bytemine.net/                                               *
+ *************************************************************************/
+
+package net.bytemine.manager.action;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.FileWriter;
+import java.security.PrivateKey;
+import java.security.cert.X509Certificate;
+import java.sql.ResultSet;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.MissingResourceException;
+import java.util.ResourceBundle;
+import java.util.Set;
+import java.util.Vector;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import net.bytemine.manager.Configuration;
+import net.bytemine.manager.Constants;
+import net.bytemine.manager.bean.PKCS12;
+import net.bytemine.manager.bean.Server;
+import net.bytemine.manager.bean.User;
+import net.bytemine.manager.bean.X509;
+import net.bytemine.manager.db.DBConnector;
+import net.bytemine.manager.db.PKCS12DAO;
+import net.bytemine.manager.db.X509Queries;
+import net.bytemine.manager.i18n.ResourceBundleMgmt;
+import net.bytemine.manager.utility.CAMaterialCache;
+import net.bytemine.manager.utility.PKCS12BatchExporter;
+import net.bytemine.manager.utility.PKCS12Exporter;
+import net.bytemine.manager.utility.X509Exporter;
+import net.bytemine.manager.utility.X509Serializer;
+import net.bytemine.manager.utility.X509Utils;
+import net.bytemine.utility.FileUtils;
+
+
+/**
+ * Exports all certificates at once.
+ * The certificates are read with a single query together with their
+ * users and servers and handed over a bounded queue to a pool of
+ * writers, so the files are written while the next rows are read.
+ * The files are written into the export path or into one zip archive,
+ * errors are collected and reported once at the end.
+ * With PKCS#12 certificates one writer is used, it asks for the passwords
+ * or, without passwords, builds the containers in batches with the
+ * PKCS12BatchExporter.
+ *
+ * @author Daniel Rauer
+ */
+public class X509BulkExporter {
+
+    private static Logger logger = Logger.getLogger(X509BulkExporter.class.getName());
+
+    // number of rows read ahead of the writers
+    private static final int QUEUE_SIZE = 256;
+    // number of PKCS#12 containers built at once
+    private static final int PKCS12_BATCH_SIZE = 256;
+    // tells a writer that all rows are read
+    private static final Row END = new Row(null, null, null);
+
+    private final String exportPath;
+    private final boolean archive;
+    private final boolean pkcs12;
+    // PKCS#12 containers without password are built in batches
+    private final boolean pkcs12Batches;
+    private final int threads;
+
+    private boolean exportBinary = true;
+    private X509 rootX509;
+    // current sequential numbers of client certificates without user
+    private String clientSeqNumber;
+    private String pkcs12SeqNumber;
+    private ZipOutputStream zip;
+    private X509Certificate signingCert;
+    private PKCS12BatchExporter pkcs12Batch;
+    private int pkcs12Containers = 0;
+    private long pkcs12Millis = 0;
+
+    // the directories created or added to the archive
+    private final Set<String> preparedDirectories = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+    private final AtomicInteger exported = new AtomicInteger();
+    private final List<String> errors = Collections.synchronizedList(new ArrayList<String>());
+
+
+    /**
+     * Prepares the export of all certificates into the export path
+     * as configured
+     */
+    public X509BulkExporter() {
+        this(Configuration.getInstance().CERT_EXPORT_PATH, Configuration.getInstance().EXPORT_ARCHIVE);
+    }
+
+
+    /**
+     * @param exportPath The path to export to
+     * @param archive    true, if the files are written into one zip archive
+     */
+    public X509BulkExporter(String exportPath, boolean archive) {
+        this.exportPath = FileUtils.unifyPath(exportPath);
+        this.pkcs12 = Configuration.getInstance().CERTIFICATE_TYPE == Constants.CERTIFICATE_TYPE_PKCS12;
+        // the PKCS#12 containers are written by the PKCS12Exporter
+        this.archive = archive && !pkcs12;
+        this.pkcs12Batches = pkcs12 && Configuration.getInstance().PKCS12_PASSWORD_TYPE == Constants.PKCS12_NO_PASSWORD;
+        this.threads = pkcs12 ? 1 : Configuration.getInstance().EXPORT_THREADS;
+    }
+
+
+    /**
+     * Exports all certificates
+     *
+     * @return the number of exported certificates
+     * @throws Exception if the certificates could not be read or the archive not be written
+     */
+    public int export() throws Exception {
+        prepare();
+
+        final BlockingQueue<Row> queue = new ArrayBlockingQueue<Row>(QUEUE_SIZE);
+        final AtomicInteger threadNumber = new AtomicInteger(1);
+        ExecutorService writers = Executors.newFixedThreadPool(threads, r -> {
+            Thread t = new Thread(r, "certificate-export-" + threadNumber.getAndIncrement());
+            t.setDaemon(true);
+            return t;
+        });
+        for (int i = 0; i < threads; i++)
+            writers.execute(() -> write(queue));
+
+        try {
+            read(queue);
+        } finally {
+            for (int i = 0; i < threads; i++)
+                queue.put(END);
+            writers.shutdown();
+            writers.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+
+            if (zip != null)
+                zip.close();
+        }
+
+        logger.info(exported.get() + " certificates exported to " + getTarget() + ", " + errors.size() + " errors");
+        return exported.get();
+    }
+
+
+    /**
+     * Returns the errors of the last export
+     *
+     * @return the certificates that could not be exported and the reason
+     */
+    public List<String> getErrors() {
+        synchronized (errors) {
+            return new ArrayList<String>(errors);
+        }
+    }
+
+
+    /**
+     * Returns the timing of the PKCS#12 containers built in batches
+     *
+     * @return the number of containers and the time in ms,
+     *         null if no containers were built in batches
+     */
+    public long[] getPKCS12Timing() {
+        return pkcs12Containers == 0 ? null : new long[]{pkcs12Containers, pkcs12Millis};
+    }
+
+
+    /**
+     * Returns the directory or the archive the certificates are exported to
+     *
+     * @return the path
+     */
+    public String getTarget() {
+        return archive ? exportPath + Constants.DEFAULT_EXPORT_ARCHIVE_FILENAME : exportPath;
+    }
+
+
+    /**
+     * Loads everything the rows have in common
+     *
+     * @throws Exception
+     */
+    private void prepare() throws Exception {
+        try {
+            ResourceBundle clientCertBundle = ResourceBundle.getBundle(Constants.CLIENT_BUNDLE_NAME);
+            exportBinary = Boolean.parseBoolean(clientCertBundle.getString("export_binary"));
+        } catch (MissingResourceException mre) {
+            logger.log(Level.SEVERE, "Error: client_cert.properties could not be read", mre);
+        }
+
+        try {
+            rootX509 = X509Utils.loadRootX509();
+        } catch (Exception e) {
+            logger.warning("no root certificate, it is not added to the user directories");
+        }
+        if (pkcs12Batches)
+            signingCert = CAMaterialCache.getInstance().getSigning().getCertificate();
+        clientSeqNumber = X509Queries.retrieveCurrentSeqNumber(X509.X509_TYPE_CLIENT);
+        pkcs12SeqNumber = X509Queries.retrieveCurrentSeqNumber(X509.X509_TYPE_PKCS12);
+
+        if (archive) {
+            new File(exportPath).mkdirs();
+            zip = new ZipOutputStream(new FileOutputStream(getTarget()));
+        }
+    }
+
+
+    /**
+     * Reads all certificates with their users and servers into the queue
+     *
+     * @param queue The queue of the writers
+     * @throws Exception
+     */
+    private void read(BlockingQueue<Row> queue) throws Exception {
+        Statement st = DBConnector.getInstance().getConnection().createStatement();
+        try {
+            ResultSet rs = st.executeQuery(
+                    "SELECT x.x509id, x.type, x.filename, x.content, x.key, x.keycontent, " +
+                    "x.certder, x.certserialized, u.userid, u.username, " +
+                    "s.serverid, s.name, s.hostname " +
+                    "FROM x509 x " +
+                    "LEFT JOIN user u ON u.x509id = x.x509id " +
+                    "LEFT JOIN server s ON s.x509id = x.x509id " +
+                    "ORDER BY x.x509id");
+            while (rs.next()) {
+                X509 x509 = new X509(rs.getInt("x509id"));
+                x509.setType(rs.getInt("type"));
+                x509.setFileName(rs.getString("filename"));
+                x509.setContent(rs.getString("content"));
+                x509.setKey(rs.getString("key"));
+                x509.setKeyContent(rs.getString("keycontent"));
+                x509.setCertDer(rs.getBytes("certder"));
+                x509.setCertSerialized(rs.getString("certserialized"));
+
+                User user = null;
+                Server server = null;
+                String username = rs.getString("username");
+                boolean client = x509.getType() == X509.X509_TYPE_CLIENT || x509.getType() == X509.X509_TYPE_PKCS12;
+                if (client && username != null) {
+                    user = new User(rs.getString("userid"));
+                    user.setUsername(username);
+                }
+                String servername = rs.getString("name");
+                if (x509.getType() == X509.X509_TYPE_SERVER && servername != null) {
+                    server = new Server(rs.getString("serverid"));
+                    server.setName(servername);
+                    server.setHostname(rs.getString("hostname"));
+                }
+
+                queue.put(new Row(x509, user, server));
+            }
+            rs.close();
+        } finally {
+            st.close();
+        }
+    }
+
+
+    /**
+     * Exports the rows of the queue until the end is reached
+     *
+     * @param queue The queue filled by the reader
+     */
+    private void write(BlockingQueue<Row> queue) {
+        try {
+            Row row;
+            while ((row = queue.take()) != END) {
+                try {
+                    if (export(row))
+                        exported.incrementAndGet();
+                } catch (Exception e) {
+                    logger.log(Level.SEVERE, "error exporting certificate " + row.x509.getX509id(), e);
+                    errors.add(row.x509.getFileName() + ": " + e.getMessage());
+                }
+            }
+            if (pkcs12Batch != null)
+                exportPKCS12Batch();
+        } catch (InterruptedException e) {
+            logger.warning("certificate export interrupted");
+        }
+    }
+
+
+    /**
+     * Exports one certificate and its key like X509Action.exportToFilesystem()
+     *
+     * @param row The certificate with its user and server
+     * @return true, if the certificate was exported
+     * @throws Exception
+     */
+    private boolean export(Row row) throws Exception {
+        X509 x509 = row.x509;
+        if (x509.getType() == X509.X509_TYPE_SERVER && row.server == null)
+            return false;
+
+        if (pkcs12Batches) {
+            addPKCS12(row);
+            return false;
+        } else if (pkcs12)
+            return X509Action.exportToFilesystem(x509, row.user, row.server) != null;
+
+        X509Certificate cert = X509Utils.decodeCertificate(x509);
+        String seqNumber = x509.getType() == X509.X509_TYPE_PKCS12 ? pkcs12SeqNumber : clientSeqNumber;
+        X509Exporter exporter = new X509Exporter(
+                x509.getType(),
+                x509.getFileName(),
+                FileUtils.replaceExtension(x509.getFileName(), Constants.DEFAULT_KEY_EXTENSION),
+                exportPath,
+                cert,
+                row.user,
+                row.server,
+                seqNumber
+        );
+
+        String directory = getRelativePath(exporter.getPath());
+        prepareDirectory(directory, row.user != null);
+        writeFile(directory, exporter.getCertFilename(), exporter.getCertFileContent(x509.getContent(), exportBinary));
+        // imported certificates may come without key
+        if (x509.getKeyContent() != null)
+            writeFile(directory, exporter.getKeyFilename(), x509.getKeyContent());
+        return true;
+    }
+
+
+    /**
+     * Adds the PKCS#12 container of a certificate to the current batch
+     * like X509Action.exportToFilesystem(), exports the batch when it is full
+     *
+     * @param row The certificate with its user and server
+     * @throws Exception
+     */
+    private void addPKCS12(Row row) throws Exception {
+        if (row.user != null)
+            prepareDirectory(row.user.getUsername() + "/", true);
+        else if (row.server != null)
+            prepareDirectory("_" + row.server.getName() + "/", false);
+
+        X509Certificate cert = X509Utils.decodeCertificate(row.x509);
+        PrivateKey privKey = (PrivateKey) X509Serializer.getInstance().fromXML(row.x509.getKey());
+        PKCS12Exporter exporter;
+        if (row.user != null)
+            exporter = new PKCS12Exporter(cert, privKey, signingCert, row.user, null);
+        else
+            exporter = new PKCS12Exporter(cert, privKey, signingCert, row.server);
+
+        if (pkcs12Batch == null)
+            pkcs12Batch = new PKCS12BatchExporter();
+        pkcs12Batch.add(exporter, null, row.x509.getX509id());
+        if (pkcs12Batch.getSize() >= PKCS12_BATCH_SIZE)
+            exportPKCS12Batch();
+    }
+
+
+    /**
+     * Builds the containers of the current batch and stores them
+     */
+    private void exportPKCS12Batch() {
+        Vector<PKCS12> pkcs12s = new Vector<PKCS12>();
+        for (PKCS12BatchExporter.Bundle bundle : pkcs12Batch.export()) {
+            if (bundle.getError() == null) {
+                PKCS12 pkcs12 = new PKCS12("0");
+                pkcs12.setFriendlyName(bundle.getFriendlyName());
+                pkcs12.setContent(bundle.getContent());
+                pkcs12.setX509id(bundle.getX509id());
+                pkcs12s.add(pkcs12);
+                exported.incrementAndGet();
+            } else
+                errors.add(bundle.getFriendlyName() + ": " + bundle.getError().getMessage());
+        }
+        PKCS12DAO.getInstance().create(pkcs12s);
+
+        pkcs12Containers += pkcs12Batch.getSize();
+        pkcs12Millis += pkcs12Batch.getElapsed();
+        pkcs12Batch = null;
+    }
+
+
+    /**
+     * Creates a directory once and adds the root certificate
+     * to the directories of the users
+     *
+     * @param directory The directory relative to the export path
+     * @param userDirectory true, if it is the directory of a user
+     * @throws Exception
+     */
+    private void prepareDirectory(String directory, boolean userDirectory) throws Exception {
+        if (!preparedDirectories.add(directory))
+            return;
+
+        if (!archive) {
+            File dir = new File(exportPath + directory);
+            if (!dir.mkdirs() && !dir.isDirectory()) {
+                ResourceBundle rb = ResourceBundleMgmt.getInstance().getUserBundle();
+                throw new Exception(rb.getString("dialog.cert.exporterror") + ": " + dir.getPath());
+            }
+        }
+
+        if (userDirectory && rootX509 != null)
+            writeFile(directory, rootX509.getFileName(), rootX509.getContent());
+    }
+
+
+    /**
+     * Writes a file into the export path or the archive
+     *
+     * @param directory The directory relative to the export path
+     * @param fileName  The file name
+     * @param content   The content
+     * @throws Exception
+     */
+    private void writeFile(String directory, String fileName, String content) throws Exception {
+        if (archive) {
+            byte[] data = content.getBytes();
+            synchronized (zip) {
+                zip.putNextEntry(new ZipEntry(directory + fileName));
+                zip.write(data);
+                zip.closeEntry();
+            }
+        } else {
+            FileWriter fw = new FileWriter(exportPath + directory + fileName);
+            try {
+                fw.write(content);
+            } finally {
+                fw.close();
+            }
+        }
+    }
+
+
+    /**
+     * Returns the path relative to the export path
+     *
+     * @param path The path of an exporter
+     * @return the relative path with a trailing slash, or an empty string
+     */
+    private String getRelativePath(String path) {
+        String relative = FileUtils.unifyPath(path);
+        if (relative.startsWith(exportPath))
+            relative = relative.substring(exportPath.length());
+        relative = relative.replaceAll("/+", "/");
+        if (relative.startsWith("/"))
+            relative = relative.substring(1);
+        return relative;
+    }
+
+
+    /**
+     * A certificate with its user and server
+     */
+    private static class Row {
+        private final X509 x509;
+        private final User user;
+        private final Server server;
+
+        private Row(X509 x509, User user, Server server) {
+            this.x509 = x509;
+            this.user = user;
+            this.server = server;
+        }
+    }
+}
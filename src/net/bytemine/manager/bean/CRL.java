@@ -26,7 +26,9 @@ public class CRL {
     private String issuer;
     private String content;
     private String contentDisplay;
+    // legacy xml serialized form, only set for rows not converted yet
     private String crlSerialized;
+    private byte[] crlDer;
     private String createDate;
     private String validFrom;
     private String nextUpdate;
@@ -172,6 +174,16 @@ public class CRL {
     }
 
 
+    public byte[] getCrlDer() {
+        return crlDer;
+    }
+
+
+    public void setCrlDer(byte[] crlDer) {
+        this.crlDer = crlDer;
+    }
+
+
     public String getCreateDate() {
         return createDate;
     }
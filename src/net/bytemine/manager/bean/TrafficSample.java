@@ -0,0 +1,103 @@
+/*************************************************************************
+ * Written by / Copyright (C) 2009-2012 bytemine GmbH                     *
+ * Author: Daniel Rauer                     E-Mail:    rauer@bytemine.net *
+ *                                                                        *
+ * http://www.bytemine.net/                                               *
+ *************************************************************************/
+
+package net.bytemine.manager.bean;
+
+
+/**
+ * The traffic of a VPN server or client in one period of time.
+ * The bytes are counted from the view of the server, received
+ * bytes came from the clients, sent bytes went to the clients.
+ *
+ * @author Daniel Rauer
+ */
+public class TrafficSample {
+
+    // the resolutions the traffic is stored in, in seconds
+    public static final int RESOLUTION_MINUTE = 60;
+    public static final int RESOLUTION_HOUR = 3600;
+    public static final int RESOLUTION_DAY = 86400;
+    public static final int[] RESOLUTIONS = {RESOLUTION_MINUTE, RESOLUTION_HOUR, RESOLUTION_DAY};
+
+    private final String server;
+    // the common name of the client, empty for the whole server
+    private final String client;
+    private final long time;
+    private final int resolution;
+    private final long bytesReceived;
+    private final long bytesSent;
+    private final int sessions;
+
+
+    /**
+     * @param server        The server
+     * @param client        The common name of the client, empty for the whole server
+     * @param time          The start of the period in ms
+     * @param resolution    The length of the period in seconds
+     * @param bytesReceived The bytes received in the period
+     * @param bytesSent     The bytes sent in the period
+     * @param sessions      The most concurrent sessions in the period
+     */
+    public TrafficSample(String server, String client, long time, int resolution,
+                         long bytesReceived, long bytesSent, int sessions) {
+        this.server = server;
+        this.client = client;
+        this.time = time;
+        this.resolution = resolution;
+        this.bytesReceived = bytesReceived;
+        this.bytesSent = bytesSent;
+        this.sessions = sessions;
+    }
+
+
+    /**
+     * @return the received bytes per second
+     */
+    public double getReceiveRate() {
+        return (double) bytesReceived / resolution;
+    }
+
+    /**
+     * @return the sent bytes per second
+     */
+    public double getSendRate() {
+        return (double) bytesSent / resolution;
+    }
+
+    public String getServer() {
+        return server;
+    }
+
+    public String getClient() {
+        return client;
+    }
+
+    public long getTime() {
+        return time;
+    }
+
+    public int getResolution() {
+        return resolution;
+    }
+
+    public long getBytesReceived() {
+        return bytesReceived;
+    }
+
+    public long getBytesSent() {
+        return bytesSent;
+    }
+
+    public int getSessions() {
+        return sessions;
+    }
+
+    public String toString() {
+        return server + "/" + client + " " + time + "/" + resolution + ": " + bytesReceived + " received, "
+                + bytesSent + " sent, " + sessions + " sessions";
+    }
+}
@@ -41,7 +41,9 @@ public class X509 {
     private String subject;
     private String content;
     private String contentDisplay;
+    // legacy xml serialized form, only set for rows not converted yet
     private String certSerialized;
+    private byte[] certDer;
     private String key;
     private String keyContent;
     private int type;
@@ -338,6 +340,14 @@ public class X509 {
         this.certSerialized = certSerialized;
     }
 
+    public byte[] getCertDer() {
+        return certDer;
+    }
+
+    public void setCertDer(byte[] certDer) {
+        this.certDer = certDer;
+    }
+
     public boolean isGenerated() {
         return generated;
     }
@@ -10,7 +10,6 @@ package net.bytemine.manager.db;
 import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
-import java.sql.Statement;
 import java.sql.SQLException;
 import java.util.ResourceBundle;
 import java.util.logging.Level;
@@ -62,13 +61,13 @@ public class CRLDAO {
      */
     public void create(CRL crl) {
         try {
-            int nextCrlId = getNextCrlid();
+            int nextCrlId = IdAllocator.getInstance().nextId(IdAllocator.CRL);
             crl.setCrlid(nextCrlId);
 
             PreparedStatement pst = dbConnection.prepareStatement(
                     "INSERT INTO crl(crlid, crlnumber, version, filename, path, issuer, " +
-                    "content, contentdisplay, crlserialized, createdate, validfrom, nextupdate) " +
-                    "VALUES(?,?,?,?,?,?,?,?,?,?,?,?)"
+                    "content, contentdisplay, crlserialized, createdate, validfrom, nextupdate, crlder) " +
+                    "VALUES(?,?,?,?,?,?,?,?,?,?,?,?,?)"
             );
             pst.setInt(1, nextCrlId);
             pst.setInt(2, crl.getCrlNumber());
@@ -82,6 +81,7 @@ public class CRLDAO {
             pst.setString(10, crl.getCreateDate());
             pst.setString(11, crl.getValidFrom());
             pst.setString(12, crl.getNextUpdate());
+            pst.setBytes(13, crl.getCrlDer());
             pst.executeUpdate();
             pst.close();
         } catch (Exception e) {
@@ -104,7 +104,7 @@ public class CRLDAO {
             PreparedStatement pst = dbConnection.prepareStatement(
                     "SELECT crlnumber, version, filename, path, issuer, " +
                             "content, contentdisplay, crlserialized, " +
-                            "createdate, validfrom, nextupdate " +
+                            "createdate, validfrom, nextupdate, crlder " +
                             "FROM crl WHERE crlid=?"
             );
 
@@ -123,6 +123,7 @@ public class CRLDAO {
                 crl.setCreateDate(rs.getString(9));
                 crl.setValidFrom(rs.getString(10));
                 crl.setNextUpdate(rs.getString(11));
+                crl.setCrlDer(rs.getBytes(12));
 
                 rs.close();
                 pst.close();
@@ -154,10 +155,10 @@ public class CRLDAO {
                     "UPDATE crl SET " +
                             "crlnumber=?, version=?, filename=?, path=?, issuer=?, " +
                             "content=?, contentdisplay=?, crlserialized=?, " +
-                            "createdate=?, validfrom=?, nextupdate=? " +
+                            "createdate=?, validfrom=?, nextupdate=?, crlder=? " +
                             "WHERE crlid=?"
             );
-            pst.setInt(12, crl.getCrlid());
+            pst.setInt(13, crl.getCrlid());
             pst.setInt(1, crl.getCrlNumber());
             pst.setString(2, crl.getVersion());
             pst.setString(3, crl.getFileName());
@@ -169,6 +170,7 @@ public class CRLDAO {
             pst.setString(9, crl.getCreateDate());
             pst.setString(10, crl.getValidFrom());
             pst.setString(11, crl.getNextUpdate());
+            pst.setBytes(12, crl.getCrlDer());
             pst.executeUpdate();
             pst.close();
         } catch (SQLException e) {
@@ -226,28 +228,4 @@ public class CRLDAO {
         }
     }
 
-
-    /**
-     * retrieves the next crlid from the db
-     *
-     * @return int The next crl id
-     */
-    private int getNextCrlid() throws Exception {
-        int crlid = 0;
-        try {
-            Statement st = dbConnection.createStatement();
-            ResultSet rs = st.executeQuery("SELECT max(crlid) AS maxId from crl");
-            if (rs.next())
-                crlid = rs.getInt("maxId") + 1;
-
-            rs.close();
-            st.close();
-        } catch (SQLException e) {
-            logger.log(Level.SEVERE, "error getting next crlid", e);
-            throw e;
-        }
-
-        return crlid;
-    }
-
 }
@@ -11,7 +11,6 @@ import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
-import java.sql.Statement;
 import java.util.ResourceBundle;
 import java.util.logging.Level;
 import java.util.logging.Logger;
@@ -62,7 +61,7 @@ public class CRLEntryDAO {
      */
     public void create(CRLEntry crlEntry) {
         try {
-            int nextCrlEntryId = getNextCrlEntryid();
+            int nextCrlEntryId = IdAllocator.getInstance().nextId(IdAllocator.CRLENTRY);
             crlEntry.setCrlEntryid(nextCrlEntryId);
 
             PreparedStatement pst = dbConnection.prepareStatement(
@@ -76,6 +75,7 @@ public class CRLEntryDAO {
             pst.setString(6, crlEntry.getUsername());
             pst.executeUpdate();
             pst.close();
+            RevocationIndex.getInstance().add(crlEntry.getSerial());
         } catch (Exception e) {
             ResourceBundle rb = ResourceBundleMgmt.getInstance().getUserBundle();
             logger.log(Level.SEVERE, "error creating crlEntry", e);
@@ -148,6 +148,7 @@ public class CRLEntryDAO {
             pst.setString(5, crlEntry.getUsername());
             pst.executeUpdate();
             pst.close();
+            RevocationIndex.getInstance().add(crlEntry.getSerial());
         } catch (Exception e) {
             ResourceBundle rb = ResourceBundleMgmt.getInstance().getUserBundle();
             logger.log(Level.SEVERE, "error updating crlentry", e);
@@ -170,6 +171,10 @@ public class CRLEntryDAO {
             pst.setInt(1, crlEntry.getCrlEntryid());
             pst.executeUpdate();
             pst.close();
+            if (crlEntry.getSerial() != null)
+                RevocationIndex.getInstance().remove(crlEntry.getSerial());
+            else
+                RevocationIndex.getInstance().invalidate();
         } catch (Exception e) {
             ResourceBundle rb = ResourceBundleMgmt.getInstance().getUserBundle();
             logger.log(Level.SEVERE, "error deleting crlentry", e);
@@ -191,6 +196,7 @@ public class CRLEntryDAO {
             pst.setInt(1, Integer.parseInt(crlEntryId));
             pst.executeUpdate();
             pst.close();
+            RevocationIndex.getInstance().invalidate();
         } catch (Exception e) {
             ResourceBundle rb = ResourceBundleMgmt.getInstance().getUserBundle();
             logger.log(Level.SEVERE, "error deleting crlentry", e);
@@ -198,28 +204,4 @@ public class CRLEntryDAO {
         }
     }
 
-    /**
-     * retrieves the next crlentryid from the db
-     *
-     * @return int The next crlentry id
-     */
-    private int getNextCrlEntryid() throws Exception {
-        int crlid = 0;
-        try {
-            Statement st = dbConnection.createStatement();
-            ResultSet rs = st.executeQuery("SELECT max(crlentryid) AS maxId from crlentry");
-            if (rs.next())
-                crlid = rs.getInt("maxId") + 1;
-
-            rs.close();
-            st.close();
-
-        } catch (Exception e) {
-            logger.log(Level.SEVERE, "error getting next crlentryid", e);
-            throw e;
-        }
-
-        return crlid;
-    }
-
 }
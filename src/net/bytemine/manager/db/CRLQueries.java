@@ -31,7 +31,8 @@ public class CRLQueries {
     private static Logger logger = Logger.getLogger(CRLQueries.class.getName());
 
     /**
-     * retrieves the next crlNumber from the db
+     * retrieves the next crlNumber from the db,
+     * complete and delta CRLs share the numbers
      *
      * @return int The next crlNumber
      */
@@ -46,6 +47,10 @@ public class CRLQueries {
             rs.close();
             st.close();
 
+            String deltaNumber = ConfigurationQueries.getValue(ConfigurationQueries.CRL_DELTA_NUMBER);
+            if (deltaNumber != null)
+                crlNumber = Math.max(crlNumber, Integer.parseInt(deltaNumber) + 1);
+
         } catch (Exception e) {
             logger.log(Level.SEVERE, "error getting next crlNumber", e);
             throw e;
@@ -55,6 +60,31 @@ public class CRLQueries {
     }
 
 
+    /**
+     * retrieves the crlNumber of the stored complete CRL
+     *
+     * @return int The crlNumber, 0 if no CRL is stored
+     */
+    public static int getCurrentCrlNumber() throws Exception {
+        int crlNumber = 0;
+        try {
+            Statement st = DBConnector.getInstance().getConnection().createStatement();
+            ResultSet rs = st.executeQuery("SELECT max(crlnumber) AS maxNumber from crl");
+            if (rs.next())
+                crlNumber = rs.getInt("maxNumber");
+
+            rs.close();
+            st.close();
+
+        } catch (Exception e) {
+            logger.log(Level.SEVERE, "error getting current crlNumber", e);
+            throw e;
+        }
+
+        return crlNumber;
+    }
+
+
     /**
      * retrieves the highest ID
      *
@@ -93,6 +93,9 @@ public class ConfigurationQueries {
     
     public static final String CREATE_OPENVPN_CONFIG_FILES = "createOpenVPNConfigFiles";
 
+    public static final String CRL_REVOCATION_VERSION = "crlRevocationVersion";
+    public static final String CRL_DELTA_NUMBER = "crlDeltaNumber";
+
     
     /**
      * Returns the value of the key, or null
@@ -14,6 +14,7 @@ import java.sql.SQLException;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.util.ResourceBundle;
+import java.util.concurrent.locks.ReentrantLock;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -42,6 +43,17 @@ public class DBConnector {
     public static String dbPath = null;
     public static boolean dbPathChanged = false; 
 
+    // held by the thread running a transaction, nested transactions join the outer one.
+    // Writes of other threads on the connection wait for it, see GuardedConnection
+    private static final ReentrantLock transactionLock = new ReentrantLock();
+    // the auto commit mode before the transaction started, guarded by transactionLock
+    private static boolean previousAutoCommit = true;
+    // a nested transaction was rolled back, the outer one must not commit, guarded by transactionLock
+    private static boolean rollbackOnly = false;
+    // the guarded current connection handed out by getConnection()
+    private static Connection guardedConnection = null;
+    private static Connection guardedTarget = null;
+
     private DBConnector() {
         try {
             Class.forName(Configuration.getInstance().JDBC_DRIVER_CLASSNAME);
@@ -105,12 +117,25 @@ public class DBConnector {
 
 
     /**
-     * Returns the database connection
+     * Returns the database connection.
+     * Writes on the connection wait for the transaction of another thread,
+     * changes belonging together have to be made with executeInTransaction()
      *
      * @return Connection
      */
     public Connection getConnection() {
-        return connection;
+        return guard(connection);
+    }
+
+
+    private static synchronized Connection guard(Connection conn) {
+        if (conn == null)
+            return null;
+        if (conn != guardedTarget) {
+            guardedConnection = GuardedConnection.wrap(conn, transactionLock);
+            guardedTarget = conn;
+        }
+        return guardedConnection;
     }
 
     public void setConnection(Connection conn) {
@@ -131,6 +156,128 @@ public class DBConnector {
     }
 
 
+    /**
+     * Executes the work in one transaction, the transaction is committed
+     * if the work succeeds and rolled back if it throws an exception.
+     * Called within another transaction the work joins the outer one.
+     *
+     * @param work The work to execute
+     * @return the result of the work
+     * @throws Exception the exception thrown by the work or the commit
+     */
+    public <T> T executeInTransaction(UnitOfWork<T> work) throws Exception {
+        beginTransaction();
+        T result;
+        try {
+            result = work.execute(getConnection());
+        } catch (Throwable t) {
+            rollbackTransaction();
+            throw t;
+        }
+        commitTransaction();
+        return result;
+    }
+
+
+    /**
+     * Starts a transaction on the current connection. Other threads
+     * starting a transaction wait until this one is finished.
+     * Every call has to be followed by commitTransaction() or rollbackTransaction().
+     *
+     * @throws SQLException
+     */
+    public void beginTransaction() throws SQLException {
+        transactionLock.lock();
+        if (transactionLock.getHoldCount() > 1)
+            return;
+
+        try {
+            previousAutoCommit = connection.getAutoCommit();
+            connection.setAutoCommit(false);
+            rollbackOnly = false;
+        } catch (SQLException e) {
+            transactionLock.unlock();
+            throw e;
+        }
+    }
+
+
+    /**
+     * Commits the transaction started with beginTransaction(),
+     * a nested transaction is committed together with the outer one
+     *
+     * @throws SQLException if the commit failed, the transaction is rolled back then
+     */
+    public void commitTransaction() throws SQLException {
+        if (!transactionLock.isHeldByCurrentThread())
+            throw new IllegalStateException("no transaction started");
+
+        boolean outermost = transactionLock.getHoldCount() == 1;
+        boolean committed = false;
+        try {
+            if (outermost) {
+                if (rollbackOnly) {
+                    connection.rollback();
+                    throw new SQLException("transaction rolled back by a nested transaction");
+                }
+                try {
+                    connection.commit();
+                    committed = true;
+                } catch (SQLException e) {
+                    connection.rollback();
+                    throw e;
+                }
+            }
+        } finally {
+            if (outermost)
+                endTransaction(committed);
+            transactionLock.unlock();
+        }
+    }
+
+
+    /**
+     * Rolls back the transaction started with beginTransaction(),
+     * a nested transaction marks the outer one for rollback
+     */
+    public void rollbackTransaction() {
+        if (!transactionLock.isHeldByCurrentThread())
+            return;
+
+        boolean outermost = transactionLock.getHoldCount() == 1;
+        try {
+            if (outermost)
+                connection.rollback();
+            else
+                rollbackOnly = true;
+        } catch (SQLException e) {
+            logger.log(Level.SEVERE, "error rolling back transaction", e);
+        } finally {
+            if (outermost)
+                endTransaction(false);
+            transactionLock.unlock();
+        }
+    }
+
+
+    /**
+     * Restores the auto commit mode after the outermost transaction
+     *
+     * @param committed false, if the transaction was rolled back
+     */
+    private void endTransaction(boolean committed) {
+        // the revocation index may hold revocations of the rolled back transaction
+        if (!committed)
+            RevocationIndex.getInstance().invalidate();
+        rollbackOnly = false;
+        try {
+            connection.setAutoCommit(previousAutoCommit);
+        } catch (SQLException e) {
+            logger.log(Level.SEVERE, "error restoring auto commit mode", e);
+        }
+    }
+
+
     /**
      * Tests if the db connection has been established
      *
@@ -8,6 +8,7 @@
 package net.bytemine.manager.db;
 
 import java.sql.Connection;
+import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Statement;
 import java.util.ResourceBundle;
@@ -17,6 +18,7 @@ import java.util.logging.Logger;
 import net.bytemine.manager.db.schema.SchemaModel;
 import net.bytemine.manager.db.schema.SchemaUpdater;
 import net.bytemine.manager.i18n.ResourceBundleMgmt;
+import net.bytemine.manager.utility.CAMaterialCache;
 import net.bytemine.manager.utility.X509Serializer;
 import net.bytemine.utility.FileUtils;
 
@@ -31,6 +33,26 @@ public class DBTasks {
     private static Logger logger = Logger.getLogger(DBTasks.class.getName());
     private static ResourceBundle rb;
 
+    // version of the index set, increase when INDEXES changes
+    public static final int INDEX_VERSION = 3;
+
+    // the secondary indexes on the join and lookup columns
+    private static final String[][] INDEXES = {
+            {"idx_server_user_userid", "server_user(userid)"},
+            {"idx_x509_type", "x509(type)"},
+            {"idx_x509_serial", "x509(serial)"},
+            {"idx_x509_validtotime", "x509(validtotime)"},
+            {"idx_crlentry_serial", "crlentry(serial)"},
+            {"idx_crlentry_x509id", "crlentry(x509id)"},
+            {"idx_user_username", "user(username)"},
+            {"idx_user_x509id", "user(x509id)"},
+            {"idx_server_x509id", "server(x509id)"},
+            {"idx_pkcs12_x509id", "pkcs12(x509id)"},
+            {"idx_configuration_key", "configuration(key)"},
+            {"idx_trafficstats_series", "trafficstats(server, client, resolution, time)"},
+            {"idx_trafficstats_time", "trafficstats(resolution, time)"}
+    };
+
 
     /**
      * (Re-)creates the database tables
@@ -44,6 +66,9 @@ public class DBTasks {
     public static void resetDB(Connection dbConnection, boolean keepConfiguration) throws Exception {
         dropTables(dbConnection, keepConfiguration);
         createTables(dbConnection, keepConfiguration);
+        IdAllocator.getInstance().reset();
+        CAMaterialCache.getInstance().invalidate();
+        RevocationIndex.getInstance().invalidate();
     }
 
 
@@ -135,6 +160,36 @@ public class DBTasks {
             logger.log(Level.SEVERE, "table treestates could not be deleted", se);
             errorOccured = true;
         }
+        try {
+            st.execute("drop table syncstate");
+        } catch (SQLException se) {
+            logger.log(Level.SEVERE, "table syncstate could not be deleted", se);
+            errorOccured = true;
+        }
+        try {
+            st.execute("drop table idsequence");
+        } catch (SQLException se) {
+            logger.log(Level.SEVERE, "table idsequence could not be deleted", se);
+            errorOccured = true;
+        }
+        try {
+            st.execute("drop table keypairpool");
+        } catch (SQLException se) {
+            logger.log(Level.SEVERE, "table keypairpool could not be deleted", se);
+            errorOccured = true;
+        }
+        try {
+            st.execute("drop table dhparameters");
+        } catch (SQLException se) {
+            logger.log(Level.SEVERE, "table dhparameters could not be deleted", se);
+            errorOccured = true;
+        }
+        try {
+            st.execute("drop table trafficstats");
+        } catch (SQLException se) {
+            logger.log(Level.SEVERE, "table trafficstats could not be deleted", se);
+            errorOccured = true;
+        }
 
         if (errorOccured) {
             String errorText = new String();
@@ -178,12 +233,14 @@ public class DBTasks {
                     "content text, " +
                     "contentdisplay text, " +
                     "certserialized text, " +
+                    "certder blob, " +
                     "key text, " +
                     "keycontent text, " +
                     "type int, " +
                     "createdate text, " +
                     "validfrom text, " +
                     "validto text, " +
+                    "validtotime int, " +
                     "generated boolean default 0, " +
                     "userid int" +
                     ")");
@@ -238,6 +295,7 @@ public class DBTasks {
                     "content text, " +
                     "contentdisplay text, " +
                     "crlserialized text, " +
+                    "crlder blob, " +
                     "createdate text, " +
                     "validfrom text, " +
                     "nextupdate text" +
@@ -264,8 +322,26 @@ public class DBTasks {
             st.execute("CREATE TABLE treestates(" +
                     "stateid INT NOT NULL PRIMARY KEY, treename TEXT, expandednodes TEXT)");
 
+            st.execute("CREATE TABLE syncstate(" +
+                    "serverid INT NOT NULL, filename TEXT NOT NULL, hash TEXT, PRIMARY KEY(serverid, filename))");
+
+            st.execute("CREATE TABLE idsequence(" +
+                    "name TEXT NOT NULL PRIMARY KEY, nextid INT)");
+
+            st.execute("CREATE TABLE keypairpool(" +
+                    "keystrength INT NOT NULL, keydata TEXT NOT NULL)");
+
+            st.execute("CREATE TABLE dhparameters(" +
+                    "keystrength INT NOT NULL PRIMARY KEY, content TEXT NOT NULL)");
+
+            st.execute("CREATE TABLE trafficstats(" +
+                    "server TEXT NOT NULL, client TEXT NOT NULL, resolution INT NOT NULL, time INT NOT NULL, " +
+                    "bytesreceived INT, bytessent INT, sessions INT)");
+
             st.close();
 
+            createIndexes(dbConnection);
+
             logger.info("Finished creating tables");
 
         } catch (Exception e) {
@@ -364,6 +440,82 @@ public class DBTasks {
         }
     }
 
+    /**
+     * Creates the indexes of the database tables and stores
+     * the index version in the database, existing indexes are kept
+     *
+     * @param dbConnection The database connection
+     * @throws SQLException
+     */
+    public static void createIndexes(Connection dbConnection) throws SQLException {
+        logger.info("Creating indexes, version " + INDEX_VERSION);
+
+        Statement st = dbConnection.createStatement();
+        try {
+            for (String[] index : INDEXES)
+                st.execute("CREATE INDEX IF NOT EXISTS " + index[0] + " ON " + index[1]);
+            // the version is stored in the database file, the configuration
+            // table is not available on every connection passed in here
+            st.execute("PRAGMA user_version = " + INDEX_VERSION);
+        } finally {
+            st.close();
+        }
+    }
+
+
+    /**
+     * Creates the indexes if the database has an older index version
+     *
+     * @param dbConnection The database connection
+     * @throws SQLException
+     */
+    public static void updateIndexes(Connection dbConnection) throws SQLException {
+        int version = getIndexVersion(dbConnection);
+        if (version < INDEX_VERSION) {
+            logger.info("Updating indexes from version " + version);
+            createIndexes(dbConnection);
+        }
+    }
+
+
+    /**
+     * Drops the indexes and resets the index version
+     *
+     * @param dbConnection The database connection
+     * @throws SQLException
+     */
+    public static void dropIndexes(Connection dbConnection) throws SQLException {
+        Statement st = dbConnection.createStatement();
+        try {
+            for (String[] index : INDEXES)
+                st.execute("DROP INDEX IF EXISTS " + index[0]);
+            st.execute("PRAGMA user_version = 0");
+        } finally {
+            st.close();
+        }
+    }
+
+
+    /**
+     * Returns the index version of the database
+     *
+     * @param dbConnection The database connection
+     * @return the version, 0 if no indexes were created yet
+     * @throws SQLException
+     */
+    public static int getIndexVersion(Connection dbConnection) throws SQLException {
+        Statement st = dbConnection.createStatement();
+        try {
+            ResultSet rs = st.executeQuery("PRAGMA user_version");
+            int version = rs.next() ? rs.getInt(1) : 0;
+            rs.close();
+            return version;
+        } finally {
+            st.close();
+        }
+    }
+
+
     /**
      * Clears the CRL table
      */
@@ -11,7 +11,6 @@ import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
-import java.sql.Statement;
 import java.util.ResourceBundle;
 import java.util.logging.Level;
 import java.util.logging.Logger;
@@ -62,7 +61,7 @@ public class GroupDAO {
      */
     public void create(Group group) {
         try {
-            int nextGroupId = getNextGroupid();
+            int nextGroupId = IdAllocator.getInstance().nextId(IdAllocator.GROUPS);
             group.setGroupid(nextGroupId);
 
             PreparedStatement pst = dbConnection.prepareStatement(
@@ -190,29 +189,4 @@ public class GroupDAO {
         }
     }
 
-
-    /**
-     * retrieves the next groupid from the db
-     *
-     * @return int the next group id
-     */
-    private int getNextGroupid() throws Exception {
-        int groupid = 0;
-        try {
-            Statement st = dbConnection.createStatement();
-            ResultSet rs = st.executeQuery("SELECT max(groupid) as maxId from groups");
-            if (rs.next())
-                groupid = rs.getInt("maxId") + 1;
-
-            rs.close();
-            st.close();
-
-        } catch (Exception e) {
-            logger.log(Level.SEVERE, "error getting next groupid", e);
-            throw e;
-        }
-
-        return groupid;
-    }
-
 }
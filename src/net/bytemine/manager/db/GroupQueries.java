@@ -204,15 +204,16 @@ public class GroupQueries {
     public static void addUserToGroup(int groupid, int userid) {
         try {
             if (!isCombinationExisting(groupid, userid)) {
-                DBConnector.getInstance().getConnection().setAutoCommit(false);
-                PreparedStatement pst2 = DBConnector.getInstance().getConnection().prepareStatement(
-                        "INSERT INTO groups_user VALUES (?,?)");
-                pst2.setInt(1, groupid);
-                pst2.setInt(2, userid);
-                pst2.executeUpdate();
-
-                pst2.close();
-                DBConnector.getInstance().getConnection().commit();
+                DBConnector.getInstance().executeInTransaction(conn -> {
+                    PreparedStatement pst2 = conn.prepareStatement(
+                            "INSERT INTO groups_user VALUES (?,?)");
+                    pst2.setInt(1, groupid);
+                    pst2.setInt(2, userid);
+                    pst2.executeUpdate();
+
+                    pst2.close();
+                    return null;
+                });
             }
         } catch (Exception e) {
             logger.log(Level.SEVERE, "error while adding a user to this group", e);
@@ -239,15 +240,16 @@ public class GroupQueries {
     public static void removeUserFromGroup(int groupid, int userid) {
         try {
             if (isCombinationExisting(groupid, userid)) {
-                DBConnector.getInstance().getConnection().setAutoCommit(false);
-                PreparedStatement pst2 = DBConnector.getInstance().getConnection().prepareStatement(
-                        "DELETE FROM groups_user WHERE groupid=? and userid=?");
-                pst2.setInt(1, groupid);
-                pst2.setInt(2, userid);
-                pst2.executeUpdate();
-
-                pst2.close();
-                DBConnector.getInstance().getConnection().commit();
+                DBConnector.getInstance().executeInTransaction(conn -> {
+                    PreparedStatement pst2 = conn.prepareStatement(
+                            "DELETE FROM groups_user WHERE groupid=? and userid=?");
+                    pst2.setInt(1, groupid);
+                    pst2.setInt(2, userid);
+                    pst2.executeUpdate();
+
+                    pst2.close();
+                    return null;
+                });
             }
         } catch (Exception e) {
             logger.log(Level.SEVERE, "error while removing a user from this group", e);
@@ -426,28 +428,32 @@ public class GroupQueries {
     public static void saveUserToGroupConnections(GroupToUserModel model) throws Exception {
 
         try {
-            PreparedStatement pst = DBConnector.getInstance().getConnection().prepareStatement(
-                    "DELETE FROM groups_user WHERE groupid=? AND userid=?");
-            for (Iterator<GroupToUserEntry> iter = model.toRemove.iterator(); iter.hasNext();) {
-                GroupToUserEntry entry = iter.next();
-
-                pst.setString(1, entry.groupid);
-                pst.setString(2, entry.userid);
-                pst.executeUpdate();
-            }
-            pst.close();
-
-            PreparedStatement pst2 = DBConnector.getInstance().getConnection().prepareStatement(
-                    "INSERT INTO groups_user VALUES(?,?)");
-            for (Iterator<GroupToUserEntry> iter = model.toAdd.iterator(); iter.hasNext();) {
-                GroupToUserEntry entry = (GroupToUserEntry) iter.next();
-
-                pst2.setString(1, entry.groupid);
-                pst2.setString(2, entry.userid);
-                pst2.executeUpdate();
-            }
-            pst2.close();
-
+            DBConnector.getInstance().executeInTransaction(conn -> {
+                PreparedStatement pst = conn.prepareStatement(
+                        "DELETE FROM groups_user WHERE groupid=? AND userid=?");
+                for (Iterator<GroupToUserEntry> iter = model.toRemove.iterator(); iter.hasNext();) {
+                    GroupToUserEntry entry = iter.next();
+
+                    pst.setString(1, entry.groupid);
+                    pst.setString(2, entry.userid);
+                    pst.addBatch();
+                }
+                pst.executeBatch();
+                pst.close();
+
+                PreparedStatement pst2 = conn.prepareStatement(
+                        "INSERT INTO groups_user VALUES(?,?)");
+                for (Iterator<GroupToUserEntry> iter = model.toAdd.iterator(); iter.hasNext();) {
+                    GroupToUserEntry entry = iter.next();
+
+                    pst2.setString(1, entry.groupid);
+                    pst2.setString(2, entry.userid);
+                    pst2.addBatch();
+                }
+                pst2.executeBatch();
+                pst2.close();
+                return null;
+            });
         } catch (Exception e) {
             logger.log(Level.SEVERE, "error saving user and group connections", e);
             throw e;
@@ -0,0 +1,105 @@
+/*************************************************************************
+ * Written by / Copyright (C) 2009-2012 bytemine GmbH                     *
+ * Author: Daniel Rauer                     E-Mail:    rauer@bytemine.net *
+ *                                                                        *
+ * http://www.bytemine.net/                                               *
+ *************************************************************************/
+
+package net.bytemine.manager.db;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.Statement;
+import java.util.concurrent.locks.ReentrantLock;
+
+
+/**
+ * Guards the shared connection against writes outside of the running transaction.
+ * Statements writing to the database and the commit, rollback and auto commit
+ * calls of a thread take the transaction lock, so they wait until the
+ * transaction of another thread is finished instead of becoming part of it.
+ * Inside its own transaction a thread already holds the lock.
+ * Queries are not guarded, they may see the changes of an open transaction.
+ *
+ * @author Daniel Rauer
+ */
+class GuardedConnection implements InvocationHandler {
+
+    private final Object target;
+    private final ReentrantLock lock;
+
+
+    private GuardedConnection(Object target, ReentrantLock lock) {
+        this.target = target;
+        this.lock = lock;
+    }
+
+
+    /**
+     * Wraps the connection
+     *
+     * @param conn The connection to guard
+     * @param lock The transaction lock
+     * @return the guarded connection
+     */
+    static Connection wrap(Connection conn, ReentrantLock lock) {
+        return (Connection) Proxy.newProxyInstance(
+                GuardedConnection.class.getClassLoader(),
+                new Class<?>[] { Connection.class },
+                new GuardedConnection(conn, lock));
+    }
+
+
+    public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+        if ("equals".equals(method.getName()) && args != null && args.length == 1)
+            return proxy == args[0];
+
+        if (!isWriting(method) || lock.isHeldByCurrentThread())
+            return wrapStatement(method, call(method, args));
+
+        lock.lock();
+        try {
+            return call(method, args);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+
+    private Object call(Method method, Object[] args) throws Throwable {
+        try {
+            return method.invoke(target, args);
+        } catch (InvocationTargetException e) {
+            throw e.getCause();
+        }
+    }
+
+
+    /**
+     * Guards the statements created by the connection as well
+     */
+    private Object wrapStatement(Method method, Object result) {
+        Class<?> type = method.getReturnType();
+        if (!(target instanceof Connection) || result == null || !Statement.class.isAssignableFrom(type))
+            return result;
+
+        return Proxy.newProxyInstance(
+                GuardedConnection.class.getClassLoader(),
+                new Class<?>[] { type },
+                new GuardedConnection(result, lock));
+    }
+
+
+    /**
+     * Decides whether the method changes the database or the transaction
+     */
+    private boolean isWriting(Method method) {
+        String name = method.getName();
+        if (target instanceof Connection)
+            return "commit".equals(name) || "rollback".equals(name) || "setAutoCommit".equals(name);
+        return name.startsWith("execute") && !"executeQuery".equals(name);
+    }
+}
@@ -0,0 +1,209 @@
+/*************************************************************************
+ * Written by / Copyright (C) 2009-2012 bytemine GmbH                     *
+ * Author: Daniel Rauer                     E-Mail:    rauer@bytemine.net *
+ *                                                                        *
+ * http://www.bytemine.net/                                               *
+ *************************************************************************/
+
+package net.bytemine.manager.db;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.Statement;
+import java.util.HashMap;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+
+/**
+ * Allocates the ids of new rows.
+ * The ids are reserved in blocks in the idsequence table and handed out
+ * from memory, so an insert does not need to query the highest id.
+ * When a block is reserved the highest id of the table is respected,
+ * rows inserted without the allocator do not lead to duplicate ids.
+ * implemented as singleton
+ *
+ * @author Daniel Rauer
+ */
+public class IdAllocator {
+
+    private static Logger logger = Logger.getLogger(IdAllocator.class.getName());
+
+    public static final String USER = "user";
+    public static final String X509 = "x509";
+    public static final String SERVER = "server";
+    public static final String GROUPS = "groups";
+    public static final String CRL = "crl";
+    public static final String CRLENTRY = "crlentry";
+    public static final String PKCS12 = "pkcs12";
+    public static final String SERVICE = "service";
+    public static final String TREESTATES = "treestates";
+
+    // the id column of each table
+    private static final HashMap<String, String> ID_COLUMNS = new HashMap<String, String>();
+    static {
+        ID_COLUMNS.put(USER, "userid");
+        ID_COLUMNS.put(X509, "x509id");
+        ID_COLUMNS.put(SERVER, "serverid");
+        ID_COLUMNS.put(GROUPS, "groupid");
+        ID_COLUMNS.put(CRL, "crlid");
+        ID_COLUMNS.put(CRLENTRY, "crlentryid");
+        ID_COLUMNS.put(PKCS12, "pkcs12id");
+        ID_COLUMNS.put(SERVICE, "serviceid");
+        ID_COLUMNS.put(TREESTATES, "stateid");
+    }
+
+    // number of ids reserved at once
+    private static final int BLOCK_SIZE = 100;
+
+    private static IdAllocator instance = null;
+
+    // the reserved blocks, per table
+    private HashMap<String, Block> blocks = new HashMap<String, Block>();
+    // the connection the blocks were reserved on
+    private Connection blockConnection = null;
+
+
+    private IdAllocator() {
+    }
+
+
+    public static synchronized IdAllocator getInstance() {
+        if (instance == null)
+            instance = new IdAllocator();
+
+        return instance;
+    }
+
+
+    /**
+     * Returns the next id for a new row of the table
+     *
+     * @param table The table, e.g. IdAllocator.USER
+     * @return the id
+     * @throws Exception
+     */
+    public int nextId(String table) throws Exception {
+        return nextIds(table, 1);
+    }
+
+
+    /**
+     * Returns a range of consecutive ids for new rows of the table.
+     * The transaction is entered before the allocator is locked, callers
+     * already running a transaction take the locks in the same order.
+     *
+     * @param table The table, e.g. IdAllocator.USER
+     * @param count The number of ids
+     * @return the first id of the range
+     * @throws Exception
+     */
+    public int nextIds(final String table, final int count) throws Exception {
+        try {
+            return DBConnector.getInstance().executeInTransaction(conn -> allocate(conn, table, count));
+        } catch (Exception e) {
+            logger.log(Level.SEVERE, "error reserving ids for " + table, e);
+            throw e;
+        }
+    }
+
+
+    /**
+     * Forgets the reserved blocks, e.g. after the tables were recreated
+     */
+    public synchronized void reset() {
+        blocks.clear();
+        blockConnection = null;
+    }
+
+
+    /**
+     * Hands out the ids from the reserved block of the table,
+     * a new block is reserved if the current one is exhausted
+     *
+     * @param conn  The connection of the running transaction
+     * @param table The table
+     * @param count The number of ids
+     * @return the first id of the range
+     * @throws Exception
+     */
+    private synchronized int allocate(Connection conn, String table, int count) throws Exception {
+        if (conn != blockConnection) {
+            // another database is used, the reserved blocks are invalid
+            blocks.clear();
+            blockConnection = conn;
+        }
+
+        Block block = blocks.get(table);
+        if (block == null || block.next + count > block.end) {
+            block = reserveBlock(conn, table, Math.max(count, BLOCK_SIZE));
+            blocks.put(table, block);
+        }
+
+        int id = block.next;
+        block.next += count;
+        return id;
+    }
+
+
+    /**
+     * Reserves a block of ids in the idsequence table
+     *
+     * @param conn  The connection of the running transaction
+     * @param table The table
+     * @param size  The number of ids to reserve
+     * @return the reserved block
+     * @throws Exception
+     */
+    private Block reserveBlock(Connection conn, String table, int size) throws Exception {
+        String idColumn = ID_COLUMNS.get(table);
+        if (idColumn == null)
+            throw new IllegalArgumentException("no id sequence for table " + table);
+
+        int next = 1;
+
+        PreparedStatement pst = conn.prepareStatement(
+                "SELECT nextid FROM idsequence WHERE name=?");
+        pst.setString(1, table);
+        ResultSet rs = pst.executeQuery();
+        boolean existing = rs.next();
+        if (existing)
+            next = rs.getInt("nextid");
+        rs.close();
+        pst.close();
+
+        // uses the primary key index, no table scan
+        Statement st = conn.createStatement();
+        rs = st.executeQuery("SELECT max(" + idColumn + ") AS maxId FROM " + table);
+        if (rs.next())
+            next = Math.max(next, rs.getInt("maxId") + 1);
+        rs.close();
+        st.close();
+
+        pst = conn.prepareStatement(existing
+                ? "UPDATE idsequence SET nextid=? WHERE name=?"
+                : "INSERT INTO idsequence(nextid, name) VALUES(?,?)");
+        pst.setInt(1, next + size);
+        pst.setString(2, table);
+        pst.executeUpdate();
+        pst.close();
+
+        logger.fine("reserved ids " + next + " to " + (next + size - 1) + " for " + table);
+        return new Block(next, next + size);
+    }
+
+
+    /**
+     * A range of reserved ids, end is exclusive
+     */
+    private static class Block {
+        private int next;
+        private final int end;
+
+        private Block(int next, int end) {
+            this.next = next;
+            this.end = end;
+        }
+    }
+}
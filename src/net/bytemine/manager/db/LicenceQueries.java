@@ -56,27 +56,25 @@ public class LicenceQueries {
      * @param crtpath  The path to the crt or pem file
      * @param keypath  The path to the key file
      */
-    public static void storeKeystore(byte[] keystore, String crtpath, String keypath) {
+    public static void storeKeystore(final byte[] keystore, final String crtpath, final String keypath) {
         try {
-            DBConnector.getInstance().getConnection().setAutoCommit(false);
-
-            PreparedStatement pstDelete = DBConnector.getInstance().getConnection().prepareStatement(
-                    "DELETE FROM licence");
-            pstDelete.executeUpdate();
-            pstDelete.close();
-            
-            PreparedStatement pst2 = DBConnector.getInstance().getConnection().prepareStatement(
-                    "INSERT INTO licence (licid, keystore, crtpath, keypath) VALUES(?,?,?,?)"
-            );
-            pst2.setInt(1, 1);
-            pst2.setBytes(2, keystore);
-            pst2.setString(3, crtpath);
-            pst2.setString(4, keypath);
-            pst2.executeUpdate();
-            pst2.close();
-        
-            DBConnector.getInstance().getConnection().commit();
-            DBConnector.getInstance().getConnection().setAutoCommit(true);
+            DBConnector.getInstance().executeInTransaction(conn -> {
+                PreparedStatement pstDelete = conn.prepareStatement(
+                        "DELETE FROM licence");
+                pstDelete.executeUpdate();
+                pstDelete.close();
+
+                PreparedStatement pst2 = conn.prepareStatement(
+                        "INSERT INTO licence (licid, keystore, crtpath, keypath) VALUES(?,?,?,?)"
+                );
+                pst2.setInt(1, 1);
+                pst2.setBytes(2, keystore);
+                pst2.setString(3, crtpath);
+                pst2.setString(4, keypath);
+                pst2.executeUpdate();
+                pst2.close();
+                return null;
+            });
         } catch (Exception e) {
             logger.log(Level.SEVERE, "error while storing keystore", e);
         }
@@ -11,7 +11,7 @@ import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
-import java.sql.Statement;
+import java.util.List;
 import java.util.ResourceBundle;
 import java.util.logging.Level;
 import java.util.logging.Logger;
@@ -35,6 +35,9 @@ public class PKCS12DAO {
     private static PKCS12DAO pkcs12DAO;
     private static Connection dbConnection;
 
+    private static final String INSERT_SQL =
+            "INSERT INTO pkcs12(pkcs12id, friendlyname, password, content, x509id) VALUES(?,?,?,?,?)";
+
 
     private PKCS12DAO() {
         dbConnection = DBConnector.getInstance().getConnection();
@@ -62,18 +65,11 @@ public class PKCS12DAO {
      */
     public void create(PKCS12 pkcs12) {
         try {
-            int nextPKCS12Id = getNextPKCS12id();
+            int nextPKCS12Id = IdAllocator.getInstance().nextId(IdAllocator.PKCS12);
             pkcs12.setPkcs12id(nextPKCS12Id);
 
-            PreparedStatement pst = dbConnection.prepareStatement(
-                    "INSERT INTO pkcs12(pkcs12id, friendlyname, password, content, x509id) " +
-                    "VALUES(?,?,?,?,?)"
-            );
-            pst.setInt(1, nextPKCS12Id);
-            pst.setString(2, pkcs12.getFriendlyName());
-            pst.setString(3, pkcs12.getPassword());
-            pst.setString(4, pkcs12.getContent());
-            pst.setInt(5, pkcs12.getX509id());
+            PreparedStatement pst = dbConnection.prepareStatement(INSERT_SQL);
+            setInsertParameters(pst, pkcs12);
             pst.executeUpdate();
             pst.close();
         } catch (Exception e) {
@@ -84,6 +80,48 @@ public class PKCS12DAO {
     }
 
 
+    /**
+     * creates new pkcs12 rows in the db with one batch in one transaction
+     *
+     * @param pkcs12s The pkcs12s to create, their pkcs12ids are set
+     */
+    public void create(final List<PKCS12> pkcs12s) {
+        if (pkcs12s.isEmpty())
+            return;
+        try {
+            DBConnector.getInstance().executeInTransaction(conn -> {
+                int nextPKCS12Id = IdAllocator.getInstance().nextIds(IdAllocator.PKCS12, pkcs12s.size());
+
+                PreparedStatement pst = conn.prepareStatement(INSERT_SQL);
+                for (PKCS12 pkcs12 : pkcs12s) {
+                    pkcs12.setPkcs12id(nextPKCS12Id++);
+                    setInsertParameters(pst, pkcs12);
+                    pst.addBatch();
+                }
+                pst.executeBatch();
+                pst.close();
+                return null;
+            });
+        } catch (Exception e) {
+            // the rows were rolled back
+            for (PKCS12 pkcs12 : pkcs12s)
+                pkcs12.setPkcs12id(0);
+            ResourceBundle rb = ResourceBundleMgmt.getInstance().getUserBundle();
+            logger.log(Level.SEVERE, "error creating " + pkcs12s.size() + " pkcs12", e);
+            new VisualException(rb.getString("error.db.pkcs12") + rb.getString("error.db.create"));
+        }
+    }
+
+
+    private static void setInsertParameters(PreparedStatement pst, PKCS12 pkcs12) throws SQLException {
+        pst.setInt(1, pkcs12.getPkcs12id());
+        pst.setString(2, pkcs12.getFriendlyName());
+        pst.setString(3, pkcs12.getPassword());
+        pst.setString(4, pkcs12.getContent());
+        pst.setInt(5, pkcs12.getX509id());
+    }
+
+
     /**
      * loads a pkcs12 from the db
      * identification by pkcs12id
@@ -195,29 +233,4 @@ public class PKCS12DAO {
         }
     }
 
-
-    /**
-     * retrieves the next pkcs12id from the db
-     *
-     * @return int th next pkcs12 id
-     */
-    private int getNextPKCS12id() throws Exception {
-        int pkcs12id = 0;
-        try {
-            Statement st = dbConnection.createStatement();
-            ResultSet rs = st.executeQuery("SELECT max(pkcs12id) as maxId from pkcs12");
-            if (rs.next())
-                pkcs12id = rs.getInt("maxId") + 1;
-
-            rs.close();
-            st.close();
-
-        } catch (Exception e) {
-            logger.log(Level.SEVERE, "error getting next pkcs12id", e);
-            throw e;
-        }
-
-        return pkcs12id;
-    }
-
 }
@@ -0,0 +1,135 @@
+/*************************************************************************
+ * Written by / Copyright (C) 2009-2012 bytemine GmbH                     *
+ * Author: Daniel Rauer                     E-Mail:    rauer@bytemine.net *
+ *                                                                        *
+ * http://www.bytemine.net/                                               *
+ *************************************************************************/
+
+package net.bytemine.manager.db;
+
+import java.sql.Connection;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import net.bytemine.utility.ChecksumUtils;
+
+
+/**
+ * Holds the serials of all revoked certificates in memory.
+ * The index is loaded from the crlentry table on first use and
+ * kept up to date by the CRLEntryDAO on revocations and re-enabled
+ * certificates.
+ * implemented as singleton
+ *
+ * @author Daniel Rauer
+ */
+public class RevocationIndex {
+
+    private static RevocationIndex instance = null;
+
+    private HashSet<String> serials = null;
+    // hash over the sorted serials, null if not calculated yet
+    private String version = null;
+    // the connection the index was loaded from
+    private Connection indexConnection = null;
+
+
+    private RevocationIndex() {
+    }
+
+
+    public static synchronized RevocationIndex getInstance() {
+        if (instance == null)
+            instance = new RevocationIndex();
+
+        return instance;
+    }
+
+
+    /**
+     * Decides whether the certificate with the given serial is revoked
+     *
+     * @param serial The serial
+     * @return true, if a crlentry exists for the serial
+     * @throws Exception
+     */
+    public synchronized boolean isRevoked(String serial) throws Exception {
+        return load().contains(serial);
+    }
+
+
+    /**
+     * Returns the serials of all revoked certificates
+     *
+     * @return a copy of the serials
+     * @throws Exception
+     */
+    public synchronized Set<String> getSerials() throws Exception {
+        return new HashSet<String>(load());
+    }
+
+
+    /**
+     * Returns the version of the revocation set
+     *
+     * @return a hash over the serials of all revoked certificates
+     * @throws Exception
+     */
+    public synchronized String getVersion() throws Exception {
+        if (version == null) {
+            List<String> sorted = new ArrayList<String>(load());
+            Collections.sort(sorted);
+
+            StringBuilder sb = new StringBuilder();
+            for (String serial : sorted)
+                sb.append(serial).append("\n");
+            version = ChecksumUtils.calculateSHA1Checksum(sb.toString().getBytes());
+        }
+        return version;
+    }
+
+
+    /**
+     * Adds a revoked serial, called by the CRLEntryDAO
+     *
+     * @param serial The serial
+     */
+    synchronized void add(String serial) {
+        if (serials != null && serial != null && serials.add(serial))
+            version = null;
+    }
+
+
+    /**
+     * Removes a re-enabled serial, called by the CRLEntryDAO
+     *
+     * @param serial The serial
+     */
+    synchronized void remove(String serial) {
+        if (serials != null && serials.remove(serial))
+            version = null;
+    }
+
+
+    /**
+     * Forgets the index, it is reloaded on next use
+     */
+    public synchronized void invalidate() {
+        serials = null;
+        version = null;
+    }
+
+
+    private HashSet<String> load() throws Exception {
+        Connection conn = DBConnector.getInstance().getConnection();
+        if (serials == null || conn != indexConnection) {
+            serials = new HashSet<String>(CRLQueries.getRevocationSerials());
+            version = null;
+            indexConnection = conn;
+        }
+        return serials;
+    }
+}
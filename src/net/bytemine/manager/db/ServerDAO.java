@@ -59,7 +59,7 @@ public class ServerDAO {
     public void create(Server server) {
         try {
             logger.info("start creating server");
-            int nextServerId = getNextServerid();
+            int nextServerId = IdAllocator.getInstance().nextId(IdAllocator.SERVER);
             server.setServerid(nextServerId);
 
             PreparedStatement pst = dbConnection.prepareStatement(
@@ -187,76 +187,80 @@ public class ServerDAO {
      *
      * @param server The server to update
      */
-    public void update(Server server) {
+    public void update(final Server server) {
         try {
-            dbConnection.setAutoCommit(false);
-            PreparedStatement pst = dbConnection.prepareStatement(
-                    "UPDATE server SET " +
-                            "name=?, " +
-                            "hostname=?, " +
-                            "authtype=?, " +
-                            "username=?, " +
-                            "keyfilepath=?, " +
-                            "userfilepath=?, " +
-                            "exportpath=?, " +
-                            "statusport=?, " +
-                            "statustype=?, " + "" +
-                            "statusinterval=?, " +
-                            "sshport=?, " +
-                            "servertype=?, " +
-                            "wrappercommand=?, " +
-                            "x509id=?, " +
-                            "vpnport=?, " +
-                            "vpnprotocol=?, " +
-                            "vpncc=?, " +
-                            "vpnccpath=?, " +
-                            "vpnNetworkAddress=?, " +
-                            "vpnSubnetMask=?, " +
-                            "vpnDevice=?, " +
-                            "vpnRedirectGateway=?, " +
-                            "vpnDuplicateCN=?, " +
-                            "vpnUser=?, " +
-                            "vpnGroup=?, " +
-                            "vpnKeepAlive=?, " +
-                            "cn=?, " +
-                            "ou=? " +
-                            "WHERE serverid=?"
-            );
+            DBConnector.getInstance().executeInTransaction(conn -> {
+                PreparedStatement pst = conn.prepareStatement(
+                        "UPDATE server SET " +
+                                "name=?, " +
+                                "hostname=?, " +
+                                "authtype=?, " +
+                                "username=?, " +
+                                "keyfilepath=?, " +
+                                "userfilepath=?, " +
+                                "exportpath=?, " +
+                                "statusport=?, " +
+                                "statustype=?, " + "" +
+                                "statusinterval=?, " +
+                                "sshport=?, " +
+                                "servertype=?, " +
+                                "wrappercommand=?, " +
+                                "x509id=?, " +
+                                "vpnport=?, " +
+                                "vpnprotocol=?, " +
+                                "vpncc=?, " +
+                                "vpnccpath=?, " +
+                                "vpnNetworkAddress=?, " +
+                                "vpnSubnetMask=?, " +
+                                "vpnDevice=?, " +
+                                "vpnRedirectGateway=?, " +
+                                "vpnDuplicateCN=?, " +
+                                "vpnUser=?, " +
+                                "vpnGroup=?, " +
+                                "vpnKeepAlive=?, " +
+                                "cn=?, " +
+                                "ou=? " +
+                                "WHERE serverid=?"
+                );
+
+                pst.setString(1, server.getName());
+                pst.setString(2, server.getHostname());
+                pst.setInt(3, server.getAuthType());
+                pst.setString(4, server.getUsername());
+                pst.setString(5, server.getKeyfilePath());
+                pst.setString(6, server.getUserfilePath());
+                pst.setString(7, server.getExportPath());
+                pst.setInt(8, server.getStatusPort());
+                pst.setInt(9, server.getStatusType());
+                pst.setInt(10, server.getStatusInterval());
+                pst.setInt(11, server.getSshPort());
+                pst.setInt(12, server.getServerType());
+                pst.setString(13, server.getWrapperCommand());
+                pst.setInt(14, server.getX509id());
+                pst.setInt(15, server.getVpnPort());
+                pst.setInt(16, server.getVpnProtocol());
+                pst.setBoolean(17, server.getVpncc());
+                pst.setString(18, server.getVpnccpath());
+                pst.setString(19, server.getVpnNetworkAddress());
+                pst.setInt(20, server.getVpnSubnetMask());
+                pst.setInt(21, server.getVpnDevice());
+                pst.setBoolean(22, server.getVpnRedirectGateway());
+                pst.setBoolean(23, server.getVpnDuplicateCN());
+                pst.setString(24, server.getVpnUser());
+                pst.setString(25, server.getVpnGroup());
+                pst.setString(26, server.getVpnKeepAlive());
+                pst.setString(27, server.getCn());
+                pst.setString(28, server.getOu());
+
+                pst.setInt(29, server.getServerid());
+
+                pst.executeUpdate();
+                pst.close();
+                return null;
+            });
 
-            pst.setString(1, server.getName());
-            pst.setString(2, server.getHostname());
-            pst.setInt(3, server.getAuthType());
-            pst.setString(4, server.getUsername());
-            pst.setString(5, server.getKeyfilePath());
-            pst.setString(6, server.getUserfilePath());
-            pst.setString(7, server.getExportPath());
-            pst.setInt(8, server.getStatusPort());
-            pst.setInt(9, server.getStatusType());
-            pst.setInt(10, server.getStatusInterval());
-            pst.setInt(11, server.getSshPort());
-            pst.setInt(12, server.getServerType());
-            pst.setString(13, server.getWrapperCommand());
-            pst.setInt(14, server.getX509id());
-            pst.setInt(15, server.getVpnPort());
-            pst.setInt(16, server.getVpnProtocol());
-            pst.setBoolean(17, server.getVpncc());
-            pst.setString(18, server.getVpnccpath());
-            pst.setString(19, server.getVpnNetworkAddress());
-            pst.setInt(20, server.getVpnSubnetMask());
-            pst.setInt(21, server.getVpnDevice());
-            pst.setBoolean(22, server.getVpnRedirectGateway());
-            pst.setBoolean(23, server.getVpnDuplicateCN());
-            pst.setString(24, server.getVpnUser());
-            pst.setString(25, server.getVpnGroup());
-            pst.setString(26, server.getVpnKeepAlive());
-            pst.setString(27, server.getCn());
-            pst.setString(28, server.getOu());
-            
-            pst.setInt(29, server.getServerid());
-            
-            pst.executeUpdate();
-            pst.close();
-            dbConnection.commit();
+            // paths or host may have changed, transfer all files on the next sync
+            SyncStateQueries.clearFileHashes(server.getServerid());
 
         } catch (Exception e) {
             ResourceBundle rb = ResourceBundleMgmt.getInstance().getUserBundle();
@@ -282,6 +286,7 @@ public class ServerDAO {
             pst.close();
             
             ServerQueries.removeServerFromAllUsers(server.getServerid());
+            SyncStateQueries.clearFileHashes(server.getServerid());
         } catch (Exception e) {
             ResourceBundle rb = ResourceBundleMgmt.getInstance().getUserBundle();
             logger.log(Level.SEVERE, "error deleting server", e);
@@ -306,6 +311,7 @@ public class ServerDAO {
             pst.close();
 
             ServerQueries.removeServerFromAllUsers(Integer.parseInt(serverId));
+            SyncStateQueries.clearFileHashes(Integer.parseInt(serverId));
         } catch (Exception e) {
             ResourceBundle rb = ResourceBundleMgmt.getInstance().getUserBundle();
             logger.log(Level.SEVERE, "error deleting server", e);
@@ -313,29 +319,4 @@ public class ServerDAO {
         }
     }
 
-
-    /**
-     * retrieves the next serverid from the db
-     *
-     * @return int the next server id
-     */
-    private int getNextServerid() throws Exception {
-        int serverid = 0;
-        try {
-            Statement st = dbConnection.createStatement();
-            ResultSet rs = st.executeQuery("SELECT max(serverid) as maxId from server");
-            if (rs.next())
-                serverid = rs.getInt("maxId") + 1;
-
-            rs.close();
-            st.close();
-
-        } catch (Exception e) {
-            logger.log(Level.SEVERE, "error getting next serverid", e);
-            throw e;
-        }
-
-        return serverid;
-    }
-
 }
@@ -14,7 +14,6 @@ import java.sql.PreparedStatement;
 import javax.swing.JTextField;
 import java.sql.ResultSet;
 import java.sql.Statement;
-import java.util.Iterator;
 import java.util.ResourceBundle;
 import java.util.Vector;
 import java.util.logging.Level;
@@ -329,30 +328,35 @@ public class ServerQueries {
 
 
     /**
-     * Links the users to the server
+     * Links the users to the server, replaces the existing links
+     * in one transaction
      *
      * @param serverid The server id
      * @param userids  The userids to connect
      */
-    public static void reconnectUsersAndServer(int serverid, Vector<String> userids) throws Exception {
+    public static void reconnectUsersAndServer(final int serverid, final Vector<String> userids) throws Exception {
         try {
-            // delete
-            removeServerFromAllUsers(serverid);
-
-            // save
-            PreparedStatement pst2 = DBConnector.getInstance().getConnection().prepareStatement(
-                    "INSERT INTO server_user VALUES (?,?,?)");
-            pst2.setInt(1, serverid);
-
-            for (Iterator<String> it = userids.iterator(); it.hasNext();) {
-                String userid = (String) it.next();
-                pst2.setInt(2, Integer.parseInt(userid));
-                pst2.setString(3, "");
-                pst2.executeUpdate();
-            }
-
-            pst2.close();
+            DBConnector.getInstance().executeInTransaction(conn -> {
+                // delete
+                PreparedStatement pst = conn.prepareStatement(
+                        "DELETE FROM server_user WHERE serverid=?");
+                pst.setInt(1, serverid);
+                pst.executeUpdate();
+                pst.close();
 
+                // save
+                PreparedStatement pst2 = conn.prepareStatement(
+                        "INSERT INTO server_user VALUES (?,?,?)");
+                for (String userid : userids) {
+                    pst2.setInt(1, serverid);
+                    pst2.setInt(2, Integer.parseInt(userid));
+                    pst2.setString(3, "");
+                    pst2.addBatch();
+                }
+                pst2.executeBatch();
+                pst2.close();
+                return null;
+            });
         } catch (Exception e) {
             logger.log(Level.SEVERE, "error while adding users to this server", e);
             ResourceBundle rb = ResourceBundleMgmt.getInstance().getUserBundle();
@@ -386,16 +390,17 @@ public class ServerQueries {
     public static void addUserToServer(int serverid, int userid) {
         try {
             if (!isCombinationExisting(serverid, userid)) {
-                DBConnector.getInstance().getConnection().setAutoCommit(false);
-                PreparedStatement pst2 = DBConnector.getInstance().getConnection().prepareStatement(
-                        "INSERT INTO server_user VALUES (?,?,?)");
-                pst2.setInt(1, serverid);
-                pst2.setInt(2, userid);
-                pst2.setString(3, "");
-                pst2.executeUpdate();
-
-                pst2.close();
-                DBConnector.getInstance().getConnection().commit();
+                DBConnector.getInstance().executeInTransaction(conn -> {
+                    PreparedStatement pst2 = conn.prepareStatement(
+                            "INSERT INTO server_user VALUES (?,?,?)");
+                    pst2.setInt(1, serverid);
+                    pst2.setInt(2, userid);
+                    pst2.setString(3, "");
+                    pst2.executeUpdate();
+
+                    pst2.close();
+                    return null;
+                });
             }
         } catch (Exception e) {
             logger.log(Level.SEVERE, "error while adding a user to this server", e);
@@ -412,15 +417,16 @@ public class ServerQueries {
     public static void removeUserFromServer(int serverid, int userid) {
         try {
             if (isCombinationExisting(serverid, userid)) {
-                DBConnector.getInstance().getConnection().setAutoCommit(false);
-                PreparedStatement pst2 = DBConnector.getInstance().getConnection().prepareStatement(
-                        "DELETE FROM server_user WHERE serverid=? and userid=?");
-                pst2.setInt(1, serverid);
-                pst2.setInt(2, userid);
-                pst2.executeUpdate();
-
-                pst2.close();
-                DBConnector.getInstance().getConnection().commit();
+                DBConnector.getInstance().executeInTransaction(conn -> {
+                    PreparedStatement pst2 = conn.prepareStatement(
+                            "DELETE FROM server_user WHERE serverid=? and userid=?");
+                    pst2.setInt(1, serverid);
+                    pst2.setInt(2, userid);
+                    pst2.executeUpdate();
+
+                    pst2.close();
+                    return null;
+                });
             }
         } catch (Exception e) {
             logger.log(Level.SEVERE, "error while removing a user from this server", e);
@@ -11,7 +11,6 @@ import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
-import java.sql.Statement;
 import java.util.ResourceBundle;
 import java.util.logging.Level;
 import java.util.logging.Logger;
@@ -63,7 +62,7 @@ public class ServiceDAO {
     public void create(Service service) {
         try {
             logger.info("start creating service");
-            int nextServiceId = getNextServiceid();
+            int nextServiceId = IdAllocator.getInstance().nextId(IdAllocator.SERVICE);
             service.setServiceid(nextServiceId);
 
             PreparedStatement pst = dbConnection.prepareStatement(
@@ -128,25 +127,26 @@ public class ServiceDAO {
      *
      * @param service The service to update
      */
-    public void update(Service service) {
+    public void update(final Service service) {
         try {
-            dbConnection.setAutoCommit(false);
-            PreparedStatement pst = dbConnection.prepareStatement(
-                    "UPDATE service SET " +
-                            "servicename=?, " +
-                            "protocol=?, " +
-                            "port=? " +
-                            "WHERE serviceid=?"
-            );
-
-            pst.setString(1, service.getServicename());
-            pst.setString(2, service.getProtocol());
-            pst.setInt(3, service.getPort());
-            pst.setInt(4, service.getServiceid());
-
-            pst.executeUpdate();
-            pst.close();
-            dbConnection.commit();
+            DBConnector.getInstance().executeInTransaction(conn -> {
+                PreparedStatement pst = conn.prepareStatement(
+                        "UPDATE service SET " +
+                                "servicename=?, " +
+                                "protocol=?, " +
+                                "port=? " +
+                                "WHERE serviceid=?"
+                );
+
+                pst.setString(1, service.getServicename());
+                pst.setString(2, service.getProtocol());
+                pst.setInt(3, service.getPort());
+                pst.setInt(4, service.getServiceid());
+
+                pst.executeUpdate();
+                pst.close();
+                return null;
+            });
 
         } catch (Exception e) {
             ResourceBundle rb = ResourceBundleMgmt.getInstance().getUserBundle();
@@ -203,29 +203,4 @@ public class ServiceDAO {
         }
     }
 
-
-    /**
-     * retrieves the next serverid from the db
-     *
-     * @return int the next server id
-     */
-    private int getNextServiceid() throws Exception {
-        int serviceid = 0;
-        try {
-            Statement st = dbConnection.createStatement();
-            ResultSet rs = st.executeQuery("SELECT max(serviceid) as maxId from service");
-            if (rs.next())
-                serviceid = rs.getInt("maxId") + 1;
-
-            rs.close();
-            st.close();
-
-        } catch (Exception e) {
-            logger.log(Level.SEVERE, "error getting next serviceid", e);
-            throw e;
-        }
-
-        return serviceid;
-    }
-
 }
@@ -0,0 +1,100 @@
+/*************************************************************************
+ * Written by / Copyright (C) 2009-2012 bytemine GmbH                     *
+ * Author: Daniel Rauer                     E-Mail:    rauer@bytemine.net *
+ *                                                                        *
+ * http://www.bytemine.net/                                               *
+ *************************************************************************/
+
+package net.bytemine.manager.db;
+
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.util.Hashtable;
+import java.util.Map;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+
+/**
+ * Queries for the hashes of the files synchronized to the servers
+ *
+ * @author Daniel Rauer
+ */
+public class SyncStateQueries {
+
+    private static Logger logger = Logger.getLogger(SyncStateQueries.class.getName());
+
+
+    /**
+     * Loads the hashes of the files last synchronized to the server
+     *
+     * @param serverId The id of the server
+     * @return a Hashtable with filename as key and hash as value
+     */
+    public static Hashtable<String, String> getFileHashes(int serverId) {
+        Hashtable<String, String> hashes = new Hashtable<>();
+        try {
+            PreparedStatement pst = DBConnector.getInstance().getConnection().prepareStatement(
+                    "SELECT filename, hash FROM syncstate WHERE serverid=?");
+            pst.setInt(1, serverId);
+            ResultSet rs = pst.executeQuery();
+            while (rs.next())
+                hashes.put(rs.getString("filename"), rs.getString("hash"));
+            rs.close();
+            pst.close();
+        } catch (Exception e) {
+            logger.log(Level.SEVERE, "error loading the synchronisation state of server " + serverId, e);
+        }
+        return hashes;
+    }
+
+
+    /**
+     * Replaces the stored hashes of the files synchronized to the server
+     *
+     * @param serverId The id of the server
+     * @param hashes   The hashes with filename as key
+     */
+    public static void storeFileHashes(final int serverId, final Map<String, String> hashes) {
+        try {
+            DBConnector.getInstance().executeInTransaction(conn -> {
+                PreparedStatement pst = conn.prepareStatement("DELETE FROM syncstate WHERE serverid=?");
+                pst.setInt(1, serverId);
+                pst.executeUpdate();
+                pst.close();
+
+                pst = conn.prepareStatement("INSERT INTO syncstate(serverid, filename, hash) VALUES(?,?,?)");
+                for (Map.Entry<String, String> hash : hashes.entrySet()) {
+                    pst.setInt(1, serverId);
+                    pst.setString(2, hash.getKey());
+                    pst.setString(3, hash.getValue());
+                    pst.addBatch();
+                }
+                pst.executeBatch();
+                pst.close();
+                return null;
+            });
+        } catch (Exception e) {
+            logger.log(Level.SEVERE, "error storing the synchronisation state of server " + serverId, e);
+        }
+    }
+
+
+    /**
+     * Forgets the synchronisation state of the server,
+     * the next synchronisation transfers all files
+     *
+     * @param serverId The id of the server
+     */
+    public static void clearFileHashes(int serverId) {
+        try {
+            PreparedStatement pst = DBConnector.getInstance().getConnection().prepareStatement(
+                    "DELETE FROM syncstate WHERE serverid=?");
+            pst.setInt(1, serverId);
+            pst.executeUpdate();
+            pst.close();
+        } catch (Exception e) {
+            logger.log(Level.SEVERE, "error clearing the synchronisation state of server " + serverId, e);
+        }
+    }
+}
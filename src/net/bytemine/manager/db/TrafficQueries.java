@@ -0,0 +1,264 @@
+/*************************************************************************
+ * Written by / Copyright (C) 2009-2012 bytemine GmbH                     *
+ * Author: Daniel Rauer                     E-Mail:    rauer@bytemine.net *
+ *                                                                        *
+ * http://www.bytemine.net/                                               *
+ *************************************************************************/
+
+package net.bytemine.manager.db;
+
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import net.bytemine.manager.Configuration;
+import net.bytemine.manager.bean.TrafficSample;
+
+
+/**
+ * Queries for the traffic history of the VPN servers and clients.
+ * The traffic is stored per minute, per hour and per day, every
+ * resolution is kept as long as configured. The series of a whole
+ * server has an empty client. Times are in ms.
+ *
+ * @author Daniel Rauer
+ */
+public class TrafficQueries {
+
+    private static Logger logger = Logger.getLogger(TrafficQueries.class.getName());
+
+
+    /**
+     * Adds the traffic of one minute to the periods of every resolution
+     * that contain it, the bytes are added, the sessions are the maximum
+     *
+     * @param samples The samples of one minute
+     */
+    public static void addSamples(final List<TrafficSample> samples) {
+        if (samples.isEmpty())
+            return;
+        try {
+            DBConnector.getInstance().executeInTransaction(conn -> {
+                PreparedStatement update = conn.prepareStatement(
+                        "UPDATE trafficstats SET bytesreceived=bytesreceived+?, bytessent=bytessent+?, " +
+                        "sessions=MAX(sessions,?) WHERE server=? AND client=? AND resolution=? AND time=?");
+                PreparedStatement insert = conn.prepareStatement(
+                        "INSERT INTO trafficstats(server, client, resolution, time, bytesreceived, bytessent, sessions) " +
+                        "VALUES(?,?,?,?,?,?,?)");
+                for (TrafficSample sample : samples) {
+                    for (int resolution : TrafficSample.RESOLUTIONS) {
+                        long time = periodStart(sample.getTime(), resolution);
+                        update.setLong(1, sample.getBytesReceived());
+                        update.setLong(2, sample.getBytesSent());
+                        update.setInt(3, sample.getSessions());
+                        update.setString(4, sample.getServer());
+                        update.setString(5, sample.getClient());
+                        update.setInt(6, resolution);
+                        update.setLong(7, time);
+                        if (update.executeUpdate() > 0)
+                            continue;
+
+                        insert.setString(1, sample.getServer());
+                        insert.setString(2, sample.getClient());
+                        insert.setInt(3, resolution);
+                        insert.setLong(4, time);
+                        insert.setLong(5, sample.getBytesReceived());
+                        insert.setLong(6, sample.getBytesSent());
+                        insert.setInt(7, sample.getSessions());
+                        insert.executeUpdate();
+                    }
+                }
+                update.close();
+                insert.close();
+                return null;
+            });
+        } catch (Exception e) {
+            logger.log(Level.SEVERE, "error storing the traffic statistics", e);
+        }
+    }
+
+
+    /**
+     * Loads the traffic of a server or client in one resolution
+     *
+     * @param server     The server
+     * @param client     The common name of the client, empty for the whole server
+     * @param resolution The resolution, one of TrafficSample.RESOLUTIONS
+     * @param from       The start, inclusive
+     * @param to         The end, exclusive
+     * @return the samples ordered by time, periods without traffic are missing
+     */
+    public static List<TrafficSample> getSamples(String server, String client, int resolution, long from, long to) {
+        List<TrafficSample> samples = new ArrayList<TrafficSample>();
+        try {
+            PreparedStatement pst = DBConnector.getInstance().getConnection().prepareStatement(
+                    "SELECT time, bytesreceived, bytessent, sessions FROM trafficstats " +
+                    "WHERE server=? AND client=? AND resolution=? AND time>=? AND time<? ORDER BY time");
+            pst.setString(1, server);
+            pst.setString(2, client);
+            pst.setInt(3, resolution);
+            pst.setLong(4, from);
+            pst.setLong(5, to);
+            ResultSet rs = pst.executeQuery();
+            while (rs.next())
+                samples.add(new TrafficSample(server, client, rs.getLong("time"), resolution,
+                        rs.getLong("bytesreceived"), rs.getLong("bytessent"), rs.getInt("sessions")));
+            rs.close();
+            pst.close();
+        } catch (Exception e) {
+            logger.log(Level.SEVERE, "error loading the traffic of " + server + "/" + client, e);
+        }
+        return samples;
+    }
+
+
+    /**
+     * Sums the traffic of a server or client. The finest resolution still
+     * kept at the start is used, the range is rounded to its periods.
+     *
+     * @param server The server
+     * @param client The common name of the client, empty for the whole server
+     * @param from   The start, inclusive
+     * @param to     The end, exclusive
+     * @return one sample over the whole range with the total bytes and the
+     *         most concurrent sessions, its rates are the average rates
+     */
+    public static TrafficSample getTotals(String server, String client, long from, long to) {
+        int resolution = getResolution(from, System.currentTimeMillis());
+        long bytesReceived = 0;
+        long bytesSent = 0;
+        int sessions = 0;
+        try {
+            PreparedStatement pst = DBConnector.getInstance().getConnection().prepareStatement(
+                    "SELECT SUM(bytesreceived), SUM(bytessent), MAX(sessions) FROM trafficstats " +
+                    "WHERE server=? AND client=? AND resolution=? AND time>=? AND time<?");
+            pst.setString(1, server);
+            pst.setString(2, client);
+            pst.setInt(3, resolution);
+            pst.setLong(4, periodStart(from, resolution));
+            pst.setLong(5, to);
+            ResultSet rs = pst.executeQuery();
+            if (rs.next()) {
+                bytesReceived = rs.getLong(1);
+                bytesSent = rs.getLong(2);
+                sessions = rs.getInt(3);
+            }
+            rs.close();
+            pst.close();
+        } catch (Exception e) {
+            logger.log(Level.SEVERE, "error loading the traffic totals of " + server + "/" + client, e);
+        }
+        int seconds = (int) Math.max(1, (to - from) / 1000);
+        return new TrafficSample(server, client, from, seconds, bytesReceived, bytesSent, sessions);
+    }
+
+
+    /**
+     * @param server The server
+     * @param from   The start, inclusive
+     * @param to     The end, exclusive
+     * @return the most concurrent sessions of the server in the range
+     */
+    public static int getPeakSessions(String server, long from, long to) {
+        return getTotals(server, "", from, to).getSessions();
+    }
+
+
+    /**
+     * Sums the traffic of every client of a server
+     *
+     * @param server The server
+     * @param from   The start, inclusive
+     * @param to     The end, exclusive
+     * @return one sample per client, the busiest client first
+     */
+    public static List<TrafficSample> getClientTotals(String server, long from, long to) {
+        int resolution = getResolution(from, System.currentTimeMillis());
+        int seconds = (int) Math.max(1, (to - from) / 1000);
+        List<TrafficSample> totals = new ArrayList<TrafficSample>();
+        try {
+            PreparedStatement pst = DBConnector.getInstance().getConnection().prepareStatement(
+                    "SELECT client, SUM(bytesreceived) AS received, SUM(bytessent) AS sent, " +
+                    "MAX(sessions) AS sessions FROM trafficstats " +
+                    "WHERE server=? AND client<>'' AND resolution=? AND time>=? AND time<? " +
+                    "GROUP BY client ORDER BY received+sent DESC");
+            pst.setString(1, server);
+            pst.setInt(2, resolution);
+            pst.setLong(3, periodStart(from, resolution));
+            pst.setLong(4, to);
+            ResultSet rs = pst.executeQuery();
+            while (rs.next())
+                totals.add(new TrafficSample(server, rs.getString("client"), from, seconds,
+                        rs.getLong("received"), rs.getLong("sent"), rs.getInt("sessions")));
+            rs.close();
+            pst.close();
+        } catch (Exception e) {
+            logger.log(Level.SEVERE, "error loading the client traffic of " + server, e);
+        }
+        return totals;
+    }
+
+
+    /**
+     * Deletes the traffic that is older than its retention
+     *
+     * @param now The current time
+     */
+    public static void purge(long now) {
+        Configuration config = Configuration.getInstance();
+        try {
+            PreparedStatement pst = DBConnector.getInstance().getConnection().prepareStatement(
+                    "DELETE FROM trafficstats WHERE resolution=? AND time<?");
+            for (int resolution : TrafficSample.RESOLUTIONS) {
+                pst.setInt(1, resolution);
+                pst.setLong(2, now - getRetention(config, resolution));
+                pst.executeUpdate();
+            }
+            pst.close();
+        } catch (Exception e) {
+            logger.log(Level.SEVERE, "error deleting old traffic statistics", e);
+        }
+    }
+
+
+    /**
+     * @param from The start of a range
+     * @param now  The current time
+     * @return the finest resolution that is still kept at the start
+     */
+    public static int getResolution(long from, long now) {
+        Configuration config = Configuration.getInstance();
+        for (int resolution : TrafficSample.RESOLUTIONS) {
+            if (from >= now - getRetention(config, resolution))
+                return resolution;
+        }
+        return TrafficSample.RESOLUTION_DAY;
+    }
+
+
+    /**
+     * @return the start of the period of the resolution containing the time
+     */
+    public static long periodStart(long time, int resolution) {
+        long length = resolution * 1000L;
+        return time - Math.floorMod(time, length);
+    }
+
+
+    /**
+     * @return how long the resolution is kept, in ms
+     */
+    private static long getRetention(Configuration config, int resolution) {
+        switch (resolution) {
+            case TrafficSample.RESOLUTION_MINUTE:
+                return config.TRAFFIC_RETENTION_MINUTES * 3600000L;
+            case TrafficSample.RESOLUTION_HOUR:
+                return config.TRAFFIC_RETENTION_HOURS * 86400000L;
+            default:
+                return config.TRAFFIC_RETENTION_DAYS * 86400000L;
+        }
+    }
+}
@@ -44,7 +44,7 @@ public class TreeStateQueries {
                 pst.executeUpdate();
                 pst.close();
             } else {
-                int nextTreeStateId = getNextTreestateid();
+                int nextTreeStateId = IdAllocator.getInstance().nextId(IdAllocator.TREESTATES);
         
                 PreparedStatement pst = DBConnector.getInstance().getConnection().prepareStatement(
                         "INSERT INTO treestates VALUES(?,?,?)"
@@ -86,30 +86,6 @@ public class TreeStateQueries {
         return id;
     }
     
-    /**
-     * retrieves the next treestateid from the db
-     *
-     * @return int the next treestate id
-     */
-    private static int getNextTreestateid() throws Exception {
-        int treestateid = 0;
-        try {
-            Statement st = DBConnector.getInstance().getConnection().createStatement();
-            ResultSet rs = st.executeQuery("SELECT max(stateid) AS maxId FROM treestates");
-            if (rs.next())
-                treestateid = rs.getInt("maxId") + 1;
-
-            rs.close();
-            st.close();
-
-        } catch (Exception e) {
-            logger.log(Level.SEVERE, "error getting next treestateid", e);
-            throw e;
-        }
-
-        return treestateid;
-    }
-    
     
     /**
      * Reads a saved state of this tree
@@ -0,0 +1,29 @@
+/*************************************************************************
+ * Written by / Copyright (C) 2009-2012 bytemine GmbH                     *
+ * Author: Daniel Rauer                     E-Mail:    rauer@bytemine.net *
+ *                                                                        *
+ * http://www.bytemine.net/                                               *
+ *************************************************************************/
+
+package net.bytemine.manager.db;
+
+import java.sql.Connection;
+
+
+/**
+ * Database work executed in one transaction,
+ * see DBConnector.executeInTransaction()
+ *
+ * @author Daniel Rauer
+ */
+public interface UnitOfWork<T> {
+
+    /**
+     * Executes the work
+     *
+     * @param conn The connection of the transaction
+     * @return the result of the work
+     * @throws Exception rolls back the transaction
+     */
+    T execute(Connection conn) throws Exception;
+}
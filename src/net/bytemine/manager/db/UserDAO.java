@@ -11,7 +11,7 @@ import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
-import java.sql.Statement;
+import java.util.List;
 import java.util.ResourceBundle;
 import java.util.logging.Level;
 import java.util.logging.Logger;
@@ -35,6 +35,11 @@ public class UserDAO {
     private static UserDAO userDAO;
     private static Connection dbConnection;
 
+    private static final String INSERT_SQL =
+            "INSERT INTO user(userid, username, password, x509id, cn, ou, yubikeyid) VALUES(?,?,?,?,?,?,?)";
+    private static final String UPDATE_SQL =
+            "UPDATE user SET username=?, password=?, x509id=?, cn=?, ou=?, yubikeyid=? WHERE userid=?";
+
 
     private UserDAO() {
         dbConnection = DBConnector.getInstance().getConnection();
@@ -62,19 +67,11 @@ public class UserDAO {
      */
     public void create(User user) {
         try {
-            int nextUserId = getNextUserid();
+            int nextUserId = IdAllocator.getInstance().nextId(IdAllocator.USER);
             user.setUserid(nextUserId);
 
-            PreparedStatement pst = dbConnection.prepareStatement(
-                    "INSERT INTO user(userid, username, password, x509id, cn, ou, yubikeyid) VALUES(?,?,?,?,?,?,?)"
-            );
-            pst.setInt(1, nextUserId);
-            pst.setString(2, user.getUsername());
-            pst.setString(3, user.getPassword());
-            pst.setInt(4, user.getX509id());
-            pst.setString(5, user.getCn());
-            pst.setString(6, user.getOu());
-            pst.setString(7, user.getYubikeyid());
+            PreparedStatement pst = dbConnection.prepareStatement(INSERT_SQL);
+            setInsertParameters(pst, user);
             pst.executeUpdate();
             pst.close();
 
@@ -86,6 +83,50 @@ public class UserDAO {
     }
 
 
+    /**
+     * creates new user rows in the db with one batch in one transaction
+     *
+     * @param users The users to create, their userids are set
+     */
+    public void create(final List<User> users) {
+        if (users.isEmpty())
+            return;
+        try {
+            DBConnector.getInstance().executeInTransaction(conn -> {
+                int nextUserId = IdAllocator.getInstance().nextIds(IdAllocator.USER, users.size());
+
+                PreparedStatement pst = conn.prepareStatement(INSERT_SQL);
+                for (User user : users) {
+                    user.setUserid(nextUserId++);
+                    setInsertParameters(pst, user);
+                    pst.addBatch();
+                }
+                pst.executeBatch();
+                pst.close();
+                return null;
+            });
+        } catch (Exception e) {
+            // the rows were rolled back
+            for (User user : users)
+                user.setUserid(0);
+            ResourceBundle rb = ResourceBundleMgmt.getInstance().getUserBundle();
+            logger.log(Level.SEVERE, "error creating " + users.size() + " users", e);
+            new VisualException(rb.getString("error.db.user") + " " + rb.getString("error.db.create"));
+        }
+    }
+
+
+    private static void setInsertParameters(PreparedStatement pst, User user) throws SQLException {
+        pst.setInt(1, user.getUserid());
+        pst.setString(2, user.getUsername());
+        pst.setString(3, user.getPassword());
+        pst.setInt(4, user.getX509id());
+        pst.setString(5, user.getCn());
+        pst.setString(6, user.getOu());
+        pst.setString(7, user.getYubikeyid());
+    }
+
+
     /**
      * loads a user from the db
      * identification by userid
@@ -133,17 +174,8 @@ public class UserDAO {
      */
     public void update(User user) {
         try {
-            PreparedStatement pst = dbConnection.prepareStatement(
-                    "UPDATE user SET username=?, password=?, x509id=?, cn=?, ou=?, yubikeyid=? " +
-                            "WHERE userid=?"
-            );
-            pst.setInt(7, user.getUserid());
-            pst.setString(1, user.getUsername());
-            pst.setString(2, user.getPassword());
-            pst.setInt(3, user.getX509id());
-            pst.setString(4, user.getCn());
-            pst.setString(5, user.getOu());
-            pst.setString(6, user.getYubikeyid());
+            PreparedStatement pst = dbConnection.prepareStatement(UPDATE_SQL);
+            setUpdateParameters(pst, user);
             pst.executeUpdate();
             pst.close();
 
@@ -155,6 +187,44 @@ public class UserDAO {
     }
 
 
+    /**
+     * updates user rows in the db with one batch in one transaction
+     *
+     * @param users The users to update
+     */
+    public void update(final List<User> users) {
+        if (users.isEmpty())
+            return;
+        try {
+            DBConnector.getInstance().executeInTransaction(conn -> {
+                PreparedStatement pst = conn.prepareStatement(UPDATE_SQL);
+                for (User user : users) {
+                    setUpdateParameters(pst, user);
+                    pst.addBatch();
+                }
+                pst.executeBatch();
+                pst.close();
+                return null;
+            });
+        } catch (Exception e) {
+            ResourceBundle rb = ResourceBundleMgmt.getInstance().getUserBundle();
+            logger.log(Level.SEVERE, "error updating " + users.size() + " users", e);
+            new VisualException(rb.getString("error.db.user") + " " + rb.getString("error.db.save"));
+        }
+    }
+
+
+    private static void setUpdateParameters(PreparedStatement pst, User user) throws SQLException {
+        pst.setString(1, user.getUsername());
+        pst.setString(2, user.getPassword());
+        pst.setInt(3, user.getX509id());
+        pst.setString(4, user.getCn());
+        pst.setString(5, user.getOu());
+        pst.setString(6, user.getYubikeyid());
+        pst.setInt(7, user.getUserid());
+    }
+
+
     /**
      * deletes the user from the db
      * identification by userid
@@ -205,29 +275,4 @@ public class UserDAO {
         }
     }
 
-
-    /**
-     * retrieves the next userid from the db
-     *
-     * @return int th next user id
-     */
-    private int getNextUserid() throws Exception {
-        int userid = 0;
-        try {
-            Statement st = dbConnection.createStatement();
-            ResultSet rs = st.executeQuery("SELECT max(userid) as maxId from user");
-            if (rs.next())
-                userid = rs.getInt("maxId") + 1;
-
-            rs.close();
-            st.close();
-
-        } catch (Exception e) {
-            logger.log(Level.SEVERE, "error getting next userid", e);
-            throw e;
-        }
-
-        return userid;
-    }
-
 }
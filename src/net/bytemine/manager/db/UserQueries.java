@@ -18,10 +18,8 @@ import java.util.Vector;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
-import net.bytemine.manager.bean.CRL;
 import net.bytemine.manager.bean.Server;
 import net.bytemine.manager.bean.User;
-import net.bytemine.manager.bean.X509;
 import net.bytemine.manager.i18n.ResourceBundleMgmt;
 import net.bytemine.manager.model.UserOverviewTableModel;
 import net.bytemine.utility.StringUtils;
@@ -272,6 +270,41 @@ public class UserQueries {
     }
 
 
+    /**
+     * Loads all users with one query
+     *
+     * @return Hashtable with usernames as key and the loaded users as value
+     */
+    public static Hashtable<String, User> getAllUsersByUsername() {
+        Hashtable<String, User> returnTable = new Hashtable<String, User>();
+
+        try {
+            Statement st = DBConnector.getInstance().getConnection().createStatement();
+            ResultSet rs = st.executeQuery(
+                    "SELECT userid, username, password, x509id, cn, ou, yubikeyid FROM user");
+            while (rs.next()) {
+                if (rs.getString("username") == null)
+                    continue;
+                User user = new User(rs.getString("userid"));
+                user.setUsername(rs.getString("username"));
+                user.setPassword(rs.getString("password"));
+                user.setX509id(rs.getInt("x509id"));
+                user.setCn(rs.getString("cn"));
+                user.setOu(rs.getString("ou"));
+                user.setYubikeyid(rs.getString("yubikeyid"));
+                returnTable.put(user.getUsername(), user);
+            }
+
+            rs.close();
+            st.close();
+        } catch (Exception e) {
+            logger.log(Level.SEVERE, "error while loading all users by username", e);
+        }
+
+        return returnTable;
+    }
+
+
     /**
      * Removes the link between this user and all servers
      *
@@ -300,7 +333,6 @@ public class UserQueries {
      */
     public static void removeUserFromServer(String userId, String serverId) {
         try {
-            DBConnector.getInstance().getConnection().setAutoCommit(false);
             PreparedStatement pst = DBConnector.getInstance().getConnection().prepareStatement(
                     "DELETE FROM server_user WHERE userid=? AND serverid=?");
             pst.setString(1, userId);
@@ -414,45 +446,34 @@ public class UserQueries {
         Hashtable<String, String> returnTable = new Hashtable<String, String>();
 
         try {
-            Vector<String> userids = getUsersForServer(server.getServerid());
-
-            // convert Vector to String "2,3,5"
-            StringBuffer idList = new StringBuffer();
-            for (Iterator<String> it = userids.iterator(); it.hasNext();) {
-                String id = it.next();
-                if (it.hasNext())
-                    idList.append(id + ",");
-                else
-                    idList.append(id);
-            }
-
+            // users of the server, without users whose certificate is revoked
             PreparedStatement pst = DBConnector.getInstance().getConnection().prepareStatement(
-                    "SELECT userid, username, password, yubikeyid FROM user " +
-                            "WHERE userid IN (" + idList + ")");
+                    "SELECT user.userid, user.username, user.password, user.yubikeyid " +
+                            "FROM server_user " +
+                            "JOIN user ON user.userid = server_user.userid " +
+                            "LEFT JOIN x509 ON x509.x509id = user.x509id " +
+                            "WHERE server_user.serverid = ? " +
+                            "AND (? = 1 OR x509.serial IS NULL " +
+                            "OR NOT EXISTS (SELECT 1 FROM crlentry WHERE crlentry.serial = x509.serial))");
+            pst.setInt(1, server.getServerid());
+            pst.setInt(2, exportRevokedUsers ? 1 : 0);
             ResultSet rs = pst.executeQuery();
 
-            // get current CRL
-            String crlContent = null;
-            int crlId = CRLQueries.getMaxCRLId();
-            if (crlId > 0) {
-                CRL crl = new CRL(crlId);
-                crl = CRLDAO.getInstance().read(crl);
-                if (crl != null && crl.getContent() != null)
-                    crlContent = crl.getContent();
-            }
-
+            boolean appliance = server.getServerType() == Server.SERVER_TYPE_BYTEMINE_APPLIANCE;
             while (rs.next()) {
-                User user = User.getUserByID(Integer.parseInt(rs.getString("userid")));
-                // only add passwd entry if x509 serial of the user is not revoked
-                if (crlContent.indexOf(X509.getX509ById(user.getX509id()).getSerial()) < 0)
-	                if (importList)
-	                    returnTable.put(rs.getString("username"), rs.getString("userid"));
-	                else if (rs.getString("password") != null) {
-	                    if (rs.getString("yubikeyid") != null && !"".equals(rs.getString("yubikeyid")) && (server.getServerType()==Server.SERVER_TYPE_BYTEMINE_APPLIANCE))
-	                        returnTable.put(rs.getString("username"), rs.getString("password")+":"+rs.getString("yubikeyid"));
-	                    else
-	                        returnTable.put(rs.getString("username"), rs.getString("password"));
-	                }
+                String username = rs.getString("username");
+                if (importList)
+                    returnTable.put(username, rs.getString("userid"));
+                else {
+                    String password = rs.getString("password");
+                    if (password == null)
+                        continue;
+                    String yubikeyid = rs.getString("yubikeyid");
+                    if (yubikeyid != null && !"".equals(yubikeyid) && appliance)
+                        returnTable.put(username, password + ":" + yubikeyid);
+                    else
+                        returnTable.put(username, password);
+                }
             }
 
             rs.close();
@@ -12,13 +12,18 @@ import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.sql.Types;
+import java.util.Date;
+import java.util.List;
 import java.util.ResourceBundle;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
+import net.bytemine.manager.Constants;
 import net.bytemine.manager.bean.X509;
 import net.bytemine.manager.exception.VisualException;
 import net.bytemine.manager.i18n.ResourceBundleMgmt;
+import net.bytemine.manager.utility.CAMaterialCache;
 
 
 /**
@@ -35,6 +40,11 @@ public class X509DAO {
     private static X509DAO x509DAO;
     private static Connection dbConnection;
 
+    private static final String INSERT_SQL =
+            "INSERT INTO x509(x509id, version, filename, path, serial, issuer, subject, content, contentdisplay, " +
+            "certserialized, key, keycontent, type, createdate, validfrom, validto, generated, userid, certder, " +
+            "validtotime) VALUES(?,?,?,?,?,?,?,?,?,?,?,?,?,?,?,?,?,?,?,?)";
+
 
     private X509DAO() {
         dbConnection = DBConnector.getInstance().getConnection();
@@ -62,31 +72,10 @@ public class X509DAO {
      */
     public void create(X509 x509) {
         try {
-            int nextX509Id = getNextX509Id();
+            int nextX509Id = IdAllocator.getInstance().nextId(IdAllocator.X509);
 
-            PreparedStatement pst = dbConnection.prepareStatement(
-                    "INSERT INTO x509(x509id, version, filename, path, serial, issuer, subject, content, contentdisplay, " +
-                    "certserialized, key, keycontent, type, createdate, validfrom, validto, generated, userid) " +
-                    "VALUES(?,?,?,?,?,?,?,?,?,?,?,?,?,?,?,?,?,?)"
-            );
-            pst.setInt(1, nextX509Id);
-            pst.setString(2, x509.getVersion());
-            pst.setString(3, x509.getFileName());
-            pst.setString(4, x509.getPath());
-            pst.setString(5, x509.getSerial());
-            pst.setString(6, x509.getIssuer());
-            pst.setString(7, x509.getSubject());
-            pst.setString(8, x509.getContent());
-            pst.setString(9, x509.getContentDisplay());
-            pst.setString(10, x509.getCertSerialized());
-            pst.setString(11, x509.getKey());
-            pst.setString(12, x509.getKeyContent());
-            pst.setInt(13, x509.getType());
-            pst.setString(14, x509.getCreateDate());
-            pst.setString(15, x509.getValidFrom());
-            pst.setString(16, x509.getValidTo());
-            pst.setBoolean(17, x509.isGenerated());
-            pst.setInt(18, x509.getUserId());
+            PreparedStatement pst = dbConnection.prepareStatement(INSERT_SQL);
+            setInsertParameters(pst, nextX509Id, x509);
             pst.executeUpdate();
             pst.close();
 
@@ -99,6 +88,95 @@ public class X509DAO {
     }
 
 
+    /**
+     * creates new x509 rows in the db with one batch in one transaction
+     *
+     * @param x509s The certificates to create, their x509ids are set
+     */
+    public void create(final List<X509> x509s) {
+        if (x509s.isEmpty())
+            return;
+        try {
+            DBConnector.getInstance().executeInTransaction(conn -> {
+                int nextX509Id = IdAllocator.getInstance().nextIds(IdAllocator.X509, x509s.size());
+
+                PreparedStatement pst = conn.prepareStatement(INSERT_SQL);
+                for (X509 x509 : x509s) {
+                    setInsertParameters(pst, nextX509Id, x509);
+                    pst.addBatch();
+                    x509.setX509id(nextX509Id++);
+                }
+                pst.executeBatch();
+                pst.close();
+                return null;
+            });
+        } catch (Exception e) {
+            // the rows were rolled back
+            for (X509 x509 : x509s)
+                x509.setX509id(0);
+            ResourceBundle rb = ResourceBundleMgmt.getInstance().getUserBundle();
+            logger.log(Level.SEVERE, "error creating " + x509s.size() + " X509", e);
+            new VisualException(rb.getString("error.db.cert") + " " + rb.getString("error.db.create"));
+        }
+    }
+
+
+    private static void setInsertParameters(PreparedStatement pst, int x509id, X509 x509) throws SQLException {
+        pst.setInt(1, x509id);
+        pst.setString(2, x509.getVersion());
+        pst.setString(3, x509.getFileName());
+        pst.setString(4, x509.getPath());
+        pst.setString(5, x509.getSerial());
+        pst.setString(6, x509.getIssuer());
+        pst.setString(7, x509.getSubject());
+        pst.setString(8, x509.getContent());
+        pst.setString(9, x509.getContentDisplay());
+        pst.setString(10, x509.getCertSerialized());
+        pst.setString(11, x509.getKey());
+        pst.setString(12, x509.getKeyContent());
+        pst.setInt(13, x509.getType());
+        pst.setString(14, x509.getCreateDate());
+        pst.setString(15, x509.getValidFrom());
+        pst.setString(16, x509.getValidTo());
+        pst.setBoolean(17, x509.isGenerated());
+        pst.setInt(18, x509.getUserId());
+        pst.setBytes(19, x509.getCertDer());
+        setValidToTime(pst, 20, x509.getValidTo());
+    }
+
+
+    /**
+     * Sets the end of the validity in ms, the validtotime column is
+     * indexed for the expiry queries, the validto text is locale dependent
+     *
+     * @param pst     The statement
+     * @param index   The parameter index
+     * @param validTo The validto of the certificate
+     * @throws SQLException
+     */
+    private static void setValidToTime(PreparedStatement pst, int index, String validTo) throws SQLException {
+        Long validToTime = getValidToTime(validTo);
+        if (validToTime == null)
+            pst.setNull(index, Types.INTEGER);
+        else
+            pst.setLong(index, validToTime);
+    }
+
+
+    /**
+     * Parses the validto of a certificate
+     *
+     * @param validTo The validto in the german or english detailed format
+     * @return the time in ms, or null if it can not be parsed
+     */
+    public static Long getValidToTime(String validTo) {
+        if (validTo == null)
+            return null;
+        Date date = Constants.parseDetailedFormat(validTo);
+        return date == null ? null : date.getTime();
+    }
+
+
     /**
      * loads a x509 from the db
      * identification by x509id
@@ -111,7 +189,7 @@ public class X509DAO {
             PreparedStatement pst = dbConnection.prepareStatement(
                     "SELECT version, filename, path, serial, issuer, subject, " +
                             "content, contentdisplay, certserialized, key, keycontent, type, " +
-                            "createdate, validfrom, validto, generated, userid " +
+                            "createdate, validfrom, validto, generated, userid, certder " +
                             "FROM x509 WHERE x509id=?"
             );
 
@@ -136,6 +214,7 @@ public class X509DAO {
                 x509.setValidTo(rs.getString(15));
                 x509.setGenerated(rs.getBoolean(16));
                 x509.setUserId(rs.getInt(17));
+                x509.setCertDer(rs.getBytes(18));
 
                 rs.close();
                 pst.close();
@@ -162,44 +241,48 @@ public class X509DAO {
      *
      * @param x509 The x509 to update
      */
-    public void update(X509 x509) {
+    public void update(final X509 x509) {
         try {
-
-            dbConnection.setAutoCommit(false);
-            PreparedStatement pst = dbConnection.prepareStatement(
-                    "UPDATE x509 SET " +
-                            "version=?, filename=?, path=?, serial=?, issuer=?, subject=?, " +
-                            "content=?, contentdisplay=?, certserialized=?, " +
-                            "key=?, keycontent=?, type=?, createdate=?, " +
-                            "validfrom=?, validto=?, generated=?, userid=? " +
-                            "WHERE x509id=?"
-            );
-            pst.setInt(18, x509.getX509id());
-            pst.setString(1, x509.getVersion());
-            pst.setString(2, x509.getFileName());
-            pst.setString(3, x509.getPath());
-            pst.setString(4, x509.getSerial());
-            pst.setString(5, x509.getIssuer());
-            pst.setString(6, x509.getSubject());
-            pst.setString(7, x509.getContent());
-            pst.setString(8, x509.getContentDisplay());
-            pst.setString(9, x509.getCertSerialized());
-            pst.setString(10, x509.getKey());
-            pst.setString(11, x509.getKeyContent());
-            pst.setInt(12, x509.getType());
-            pst.setString(13, x509.getCreateDate());
-            pst.setString(14, x509.getValidFrom());
-            pst.setString(15, x509.getValidTo());
-            pst.setBoolean(16, x509.isGenerated());
-            pst.setInt(17, x509.getUserId());
-            pst.executeUpdate();
-            pst.close();
-
-            dbConnection.commit();
+            DBConnector.getInstance().executeInTransaction(conn -> {
+                PreparedStatement pst = conn.prepareStatement(
+                        "UPDATE x509 SET " +
+                                "version=?, filename=?, path=?, serial=?, issuer=?, subject=?, " +
+                                "content=?, contentdisplay=?, certserialized=?, " +
+                                "key=?, keycontent=?, type=?, createdate=?, " +
+                                "validfrom=?, validto=?, generated=?, userid=?, certder=?, validtotime=? " +
+                                "WHERE x509id=?"
+                );
+                pst.setInt(20, x509.getX509id());
+                pst.setString(1, x509.getVersion());
+                pst.setString(2, x509.getFileName());
+                pst.setString(3, x509.getPath());
+                pst.setString(4, x509.getSerial());
+                pst.setString(5, x509.getIssuer());
+                pst.setString(6, x509.getSubject());
+                pst.setString(7, x509.getContent());
+                pst.setString(8, x509.getContentDisplay());
+                pst.setString(9, x509.getCertSerialized());
+                pst.setString(10, x509.getKey());
+                pst.setString(11, x509.getKeyContent());
+                pst.setInt(12, x509.getType());
+                pst.setString(13, x509.getCreateDate());
+                pst.setString(14, x509.getValidFrom());
+                pst.setString(15, x509.getValidTo());
+                pst.setBoolean(16, x509.isGenerated());
+                pst.setInt(17, x509.getUserId());
+                pst.setBytes(18, x509.getCertDer());
+                setValidToTime(pst, 19, x509.getValidTo());
+                pst.executeUpdate();
+                pst.close();
+                return null;
+            });
         } catch (Exception e) {
             ResourceBundle rb = ResourceBundleMgmt.getInstance().getUserBundle();
             logger.log(Level.SEVERE, "error updating X509 " + x509.getFileName(), e);
             new VisualException(rb.getString("error.db.cert") + " " + rb.getString("error.db.save"));
+        } finally {
+            // a CA certificate may have changed
+            CAMaterialCache.getInstance().invalidate(x509.getX509id());
         }
     }
 
@@ -219,6 +302,7 @@ public class X509DAO {
             pst.setInt(1, x509.getX509id());
             pst.executeUpdate();
             pst.close();
+            CAMaterialCache.getInstance().invalidate(x509.getX509id());
 
         } catch (Exception e) {
             ResourceBundle rb = ResourceBundleMgmt.getInstance().getUserBundle();
@@ -242,6 +326,7 @@ public class X509DAO {
             pst.setInt(1, Integer.parseInt(x509Id));
             pst.executeUpdate();
             pst.close();
+            CAMaterialCache.getInstance().invalidate(Integer.parseInt(x509Id));
 
         } catch (Exception e) {
             ResourceBundle rb = ResourceBundleMgmt.getInstance().getUserBundle();
@@ -251,34 +336,6 @@ public class X509DAO {
     }
 
 
-    /**
-     * retrieves the next x509id from the db
-     *
-     * @return int the next x509id
-     */
-    private int getNextX509Id() throws Exception {
-        int x509id = 0;
-        try {
-            PreparedStatement pst = dbConnection.prepareStatement(
-                    "SELECT max(x509id) as maxId from x509"
-            );
-            ResultSet rs = pst.executeQuery();
-
-            if (rs.next())
-                x509id = rs.getInt("maxId") + 1;
-
-            rs.close();
-            pst.close();
-
-        } catch (Exception e) {
-            logger.log(Level.SEVERE, "error getting next x509id", e);
-            throw e;
-        }
-
-        return x509id;
-    }
-
-
     /**
      * checks whether a root certificate is existing or not
      *
@@ -11,6 +11,7 @@ import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.Statement;
 import java.util.Date;
+import java.util.Hashtable;
 import java.util.Iterator;
 import java.util.ResourceBundle;
 import java.util.Vector;
@@ -45,7 +46,7 @@ public class X509Queries {
         Vector<String[]> all = new Vector<String[]>();
         
         try {
-            Vector<String> revokationSerials = CRLQueries.getRevocationSerials();
+            RevocationIndex revocationIndex = RevocationIndex.getInstance();
             
             // check if the user wants revoked certificates to be displayed
             boolean showRevoked = true;
@@ -76,7 +77,7 @@ public class X509Queries {
                             rs.getString("validfrom"), rs.getString("validto")
                     );
                     String serial = rs.getString("serial");
-                    if (revokationSerials.contains(serial)) {
+                    if (revocationIndex.isRevoked(serial)) {
                     	isRevoked = true;
                         validity = rb.getString("x509.overview.revoked").toUpperCase();
                         
@@ -172,6 +173,34 @@ public class X509Queries {
     }
 
 
+    /**
+     * Returns the highest serial of all stored and revoked certificates
+     *
+     * @return the highest serial, 0 if there are no certificates
+     * @throws Exception
+     */
+    public static long getMaxSerial() throws Exception {
+        long maxSerial = 0;
+        try {
+            Statement st = DBConnector.getInstance().getConnection().createStatement();
+            ResultSet rs = st.executeQuery(
+                    "SELECT max(CAST(serial AS INTEGER)) AS maxSerial FROM x509 " +
+                    "UNION ALL " +
+                    "SELECT max(CAST(serial AS INTEGER)) AS maxSerial FROM crlentry");
+            while (rs.next())
+                maxSerial = Math.max(maxSerial, rs.getLong("maxSerial"));
+
+            rs.close();
+            st.close();
+        } catch (Exception e) {
+            logger.log(Level.SEVERE, "error while loading the highest serial", e);
+            throw e;
+        }
+
+        return maxSerial;
+    }
+
+
     /**
      * Returns a vector with id and subject of all non-revoked certificates 
      * of the type
@@ -258,30 +287,64 @@ public class X509Queries {
 
 
     /**
-     * Deletes assignment for this x509id
+     * Lists the certificates assigned to a user or server which
+     * are not revoked and expire before the given time, the expired ones
+     * included. Uses the index on validtotime.
      *
-     * @param x509id The x509 id
-     * @param type   The X509 type
+     * @param until The time in ms
+     * @return A Vector with ids as integers, the first expiring first
      */
-    public static void deleteX509Assignment(int x509id, int type) throws Exception {
-        try {
-            DBConnector.getInstance().getConnection().setAutoCommit(false);
-
-            String tableName = null;
-            if ((type == X509.X509_TYPE_CLIENT) || (type == X509.X509_TYPE_PKCS12))
-                tableName = "user";
-            else if (type == X509.X509_TYPE_SERVER)
-                tableName = "server";
-            else
-                throw new Exception();
+    public static Vector<Integer> getExpiringX509Ids(long until) {
+        Vector<Integer> expiring = new Vector<Integer>();
 
+        try {
+            RevocationIndex revocationIndex = RevocationIndex.getInstance();
             PreparedStatement pst = DBConnector.getInstance().getConnection().prepareStatement(
-                    "UPDATE " + tableName + " SET x509id=-1 WHERE x509id=?");
-            pst.setInt(1, x509id);
-            pst.execute();
+                    "SELECT x.x509id, x.serial FROM x509 x " +
+                    "WHERE x.validtotime<=? " +
+                    "AND (EXISTS (SELECT 1 FROM user u WHERE u.x509id=x.x509id) " +
+                    "OR EXISTS (SELECT 1 FROM server s WHERE s.x509id=x.x509id)) " +
+                    "ORDER BY x.validtotime");
+            pst.setLong(1, until);
+            ResultSet rs = pst.executeQuery();
+            while (rs.next()) {
+                if (!revocationIndex.isRevoked(rs.getString("serial")))
+                    expiring.add(rs.getInt("x509id"));
+            }
+            rs.close();
             pst.close();
+        } catch (Exception e) {
+            logger.log(Level.SEVERE, "error while loading expiring x509 ", e);
+        }
+
+        return expiring;
+    }
 
-            DBConnector.getInstance().getConnection().commit();
+
+    /**
+     * Deletes assignment for this x509id
+     *
+     * @param x509id The x509 id
+     * @param type   The X509 type
+     */
+    public static void deleteX509Assignment(final int x509id, final int type) throws Exception {
+        try {
+            DBConnector.getInstance().executeInTransaction(conn -> {
+                String tableName = null;
+                if ((type == X509.X509_TYPE_CLIENT) || (type == X509.X509_TYPE_PKCS12))
+                    tableName = "user";
+                else if (type == X509.X509_TYPE_SERVER)
+                    tableName = "server";
+                else
+                    throw new Exception();
+
+                PreparedStatement pst = conn.prepareStatement(
+                        "UPDATE " + tableName + " SET x509id=-1 WHERE x509id=?");
+                pst.setInt(1, x509id);
+                pst.execute();
+                pst.close();
+                return null;
+            });
 
         } catch (Exception e) {
             logger.log(Level.SEVERE, "error while deleting assignment for x509id " + x509id, e);
@@ -504,6 +567,36 @@ public class X509Queries {
         return x509id;
     }
 
+    /**
+     * Loads the ids of all certificates of the given type with one query,
+     * used instead of getCertificateBySubject() when many certificates are imported
+     *
+     * @param type The X509 type
+     * @return Hashtable with the subjects without blanks after the commas
+     *         as key and the x509ids as value
+     */
+    public static Hashtable<String, Integer> getCertificateIdsBySubject(int type) {
+        Hashtable<String, Integer> x509ids = new Hashtable<String, Integer>();
+        try {
+            PreparedStatement pst = DBConnector.getInstance().getConnection().prepareStatement(
+                    "SELECT x509id, subject FROM x509 WHERE type=? ORDER BY x509id");
+            pst.setInt(1, type);
+            ResultSet rs = pst.executeQuery();
+            while (rs.next()) {
+                String subject = rs.getString("subject");
+                // the oldest certificate of a subject wins, like in getCertificateBySubject()
+                if (subject != null && !x509ids.containsKey(subject.replaceAll(", ", ",")))
+                    x509ids.put(subject.replaceAll(", ", ","), rs.getInt("x509id"));
+            }
+
+            rs.close();
+            pst.close();
+        } catch (Exception e) {
+            logger.log(Level.SEVERE, "error while loading the certificates by subject", e);
+        }
+        return x509ids;
+    }
+
     /**
      * Detects if a certificate is already existing for this subject
      *
@@ -24,6 +24,7 @@ import java.util.logging.Logger;
 
 import net.bytemine.manager.Configuration;
 import net.bytemine.manager.db.DBConnector;
+import net.bytemine.manager.db.DBTasks;
 import net.bytemine.manager.utility.X509Serializer;
 
 
@@ -77,6 +78,12 @@ public class SchemaUpdater {
         try {
             // run the sql commands
             executeSQL(statements);
+            // indexes are not part of the xml schema, they are versioned separately
+            DBTasks.updateIndexes(conn);
+            // old rows store the certificates and CRLs xml serialized
+            SerializedCertificateConverter.convert(conn);
+            // and have no indexed end of validity
+            ValidToTimeConverter.convert(conn);
         } catch (Exception e) {
             logger.log(Level.SEVERE, "errors occured during database update", e);
             throw e;
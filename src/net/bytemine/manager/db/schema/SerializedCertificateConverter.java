@@ -0,0 +1,166 @@
+/*************************************************************************
+ * Written by / Copyright (C) 2009-2012 bytemine GmbH                     *
+ * Author: Daniel Rauer                     E-Mail:    rauer@bytemine.net *
+ *                                                                        *
+ * http://www.bytemine.net/                                               *
+ *************************************************************************/
+
+package net.bytemine.manager.db.schema;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import net.bytemine.manager.bean.CRL;
+import net.bytemine.manager.bean.X509;
+import net.bytemine.manager.db.DBConnector;
+import net.bytemine.manager.utility.X509Utils;
+
+
+/**
+ * Converts the xml serialized certificates and CRLs of old databases
+ * into their DER encoding. The rows are converted in batches, each
+ * batch in its own transaction. Rows that can not be decoded keep
+ * their serialized form and are read by the compatibility reader.
+ *
+ * @author Daniel Rauer
+ */
+class SerializedCertificateConverter {
+
+    private static Logger logger = Logger.getLogger(SerializedCertificateConverter.class.getName());
+
+    // number of rows converted in one transaction
+    static final int BATCH_SIZE = 100;
+
+
+    /**
+     * Converts all serialized certificates and CRLs
+     *
+     * @param conn The connection to the database
+     * @return the number of converted rows
+     * @throws Exception
+     */
+    static int convert(Connection conn) throws Exception {
+        int converted = convert(conn, "x509", "x509id", "certserialized", "certder",
+                (id, serialized, content) -> {
+                    X509 x509 = new X509(id);
+                    x509.setCertSerialized(serialized);
+                    x509.setContent(content);
+                    return X509Utils.decodeCertificate(x509).getEncoded();
+                });
+        converted += convert(conn, "crl", "crlid", "crlserialized", "crlder",
+                (id, serialized, content) -> {
+                    CRL crl = new CRL(id);
+                    crl.setCrlSerialized(serialized);
+                    crl.setContent(content);
+                    return X509Utils.decodeCRL(crl).getEncoded();
+                });
+
+        if (converted > 0) {
+            logger.info(converted + " serialized certificates and CRLs converted");
+            vacuum(conn);
+        }
+        return converted;
+    }
+
+
+    /**
+     * Converts the serialized column of a table into the DER column
+     *
+     * @param conn             The connection to the database
+     * @param table            The table
+     * @param idColumn         The primary key
+     * @param serializedColumn The column with the xml
+     * @param derColumn        The column for the DER encoding
+     * @param decoder          Decodes a row
+     * @return the number of converted rows
+     * @throws Exception
+     */
+    private static int convert(Connection conn, String table, String idColumn,
+                               String serializedColumn, String derColumn, Decoder decoder) throws Exception {
+        int converted = 0;
+        int lastId = Integer.MIN_VALUE;
+        PreparedStatement pst = conn.prepareStatement(
+                "SELECT " + idColumn + ", " + serializedColumn + ", content FROM " + table + " " +
+                "WHERE " + derColumn + " IS NULL AND " + serializedColumn + " IS NOT NULL " +
+                "AND " + idColumn + ">? ORDER BY " + idColumn + " LIMIT " + BATCH_SIZE);
+        try {
+            int rows;
+            do {
+                final List<Object[]> batch = new ArrayList<Object[]>();
+                pst.setInt(1, lastId);
+                ResultSet rs = pst.executeQuery();
+                for (rows = 0; rs.next(); rows++) {
+                    lastId = rs.getInt(1);
+                    try {
+                        batch.add(new Object[]{decoder.decode(lastId, rs.getString(2), rs.getString(3)), lastId});
+                    } catch (Exception e) {
+                        // the row keeps its serialized form
+                        logger.log(Level.WARNING, table + " " + lastId + " could not be converted", e);
+                    }
+                }
+                rs.close();
+
+                converted += update("UPDATE " + table + " SET " + derColumn + "=?, " +
+                        serializedColumn + "=NULL WHERE " + idColumn + "=?", batch);
+            } while (rows == BATCH_SIZE);
+        } finally {
+            pst.close();
+        }
+        return converted;
+    }
+
+
+    /**
+     * Writes the DER encodings of a batch in one transaction
+     *
+     * @param sql   The update statement, parameters are the DER encoding and the id
+     * @param batch The DER encodings and ids
+     * @return the number of updated rows
+     * @throws Exception
+     */
+    private static int update(final String sql, final List<Object[]> batch) throws Exception {
+        if (batch.isEmpty())
+            return 0;
+
+        DBConnector.getInstance().executeInTransaction(conn -> {
+            PreparedStatement pst = conn.prepareStatement(sql);
+            for (Object[] row : batch) {
+                pst.setBytes(1, (byte[]) row[0]);
+                pst.setInt(2, (Integer) row[1]);
+                pst.addBatch();
+            }
+            pst.executeBatch();
+            pst.close();
+            return null;
+        });
+        return batch.size();
+    }
+
+
+    /**
+     * Gives the space of the removed xml back to the file system
+     */
+    private static void vacuum(Connection conn) {
+        try {
+            Statement st = conn.createStatement();
+            st.execute("VACUUM");
+            st.close();
+        } catch (Exception e) {
+            logger.log(Level.WARNING, "the database could not be vacuumed", e);
+        }
+    }
+
+
+    /**
+     * Decodes the serialized form of a row into its DER encoding
+     */
+    private interface Decoder {
+        byte[] decode(int id, String serialized, String content) throws Exception;
+    }
+}
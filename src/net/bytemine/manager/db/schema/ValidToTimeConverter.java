@@ -0,0 +1,73 @@
+/*************************************************************************
+ * Written by / Copyright (C) 2009-2012 bytemine GmbH                     *
+ * Author: Daniel Rauer                     E-Mail:    rauer@bytemine.net *
+ *                                                                        *
+ * http://www.bytemine.net/                                               *
+ *************************************************************************/
+
+package net.bytemine.manager.db.schema;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.logging.Logger;
+
+import net.bytemine.manager.db.DBConnector;
+import net.bytemine.manager.db.X509DAO;
+
+
+/**
+ * Fills the indexed validtotime column of certificates stored
+ * before the column existed, from their validto text.
+ * All rows are updated in one transaction.
+ *
+ * @author Daniel Rauer
+ */
+class ValidToTimeConverter {
+
+    private static Logger logger = Logger.getLogger(ValidToTimeConverter.class.getName());
+
+
+    /**
+     * Fills the missing validtotime values
+     *
+     * @param conn The connection to the database
+     * @return the number of converted rows
+     * @throws Exception
+     */
+    static int convert(Connection conn) throws Exception {
+        final List<long[]> rows = new ArrayList<long[]>();
+        Statement st = conn.createStatement();
+        ResultSet rs = st.executeQuery(
+                "SELECT x509id, validto FROM x509 WHERE validtotime IS NULL AND validto IS NOT NULL");
+        while (rs.next()) {
+            Long validToTime = X509DAO.getValidToTime(rs.getString(2));
+            if (validToTime != null)
+                rows.add(new long[]{validToTime, rs.getInt(1)});
+            else
+                logger.warning("validto of x509 " + rs.getInt(1) + " can not be parsed");
+        }
+        rs.close();
+        st.close();
+
+        if (rows.isEmpty())
+            return 0;
+
+        DBConnector.getInstance().executeInTransaction(c -> {
+            PreparedStatement pst = c.prepareStatement("UPDATE x509 SET validtotime=? WHERE x509id=?");
+            for (long[] row : rows) {
+                pst.setLong(1, row[0]);
+                pst.setInt(2, (int) row[1]);
+                pst.addBatch();
+            }
+            pst.executeBatch();
+            pst.close();
+            return null;
+        });
+        logger.info(rows.size() + " validto values indexed");
+        return rows.size();
+    }
+}
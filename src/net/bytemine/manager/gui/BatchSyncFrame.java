@@ -0,0 +1,236 @@
+/*************************************************************************
+ * Written by / Copyright (C) 2009-2012 bytemine GmbH                     *
+ * Author: Daniel Rauer                     E-Mail:    rauer@bytemine.net *
+ *                                                                        *
+ * http://www.bytemine.net/                                               *
+ *************************************************************************/
+
+package net.bytemine.manager.gui;
+
+import java.awt.Dimension;
+import java.awt.Point;
+import java.text.MessageFormat;
+import java.util.Hashtable;
+import java.util.List;
+import java.util.ResourceBundle;
+import java.util.logging.Logger;
+
+import javax.swing.JButton;
+import javax.swing.JFrame;
+import javax.swing.JLabel;
+import javax.swing.JPanel;
+import javax.swing.JProgressBar;
+import javax.swing.JScrollPane;
+import javax.swing.JTable;
+import javax.swing.SwingUtilities;
+import javax.swing.table.DefaultTableModel;
+
+import net.bytemine.manager.Configuration;
+import net.bytemine.manager.bean.Server;
+import net.bytemine.manager.css.CssRuleManager;
+import net.bytemine.manager.i18n.ResourceBundleMgmt;
+import net.bytemine.utility.GuiUtils;
+import net.bytemine.utility.ImageUtils;
+import net.miginfocom.swing.MigLayout;
+
+/**
+ * Displays the aggregated progress of a batch synchronisation,
+ * one row per server.
+ * All methods may be called from any thread, the updates are
+ * passed to the event dispatch thread.
+ *
+ * @author Daniel Rauer
+ */
+public class BatchSyncFrame {
+
+    private static Logger logger = Logger.getLogger(BatchSyncFrame.class.getName());
+    private final ResourceBundle rb = ResourceBundleMgmt.getInstance().getUserBundle();
+
+    private static final int COL_STATE = 2;
+    private static final int COL_DETAILS = 3;
+    private static final int frameWidth = 640;
+    private static final int frameHeight = 360;
+
+    private JFrame batchFrame;
+    private JFrame parentFrame;
+    private DefaultTableModel tableModel;
+    private JProgressBar progressBar;
+    private JLabel summaryLabel = new JLabel();
+    private JButton okButton;
+
+    // row index of every server in the table
+    private Hashtable<Integer, Integer> rows = new Hashtable<>();
+    private int finished = 0;
+    private int failed = 0;
+
+
+    /**
+     * @param parentFrame The parent frame
+     * @param servers     The servers to synchronize
+     */
+    public BatchSyncFrame(JFrame parentFrame, List<Server> servers) {
+        this.parentFrame = parentFrame;
+
+        String[] columns = new String[]{
+                rb.getString("status.batchsync.server"),
+                rb.getString("status.batchsync.host"),
+                rb.getString("status.batchsync.state"),
+                rb.getString("status.batchsync.details")
+        };
+        tableModel = new DefaultTableModel(columns, 0) {
+            private static final long serialVersionUID = 1L;
+
+            public boolean isCellEditable(int row, int column) {
+                return false;
+            }
+        };
+        for (Server server : servers) {
+            rows.put(server.getServerid(), tableModel.getRowCount());
+            tableModel.addRow(new Object[]{
+                    server.getName(),
+                    server.getHostname(),
+                    rb.getString("status.batchsync.queued"),
+                    ""
+            });
+        }
+
+        progressBar = new JProgressBar(0, servers.size());
+        progressBar.setStringPainted(true);
+        updateProgressText();
+    }
+
+
+    /**
+     * builds and shows the frame
+     */
+    public void show() {
+        SwingUtilities.invokeLater(this::createFrame);
+    }
+
+
+    private void createFrame() {
+        batchFrame = new JFrame(rb.getString("status.title.batchsync"));
+        batchFrame.setResizable(true);
+        batchFrame.setLayout(new MigLayout("align center, fill"));
+        batchFrame.setIconImage(ImageUtils.readImage(Configuration.getInstance().ICON_PATH));
+        batchFrame.setDefaultCloseOperation(JFrame.DISPOSE_ON_CLOSE);
+        batchFrame.setPreferredSize(new Dimension(frameWidth, frameHeight));
+
+        JPanel mainPanel = new JPanel(new MigLayout("align center, fill"));
+
+        JTable table = new JTable(tableModel);
+        table.getTableHeader().setReorderingAllowed(false);
+        mainPanel.add(new JScrollPane(table), "grow, push, wrap");
+        mainPanel.add(progressBar, "growx, wrap");
+        mainPanel.add(summaryLabel, "growx, wrap");
+
+        okButton = new JButton("OK");
+        okButton.addActionListener(e -> close());
+        okButton.setEnabled(false);
+        mainPanel.add(okButton, "align center");
+        batchFrame.add(mainPanel, "grow");
+
+        if (parentFrame != null) {
+            Point location = GuiUtils.getOffsetLocation(parentFrame, 60);
+            batchFrame.setLocation(location.x, location.y);
+        }
+
+        CssRuleManager.getInstance().format(batchFrame);
+
+        batchFrame.pack();
+        batchFrame.setVisible(true);
+    }
+
+
+    /**
+     * Marks the synchronisation of the server as running
+     *
+     * @param server The server
+     */
+    public void started(Server server) {
+        setState(server, rb.getString("status.batchsync.running"), "");
+    }
+
+
+    /**
+     * Updates the details message of the server
+     *
+     * @param server  The server
+     * @param message The new message to show
+     */
+    public void updateStatus(Server server, String message) {
+        SwingUtilities.invokeLater(() -> {
+            Integer row = rows.get(server.getServerid());
+            if (row != null)
+                tableModel.setValueAt(message, row, COL_DETAILS);
+        });
+    }
+
+
+    /**
+     * Marks the synchronisation of the server as finished
+     *
+     * @param server  The server
+     * @param success true, if the synchronisation was successful
+     * @param details The result or the error message
+     */
+    public void finished(Server server, boolean success, String details) {
+        SwingUtilities.invokeLater(() -> {
+            finished++;
+            if (!success)
+                failed++;
+            progressBar.setValue(finished);
+            updateProgressText();
+        });
+        setState(server,
+                rb.getString(success ? "status.batchsync.ok" : "status.batchsync.failed"),
+                details);
+    }
+
+
+    /**
+     * Shows the summary and enables closing of the frame
+     */
+    public void done() {
+        SwingUtilities.invokeLater(() -> {
+            int total = tableModel.getRowCount();
+            summaryLabel.setText(MessageFormat.format(rb.getString("status.batchsync.summary"),
+                    total - failed, total, failed));
+            if (okButton != null)
+                okButton.setEnabled(true);
+            logger.info("batch synchronisation finished: " + summaryLabel.getText());
+        });
+    }
+
+
+    public void toFront() {
+        SwingUtilities.invokeLater(() -> {
+            if (batchFrame != null)
+                batchFrame.toFront();
+        });
+    }
+
+
+    public void close() {
+        if (batchFrame != null)
+            batchFrame.dispose();
+        logger.fine("closing batch sync frame");
+    }
+
+
+    private void setState(Server server, String state, String details) {
+        SwingUtilities.invokeLater(() -> {
+            Integer row = rows.get(server.getServerid());
+            if (row == null)
+                return;
+            tableModel.setValueAt(state, row, COL_STATE);
+            tableModel.setValueAt(details, row, COL_DETAILS);
+        });
+    }
+
+
+    private void updateProgressText() {
+        progressBar.setString(rb.getString("status.batchsync.progress") + " "
+                + finished + " / " + tableModel.getRowCount());
+    }
+}
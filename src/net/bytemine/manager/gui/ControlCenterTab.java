@@ -89,9 +89,9 @@ public class ControlCenterTab {
     private Hashtable<String, JButton> connectButtons = new Hashtable<String, JButton>();
     private Hashtable<String, JButton> disconnectButtons = new Hashtable<String, JButton>();
     private Hashtable<String, JPanel> channelPanels = new Hashtable<String, JPanel>();
-    private Hashtable<JFrame, JTextArea> debugLogs = new Hashtable<JFrame, JTextArea>();
+    private Hashtable<JFrame, LogView> debugLogs = new Hashtable<JFrame, LogView>();
     private Hashtable<String, JTable> clientTables = new Hashtable<String, JTable>();
-    private Hashtable<String, JTextArea> logs = new Hashtable<String, JTextArea>();
+    private Hashtable<String, LogView> logs = new Hashtable<String, LogView>();
     private Hashtable<String, JScrollPane> clientTablePanes = new Hashtable<String, JScrollPane>();
 
     private JTextArea outputField;
@@ -297,19 +297,16 @@ public class ControlCenterTab {
 
 
     /**
-     * Displays a new log message in the log area of the channel
+     * Displays a new log message in the log area of the channel,
+     * may be called by any thread
      *
-     * @param message       The new message
+     * @param message       The new message, one or more lines
      * @param channelNumber The channel the message is for
      */
     public void displayNewLogMessage(String message, final String channelNumber) {
-        JTextArea log = logs.get(channelNumber);
-        if (log != null) {
-            log.append(message + "\n");
-
-            log.setCaretPosition(log.getDocument().getLength());
-            log.repaint();
-        }
+        LogView log = logs.get(channelNumber);
+        if (log != null)
+            log.append(message);
     }
 
 
@@ -366,19 +363,16 @@ public class ControlCenterTab {
 
 
     /**
-     * Adds a debug message to the debug frame, if debugging is activated
+     * Adds a debug message to the debug frame, if debugging is activated,
+     * may be called by any thread
      *
-     * @param message The debug message
+     * @param message The debug message, one or more lines
      */
     public void displayDebugMessage(String message) {
         if (debugFrame != null) {
-            JTextArea logArea = (JTextArea) debugLogs.get(debugFrame);
-            logArea.append(message + SSHConstants.NEWLINE);
-
-            // jump to last position
-            logArea.setCaretPosition(logArea.getDocument().getLength());
-            logArea.repaint();
-            logArea.getParent().repaint();
+            LogView logArea = debugLogs.get(debugFrame);
+            if (logArea != null)
+                logArea.append(message);
         }
     }
 
@@ -407,11 +401,7 @@ public class ControlCenterTab {
                         new Vector<>()));
         
         // Log area
-        JTextArea logArea = new JTextArea();
-        final JScrollPane logPane =
-                new JScrollPane(logArea,
-                        JScrollPane.VERTICAL_SCROLLBAR_AS_NEEDED,
-                        JScrollPane.HORIZONTAL_SCROLLBAR_AS_NEEDED);
+        final LogView logPane = new LogView();
 
 
         // Table
@@ -471,8 +461,6 @@ public class ControlCenterTab {
             boolean logging = false;
 
             public void mouseClicked(java.awt.event.MouseEvent evt) {
-                JTextArea log = logs.get(channelNr);
-                
                 // create split panel
                 final JSplitPane serverUserSplitPane = new JSplitPane(JSplitPane.VERTICAL_SPLIT,
                 		clientTablePane, logPane);
@@ -500,7 +488,6 @@ public class ControlCenterTab {
                 logging = !logging;
 
                 logButton.repaint();
-                log.repaint();
                 logPane.repaint();
 
                 channelPanel.repaint();
@@ -547,7 +534,7 @@ public class ControlCenterTab {
         channelTabs.getParent().repaint();
 
         channelPanels.put(channelNr, channelPanel);
-        logs.put(channelNr, logArea);
+        logs.put(channelNr, logPane);
         clientTables.put(channelNr, clientTable);
         clientTablePanes.put(channelNr, clientTablePane);
 
@@ -579,6 +566,7 @@ public class ControlCenterTab {
         if (channelPanel != null)
             channelTabs.remove(channelPanel);
         channelPanels.remove(channelNr);
+        logs.remove(channelNr);
         channelTabs.setSelectedIndex(channelTabs.getTabCount() - 1);
 
         if (channelPanels.isEmpty())
@@ -603,7 +591,10 @@ public class ControlCenterTab {
                 channelTabs.remove(channelPanel);
             channelNrs.add(channelNr);
         });
-        channelNrs.forEach(channelNr -> channelPanels.remove(channelNr));
+        channelNrs.forEach(channelNr -> {
+            channelPanels.remove(channelNr);
+            logs.remove(channelNr);
+        });
 
         channelTabs.setVisible(false);
         channelTabs.getParent().repaint();
@@ -623,11 +614,10 @@ public class ControlCenterTab {
         // jump to server table
         // jump to last CC tab
         ManagerGUI.getTabs().setSelectedIndex(ManagerGUI.getOpenCCTabs().isEmpty() ? 1 : ManagerGUI.getTabs().getComponentCount() - 1);
-        Session session = SSHSessionPool.getInstance().getSession(server.getHostname());
-        if (session != null && session.isConnected()) {
-            session.disconnect();
-            SSHSessionPool.getInstance().removeSession(server.getHostname());
-        }
+        setSshSession(null);
+        // disconnected as soon as no synchronisation is using it
+        SSHSessionPool.getInstance().removeSession(SSHSessionPool.createKey(
+                server.getUsername(), server.getHostname(), server.getSshPort()));
         
         try{
         	ManagerGUI.OPEN_CONTROL_SERVERS.removeElement(""+server.getServerid());
@@ -671,15 +661,10 @@ public class ControlCenterTab {
         debugFrame.setResizable(true);
         debugFrame.setTitle(rb.getString("ssh.debug.title") + " " + server.getHostname());
 
-        JTextArea logArea = new JTextArea("", 30, 50);
-        logArea.setEditable(false);
+        LogView logArea = new LogView();
+        logArea.setPreferredSize(new Dimension(480, 360));
 
-        JScrollPane scrollLog =
-                new JScrollPane(logArea,
-                        JScrollPane.VERTICAL_SCROLLBAR_AS_NEEDED,
-                        JScrollPane.HORIZONTAL_SCROLLBAR_AS_NEEDED);
-
-        debugFrame.getContentPane().add(scrollLog);
+        debugFrame.getContentPane().add(logArea);
         debugFrame.setDefaultCloseOperation(JFrame.DISPOSE_ON_CLOSE);
 
         CssRuleManager.getInstance().format(debugFrame);
@@ -699,7 +684,14 @@ public class ControlCenterTab {
 
 
     public void setSshSession(Session sshSession) {
+        if (this.sshSession == sshSession)
+            return;
+        // keep the session of an open tab in the pool
+        if (this.sshSession != null)
+            SSHSessionPool.getInstance().release(this.sshSession);
         this.sshSession = sshSession;
+        if (sshSession != null)
+            SSHSessionPool.getInstance().lease(sshSession);
     }
 
     public JPanel getCcPanel() {
@@ -0,0 +1,213 @@
+/*************************************************************************
+ * Written by / Copyright (C) 2009-2012 bytemine GmbH                     *
+ * Author: Daniel Rauer                     E-Mail:    rauer@bytemine.net *
+ *                                                                        *
+ * http://www.bytemine.net/                                               *
+ *************************************************************************/
+
+package net.bytemine.manager.gui;
+
+import java.awt.Font;
+import java.awt.FontMetrics;
+import java.util.ArrayDeque;
+
+import javax.swing.AbstractListModel;
+import javax.swing.JList;
+import javax.swing.JScrollBar;
+import javax.swing.JScrollPane;
+import javax.swing.Timer;
+
+import net.bytemine.manager.Configuration;
+
+
+/**
+ * A scrollable view of log lines for the control center.
+ * The lines are kept in a ring buffer, the oldest lines are dropped
+ * when it is full. Lines may be appended by any thread, they are
+ * collected and shown on the event dispatch thread a few times per
+ * second at most. The list renders only the visible lines with a
+ * fixed line height, so the view stays fast with many lines.
+ *
+ * @author Daniel Rauer
+ */
+public class LogView extends JScrollPane {
+
+    private static final long serialVersionUID = 1L;
+
+    // the updates per second
+    private static final int FRAME_RATE = 25;
+
+    private final int capacity;
+    private final LogModel model;
+    private final JList<String> list;
+    private final Timer timer;
+
+    // the lines not shown yet, guarded by itself
+    private final ArrayDeque<String> pending = new ArrayDeque<String>();
+    // the length of the longest line shown
+    private int longestLine = 0;
+
+
+    public LogView() {
+        this(Configuration.getInstance().CONTROL_CENTER_LOG_LINES);
+    }
+
+
+    /**
+     * @param capacity The maximum number of lines kept
+     */
+    public LogView(int capacity) {
+        super(VERTICAL_SCROLLBAR_AS_NEEDED, HORIZONTAL_SCROLLBAR_AS_NEEDED);
+        this.capacity = Math.max(1, capacity);
+        this.model = new LogModel(this.capacity);
+        this.list = new JList<String>(model);
+        list.setFont(new Font(Font.MONOSPACED, Font.PLAIN, 12));
+        updateCellSize();
+        setViewportView(list);
+
+        timer = new Timer(1000 / FRAME_RATE, e -> flush());
+        timer.setCoalesce(true);
+    }
+
+
+    /**
+     * Appends lines, may be called by any thread
+     *
+     * @param text One or more lines separated by line breaks
+     */
+    public void append(String text) {
+        synchronized (pending) {
+            int start = 0;
+            int end;
+            while ((end = text.indexOf('\n', start)) != -1) {
+                addPending(text.substring(start, end));
+                start = end + 1;
+            }
+            addPending(text.substring(start));
+        }
+    }
+
+
+    private void addPending(String line) {
+        // lines that would be dropped at once are not kept
+        if (pending.size() == capacity)
+            pending.pollFirst();
+        pending.addLast(line);
+    }
+
+
+    /**
+     * Shows the pending lines, must be called on the event dispatch thread
+     */
+    public void flush() {
+        String[] lines;
+        synchronized (pending) {
+            if (pending.isEmpty())
+                return;
+            lines = pending.toArray(new String[pending.size()]);
+            pending.clear();
+        }
+
+        JScrollBar scrollBar = getVerticalScrollBar();
+        boolean atBottom = scrollBar.getValue() + scrollBar.getVisibleAmount() >= scrollBar.getMaximum();
+
+        int longest = longestLine;
+        for (String line : lines)
+            longest = Math.max(longest, line.length());
+        if (longest > longestLine) {
+            longestLine = longest;
+            updateCellSize();
+        }
+
+        model.add(lines);
+        if (atBottom)
+            list.ensureIndexIsVisible(model.getSize() - 1);
+    }
+
+
+    /**
+     * @return the number of lines shown
+     */
+    public int getLineCount() {
+        return model.getSize();
+    }
+
+
+    /**
+     * @param index The index of the line, the oldest line first
+     * @return the line
+     */
+    public String getLine(int index) {
+        return model.getElementAt(index);
+    }
+
+
+    /**
+     * Sets the fixed size of the lines, so the list does
+     * not measure every line on updates
+     */
+    private void updateCellSize() {
+        FontMetrics metrics = list.getFontMetrics(list.getFont());
+        list.setFixedCellHeight(metrics.getHeight());
+        list.setFixedCellWidth(metrics.charWidth('m') * Math.max(40, longestLine) + 8);
+    }
+
+
+    public void addNotify() {
+        super.addNotify();
+        timer.start();
+    }
+
+
+    public void removeNotify() {
+        timer.stop();
+        super.removeNotify();
+    }
+
+
+    /**
+     * The lines of the view in a ring buffer
+     */
+    private static class LogModel extends AbstractListModel<String> {
+
+        private static final long serialVersionUID = 1L;
+
+        private final String[] lines;
+        // the index of the oldest line
+        private int first = 0;
+        private int size = 0;
+
+        private LogModel(int capacity) {
+            this.lines = new String[capacity];
+        }
+
+        public int getSize() {
+            return size;
+        }
+
+        public String getElementAt(int index) {
+            return lines[(first + index) % lines.length];
+        }
+
+        /**
+         * Adds the lines, at most as many as the capacity
+         */
+        private void add(String[] added) {
+            int oldSize = size;
+            for (String line : added) {
+                if (size == lines.length) {
+                    lines[first] = line;
+                    first = (first + 1) % lines.length;
+                } else {
+                    lines[(first + size) % lines.length] = line;
+                    size++;
+                }
+            }
+
+            int removed = oldSize + added.length - size;
+            if (removed > 0)
+                fireIntervalRemoved(this, 0, removed - 1);
+            fireIntervalAdded(this, size - added.length, size - 1);
+        }
+    }
+}
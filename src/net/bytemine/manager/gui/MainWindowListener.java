@@ -10,7 +10,6 @@ package net.bytemine.manager.gui;
 import java.awt.event.WindowEvent;
 
 import java.awt.event.WindowListener;
-import java.sql.SQLException;
 import java.util.Date;
 import java.util.logging.Level;
 import java.util.logging.Logger;
@@ -19,6 +18,11 @@ import net.bytemine.manager.Configuration;
 import net.bytemine.manager.ThreadMgmt;
 import net.bytemine.manager.db.DBConnector;
 import net.bytemine.manager.model.ServerUserTreeModel;
+import net.bytemine.manager.utility.CertificateRenewalScheduler;
+import net.bytemine.manager.utility.DHParameterService;
+import net.bytemine.manager.utility.KeyPairPool;
+import net.bytemine.manager.utility.TrafficStore;
+import net.bytemine.openvpn.ssh.SSHSessionPool;
 
 
 /**
@@ -66,17 +70,23 @@ class MainWindowListener implements WindowListener {
      * Cleanup database connection and exit the application
      */
     private void cleanupAndExit() {
+        // store the ready key pairs before the connection is closed
+        KeyPairPool.getInstance().shutdown();
+        DHParameterService.getInstance().shutdown();
+        CertificateRenewalScheduler.getInstance().shutdown();
+        TrafficStore.getInstance().flush();
+
         try {
-            DBConnector.getInstance().getConnection().setAutoCommit(false);
-            DBConnector.getInstance().getConnection().commit();
-            DBConnector.getInstance().getBaseConnection().setAutoCommit(false);
-            DBConnector.getInstance().getBaseConnection().commit();
+            // waits for a running transaction, all other changes are committed already
+            DBConnector.getInstance().executeInTransaction(conn -> null);
             DBConnector.resetInstance();
-        } catch (SQLException e) {
+        } catch (Exception e) {
             logger.log(Level.SEVERE, "error committing db connection", e);
             e.printStackTrace();
         }
 
+        SSHSessionPool.getInstance().closeAll();
+
         logger.info("Ending application at " + new Date());
         System.exit(0);
     }
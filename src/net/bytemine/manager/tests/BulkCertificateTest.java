@@ -0,0 +1,108 @@
+/*************************************************************************
+ * Written by / Copyright (C) 2009-2012 bytemine GmbH                     *
+ * Author: Daniel Rauer                     E-Mail:    rauer@bytemine.net *
+ *                                                                        *
+ * http://www.bytemine.net/                                               *
+ *************************************************************************/
+
+package net.bytemine.manager.tests;
+
+import java.io.File;
+import java.math.BigInteger;
+import java.security.cert.X509Certificate;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.util.HashSet;
+import java.util.Vector;
+
+import net.bytemine.manager.Configuration;
+import net.bytemine.manager.bean.CRLEntry;
+import net.bytemine.manager.bean.User;
+import net.bytemine.manager.bean.X509;
+import net.bytemine.manager.db.DBConnector;
+import net.bytemine.manager.db.UserDAO;
+import net.bytemine.manager.utility.X509Generator;
+import net.bytemine.manager.utility.X509Utils;
+
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class BulkCertificateTest {
+
+    @BeforeClass
+    public static void setUpBeforeClass() {
+        System.err.println("\n\n\n>>> Setting up BulkCertificateTest");
+        ManagerTestSuite.setUpTest();
+        ManagerTestSuite.rootCreation();
+    }
+
+    @AfterClass
+    public static void tearDownAfterClass() {
+        ManagerTestSuite.tearDownTest();
+        System.err.println("\n\n\n>>> Teared down BulkCertificateTest");
+    }
+
+
+    @Test
+    public void testCreateClientCerts() throws Exception {
+        Vector<User> users = new Vector<User>();
+        for (int i = 0; i < 30; i++) {
+            User user = new User("0");
+            user.setUsername("bulkuser" + i);
+            user.setPassword("secret");
+            user.setX509id(-1);
+            users.add(user);
+        }
+        UserDAO.getInstance().create(users);
+
+        assertEquals(30, new X509Generator().createClientCertsImmediately(users));
+
+        X509Certificate rootCert = X509Utils.regainX509Certificate(X509Utils.loadRootX509().getContent());
+        HashSet<String> serials = new HashSet<String>();
+        for (User user : users) {
+            User stored = User.getUserByID(user.getUserid());
+            X509 x509 = X509.getX509ById(stored.getX509id());
+            assertNotNull(x509);
+            assertTrue(serials.add(x509.getSerial()));
+
+            X509Certificate cert = X509Utils.regainX509Certificate(x509.getContent());
+            cert.verify(rootCert.getPublicKey());
+            assertEquals(rootCert.getSubjectX500Principal(), cert.getIssuerX500Principal());
+            assertTrue(cert.getSubjectDN().getName().contains("CN=" + user.getUsername()));
+            assertFalse(cert.getExtendedKeyUsage().isEmpty());
+
+            assertTrue(new File(Configuration.getInstance().CERT_EXPORT_PATH + File.separator
+                    + user.getUsername() + File.separator + x509.getFileName()).exists());
+        }
+    }
+
+
+    @Test
+    public void testSerialsAfterStoredSerials() throws Exception {
+        // a certificate issued before the clock was set back
+        long future = System.currentTimeMillis() + 24 * 60 * 60 * 1000L;
+        new CRLEntry(String.valueOf(future));
+
+        // like a restart, the serials are taken from the new connection
+        Connection old = DBConnector.getInstance().getConnection();
+        DBConnector.getInstance().setConnection(
+                DriverManager.getConnection("jdbc:sqlite:" + ManagerTestSuite.testdirpath + "/db"));
+        old.close();
+
+        User user = new User("0");
+        user.setUsername("serialuser");
+        user.setPassword("secret");
+        user.setX509id(-1);
+        Vector<User> users = new Vector<User>();
+        users.add(user);
+        UserDAO.getInstance().create(users);
+        assertEquals(1, new X509Generator().createClientCertsImmediately(users));
+
+        X509 x509 = X509.getX509ById(User.getUserByID(user.getUserid()).getX509id());
+        X509Certificate cert = X509Utils.regainX509Certificate(x509.getContent());
+        assertTrue(cert.getSerialNumber().compareTo(BigInteger.valueOf(future)) > 0);
+    }
+}
@@ -0,0 +1,86 @@
+/*************************************************************************
+ * Written by / Copyright (C) 2009-2012 bytemine GmbH                     *
+ * Author: Daniel Rauer                     E-Mail:    rauer@bytemine.net *
+ *                                                                        *
+ * http://www.bytemine.net/                                               *
+ *************************************************************************/
+
+package net.bytemine.manager.tests;
+
+import java.security.Signature;
+import java.security.cert.X509Certificate;
+import java.sql.Statement;
+
+import net.bytemine.manager.bean.X509;
+import net.bytemine.manager.db.DBConnector;
+import net.bytemine.manager.db.X509DAO;
+import net.bytemine.manager.db.X509Queries;
+import net.bytemine.manager.utility.CAMaterialCache;
+import net.bytemine.manager.utility.X509Utils;
+
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class CAMaterialCacheTest {
+
+    @BeforeClass
+    public static void setUpBeforeClass() {
+        System.err.println("\n\n\n>>> Setting up CAMaterialCacheTest");
+        ManagerTestSuite.setUpTest();
+        ManagerTestSuite.rootCreation();
+    }
+
+    @AfterClass
+    public static void tearDownAfterClass() {
+        ManagerTestSuite.tearDownTest();
+        System.err.println("\n\n\n>>> Teared down CAMaterialCacheTest");
+    }
+
+
+    @Test
+    public void testRootMaterial() throws Exception {
+        CAMaterialCache cache = CAMaterialCache.getInstance();
+        CAMaterialCache.CAMaterial root = cache.getRoot();
+        assertSame(root, cache.getRoot());
+
+        X509 rootX509 = X509Utils.loadRootX509();
+        assertEquals(rootX509.getX509id(), root.getX509id());
+        X509Certificate rootCert = X509Utils.regainX509Certificate(rootX509.getContent());
+        assertEquals(rootCert, root.getCertificate());
+
+        // the key belongs to the certificate
+        byte[] data = "camaterial".getBytes();
+        Signature signature = Signature.getInstance("SHA1WithRSA");
+        signature.initSign(root.getPrivateKey());
+        signature.update(data);
+        byte[] signed = signature.sign();
+        signature.initVerify(root.getCertificate().getPublicKey());
+        signature.update(data);
+        assertTrue(signature.verify(signed));
+    }
+
+
+    @Test
+    public void testInvalidation() throws Exception {
+        CAMaterialCache cache = CAMaterialCache.getInstance();
+        CAMaterialCache.CAMaterial root = cache.getRoot();
+
+        // an update of the row invalidates the material
+        X509DAO.getInstance().update(X509Utils.loadRootX509());
+        CAMaterialCache.CAMaterial reloaded = cache.getRoot();
+        assertNotSame(root, reloaded);
+        assertEquals(root.getCertificate(), reloaded.getCertificate());
+
+        // a replaced root certificate is detected, even if the row was not removed by the dao
+        Statement st = DBConnector.getInstance().getConnection().createStatement();
+        st.executeUpdate("DELETE FROM x509 WHERE x509id=" + reloaded.getX509id());
+        st.close();
+        ManagerTestSuite.rootCreation();
+        CAMaterialCache.CAMaterial newRoot = cache.getRoot();
+        assertEquals(Integer.parseInt(X509Queries.getRootCertId()), newRoot.getX509id());
+        assertFalse(reloaded.getCertificate().equals(newRoot.getCertificate()));
+    }
+}
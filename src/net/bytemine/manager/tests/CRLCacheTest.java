@@ -0,0 +1,86 @@
+/*************************************************************************
+ * Written by / Copyright (C) 2009-2012 bytemine GmbH                     *
+ * Author: Daniel Rauer                     E-Mail:    rauer@bytemine.net *
+ *                                                                        *
+ * http://www.bytemine.net/                                               *
+ *************************************************************************/
+
+package net.bytemine.manager.tests;
+
+import java.math.BigInteger;
+import java.security.cert.X509CRL;
+import java.util.Date;
+
+import net.bytemine.manager.Constants;
+import net.bytemine.manager.bean.CRL;
+import net.bytemine.manager.bean.CRLEntry;
+import net.bytemine.manager.db.CRLQueries;
+import net.bytemine.manager.utility.CRLCache;
+import net.bytemine.manager.utility.X509Utils;
+
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class CRLCacheTest {
+
+    @BeforeClass
+    public static void setUpBeforeClass() {
+        System.err.println("\n\n\n>>> Setting up CRLCacheTest");
+        ManagerTestSuite.setUpTest();
+        ManagerTestSuite.rootCreation();
+    }
+
+    @AfterClass
+    public static void tearDownAfterClass() {
+        ManagerTestSuite.tearDownTest();
+        System.err.println("\n\n\n>>> Teared down CRLCacheTest");
+    }
+
+
+    @Test
+    public void testReuse() throws Exception {
+        CRL crl = CRLCache.getInstance().getCurrentCRL();
+        assertNotNull(crl);
+        int crlNumber = CRLQueries.getCurrentCrlNumber();
+        assertEquals(crlNumber, crl.getCrlNumber());
+
+        // nothing has changed, no new CRL is generated
+        assertSame(crl, CRLCache.getInstance().getCurrentCRL());
+        assertEquals(crlNumber, CRLQueries.getCurrentCrlNumber());
+    }
+
+
+    @Test
+    public void testRegenerationAfterRevocation() throws Exception {
+        int crlNumber = CRLCache.getInstance().getCurrentCRL().getCrlNumber();
+
+        new CRLEntry("3001");
+        CRL revoked = CRLCache.getInstance().getCurrentCRL();
+        assertTrue(revoked.getCrlNumber() > crlNumber);
+        assertEquals(revoked.getCrlNumber(), CRLQueries.getCurrentCrlNumber());
+
+        X509CRL x509crl = X509Utils.decodeCRL(revoked);
+        assertNotNull(x509crl.getRevokedCertificate(new BigInteger("3001")));
+
+        // the new CRL is reused
+        assertSame(revoked, CRLCache.getInstance().getCurrentCRL());
+    }
+
+
+    @Test
+    public void testRegenerationBeforeNextUpdate() throws Exception {
+        CRL crl = CRLCache.getInstance().getCurrentCRL();
+        int crlNumber = crl.getCrlNumber();
+
+        // the cached CRL is due for an update within the next hour
+        crl.setNextUpdate(Constants.formatDetailedFormat(
+                new Date(System.currentTimeMillis() + 60 * 60 * 1000)));
+
+        CRL renewed = CRLCache.getInstance().getCurrentCRL();
+        assertTrue(renewed.getCrlNumber() > crlNumber);
+        assertEquals(renewed.getCrlNumber(), CRLQueries.getCurrentCrlNumber());
+    }
+}
@@ -0,0 +1,152 @@
+/*************************************************************************
+ * Written by / Copyright (C) 2009-2012 bytemine GmbH                     *
+ * Author: Daniel Rauer                     E-Mail:    rauer@bytemine.net *
+ *                                                                        *
+ * http://www.bytemine.net/                                               *
+ *************************************************************************/
+
+package net.bytemine.manager.tests;
+
+import java.sql.ResultSet;
+import java.sql.Statement;
+import java.util.List;
+import java.util.Vector;
+
+import net.bytemine.manager.Configuration;
+import net.bytemine.manager.Constants;
+import net.bytemine.manager.bean.User;
+import net.bytemine.manager.bean.X509;
+import net.bytemine.manager.db.CRLQueries;
+import net.bytemine.manager.db.DBConnector;
+import net.bytemine.manager.db.RevocationIndex;
+import net.bytemine.manager.db.UserDAO;
+import net.bytemine.manager.db.X509DAO;
+import net.bytemine.manager.db.X509Queries;
+import net.bytemine.manager.db.schema.SchemaUpdater;
+import net.bytemine.manager.utility.CertificateRenewalScheduler;
+import net.bytemine.manager.utility.X509Generator;
+
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class CertificateRenewalTest {
+
+    private static final long DAY = 24L * 60 * 60 * 1000;
+
+    private static Vector<User> users = new Vector<User>();
+
+    @BeforeClass
+    public static void setUpBeforeClass() throws Exception {
+        System.err.println("\n\n\n>>> Setting up CertificateRenewalTest");
+        ManagerTestSuite.setUpTest();
+        ManagerTestSuite.rootCreation();
+
+        for (int i = 0; i < 4; i++) {
+            User user = new User("0");
+            user.setUsername("renewaluser" + i);
+            user.setPassword("secret");
+            user.setX509id(-1);
+            users.add(user);
+        }
+        UserDAO.getInstance().create(users);
+        new X509Generator().createClientCertsImmediately(users);
+    }
+
+    @AfterClass
+    public static void tearDownAfterClass() {
+        ManagerTestSuite.tearDownTest();
+        System.err.println("\n\n\n>>> Teared down CertificateRenewalTest");
+    }
+
+
+    @Test
+    public void testValidToTimeIsIndexed() throws Exception {
+        X509 x509 = X509.getX509ById(User.getUserByID(users.get(3).getUserid()).getX509id());
+        long validToTime = Constants.parseDetailedFormat(x509.getValidTo()).getTime();
+        assertEquals(validToTime, readValidToTime(x509.getX509id()));
+
+        // rows of old databases are filled by the schema update
+        executeUpdate("UPDATE x509 SET validtotime=NULL WHERE x509id=" + x509.getX509id());
+        new SchemaUpdater(Constants.UPDATE_SCHEMA_FILE).updateFromXml();
+        assertEquals(validToTime, readValidToTime(x509.getX509id()));
+    }
+
+
+    @Test
+    public void testRenewExpiring() throws Exception {
+        User expiring1 = User.getUserByID(users.get(0).getUserid());
+        User expiring2 = User.getUserByID(users.get(1).getUserid());
+        X509 old1 = X509.getX509ById(expiring1.getX509id());
+        X509 old2 = X509.getX509ById(expiring2.getX509id());
+        long now = System.currentTimeMillis();
+        executeUpdate("UPDATE x509 SET validtotime=" + (now + 2 * DAY) + " WHERE x509id=" + old1.getX509id());
+        executeUpdate("UPDATE x509 SET validtotime=" + (now - DAY) + " WHERE x509id=" + old2.getX509id());
+
+        List<Integer> expiring = X509Queries.getExpiringX509Ids(now + 7 * DAY);
+        assertEquals(2, expiring.size());
+        // the first expiring first
+        assertEquals(old2.getX509id(), (int) expiring.get(0));
+        assertEquals(old1.getX509id(), (int) expiring.get(1));
+
+        int crlNumber = CRLQueries.getNextCrlNumber();
+        assertEquals(2, CertificateRenewalScheduler.getInstance().renewExpiring(7));
+
+        // one CRL for both revocations
+        assertEquals(crlNumber + 1, CRLQueries.getNextCrlNumber());
+        assertTrue(RevocationIndex.getInstance().isRevoked(old1.getSerial()));
+        assertTrue(RevocationIndex.getInstance().isRevoked(old2.getSerial()));
+
+        // the users have new certificates, the old ones are deleted
+        assertNull(X509DAO.getInstance().read(new X509(old1.getX509id())));
+        assertNull(X509DAO.getInstance().read(new X509(old2.getX509id())));
+        assertFalse(old1.getX509id() == User.getUserByID(expiring1.getUserid()).getX509id());
+        assertFalse(old2.getX509id() == User.getUserByID(expiring2.getUserid()).getX509id());
+        assertTrue(X509Queries.getExpiringX509Ids(now + 7 * DAY).isEmpty());
+    }
+
+
+    @Test
+    public void testRenewExpiringWithSinglePassword() throws Exception {
+        int certificateType = Configuration.getInstance().CERTIFICATE_TYPE;
+        int passwordType = Configuration.getInstance().PKCS12_PASSWORD_TYPE;
+        Configuration.getInstance().CERTIFICATE_TYPE = Constants.CERTIFICATE_TYPE_PKCS12;
+        Configuration.getInstance().PKCS12_PASSWORD_TYPE = Constants.PKCS12_SINGLE_PASSWORD;
+        try {
+            User expiring = User.getUserByID(users.get(2).getUserid());
+            X509 old = X509.getX509ById(expiring.getX509id());
+            long now = System.currentTimeMillis();
+            executeUpdate("UPDATE x509 SET validtotime=" + (now + DAY) + " WHERE x509id=" + old.getX509id());
+
+            // no password dialog, the certificate is renewed without PKCS12 container
+            assertEquals(1, CertificateRenewalScheduler.getInstance().renewExpiring(7));
+
+            X509 renewed = X509.getX509ById(User.getUserByID(expiring.getUserid()).getX509id());
+            assertFalse(old.getX509id() == renewed.getX509id());
+            assertEquals(X509.X509_TYPE_CLIENT, renewed.getType());
+            assertTrue(RevocationIndex.getInstance().isRevoked(old.getSerial()));
+            assertNull(X509DAO.getInstance().read(new X509(old.getX509id())));
+        } finally {
+            Configuration.getInstance().CERTIFICATE_TYPE = certificateType;
+            Configuration.getInstance().PKCS12_PASSWORD_TYPE = passwordType;
+        }
+    }
+
+
+    private static long readValidToTime(int x509id) throws Exception {
+        Statement st = DBConnector.getInstance().getConnection().createStatement();
+        ResultSet rs = st.executeQuery("SELECT validtotime FROM x509 WHERE x509id=" + x509id);
+        long validToTime = rs.getLong(1);
+        rs.close();
+        st.close();
+        return validToTime;
+    }
+
+    private static void executeUpdate(String sql) throws Exception {
+        Statement st = DBConnector.getInstance().getConnection().createStatement();
+        st.executeUpdate(sql);
+        st.close();
+    }
+}
@@ -0,0 +1,101 @@
+/*************************************************************************
+ * Written by / Copyright (C) 2009-2012 bytemine GmbH                     *
+ * Author: Daniel Rauer                     E-Mail:    rauer@bytemine.net *
+ *                                                                        *
+ * http://www.bytemine.net/                                               *
+ *************************************************************************/
+
+package net.bytemine.manager.tests;
+
+import java.security.cert.X509CRL;
+import java.security.cert.X509Certificate;
+import java.sql.PreparedStatement;
+
+import net.bytemine.manager.Constants;
+import net.bytemine.manager.bean.CRL;
+import net.bytemine.manager.bean.X509;
+import net.bytemine.manager.db.CRLDAO;
+import net.bytemine.manager.db.CRLQueries;
+import net.bytemine.manager.db.DBConnector;
+import net.bytemine.manager.db.schema.SchemaUpdater;
+import net.bytemine.manager.utility.X509Generator;
+import net.bytemine.manager.utility.X509Serializer;
+import net.bytemine.manager.utility.X509Utils;
+
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class CertificateStorageTest {
+
+    @BeforeClass
+    public static void setUpBeforeClass() {
+        System.err.println("\n\n\n>>> Setting up CertificateStorageTest");
+        ManagerTestSuite.setUpTest();
+        ManagerTestSuite.rootCreation();
+        new X509Generator().createCRLImmediately();
+    }
+
+    @AfterClass
+    public static void tearDownAfterClass() {
+        ManagerTestSuite.tearDownTest();
+        System.err.println("\n\n\n>>> Teared down CertificateStorageTest");
+    }
+
+
+    @Test
+    public void testDerStorage() throws Exception {
+        X509 rootX509 = X509Utils.loadRootX509();
+        assertNotNull(rootX509.getCertDer());
+        assertNull(rootX509.getCertSerialized());
+        assertEquals(X509Utils.regainX509Certificate(rootX509.getContent()), X509Utils.decodeCertificate(rootX509));
+
+        CRL crl = CRLDAO.getInstance().read(new CRL(CRLQueries.getMaxCRLId()));
+        assertNotNull(crl.getCrlDer());
+        assertNull(crl.getCrlSerialized());
+        assertNotNull(X509Utils.decodeCRL(crl).getThisUpdate());
+    }
+
+
+    @Test
+    public void testConvertSerializedRows() throws Exception {
+        X509 rootX509 = X509Utils.loadRootX509();
+        X509Certificate cert = X509Utils.decodeCertificate(rootX509);
+        int crlId = CRLQueries.getMaxCRLId();
+        X509CRL x509crl = X509Utils.decodeCRL(CRLDAO.getInstance().read(new CRL(crlId)));
+
+        // rows as written by older versions
+        PreparedStatement pst = DBConnector.getInstance().getConnection().prepareStatement(
+                "UPDATE x509 SET certder=NULL, certserialized=? WHERE x509id=?");
+        pst.setString(1, X509Serializer.getInstance().toXML(cert));
+        pst.setInt(2, rootX509.getX509id());
+        pst.executeUpdate();
+        pst.close();
+        pst = DBConnector.getInstance().getConnection().prepareStatement(
+                "UPDATE crl SET crlder=NULL, crlserialized=? WHERE crlid=?");
+        pst.setString(1, X509Serializer.getInstance().toXML(x509crl));
+        pst.setInt(2, crlId);
+        pst.executeUpdate();
+        pst.close();
+
+        // the compatibility reader handles them
+        X509 legacyX509 = X509.getX509ById(rootX509.getX509id());
+        assertNull(legacyX509.getCertDer());
+        assertEquals(cert, X509Utils.decodeCertificate(legacyX509));
+        CRL legacyCrl = CRLDAO.getInstance().read(new CRL(crlId));
+        assertNull(legacyCrl.getCrlDer());
+        assertEquals(x509crl, X509Utils.decodeCRL(legacyCrl));
+
+        // the schema update converts them
+        new SchemaUpdater(Constants.UPDATE_SCHEMA_FILE).updateFromXml();
+
+        X509 convertedX509 = X509.getX509ById(rootX509.getX509id());
+        assertArrayEquals(cert.getEncoded(), convertedX509.getCertDer());
+        assertNull(convertedX509.getCertSerialized());
+        CRL convertedCrl = CRLDAO.getInstance().read(new CRL(crlId));
+        assertArrayEquals(x509crl.getEncoded(), convertedCrl.getCrlDer());
+        assertNull(convertedCrl.getCrlSerialized());
+    }
+}
@@ -0,0 +1,119 @@
+/*************************************************************************
+ * Written by / Copyright (C) 2009-2012 bytemine GmbH                     *
+ * Author: Daniel Rauer                     E-Mail:    rauer@bytemine.net *
+ *                                                                        *
+ * http://www.bytemine.net/                                               *
+ *************************************************************************/
+
+package net.bytemine.manager.tests;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.math.BigInteger;
+import java.sql.ResultSet;
+import java.sql.Statement;
+
+import net.bytemine.manager.Configuration;
+import net.bytemine.manager.db.DBConnector;
+import net.bytemine.manager.utility.DHParameterService;
+import net.bytemine.utility.Base64;
+import net.bytemine.utility.FileUtils;
+
+import org.bouncycastle.asn1.ASN1InputStream;
+import org.bouncycastle.asn1.ASN1Sequence;
+import org.bouncycastle.asn1.pkcs.DHParameter;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class DHParameterServiceTest {
+
+    private static final int KEY_STRENGTH = 512;
+
+    @BeforeClass
+    public static void setUpBeforeClass() {
+        System.err.println("\n\n\n>>> Setting up DHParameterServiceTest");
+        ManagerTestSuite.setUpTest();
+        ManagerTestSuite.rootCreation();
+        Configuration.getInstance().setDhParameterPrecompute(false);
+    }
+
+    @AfterClass
+    public static void tearDownAfterClass() {
+        DHParameterService.getInstance().shutdown();
+        Configuration.getInstance().setDhParameterPrecompute(true);
+        getFile(KEY_STRENGTH).delete();
+        getFile(1024).delete();
+        ManagerTestSuite.tearDownTest();
+        System.err.println("\n\n\n>>> Teared down DHParameterServiceTest");
+    }
+
+
+    @Test
+    public void testGenerateStoreAndLoad() throws Exception {
+        DHParameterService service = DHParameterService.getInstance();
+        getFile(KEY_STRENGTH).delete();
+        service.start(KEY_STRENGTH);
+        // the start does not wait for the generation
+        assertEquals(1, service.getProgress()[1]);
+
+        for (int i = 0; i < 1200 && !service.isReady(KEY_STRENGTH); i++)
+            Thread.sleep(100);
+        assertTrue(service.isReady(KEY_STRENGTH));
+        assertEquals(KEY_STRENGTH, decodePrime(service.get(KEY_STRENGTH)).bitLength());
+        assertEquals(service.get(KEY_STRENGTH), readStored(KEY_STRENGTH));
+        assertEquals(service.get(KEY_STRENGTH), FileUtils.readFile(getFile(KEY_STRENGTH)));
+
+        // the stored parameters are ready right after the next start
+        String content = service.get(KEY_STRENGTH);
+        service.shutdown();
+        assertNull(service.get(KEY_STRENGTH));
+        getFile(KEY_STRENGTH).delete();
+
+        service.start(KEY_STRENGTH);
+        assertEquals(content, service.get(KEY_STRENGTH));
+        assertEquals(0, service.getProgress()[1]);
+        // and exported again
+        assertEquals(content, FileUtils.readFile(getFile(KEY_STRENGTH)));
+    }
+
+
+    @Test
+    public void testExistingFileIsTakenOver() throws Exception {
+        DHParameterService service = DHParameterService.getInstance();
+        service.shutdown();
+
+        String content = "-----BEGIN DH PARAMETERS-----\nexisting\n-----END DH PARAMETERS-----\n";
+        FileWriter fw = new FileWriter(getFile(1024));
+        fw.write(content);
+        fw.close();
+
+        service.start(KEY_STRENGTH);
+        assertEquals(content, service.get(1024));
+        assertEquals(content, readStored(1024));
+    }
+
+
+    private static File getFile(int keyStrength) {
+        return new File(Configuration.getInstance().CERT_EXPORT_PATH, "dh" + keyStrength + ".pem");
+    }
+
+    private static BigInteger decodePrime(String pem) throws Exception {
+        String base64 = pem.replace("-----BEGIN DH PARAMETERS-----", "").replace("-----END DH PARAMETERS-----", "");
+        ASN1InputStream in = new ASN1InputStream(Base64.decode(base64.trim()));
+        DHParameter parameter = new DHParameter((ASN1Sequence) in.readObject());
+        in.close();
+        return parameter.getP();
+    }
+
+    private static String readStored(int keyStrength) throws Exception {
+        Statement st = DBConnector.getInstance().getConnection().createStatement();
+        ResultSet rs = st.executeQuery("SELECT content FROM dhparameters WHERE keystrength=" + keyStrength);
+        String content = rs.next() ? rs.getString(1) : null;
+        rs.close();
+        st.close();
+        return content;
+    }
+}
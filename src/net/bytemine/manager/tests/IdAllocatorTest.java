@@ -0,0 +1,126 @@
+/*************************************************************************
+ * Written by / Copyright (C) 2009-2012 bytemine GmbH                     *
+ * Author: Daniel Rauer                     E-Mail:    rauer@bytemine.net *
+ *                                                                        *
+ * http://www.bytemine.net/                                               *
+ *************************************************************************/
+
+package net.bytemine.manager.tests;
+
+import java.sql.PreparedStatement;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import net.bytemine.manager.db.DBConnector;
+import net.bytemine.manager.db.IdAllocator;
+
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class IdAllocatorTest {
+
+    @BeforeClass
+    public static void setUpBeforeClass() {
+        System.err.println("\n\n\n>>> Setting up IdAllocatorTest");
+        ManagerTestSuite.setUpTest();
+        IdAllocator.getInstance().reset();
+    }
+
+    @AfterClass
+    public static void tearDownAfterClass() {
+        ManagerTestSuite.tearDownTest();
+        System.err.println("\n\n\n>>> Teared down IdAllocatorTest");
+    }
+
+
+    @Test
+    public void testConsecutiveIds() throws Exception {
+        IdAllocator allocator = IdAllocator.getInstance();
+
+        int first = allocator.nextId(IdAllocator.PKCS12);
+        assertEquals(first + 1, allocator.nextId(IdAllocator.PKCS12));
+
+        // a range is consecutive, even if it exceeds the current block
+        int range = allocator.nextIds(IdAllocator.PKCS12, 250);
+        assertTrue(range > first + 1);
+        assertEquals(range + 250, allocator.nextId(IdAllocator.PKCS12));
+    }
+
+
+    @Test
+    public void testRowsInsertedWithoutAllocator() throws Exception {
+        IdAllocator allocator = IdAllocator.getInstance();
+        int id = allocator.nextId(IdAllocator.GROUPS);
+
+        PreparedStatement pst = DBConnector.getInstance().getConnection().prepareStatement(
+                "INSERT INTO groups(groupid, name, description) VALUES(?,'external','')");
+        pst.setInt(1, id + 1000);
+        pst.executeUpdate();
+        pst.close();
+
+        // the next block starts behind the highest id of the table
+        assertTrue(allocator.nextIds(IdAllocator.GROUPS, 500) > id + 1000);
+
+        // the reserved blocks are persisted
+        allocator.reset();
+        int afterReset = allocator.nextId(IdAllocator.GROUPS);
+        assertTrue(afterReset > id + 1500);
+    }
+
+
+    @Test
+    public void testAllocationWithinConcurrentTransaction() throws Exception {
+        final IdAllocator allocator = IdAllocator.getInstance();
+        final DBConnector db = DBConnector.getInstance();
+        final CountDownLatch transactionStarted = new CountDownLatch(1);
+        final AtomicInteger transactionalId = new AtomicInteger();
+        final AtomicInteger plainId = new AtomicInteger();
+
+        // the blocks are empty, both threads have to reserve one
+        allocator.reset();
+
+        // holds the transaction and allocates ids inside of it, like a bulk insert
+        Thread transactional = new Thread() {
+            public void run() {
+                try {
+                    db.executeInTransaction(conn -> {
+                        transactionStarted.countDown();
+                        Thread.sleep(500);
+                        transactionalId.set(allocator.nextId(IdAllocator.CRL));
+                        return null;
+                    });
+                } catch (Exception e) {
+                    e.printStackTrace();
+                }
+            }
+        };
+        // allocates an id without a transaction, like a single insert
+        Thread plain = new Thread() {
+            public void run() {
+                try {
+                    plainId.set(allocator.nextId(IdAllocator.CRL));
+                } catch (Exception e) {
+                    e.printStackTrace();
+                }
+            }
+        };
+        transactional.setDaemon(true);
+        plain.setDaemon(true);
+
+        transactional.start();
+        assertTrue(transactionStarted.await(5, TimeUnit.SECONDS));
+        plain.start();
+
+        transactional.join(10000);
+        plain.join(10000);
+        assertFalse("deadlock allocating ids", transactional.isAlive() || plain.isAlive());
+
+        assertTrue(transactionalId.get() > 0);
+        assertTrue(plainId.get() > 0);
+        assertTrue(transactionalId.get() != plainId.get());
+    }
+}
@@ -0,0 +1,290 @@
+/*************************************************************************
+ * Written by / Copyright (C) 2009-2012 bytemine GmbH                     *
+ * Author: Daniel Rauer                     E-Mail:    rauer@bytemine.net *
+ *                                                                        *
+ * http://www.bytemine.net/                                               *
+ *************************************************************************/
+
+package net.bytemine.manager.tests;
+
+import java.io.File;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.Statement;
+
+import net.bytemine.manager.db.DBTasks;
+
+
+/**
+ * Measures the overview and tree queries on a generated database
+ * without and with the indexes created by DBTasks.
+ * Not part of the test suite, run with
+ * java net.bytemine.manager.tests.IndexBenchmark [certificates] [servers]
+ *
+ * @author Daniel Rauer
+ */
+public class IndexBenchmark {
+
+    private static final int CLIENT_TYPE = 2;
+    private static final int SERVER_TYPE = 1;
+
+    private Connection conn;
+    private int certificates;
+    private int servers;
+
+
+    private IndexBenchmark(Connection conn, int certificates, int servers) {
+        this.conn = conn;
+        this.certificates = certificates;
+        this.servers = servers;
+    }
+
+
+    public static void main(String[] args) throws Exception {
+        int certificates = args.length > 0 ? Integer.parseInt(args[0]) : 50000;
+        int servers = args.length > 1 ? Integer.parseInt(args[1]) : 20;
+
+        File dbFile = File.createTempFile("indexbenchmark", ".db");
+        dbFile.deleteOnExit();
+
+        Class.forName("org.sqlite.JDBC");
+        Connection conn = DriverManager.getConnection("jdbc:sqlite:" + dbFile.getAbsolutePath());
+        try {
+            DBTasks.createTables(conn, false);
+            IndexBenchmark benchmark = new IndexBenchmark(conn, certificates, servers);
+
+            System.out.println("filling database with " + certificates + " certificates and " + servers + " servers");
+            benchmark.fill();
+
+            DBTasks.dropIndexes(conn);
+            System.out.println("\nwithout indexes");
+            benchmark.run();
+
+            DBTasks.createIndexes(conn);
+            Statement st = conn.createStatement();
+            st.execute("ANALYZE");
+            st.close();
+            System.out.println("\nwith indexes, version " + DBTasks.getIndexVersion(conn));
+            benchmark.run();
+        } finally {
+            conn.close();
+            dbFile.delete();
+        }
+    }
+
+
+    /**
+     * Creates a client certificate and a user for every certificate,
+     * every tenth certificate is revoked, every user is assigned to one server
+     */
+    private void fill() throws Exception {
+        conn.setAutoCommit(false);
+
+        PreparedStatement x509 = conn.prepareStatement(
+                "INSERT INTO x509(x509id, serial, subject, type, createdate, validfrom, validto) VALUES(?,?,?,?,?,?,?)");
+        PreparedStatement user = conn.prepareStatement(
+                "INSERT INTO user(userid, username, password, x509id) VALUES(?,?,?,?)");
+        PreparedStatement serverUser = conn.prepareStatement(
+                "INSERT INTO server_user(serverid, userid) VALUES(?,?)");
+        PreparedStatement crlentry = conn.prepareStatement(
+                "INSERT INTO crlentry(crlentryid, serial, x509id, crlid, username) VALUES(?,?,?,1,?)");
+        PreparedStatement server = conn.prepareStatement(
+                "INSERT INTO server(serverid, name, hostname, x509id) VALUES(?,?,?,?)");
+
+        for (int id = 1; id <= certificates; id++) {
+            x509.setInt(1, id);
+            x509.setString(2, Integer.toHexString(id));
+            x509.setString(3, "CN=user" + id + ",O=benchmark");
+            x509.setInt(4, CLIENT_TYPE);
+            x509.setString(5, "20120101120000");
+            x509.setString(6, "20120101120000");
+            x509.setString(7, "20220101120000");
+            x509.addBatch();
+
+            user.setInt(1, id);
+            user.setString(2, "user" + id);
+            user.setString(3, "secret" + id);
+            user.setInt(4, id);
+            user.addBatch();
+
+            serverUser.setInt(1, id % servers + 1);
+            serverUser.setInt(2, id);
+            serverUser.addBatch();
+
+            if (id % 10 == 0) {
+                crlentry.setInt(1, id);
+                crlentry.setString(2, Integer.toHexString(id));
+                crlentry.setInt(3, id);
+                crlentry.setString(4, "user" + id);
+                crlentry.addBatch();
+            }
+        }
+        for (int id = 1; id <= servers; id++) {
+            int x509id = certificates + id;
+            x509.setInt(1, x509id);
+            x509.setString(2, Integer.toHexString(x509id));
+            x509.setString(3, "CN=server" + id + ",O=benchmark");
+            x509.setInt(4, SERVER_TYPE);
+            x509.setString(5, "20120101120000");
+            x509.setString(6, "20120101120000");
+            x509.setString(7, "20220101120000");
+            x509.addBatch();
+
+            server.setInt(1, id);
+            server.setString(2, "server" + id);
+            server.setString(3, "host" + id);
+            server.setInt(4, x509id);
+            server.addBatch();
+        }
+
+        x509.executeBatch();
+        user.executeBatch();
+        serverUser.executeBatch();
+        crlentry.executeBatch();
+        server.executeBatch();
+        conn.commit();
+        conn.setAutoCommit(true);
+
+        x509.close();
+        user.close();
+        serverUser.close();
+        crlentry.close();
+        server.close();
+    }
+
+
+    private void run() throws Exception {
+        measure("server certificate overview", this::serverCertificateOverview);
+        measure("client certificate overview", this::clientCertificateOverview);
+        measure("user tree (servers per user)", this::userTree);
+        measure("server tree (users per server)", this::serverTree);
+        measure("user lookups by name", this::userLookups);
+        measure("revocation lookups by serial", this::revocationLookups);
+    }
+
+
+    /**
+     * Queries of X509Queries.getX509TypeOverview() for server certificates,
+     * including the server lookup per certificate
+     */
+    private int serverCertificateOverview() throws Exception {
+        int rows = 0;
+        PreparedStatement serverByX509 = conn.prepareStatement("SELECT serverid, name FROM server WHERE x509id=?");
+        for (int x509id : typeOverview(SERVER_TYPE)) {
+            serverByX509.setInt(1, x509id);
+            rows += count(serverByX509.executeQuery());
+        }
+        serverByX509.close();
+        return rows;
+    }
+
+
+    /**
+     * Query of X509Queries.getX509TypeOverview() for client certificates
+     */
+    private int clientCertificateOverview() throws Exception {
+        return typeOverview(CLIENT_TYPE).length;
+    }
+
+
+    private int[] typeOverview(int type) throws Exception {
+        PreparedStatement pst = conn.prepareStatement(
+                "SELECT x509.x509id, x509.subject, x509.validfrom, x509.validto " +
+                "FROM x509 " +
+                "WHERE x509.type=? AND x509.x509id NOT IN " +
+                    "(SELECT x509id FROM crlentry)");
+        pst.setInt(1, type);
+        ResultSet rs = pst.executeQuery();
+        int[] ids = new int[certificates + servers];
+        int n = 0;
+        while (rs.next())
+            ids[n++] = rs.getInt(1);
+        rs.close();
+        pst.close();
+
+        int[] result = new int[n];
+        System.arraycopy(ids, 0, result, 0, n);
+        return result;
+    }
+
+
+    /**
+     * Queries of ServerUserTreeModel: the servers of every tenth user
+     */
+    private int userTree() throws Exception {
+        int rows = 0;
+        PreparedStatement pst = conn.prepareStatement("SELECT serverid FROM server_user WHERE userid=?");
+        for (int userid = 1; userid <= certificates; userid += 10) {
+            pst.setInt(1, userid);
+            rows += count(pst.executeQuery());
+        }
+        pst.close();
+        return rows;
+    }
+
+
+    /**
+     * Queries of ServerUserTreeModel: the users of every server
+     */
+    private int serverTree() throws Exception {
+        int rows = 0;
+        PreparedStatement pst = conn.prepareStatement("SELECT userid FROM server_user WHERE serverid=?");
+        for (int serverid = 1; serverid <= servers; serverid++) {
+            pst.setInt(1, serverid);
+            rows += count(pst.executeQuery());
+        }
+        pst.close();
+        return rows;
+    }
+
+
+    private int userLookups() throws Exception {
+        int rows = 0;
+        PreparedStatement pst = conn.prepareStatement("SELECT userid FROM user WHERE username=?");
+        for (int userid = 1; userid <= certificates; userid += 10) {
+            pst.setString(1, "user" + userid);
+            rows += count(pst.executeQuery());
+        }
+        pst.close();
+        return rows;
+    }
+
+
+    private int revocationLookups() throws Exception {
+        int rows = 0;
+        PreparedStatement pst = conn.prepareStatement("SELECT crlentryid FROM crlentry WHERE serial=?");
+        for (int id = 5; id <= certificates; id += 5) {
+            pst.setString(1, Integer.toHexString(id));
+            rows += count(pst.executeQuery());
+        }
+        pst.close();
+        return rows;
+    }
+
+
+    private static int count(ResultSet rs) throws Exception {
+        int rows = 0;
+        while (rs.next())
+            rows++;
+        rs.close();
+        return rows;
+    }
+
+
+    private static void measure(String name, BenchmarkQuery query) throws Exception {
+        // warm up the page cache
+        query.run();
+
+        long start = System.nanoTime();
+        int rows = query.run();
+        long millis = (System.nanoTime() - start) / 1000000;
+        System.out.println(String.format("  %-35s %8d ms  %8d rows", name, millis, rows));
+    }
+
+
+    private interface BenchmarkQuery {
+        int run() throws Exception;
+    }
+}
@@ -0,0 +1,100 @@
+/*************************************************************************
+ * Written by / Copyright (C) 2009-2012 bytemine GmbH                     *
+ * Author: Daniel Rauer                     E-Mail:    rauer@bytemine.net *
+ *                                                                        *
+ * http://www.bytemine.net/                                               *
+ *************************************************************************/
+
+package net.bytemine.manager.tests;
+
+import java.security.KeyPair;
+import java.security.Signature;
+import java.sql.ResultSet;
+import java.sql.Statement;
+
+import net.bytemine.manager.Configuration;
+import net.bytemine.manager.db.DBConnector;
+import net.bytemine.manager.utility.KeyPairPool;
+
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class KeyPairPoolTest {
+
+    private static final int KEY_STRENGTH = 512;
+
+    @BeforeClass
+    public static void setUpBeforeClass() {
+        System.err.println("\n\n\n>>> Setting up KeyPairPoolTest");
+        ManagerTestSuite.setUpTest();
+        ManagerTestSuite.rootCreation();
+        Configuration.getInstance().setKeypairPoolSize(3);
+        Configuration.getInstance().setKeypairPoolPersist(true);
+    }
+
+    @AfterClass
+    public static void tearDownAfterClass() {
+        KeyPairPool.getInstance().shutdown();
+        Configuration.getInstance().setKeypairPoolPersist(false);
+        ManagerTestSuite.tearDownTest();
+        System.err.println("\n\n\n>>> Teared down KeyPairPoolTest");
+    }
+
+
+    @Test
+    public void testRefillAndPersist() throws Exception {
+        KeyPairPool pool = KeyPairPool.getInstance();
+        pool.start(KEY_STRENGTH);
+        waitForPool(pool, 3);
+
+        // a taken key pair is replaced
+        KeyPair keyPair = pool.take(KEY_STRENGTH);
+        assertValidKeyPair(keyPair);
+        waitForPool(pool, 3);
+
+        // the ready key pairs are stored on shutdown
+        pool.shutdown();
+        assertEquals(3, countStoredKeyPairs());
+
+        // and loaded on start, they are removed from the db
+        pool.take(KEY_STRENGTH);
+        pool.take(KEY_STRENGTH);
+        pool.take(KEY_STRENGTH);
+        assertEquals(0, pool.size(KEY_STRENGTH));
+        pool.start(KEY_STRENGTH);
+        assertEquals(0, countStoredKeyPairs());
+        assertTrue(pool.size(KEY_STRENGTH) >= 3);
+        assertValidKeyPair(pool.take(KEY_STRENGTH));
+    }
+
+
+    private static void waitForPool(KeyPairPool pool, int size) throws InterruptedException {
+        for (int i = 0; i < 600 && pool.size(KEY_STRENGTH) < size; i++)
+            Thread.sleep(100);
+        assertEquals(size, pool.size(KEY_STRENGTH));
+    }
+
+    private static void assertValidKeyPair(KeyPair keyPair) throws Exception {
+        byte[] data = "keypair".getBytes();
+        Signature signature = Signature.getInstance("SHA1WithRSA");
+        signature.initSign(keyPair.getPrivate());
+        signature.update(data);
+        byte[] signed = signature.sign();
+
+        signature.initVerify(keyPair.getPublic());
+        signature.update(data);
+        assertTrue(signature.verify(signed));
+    }
+
+    private static int countStoredKeyPairs() throws Exception {
+        Statement st = DBConnector.getInstance().getConnection().createStatement();
+        ResultSet rs = st.executeQuery("SELECT count(*) AS keys FROM keypairpool");
+        int count = rs.next() ? rs.getInt("keys") : 0;
+        rs.close();
+        st.close();
+        return count;
+    }
+}
@@ -0,0 +1,68 @@
+/*************************************************************************
+ * Written by / Copyright (C) 2009-2012 bytemine GmbH                     *
+ * Author: Daniel Rauer                     E-Mail:    rauer@bytemine.net *
+ *                                                                        *
+ * http://www.bytemine.net/                                               *
+ *************************************************************************/
+
+package net.bytemine.manager.tests;
+
+import javax.swing.SwingUtilities;
+
+import net.bytemine.manager.gui.LogView;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class LogViewTest {
+
+    @Test
+    public void testFlood() throws Exception {
+        final LogView view = new LogView(1000);
+
+        // a flood of batches from the reader thread
+        Thread reader = new Thread(() -> {
+            for (int batch = 0; batch < 100; batch++) {
+                StringBuilder text = new StringBuilder();
+                for (int i = 0; i < 1000; i++) {
+                    if (i > 0)
+                        text.append('\n');
+                    text.append("line ").append(batch * 1000 + i);
+                }
+                view.append(text.toString());
+            }
+        });
+        reader.start();
+        reader.join();
+
+        // only the newest lines are kept, also before they are shown
+        SwingUtilities.invokeAndWait(view::flush);
+        assertEquals(1000, view.getLineCount());
+        assertEquals("line 99000", view.getLine(0));
+        assertEquals("line 99999", view.getLine(999));
+
+        // the oldest lines are dropped from the full ring
+        view.append("next 1\nnext 2");
+        view.append("next 3");
+        SwingUtilities.invokeAndWait(view::flush);
+        assertEquals(1000, view.getLineCount());
+        assertEquals("line 99003", view.getLine(0));
+        assertEquals("line 99999", view.getLine(996));
+        assertEquals("next 3", view.getLine(999));
+    }
+
+
+    @Test
+    public void testFewLines() throws Exception {
+        final LogView view = new LogView(1000);
+        view.append("first");
+        view.append("second\nthird");
+        assertEquals(0, view.getLineCount());
+
+        SwingUtilities.invokeAndWait(view::flush);
+        assertEquals(3, view.getLineCount());
+        assertEquals("first", view.getLine(0));
+        assertEquals("third", view.getLine(2));
+    }
+}
@@ -29,7 +29,29 @@ import org.junit.runners.Suite;
                       ServerConfigTest.class,
                       ServerUserTest.class,
                       UserImportTest.class,
-                      UserConfigTest.class
+                      UserConfigTest.class,
+                      UserTableTest.class,
+                      CRLCacheTest.class,
+                      SSHSessionPoolTest.class,
+                      UserfileDiffTest.class,
+                      TransactionTest.class,
+                      IdAllocatorTest.class,
+                      BulkCertificateTest.class,
+                      KeyPairPoolTest.class,
+                      CAMaterialCacheTest.class,
+                      CertificateStorageTest.class,
+                      RevocationTest.class,
+                      X509BulkExporterTest.class,
+                      PKCS12BatchExporterTest.class,
+                      DHParameterServiceTest.class,
+                      CertificateRenewalTest.class,
+                      X509FileImporterTest.class,
+                      StatusCollectorTest.class,
+                      TrafficStoreTest.class,
+                      TrafficWriterTest.class,
+                      SSHLineScannerTest.class,
+                      SSHLineReaderTest.class,
+                      LogViewTest.class
                       })
 public class ManagerTestSuite {
     
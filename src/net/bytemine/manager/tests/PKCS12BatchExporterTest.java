@@ -0,0 +1,139 @@
+/*************************************************************************
+ * Written by / Copyright (C) 2009-2012 bytemine GmbH                     *
+ * Author: Daniel Rauer                     E-Mail:    rauer@bytemine.net *
+ *                                                                        *
+ * http://www.bytemine.net/                                               *
+ *************************************************************************/
+
+package net.bytemine.manager.tests;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.security.KeyStore;
+import java.security.PrivateKey;
+import java.security.cert.X509Certificate;
+import java.util.List;
+import java.util.Vector;
+
+import net.bytemine.manager.Configuration;
+import net.bytemine.manager.bean.User;
+import net.bytemine.manager.bean.X509;
+import net.bytemine.manager.db.UserDAO;
+import net.bytemine.manager.utility.CAMaterialCache;
+import net.bytemine.manager.utility.PKCS12BatchExporter;
+import net.bytemine.manager.utility.PKCS12Exporter;
+import net.bytemine.manager.utility.X509Generator;
+import net.bytemine.manager.utility.X509Serializer;
+import net.bytemine.manager.utility.X509Utils;
+
+import org.bouncycastle.asn1.ASN1InputStream;
+import org.bouncycastle.asn1.ASN1Sequence;
+import org.bouncycastle.asn1.pkcs.Pfx;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class PKCS12BatchExporterTest {
+
+    private static Vector<User> users = new Vector<User>();
+
+    @BeforeClass
+    public static void setUpBeforeClass() throws Exception {
+        System.err.println("\n\n\n>>> Setting up PKCS12BatchExporterTest");
+        ManagerTestSuite.setUpTest();
+        ManagerTestSuite.rootCreation();
+
+        for (int i = 0; i < 6; i++) {
+            User user = new User("0");
+            user.setUsername("pkcs12user" + i);
+            user.setPassword("secret");
+            user.setX509id(-1);
+            users.add(user);
+        }
+        UserDAO.getInstance().create(users);
+        new X509Generator().createClientCertsImmediately(users);
+    }
+
+    @AfterClass
+    public static void tearDownAfterClass() {
+        ManagerTestSuite.tearDownTest();
+        System.err.println("\n\n\n>>> Teared down PKCS12BatchExporterTest");
+    }
+
+
+    @Test
+    public void testBatchParameters() throws Exception {
+        PKCS12BatchExporter batch = new PKCS12BatchExporter("PBEWithSHAAnd128BitRC2-CBC", 3000);
+        X509Certificate caCert = CAMaterialCache.getInstance().getRoot().getCertificate();
+        for (User user : users)
+            batch.add(createExporter(user, caCert), "secret", user.getX509id());
+
+        List<PKCS12BatchExporter.Bundle> bundles = batch.export();
+        assertEquals(users.size(), bundles.size());
+        assertTrue(batch.getTimingSummary().contains("3000 iterations"));
+
+        for (int i = 0; i < users.size(); i++) {
+            User user = users.get(i);
+            PKCS12BatchExporter.Bundle bundle = bundles.get(i);
+            assertNull(bundle.getError());
+            assertEquals(user.getX509id(), bundle.getX509id());
+
+            File file = new File(Configuration.getInstance().CERT_EXPORT_PATH + File.separator + user.getUsername(),
+                    user.getUsername() + "_" + (user.getUserid() + "").hashCode() + ".p12");
+            byte[] data = org.apache.commons.io.FileUtils.readFileToByteArray(file);
+
+            Pfx pfx = new Pfx((ASN1Sequence) new ASN1InputStream(data).readObject());
+            assertEquals(3000, pfx.getMacData().getIterationCount().intValue());
+
+            KeyStore store = KeyStore.getInstance("PKCS12", "BC");
+            store.load(new ByteArrayInputStream(data), "secret".toCharArray());
+            String alias = store.aliases().nextElement();
+            assertEquals(user.getUsername(), alias);
+            assertEquals(loadKey(user), store.getKey(alias, "secret".toCharArray()));
+            assertEquals(2, store.getCertificateChain(alias).length);
+            assertEquals(caCert, store.getCertificateChain(alias)[1]);
+
+            assertTrue(bundle.getContent().length() > 0);
+        }
+    }
+
+
+    @Test
+    public void testReadableByTheJDK() throws Exception {
+        PKCS12BatchExporter batch = new PKCS12BatchExporter();
+        assertEquals(Configuration.getInstance().PKCS12_PBE_ITERATIONS, batch.getIterations());
+
+        User user = users.get(0);
+        batch.add(createExporter(user, CAMaterialCache.getInstance().getRoot().getCertificate()), "secret", user.getX509id());
+        assertNull(batch.export().get(0).getError());
+
+        File file = new File(Configuration.getInstance().CERT_EXPORT_PATH + File.separator + user.getUsername(),
+                user.getUsername() + "_" + (user.getUserid() + "").hashCode() + ".p12");
+        KeyStore store = KeyStore.getInstance("PKCS12");
+        FileInputStream in = new FileInputStream(file);
+        store.load(in, "secret".toCharArray());
+        in.close();
+        assertEquals(loadKey(user), store.getKey(user.getUsername(), "secret".toCharArray()));
+    }
+
+
+    @Test(expected = Exception.class)
+    public void testUnsupportedAlgorithm() throws Exception {
+        new PKCS12BatchExporter("PBEWithMD5AndDES", 2048);
+    }
+
+
+    private static PKCS12Exporter createExporter(User user, X509Certificate caCert) throws Exception {
+        X509 x509 = X509.getX509ById(User.getUserByID(user.getUserid()).getX509id());
+        return new PKCS12Exporter(X509Utils.decodeCertificate(x509), loadKey(user), caCert, user, null);
+    }
+
+
+    private static PrivateKey loadKey(User user) throws Exception {
+        X509 x509 = X509.getX509ById(User.getUserByID(user.getUserid()).getX509id());
+        return (PrivateKey) X509Serializer.getInstance().fromXML(x509.getKey());
+    }
+}
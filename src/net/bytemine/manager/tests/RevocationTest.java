@@ -0,0 +1,146 @@
+/*************************************************************************
+ * Written by / Copyright (C) 2009-2012 bytemine GmbH                     *
+ * Author: Daniel Rauer                     E-Mail:    rauer@bytemine.net *
+ *                                                                        *
+ * http://www.bytemine.net/                                               *
+ *************************************************************************/
+
+package net.bytemine.manager.tests;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.math.BigInteger;
+import java.security.cert.CRLReason;
+import java.security.cert.CertificateFactory;
+import java.security.cert.X509CRL;
+import java.util.Set;
+
+import net.bytemine.manager.Configuration;
+import net.bytemine.manager.Constants;
+import net.bytemine.manager.bean.CRL;
+import net.bytemine.manager.bean.CRLEntry;
+import net.bytemine.manager.db.CRLDAO;
+import net.bytemine.manager.db.CRLEntryDAO;
+import net.bytemine.manager.db.CRLQueries;
+import net.bytemine.manager.db.DBConnector;
+import net.bytemine.manager.db.RevocationIndex;
+import net.bytemine.manager.utility.CAMaterialCache;
+import net.bytemine.manager.utility.X509Generator;
+import net.bytemine.manager.utility.X509Utils;
+import net.bytemine.utility.FileUtils;
+
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class RevocationTest {
+
+    // oid of the delta CRL indicator
+    private static final String DELTA_CRL_INDICATOR = "2.5.29.27";
+
+    @BeforeClass
+    public static void setUpBeforeClass() {
+        System.err.println("\n\n\n>>> Setting up RevocationTest");
+        ManagerTestSuite.setUpTest();
+        ManagerTestSuite.rootCreation();
+    }
+
+    @AfterClass
+    public static void tearDownAfterClass() {
+        Configuration.getInstance().setCrlDelta(false);
+        Configuration.getInstance().setCrlDeltaMaxChanges(500);
+        ManagerTestSuite.tearDownTest();
+        System.err.println("\n\n\n>>> Teared down RevocationTest");
+    }
+
+
+    @Test
+    public void testRevocationIndex() throws Exception {
+        RevocationIndex index = RevocationIndex.getInstance();
+        assertFalse(index.isRevoked("1001"));
+        String version = index.getVersion();
+
+        CRLEntry entry = new CRLEntry("1001");
+        assertTrue(index.isRevoked("1001"));
+        assertFalse(version.equals(index.getVersion()));
+
+        // reloaded from the db
+        index.invalidate();
+        assertTrue(index.getSerials().contains("1001"));
+
+        CRLEntryDAO.getInstance().delete(entry);
+        assertFalse(index.isRevoked("1001"));
+        assertEquals(version, index.getVersion());
+    }
+
+
+    @Test
+    public void testRevocationIndexAfterRollback() throws Exception {
+        RevocationIndex index = RevocationIndex.getInstance();
+        String version = index.getVersion();
+
+        try {
+            DBConnector.getInstance().executeInTransaction(conn -> {
+                new CRLEntry("1002");
+                assertTrue(index.isRevoked("1002"));
+                throw new Exception("rollback");
+            });
+            fail();
+        } catch (Exception e) {
+            assertEquals("rollback", e.getMessage());
+        }
+
+        assertFalse(index.isRevoked("1002"));
+        assertEquals(version, index.getVersion());
+    }
+
+
+    @Test
+    public void testDeltaCRL() throws Exception {
+        Configuration.getInstance().setCrlDelta(true);
+        X509Generator gen = new X509Generator();
+
+        CRLEntry reEnabled = new CRLEntry("2001");
+        gen.createCRLImmediately();
+        CRL base = CRLDAO.getInstance().read(new CRL(CRLQueries.getMaxCRLId()));
+
+        new CRLEntry("2002");
+        CRLEntryDAO.getInstance().delete(reEnabled);
+        gen.updateCRLImmediately();
+
+        // the complete CRL is unchanged
+        assertEquals(base.getCrlNumber(), CRLDAO.getInstance().read(new CRL(CRLQueries.getMaxCRLId())).getCrlNumber());
+
+        X509CRL delta = readCRL(Constants.DEFAULT_DELTA_CRL_FILENAME);
+        delta.verify(CAMaterialCache.getInstance().getRoot().getCertificate().getPublicKey());
+        assertTrue(delta.getCriticalExtensionOIDs().contains(DELTA_CRL_INDICATOR));
+        assertEquals(2, delta.getRevokedCertificates().size());
+        assertEquals(CRLReason.PRIVILEGE_WITHDRAWN,
+                delta.getRevokedCertificate(new BigInteger("2002")).getRevocationReason());
+        assertEquals(CRLReason.REMOVE_FROM_CRL,
+                delta.getRevokedCertificate(new BigInteger("2001")).getRevocationReason());
+        assertEquals(base.getCrlNumber() + 2, CRLQueries.getNextCrlNumber());
+
+        // too many changes for a delta
+        Configuration.getInstance().setCrlDeltaMaxChanges(1);
+        gen.updateCRLImmediately();
+        CRL complete = CRLDAO.getInstance().read(new CRL(CRLQueries.getMaxCRLId()));
+        assertEquals(base.getCrlNumber() + 2, complete.getCrlNumber());
+        X509CRL completeCrl = X509Utils.decodeCRL(complete);
+        Set<String> critical = completeCrl.getCriticalExtensionOIDs();
+        assertTrue(critical == null || !critical.contains(DELTA_CRL_INDICATOR));
+        assertNotNull(completeCrl.getRevokedCertificate(new BigInteger("2002")));
+        assertNull(completeCrl.getRevokedCertificate(new BigInteger("2001")));
+    }
+
+
+    private static X509CRL readCRL(String fileName) throws Exception {
+        String content = FileUtils.readFile(new File(
+                Configuration.getInstance().CERT_EXPORT_PATH + File.separator + fileName));
+        content = content.substring(content.indexOf("-----BEGIN"));
+        return (X509CRL) CertificateFactory.getInstance("X.509").generateCRL(
+                new ByteArrayInputStream(content.getBytes()));
+    }
+}
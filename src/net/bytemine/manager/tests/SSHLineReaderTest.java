@@ -0,0 +1,88 @@
+/*************************************************************************
+ * Written by / Copyright (C) 2009-2012 bytemine GmbH                     *
+ * Author: Daniel Rauer                     E-Mail:    rauer@bytemine.net *
+ *                                                                        *
+ * http://www.bytemine.net/                                               *
+ *************************************************************************/
+
+package net.bytemine.manager.tests;
+
+import java.io.ByteArrayInputStream;
+import java.io.PipedInputStream;
+import java.io.PipedOutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import net.bytemine.openvpn.ssh.SSHLineReader;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class SSHLineReaderTest {
+
+    @Test
+    public void testLineBreaks() throws Exception {
+        SSHLineReader reader = new SSHLineReader(
+                new ByteArrayInputStream(">00> a\n>00> b\r\n\r>01> c".getBytes("UTF-8")), 100);
+
+        List<String> lines = new ArrayList<String>();
+        List<String> batch;
+        while ((batch = reader.readLines()) != null)
+            lines.addAll(batch);
+        assertEquals(Arrays.asList(">00> a", ">00> b", "", ">01> c"), lines);
+        assertNull(reader.readLines());
+    }
+
+
+    @Test
+    public void testBatches() throws Exception {
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < 1000; i++)
+            text.append(">01> >LOG:").append(i).append("\r\n");
+        SSHLineReader reader = new SSHLineReader(new ByteArrayInputStream(text.toString().getBytes("UTF-8")), 256);
+
+        // the available lines are read at once, up to the maximum
+        assertEquals(256, reader.readLines().size());
+        assertEquals(256, reader.readLines().size());
+        assertEquals(256, reader.readLines().size());
+        List<String> last = reader.readLines();
+        assertEquals(232, last.size());
+        assertEquals(">01> >LOG:999", last.get(231));
+        assertNull(reader.readLines());
+    }
+
+
+    @Test
+    public void testBlocksUntilLineComplete() throws Exception {
+        PipedInputStream in = new PipedInputStream();
+        final PipedOutputStream out = new PipedOutputStream(in);
+        SSHLineReader reader = new SSHLineReader(in, 100);
+
+        // a complete line is returned without waiting for more
+        out.write(">00> READY\n>00> OK open".getBytes("UTF-8"));
+        assertEquals(Arrays.asList(">00> READY"), reader.readLines());
+
+        Thread writer = new Thread(() -> {
+            try {
+                Thread.sleep(200);
+                out.write(" 01\r".getBytes("UTF-8"));
+                out.flush();
+                Thread.sleep(200);
+                out.write("\n>01> END\n".getBytes("UTF-8"));
+                out.close();
+            } catch (Exception e) {
+                e.printStackTrace();
+            }
+        });
+        writer.start();
+
+        // blocks until the line is complete
+        assertEquals(Arrays.asList(">00> OK open 01"), reader.readLines());
+        // the \n after \r does not start an empty line
+        assertEquals(Arrays.asList(">01> END"), reader.readLines());
+        assertNull(reader.readLines());
+        writer.join();
+    }
+}
@@ -0,0 +1,131 @@
+/*************************************************************************
+ * Written by / Copyright (C) 2009-2012 bytemine GmbH                     *
+ * Author: Daniel Rauer                     E-Mail:    rauer@bytemine.net *
+ *                                                                        *
+ * http://www.bytemine.net/                                               *
+ *************************************************************************/
+
+package net.bytemine.manager.tests;
+
+import java.util.List;
+
+import net.bytemine.openvpn.ssh.SSHConstants;
+import net.bytemine.openvpn.ssh.SSHLineScanner;
+import net.bytemine.openvpn.test.SSHParserBenchmark;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class SSHLineScannerTest {
+
+    private SSHLineScanner scanner = new SSHLineScanner();
+
+
+    @Test
+    public void testSessionTranscript() throws Exception {
+        List<String> lines = SSHParserBenchmark.loadTranscript("transcripts/session.txt");
+
+        scanner.scan(lines.get(0));
+        assertEquals(SSHConstants.PREFIX_UNDEFINED, scanner.getPrefix());
+        assertNull(scanner.getChannel());
+
+        scan(lines, ">00> CHANNELS:");
+        assertEquals(SSHConstants.PREFIX_INPUT, scanner.getPrefix());
+        assertEquals("00", scanner.getChannel());
+        assertEquals(SSHLineScanner.KEYWORD_CHANNELS, scanner.getKeyword());
+
+        scan(lines, ">00> 02 VPNM \"mgmt tcp-bridged\"");
+        assertEquals(5, scanner.getTokenCount());
+        assertEquals("VPNM", scanner.getToken(2));
+
+        // the end of the channel list
+        assertTrue(lines.contains(">00>"));
+        scanner.scan(">00>");
+        assertEquals(1, scanner.getTokenCount());
+
+        scan(lines, ">00> OK open 01");
+        assertEquals(SSHLineScanner.KEYWORD_NONE, scanner.getKeyword());
+        assertEquals(SSHConstants.STATUS_CODE_OK, scanner.getStatus());
+        assertTrue(scanner.isNumber(3));
+        assertEquals("01", scanner.getToken(3));
+
+        scan(lines, "<01< version");
+        assertEquals(SSHConstants.PREFIX_OUTPUT, scanner.getPrefix());
+        assertEquals("01", scanner.getChannel());
+
+        assertKeyword(lines, ">01> OpenVPN Version:", SSHLineScanner.KEYWORD_VERSION);
+        assertKeyword(lines, ">01> OpenVPN CLIENT LIST", SSHLineScanner.KEYWORD_STATUS);
+        assertKeyword(lines, ">01> SUCCESS: common name 'bob' found", SSHLineScanner.KEYWORD_KILL_SUCCESS);
+        assertKeyword(lines, ">01> ERROR: common name 'carol' not found", SSHLineScanner.KEYWORD_KILL_FAILED);
+        assertKeyword(lines, ">01> >LOG:", SSHLineScanner.KEYWORD_LOG);
+
+        scan(lines, "!00! open channel 04 failed");
+        assertEquals(SSHConstants.PREFIX_ERROR, scanner.getPrefix());
+        assertEquals(SSHLineScanner.ERROR_OPEN_FAILED, scanner.getError());
+        scan(lines, "!00! open 02: connect");
+        assertEquals(SSHLineScanner.ERROR_OPEN_FAILED, scanner.getError());
+        scan(lines, "!00! another instance");
+        assertEquals(SSHLineScanner.ERROR_INSTANCE_FAILED, scanner.getError());
+    }
+
+
+    @Test
+    public void testLogTranscript() throws Exception {
+        int logs = 0;
+        for (String line : SSHParserBenchmark.loadTranscript("transcripts/log.txt")) {
+            scanner.scan(line);
+            assertEquals(SSHConstants.PREFIX_INPUT, scanner.getPrefix());
+            if (scanner.getKeyword() == SSHLineScanner.KEYWORD_LOG)
+                logs++;
+            else
+                assertEquals(SSHConstants.STATUS_CODE_OK, scanner.getStatus());
+        }
+        assertEquals(400, logs);
+    }
+
+
+    @Test
+    public void testTokens() {
+        scanner.scan("  _0A_   WAIT  open 7x ");
+        assertEquals(4, scanner.getTokenCount());
+        assertEquals(SSHConstants.PREFIX_INPUT_NO_NEWLINE, scanner.getPrefix());
+        String channel = scanner.getChannel();
+        assertEquals("0A", channel);
+        assertEquals(SSHConstants.STATUS_CODE_WAIT, scanner.getStatus());
+        assertFalse(scanner.isNumber(3));
+
+        // the channel names are not created again
+        scanner.scan(".0A. closing");
+        assertEquals(SSHConstants.PREFIX_CLOSEDOWN, scanner.getPrefix());
+        assertSame(channel, scanner.getChannel());
+
+        // prefixes must be closed by the same character
+        scanner.scan(">01< OK");
+        assertEquals(SSHConstants.PREFIX_UNDEFINED, scanner.getPrefix());
+        scanner.scan(">1> OK");
+        assertEquals(SSHConstants.PREFIX_UNDEFINED, scanner.getPrefix());
+        assertFalse(scanner.tokenEquals(2, "OK"));
+        assertNull(scanner.getToken(2));
+    }
+
+
+    private void assertKeyword(List<String> lines, String start, int keyword) {
+        scan(lines, start);
+        assertEquals(keyword, scanner.getKeyword());
+    }
+
+
+    /**
+     * Scans the first line of the transcript starting with the text
+     */
+    private void scan(List<String> lines, String start) {
+        for (String line : lines) {
+            if (line.startsWith(start)) {
+                scanner.scan(line);
+                return;
+            }
+        }
+        fail("no line " + start);
+    }
+}
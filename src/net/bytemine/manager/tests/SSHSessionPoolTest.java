@@ -0,0 +1,176 @@
+/*************************************************************************
+ * Written by / Copyright (C) 2009-2012 bytemine GmbH                     *
+ * Author: Daniel Rauer                     E-Mail:    rauer@bytemine.net *
+ *                                                                        *
+ * http://www.bytemine.net/                                               *
+ *************************************************************************/
+
+package net.bytemine.manager.tests;
+
+import java.lang.reflect.Field;
+import java.util.Vector;
+
+import net.bytemine.manager.Configuration;
+import net.bytemine.openvpn.ssh.SSHSessionPool;
+
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import com.jcraft.jsch.JSch;
+import com.jcraft.jsch.Session;
+
+import static org.junit.Assert.*;
+
+public class SSHSessionPoolTest {
+
+    private static int idleTimeout;
+    private static int keepAlive;
+
+    @BeforeClass
+    public static void setUpBeforeClass() {
+        System.err.println("\n\n\n>>> Setting up SSHSessionPoolTest");
+        idleTimeout = Configuration.getInstance().SSH_IDLE_TIMEOUT;
+        keepAlive = Configuration.getInstance().SSH_KEEPALIVE_INTERVAL;
+        // no keepalives to the fake sessions
+        Configuration.getInstance().SSH_KEEPALIVE_INTERVAL = 0;
+    }
+
+    @AfterClass
+    public static void tearDownAfterClass() {
+        SSHSessionPool.getInstance().closeAll();
+        Configuration.getInstance().SSH_IDLE_TIMEOUT = idleTimeout;
+        Configuration.getInstance().SSH_KEEPALIVE_INTERVAL = keepAlive;
+        System.err.println("\n\n\n>>> Teared down SSHSessionPoolTest");
+    }
+
+
+    @Test
+    public void testLeaseAndRelease() throws Exception {
+        SSHSessionPool pool = SSHSessionPool.getInstance();
+        Session session = createSession("root", "lease.example.com", 22);
+        Session otherPort = createSession("root", "lease.example.com", 2222);
+        pool.addSession(session);
+        pool.addSession(otherPort);
+
+        pool.lease(session);
+        pool.removeSession(SSHSessionPool.createKey("root", "lease.example.com", 22));
+
+        // the leased session stays connected, but is not pooled any more
+        assertTrue(session.isConnected());
+        assertFalse(isPooled("root@lease.example.com:22"));
+        // the session on another port is not affected
+        assertTrue(otherPort.isConnected());
+        assertTrue(isPooled("root@lease.example.com:2222"));
+
+        pool.release(session);
+        assertFalse(session.isConnected());
+    }
+
+
+    @Test
+    public void testRemoveIdleSession() throws Exception {
+        SSHSessionPool pool = SSHSessionPool.getInstance();
+        Session session = createSession("root", "idle.example.com", 22);
+        pool.addSession(session);
+
+        pool.removeSession(SSHSessionPool.createKey("root", "idle.example.com", 22));
+        assertFalse(session.isConnected());
+        assertFalse(isPooled("root@idle.example.com:22"));
+    }
+
+
+    @Test
+    public void testReplaceLeasedSession() throws Exception {
+        SSHSessionPool pool = SSHSessionPool.getInstance();
+        Session first = createSession("root", "replace.example.com", 22);
+        Session second = createSession("root", "replace.example.com", 22);
+        pool.addSession(first);
+        pool.lease(first);
+
+        pool.addSession(second);
+        assertTrue(first.isConnected());
+
+        pool.release(first);
+        assertFalse(first.isConnected());
+        assertTrue(second.isConnected());
+        assertTrue(isPooled("root@replace.example.com:22"));
+    }
+
+
+    @Test
+    public void testEviction() throws Exception {
+        SSHSessionPool pool = SSHSessionPool.getInstance();
+        Session idle = createSession("root", "evict.example.com", 22);
+        Session leased = createSession("admin", "evict.example.com", 22);
+        pool.addSession(idle);
+        pool.addSession(leased);
+        pool.lease(leased);
+
+        Configuration.getInstance().SSH_IDLE_TIMEOUT = 0;
+        Thread.sleep(10);
+        pool.maintain();
+
+        assertFalse(idle.isConnected());
+        assertFalse(isPooled("root@evict.example.com:22"));
+        assertTrue(leased.isConnected());
+        assertTrue(isPooled("admin@evict.example.com:22"));
+
+        pool.release(leased);
+        Thread.sleep(10);
+        pool.maintain();
+        assertFalse(leased.isConnected());
+        assertFalse(isPooled("admin@evict.example.com:22"));
+        Configuration.getInstance().SSH_IDLE_TIMEOUT = idleTimeout;
+    }
+
+
+    @Test
+    public void testKeepAliveFailures() throws Exception {
+        SSHSessionPool pool = SSHSessionPool.getInstance();
+        // the keepalives to the fake session fail
+        Session session = createSession("root", "keepalive.example.com", 22);
+        pool.addSession(session);
+        pool.lease(session);
+
+        Configuration.getInstance().SSH_KEEPALIVE_INTERVAL = 1;
+        try {
+            Thread.sleep(1100);
+            pool.maintain();
+            pool.maintain();
+            assertTrue(isPooled("root@keepalive.example.com:22"));
+
+            // removed after the third failure, kept connected while leased
+            pool.maintain();
+            assertFalse(isPooled("root@keepalive.example.com:22"));
+            assertTrue(session.isConnected());
+
+            pool.release(session);
+            assertFalse(session.isConnected());
+        } finally {
+            Configuration.getInstance().SSH_KEEPALIVE_INTERVAL = 0;
+        }
+    }
+
+
+    private static boolean isPooled(String key) {
+        Vector<String[]> health = SSHSessionPool.getInstance().getHealth();
+        for (String[] session : health) {
+            if (key.equals(session[0]))
+                return true;
+        }
+        return false;
+    }
+
+    /**
+     * Creates a session which claims to be connected,
+     * disconnect() resets the state without network access
+     */
+    private static Session createSession(String username, String hostname, int port) throws Exception {
+        Session session = new JSch().getSession(username, hostname, port);
+        Field connected = Session.class.getDeclaredField("isConnected");
+        connected.setAccessible(true);
+        connected.setBoolean(session, true);
+        return session;
+    }
+}
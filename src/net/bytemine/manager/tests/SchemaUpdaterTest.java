@@ -73,10 +73,10 @@ public class SchemaUpdaterTest {
         
         schema = SchemaUpdater.detect(DBConnector.getInstance().getConnection());
         // now the schema should be complete
-        assertEquals(13, schema.getTableNames().size());
+        assertEquals(18, schema.getTableNames().size());
         
         Object[] completeTables = schema.getTables().keySet().toArray();
-        assertArrayEquals(completeTables, new String[] {"X509", "KNOWNHOSTS", "SERVER_USER", "USER", "GROUPS_USER", "CONFIGURATION", "GROUPS", "PKCS12", "CRL", "LICENCE", "TREESTATES", "SERVER", "CRLENTRY"});
+        assertArrayEquals(completeTables, new String[] {"X509", "KNOWNHOSTS", "SERVER_USER", "USER", "GROUPS_USER", "CONFIGURATION", "GROUPS", "PKCS12", "CRL", "LICENCE", "TREESTATES", "SERVER", "CRLENTRY", "SYNCSTATE", "IDSEQUENCE", "KEYPAIRPOOL", "DHPARAMETERS", "TRAFFICSTATS"});
         
         // all columns exist in complete schema
         crlentryTable = schema.getTables().get("CRLENTRY");
@@ -0,0 +1,271 @@
+/*************************************************************************
+ * Written by / Copyright (C) 2009-2012 bytemine GmbH                     *
+ * Author: Daniel Rauer                     E-Mail:    rauer@bytemine.net *
+ *                                                                        *
+ * http://www.bytemine.net/                                               *
+ *************************************************************************/
+
+package net.bytemine.manager.tests;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import net.bytemine.openvpn.ClientStatus;
+import net.bytemine.openvpn.Server;
+import net.bytemine.openvpn.StatusCollector;
+import net.bytemine.openvpn.StatusSnapshot;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class StatusCollectorTest {
+
+    private static final String STATUS =
+            "TITLE\tOpenVPN 2.4.7 x86_64-pc-linux-gnu\r\n" +
+            "TIME\tWed Oct 14 10:00:00 2026\t1791972000\r\n" +
+            "HEADER\tCLIENT_LIST\tCommon Name\tReal Address\tVirtual Address\tVirtual IPv6 Address\t" +
+                    "Bytes Received\tBytes Sent\tConnected Since\tConnected Since (time_t)\tUsername\t" +
+                    "Client ID\tPeer ID\r\n" +
+            "CLIENT_LIST\talice\t192.0.2.10:50001\t10.8.0.6\t\t1000\t2000\tWed Oct 14 09:00:00 2026\t" +
+                    "1791968400\tUNDEF\t7\t0\r\n" +
+            "CLIENT_LIST\tbj\u00f6rn\t192.0.2.11:50002\t10.8.0.10\t\t3000\t4000\tWed Oct 14 09:30:00 2026\t" +
+                    "1791970200\tUNDEF\t8\t1\r\n" +
+            "HEADER\tROUTING_TABLE\tVirtual Address\tCommon Name\tReal Address\tLast Ref\tLast Ref (time_t)\r\n" +
+            "ROUTING_TABLE\t10.8.0.6\talice\t192.0.2.10:50001\tWed Oct 14 09:59:00 2026\t1791971940\r\n" +
+            "GLOBAL_STATS\tMax bcast/mcast queue length\t0\r\n" +
+            "END\r\n";
+
+    // status 3 of OpenVPN 2.2, without headers and load-stats
+    private static final String OLD_STATUS =
+            "TITLE\tOpenVPN 2.2.1\r\n" +
+            "TIME\tWed Oct 14 10:00:00 2026\t1791972000\r\n" +
+            "CLIENT_LIST\tcarol\t192.0.2.12:50003\t10.8.0.14\t500\t600\tWed Oct 14 09:00:00 2026\t1791968400\tUNDEF\r\n" +
+            "ROUTING_TABLE\t10.8.0.14\tcarol\t192.0.2.12:50003\tWed Oct 14 09:59:00 2026\t1791971940\r\n" +
+            "END\r\n";
+
+    private StatusCollector collector;
+    private List<FakeManagement> fakes = new ArrayList<FakeManagement>();
+    // the number of published snapshots by server
+    private Map<String, AtomicInteger> received = new ConcurrentHashMap<String, AtomicInteger>();
+
+
+    @Before
+    public void setUp() throws Exception {
+        collector = new StatusCollector();
+        collector.setInterval(1);
+        collector.addListener(snapshot -> {
+            received.putIfAbsent(snapshot.getIdentifier(), new AtomicInteger(0));
+            received.get(snapshot.getIdentifier()).incrementAndGet();
+        });
+        collector.start();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        collector.shutdown();
+        collector.join(5000);
+        for (FakeManagement fake : fakes)
+            fake.close();
+    }
+
+
+    @Test
+    public void testSnapshotsOfManyServers() throws Exception {
+        int count = 50;
+        for (int i = 0; i < count; i++) {
+            FakeManagement fake = new FakeManagement(null, STATUS, true);
+            fakes.add(fake);
+            collector.addServer(new Server("server" + i, "127.0.0.1", fake.getPort(), null));
+        }
+
+        for (int i = 0; i < count; i++)
+            waitForSnapshots("server" + i, 1);
+        assertTrue(collector.isConnected("server0"));
+
+        StatusSnapshot snapshot = collector.getStatus("server" + (count - 1));
+        assertEquals(1791972000000L, snapshot.getTime());
+        assertEquals(2, snapshot.getClientCount());
+        assertEquals(123456, snapshot.getBytesIn());
+        assertEquals(654321, snapshot.getBytesOut());
+        assertEquals(2, snapshot.getClients().size());
+
+        ClientStatus alice = snapshot.getClients().get(0);
+        assertEquals("alice", alice.getCommonName());
+        assertEquals("192.0.2.10:50001", alice.getRealAddress());
+        assertEquals("10.8.0.6", alice.getVirtualAddress());
+        assertEquals(1000, alice.getBytesReceived());
+        assertEquals(2000, alice.getBytesSent());
+        assertEquals(1791968400000L, alice.getConnectedSince());
+        assertEquals(1791971940000L, alice.getLastRef());
+        assertEquals(7, alice.getClientId());
+
+        ClientStatus bjoern = snapshot.getClients().get(1);
+        assertEquals("bj\u00f6rn", bjoern.getCommonName());
+        assertEquals(0, bjoern.getLastRef());
+
+        // the status is collected again every interval over the same connection
+        waitForSnapshots("server0", 2);
+        assertEquals(1, fakes.get(0).connections.get());
+    }
+
+
+    @Test
+    public void testPasswordAndReconnect() throws Exception {
+        FakeManagement fake = new FakeManagement("secret", STATUS, true);
+        fakes.add(fake);
+        collector.addServer(new Server("protected", "127.0.0.1", fake.getPort(), null), "secret");
+
+        waitForSnapshots("protected", 1);
+        fake.dropConnections();
+        int before = received.get("protected").get();
+
+        // the connection is opened again after one interval
+        waitForSnapshots("protected", before + 1);
+        assertEquals(2, fake.connections.get());
+    }
+
+
+    @Test
+    public void testOldStatusFormat() throws Exception {
+        FakeManagement fake = new FakeManagement(null, OLD_STATUS, false);
+        fakes.add(fake);
+        collector.addServer(new Server("old", "127.0.0.1", fake.getPort(), null));
+
+        waitForSnapshots("old", 1);
+        StatusSnapshot snapshot = collector.getStatus("old");
+        assertEquals(1, snapshot.getClientCount());
+        assertEquals(-1, snapshot.getBytesIn());
+
+        ClientStatus carol = snapshot.getClients().get(0);
+        assertEquals("carol", carol.getCommonName());
+        assertEquals("10.8.0.14", carol.getVirtualAddress());
+        assertEquals(500, carol.getBytesReceived());
+        assertEquals(600, carol.getBytesSent());
+        assertEquals(1791968400000L, carol.getConnectedSince());
+        assertEquals(1791971940000L, carol.getLastRef());
+        assertEquals(-1, carol.getClientId());
+    }
+
+
+    /**
+     * Waits until the given number of snapshots of the server is published
+     */
+    private void waitForSnapshots(String identifier, int count) throws Exception {
+        long start = System.currentTimeMillis();
+        while (System.currentTimeMillis() - start < 20000) {
+            AtomicInteger snapshots = received.get(identifier);
+            if (snapshots != null && snapshots.get() >= count)
+                return;
+            Thread.sleep(20);
+        }
+        fail("no status of " + identifier);
+    }
+
+
+    /**
+     * A management interface answering 'status 3' and 'load-stats',
+     * the replies are written in small pieces
+     */
+    private static class FakeManagement extends Thread {
+        private final ServerSocket serverSocket;
+        private final String password;
+        private final String status;
+        private final boolean loadStats;
+        private final List<Socket> sockets = new ArrayList<Socket>();
+        private final AtomicInteger connections = new AtomicInteger(0);
+
+        private FakeManagement(String password, String status, boolean loadStats) throws IOException {
+            this.serverSocket = new ServerSocket(0);
+            this.password = password;
+            this.status = status;
+            this.loadStats = loadStats;
+            setDaemon(true);
+            start();
+        }
+
+        private int getPort() {
+            return serverSocket.getLocalPort();
+        }
+
+        public void run() {
+            try {
+                while (true) {
+                    final Socket socket = serverSocket.accept();
+                    synchronized (sockets) {
+                        sockets.add(socket);
+                    }
+                    connections.incrementAndGet();
+                    Thread t = new Thread(() -> serve(socket));
+                    t.setDaemon(true);
+                    t.start();
+                }
+            } catch (IOException e) {
+                // closed
+            }
+        }
+
+        private void serve(Socket socket) {
+            try {
+                BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream(), "UTF-8"));
+                OutputStream out = socket.getOutputStream();
+                if (password != null) {
+                    write(out, "ENTER PASSWORD:");
+                    if (!password.equals(in.readLine())) {
+                        write(out, "ERROR: bad password\r\n");
+                        socket.close();
+                        return;
+                    }
+                    write(out, "SUCCESS: password is correct\r\n");
+                }
+                write(out, ">INFO:OpenVPN Management Interface Version 1 -- type 'help' for more info\r\n");
+
+                String line;
+                while ((line = in.readLine()) != null) {
+                    if ("status 3".equals(line)) {
+                        write(out, status);
+                    } else if ("load-stats".equals(line)) {
+                        if (loadStats)
+                            write(out, "SUCCESS: nclients=2,bytesin=123456,bytesout=654321\r\n");
+                        else
+                            write(out, "ERROR: unknown command, enter 'help' for more options\r\n");
+                    }
+                }
+            } catch (IOException e) {
+                // connection dropped
+            }
+        }
+
+        private static void write(OutputStream out, String text) throws IOException {
+            byte[] bytes = text.getBytes("UTF-8");
+            for (int i = 0; i < bytes.length; i += 7) {
+                out.write(bytes, i, Math.min(7, bytes.length - i));
+                out.flush();
+            }
+        }
+
+        private void dropConnections() throws IOException {
+            synchronized (sockets) {
+                for (Socket socket : sockets)
+                    socket.close();
+                sockets.clear();
+            }
+        }
+
+        private void close() throws IOException {
+            dropConnections();
+            serverSocket.close();
+        }
+    }
+}
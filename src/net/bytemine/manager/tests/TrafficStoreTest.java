@@ -0,0 +1,163 @@
+/*************************************************************************
+ * Written by / Copyright (C) 2009-2012 bytemine GmbH                     *
+ * Author: Daniel Rauer                     E-Mail:    rauer@bytemine.net *
+ *                                                                        *
+ * http://www.bytemine.net/                                               *
+ *************************************************************************/
+
+package net.bytemine.manager.tests;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import net.bytemine.manager.bean.TrafficSample;
+import net.bytemine.manager.db.TrafficQueries;
+import net.bytemine.manager.utility.TrafficStore;
+import net.bytemine.openvpn.ClientStatus;
+import net.bytemine.openvpn.StatusSnapshot;
+
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class TrafficStoreTest {
+
+    private static final long MINUTE = 60 * 1000L;
+    private static final long DAY = 24 * 60 * MINUTE;
+
+    @BeforeClass
+    public static void setUpBeforeClass() throws Exception {
+        System.err.println("\n\n\n>>> Setting up TrafficStoreTest");
+        ManagerTestSuite.setUpTest();
+    }
+
+    @AfterClass
+    public static void tearDownAfterClass() {
+        ManagerTestSuite.tearDownTest();
+        System.err.println("\n\n\n>>> Teared down TrafficStoreTest");
+    }
+
+
+    @Test
+    public void testHistory() throws Exception {
+        TrafficStore store = TrafficStore.getInstance();
+        long base = TrafficQueries.periodStart(System.currentTimeMillis() - 3 * 60 * MINUTE,
+                TrafficSample.RESOLUTION_HOUR);
+
+        // the first status only sets the counters
+        store.record(snapshot("history", base + 10000, 2, 10000, 20000,
+                client("alice", 7, 1000, 2000), client("bob", 8, 300, 400)));
+        store.record(snapshot("history", base + 40000, 2, 10600, 20700,
+                client("alice", 7, 1500, 2600), client("bob", 8, 350, 450)));
+        // alice connected again
+        store.record(snapshot("history", base + 70000, 2, 10800, 21000,
+                client("alice", 9, 100, 200), client("bob", 8, 400, 500)));
+        // the server was restarted, alice has two sessions
+        store.record(snapshot("history", base + 130000, 3, 50, 60,
+                client("alice", 9, 150, 250), client("alice", 10, 10, 20)));
+        store.flush();
+
+        List<TrafficSample> minutes = TrafficQueries.getSamples("history", "",
+                TrafficSample.RESOLUTION_MINUTE, base, base + 3 * MINUTE);
+        assertEquals(3, minutes.size());
+        assertSample(minutes.get(0), base, 600, 700, 2);
+        assertSample(minutes.get(1), base + MINUTE, 200, 300, 2);
+        assertSample(minutes.get(2), base + 2 * MINUTE, 50, 60, 3);
+        assertEquals(10.0, minutes.get(0).getReceiveRate(), 0.001);
+
+        List<TrafficSample> alice = TrafficQueries.getSamples("history", "alice",
+                TrafficSample.RESOLUTION_MINUTE, base, base + 3 * MINUTE);
+        assertEquals(3, alice.size());
+        assertSample(alice.get(0), base, 500, 600, 1);
+        assertSample(alice.get(1), base + MINUTE, 100, 200, 1);
+        assertSample(alice.get(2), base + 2 * MINUTE, 60, 70, 2);
+
+        // the same traffic is rolled up into the hour and the day
+        List<TrafficSample> hours = TrafficQueries.getSamples("history", "",
+                TrafficSample.RESOLUTION_HOUR, base, base + 60 * MINUTE);
+        assertEquals(1, hours.size());
+        assertSample(hours.get(0), base, 850, 1060, 3);
+        List<TrafficSample> days = TrafficQueries.getSamples("history", "",
+                TrafficSample.RESOLUTION_DAY, base - DAY, base + DAY);
+        long dayTraffic = 0;
+        for (TrafficSample day : days)
+            dayTraffic += day.getBytesReceived();
+        assertEquals(850, dayTraffic);
+
+        // traffic after a flush is added to the same minute
+        store.record(snapshot("history", base + 150000, 3, 70, 80,
+                client("alice", 9, 160, 260), client("alice", 10, 10, 20)));
+        store.flush();
+        minutes = TrafficQueries.getSamples("history", "",
+                TrafficSample.RESOLUTION_MINUTE, base + 2 * MINUTE, base + 3 * MINUTE);
+        assertSample(minutes.get(0), base + 2 * MINUTE, 70, 80, 3);
+
+        TrafficSample totals = TrafficQueries.getTotals("history", "", base, base + 3 * MINUTE);
+        assertEquals(870, totals.getBytesReceived());
+        assertEquals(1080, totals.getBytesSent());
+        assertEquals(3, totals.getSessions());
+        assertEquals(180, totals.getResolution());
+        assertEquals(3, TrafficQueries.getPeakSessions("history", base, base + 3 * MINUTE));
+
+        List<TrafficSample> clients = TrafficQueries.getClientTotals("history", base, base + 3 * MINUTE);
+        assertEquals(2, clients.size());
+        assertEquals("alice", clients.get(0).getClient());
+        assertEquals(670, clients.get(0).getBytesReceived());
+        assertEquals(880, clients.get(0).getBytesSent());
+        assertEquals(2, clients.get(0).getSessions());
+        assertEquals("bob", clients.get(1).getClient());
+        assertEquals(100, clients.get(1).getBytesReceived());
+    }
+
+
+    @Test
+    public void testRetention() throws Exception {
+        long now = System.currentTimeMillis();
+        long old = TrafficQueries.periodStart(now - 3 * DAY, TrafficSample.RESOLUTION_DAY);
+        TrafficQueries.addSamples(Arrays.asList(
+                new TrafficSample("retention", "", old, TrafficSample.RESOLUTION_MINUTE, 100, 200, 1)));
+
+        TrafficQueries.purge(now);
+
+        // the minutes are kept two days, the hours a month
+        assertTrue(TrafficQueries.getSamples("retention", "",
+                TrafficSample.RESOLUTION_MINUTE, 0, now).isEmpty());
+        assertEquals(1, TrafficQueries.getSamples("retention", "",
+                TrafficSample.RESOLUTION_HOUR, 0, now).size());
+        assertEquals(1, TrafficQueries.getSamples("retention", "",
+                TrafficSample.RESOLUTION_DAY, 0, now).size());
+
+        // totals of old ranges use the finest resolution still kept
+        assertEquals(TrafficSample.RESOLUTION_HOUR, TrafficQueries.getResolution(old, now));
+        assertEquals(100, TrafficQueries.getTotals("retention", "", old, old + DAY).getBytesReceived());
+    }
+
+
+    private static void assertSample(TrafficSample sample, long time, long received, long sent, int sessions) {
+        assertEquals(time, sample.getTime());
+        assertEquals(received, sample.getBytesReceived());
+        assertEquals(sent, sample.getBytesSent());
+        assertEquals(sessions, sample.getSessions());
+    }
+
+
+    private static StatusSnapshot snapshot(String server, long time, int clientCount,
+                                           long bytesIn, long bytesOut, ClientStatus... clients) {
+        return new StatusSnapshot(server, time, new ArrayList<ClientStatus>(Arrays.asList(clients)),
+                clientCount, bytesIn, bytesOut);
+    }
+
+
+    private static ClientStatus client(String commonName, long clientId, long received, long sent) {
+        ClientStatus client = new ClientStatus();
+        client.setCommonName(commonName);
+        client.setRealAddress("192.0.2.1:" + (50000 + clientId));
+        client.setBytesReceived(received);
+        client.setBytesSent(sent);
+        client.setClientId(clientId);
+        return client;
+    }
+}
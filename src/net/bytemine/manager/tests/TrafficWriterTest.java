@@ -0,0 +1,110 @@
+/*************************************************************************
+ * Written by / Copyright (C) 2009-2012 bytemine GmbH                     *
+ * Author: Daniel Rauer                     E-Mail:    rauer@bytemine.net *
+ *                                                                        *
+ * http://www.bytemine.net/                                               *
+ *************************************************************************/
+
+package net.bytemine.manager.tests;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+
+import net.bytemine.manager.bean.TrafficSample;
+import net.bytemine.manager.db.DBConnector;
+import net.bytemine.manager.db.TrafficQueries;
+import net.bytemine.manager.utility.TrafficStore;
+import net.bytemine.openvpn.ClientStatus;
+import net.bytemine.openvpn.StatusSnapshot;
+
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class TrafficWriterTest {
+
+    private static final long MINUTE = 60 * 1000L;
+
+    @BeforeClass
+    public static void setUpBeforeClass() throws Exception {
+        System.err.println("\n\n\n>>> Setting up TrafficWriterTest");
+        ManagerTestSuite.setUpTest();
+    }
+
+    @AfterClass
+    public static void tearDownAfterClass() {
+        ManagerTestSuite.tearDownTest();
+        System.err.println("\n\n\n>>> Teared down TrafficWriterTest");
+    }
+
+
+    @Test
+    public void testRecordDuringTransaction() throws Exception {
+        final TrafficStore store = TrafficStore.getInstance();
+        final long base = TrafficQueries.periodStart(System.currentTimeMillis() - 60 * MINUTE,
+                TrafficSample.RESOLUTION_HOUR);
+
+        // another thread holds a transaction
+        final CountDownLatch started = new CountDownLatch(1);
+        final CountDownLatch finish = new CountDownLatch(1);
+        Thread transaction = new Thread(() -> {
+            try {
+                DBConnector.getInstance().executeInTransaction(conn -> {
+                    started.countDown();
+                    finish.await();
+                    return null;
+                });
+            } catch (Exception e) {
+                fail(e.getMessage());
+            }
+        });
+        transaction.setDaemon(true);
+        transaction.start();
+        started.await();
+
+        // the next minute hands the first one to the writer
+        Thread reader = new Thread(() -> {
+            store.record(snapshot("writer", base + 10000, 100, 200, client("carol", 1, 10, 20)));
+            store.record(snapshot("writer", base + 40000, 400, 600, client("carol", 1, 40, 60)));
+            store.record(snapshot("writer", base + 70000, 500, 700, client("carol", 1, 50, 70)));
+        });
+        reader.setDaemon(true);
+        reader.start();
+        reader.join(5000);
+        boolean waiting = reader.isAlive();
+
+        finish.countDown();
+        transaction.join();
+        reader.join();
+        assertFalse(waiting);
+
+        store.flush();
+        List<TrafficSample> minutes = TrafficQueries.getSamples("writer", "",
+                TrafficSample.RESOLUTION_MINUTE, base, base + 2 * MINUTE);
+        assertEquals(2, minutes.size());
+        assertEquals(300, minutes.get(0).getBytesReceived());
+        assertEquals(100, minutes.get(1).getBytesReceived());
+    }
+
+
+    private static StatusSnapshot snapshot(String server, long time, long bytesIn, long bytesOut,
+                                           ClientStatus... clients) {
+        return new StatusSnapshot(server, time, new ArrayList<ClientStatus>(Arrays.asList(clients)),
+                clients.length, bytesIn, bytesOut);
+    }
+
+
+    private static ClientStatus client(String commonName, long clientId, long received, long sent) {
+        ClientStatus client = new ClientStatus();
+        client.setCommonName(commonName);
+        client.setRealAddress("192.0.2.1:" + (50000 + clientId));
+        client.setBytesReceived(received);
+        client.setBytesSent(sent);
+        client.setClientId(clientId);
+        return client;
+    }
+}
@@ -0,0 +1,174 @@
+/*************************************************************************
+ * Written by / Copyright (C) 2009-2012 bytemine GmbH                     *
+ * Author: Daniel Rauer                     E-Mail:    rauer@bytemine.net *
+ *                                                                        *
+ * http://www.bytemine.net/                                               *
+ *************************************************************************/
+
+package net.bytemine.manager.tests;
+
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Vector;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import net.bytemine.manager.bean.User;
+import net.bytemine.manager.db.DBConnector;
+import net.bytemine.manager.db.ServerQueries;
+import net.bytemine.manager.db.UserDAO;
+import net.bytemine.manager.db.UserQueries;
+
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class TransactionTest {
+
+    @BeforeClass
+    public static void setUpBeforeClass() {
+        System.err.println("\n\n\n>>> Setting up TransactionTest");
+        ManagerTestSuite.setUpTest();
+    }
+
+    @AfterClass
+    public static void tearDownAfterClass() {
+        ManagerTestSuite.tearDownTest();
+        System.err.println("\n\n\n>>> Teared down TransactionTest");
+    }
+
+
+    @Test
+    public void testCommitAndRollback() throws Exception {
+        DBConnector db = DBConnector.getInstance();
+
+        db.executeInTransaction(conn -> {
+            insertGroup(1, "committed");
+            return null;
+        });
+        assertTrue(isGroupExisting(1));
+
+        try {
+            db.executeInTransaction(conn -> {
+                insertGroup(2, "rolled back");
+                throw new Exception("failure");
+            });
+            fail("exception expected");
+        } catch (Exception e) {
+            assertEquals("failure", e.getMessage());
+        }
+        assertFalse(isGroupExisting(2));
+        assertTrue(db.getConnection().getAutoCommit());
+    }
+
+
+    @Test
+    public void testNestedRollback() throws Exception {
+        DBConnector db = DBConnector.getInstance();
+
+        try {
+            db.executeInTransaction(conn -> {
+                insertGroup(3, "outer");
+                try {
+                    db.executeInTransaction(conn2 -> {
+                        insertGroup(4, "inner");
+                        throw new Exception("inner failure");
+                    });
+                } catch (Exception ignored) {
+                }
+                return null;
+            });
+            fail("the outer transaction must not commit");
+        } catch (SQLException e) {
+            // expected
+        }
+        assertFalse(isGroupExisting(3));
+        assertFalse(isGroupExisting(4));
+        assertTrue(db.getConnection().getAutoCommit());
+    }
+
+
+    @Test
+    public void testBatchWrites() throws Exception {
+        Vector<User> users = new Vector<User>();
+        for (int i = 0; i < 100; i++) {
+            User user = new User("0");
+            user.setUsername("batchuser" + i);
+            user.setPassword("secret");
+            user.setX509id(-1);
+            users.add(user);
+        }
+        UserDAO.getInstance().create(users);
+
+        Vector<String> userids = new Vector<String>();
+        for (User user : users) {
+            assertTrue(user.getUserid() > 0);
+            userids.add(user.getUserid() + "");
+        }
+        assertEquals(users.get(0).getUserid() + 99, users.get(99).getUserid());
+
+        ServerQueries.reconnectUsersAndServer(42, userids);
+        assertEquals(100, UserQueries.getUsersForServer("42").size());
+
+        // replaces the existing connections
+        userids.setSize(10);
+        ServerQueries.reconnectUsersAndServer(42, userids);
+        assertEquals(10, UserQueries.getUsersForServer("42").size());
+    }
+
+
+    @Test
+    public void testPlainWriteOfOtherThread() throws Exception {
+        final DBConnector db = DBConnector.getInstance();
+        final CountDownLatch transactionStarted = new CountDownLatch(1);
+
+        Thread transactional = new Thread() {
+            public void run() {
+                try {
+                    db.executeInTransaction(conn -> {
+                        insertGroup(5, "rolled back");
+                        transactionStarted.countDown();
+                        Thread.sleep(500);
+                        throw new Exception("failure");
+                    });
+                } catch (Exception ignored) {
+                }
+            }
+        };
+        transactional.setDaemon(true);
+        transactional.start();
+        assertTrue(transactionStarted.await(5, TimeUnit.SECONDS));
+
+        // waits for the transaction instead of joining it
+        insertGroup(6, "plain");
+        transactional.join(5000);
+
+        assertFalse(isGroupExisting(5));
+        assertTrue(isGroupExisting(6));
+        assertTrue(db.getConnection().getAutoCommit());
+    }
+
+
+    private static void insertGroup(int groupid, String name) throws SQLException {
+        PreparedStatement pst = DBConnector.getInstance().getConnection().prepareStatement(
+                "INSERT INTO groups(groupid, name, description) VALUES(?,?,'')");
+        pst.setInt(1, groupid);
+        pst.setString(2, name);
+        pst.executeUpdate();
+        pst.close();
+    }
+
+    private static boolean isGroupExisting(int groupid) throws SQLException {
+        PreparedStatement pst = DBConnector.getInstance().getConnection().prepareStatement(
+                "SELECT groupid FROM groups WHERE groupid=?");
+        pst.setInt(1, groupid);
+        ResultSet rs = pst.executeQuery();
+        boolean existing = rs.next();
+        rs.close();
+        pst.close();
+        return existing;
+    }
+}
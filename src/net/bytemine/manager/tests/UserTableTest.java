@@ -0,0 +1,128 @@
+/*************************************************************************
+ * Written by / Copyright (C) 2009-2012 bytemine GmbH                     *
+ * Author: Daniel Rauer                     E-Mail:    rauer@bytemine.net *
+ *                                                                        *
+ * http://www.bytemine.net/                                               *
+ *************************************************************************/
+
+package net.bytemine.manager.tests;
+
+import java.util.Hashtable;
+import java.util.Vector;
+
+import net.bytemine.manager.action.ServerAction;
+import net.bytemine.manager.action.UserAction;
+import net.bytemine.manager.bean.CRLEntry;
+import net.bytemine.manager.bean.Server;
+import net.bytemine.manager.bean.User;
+import net.bytemine.manager.bean.X509;
+import net.bytemine.manager.db.ServerQueries;
+import net.bytemine.manager.db.UserQueries;
+
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class UserTableTest {
+
+    private static Server server;
+    private static int activeId;
+    private static int revokedId;
+    private static int noCertId;
+    private static int noPasswordId;
+
+    @BeforeClass
+    public static void setUpBeforeClass() throws Exception {
+        System.err.println("\n\n\n>>> Setting up UserTableTest");
+        ManagerTestSuite.setUpTest();
+        ManagerTestSuite.rootCreation();
+
+        int serverId = ServerAction.createServerAndCertificate("username", "keyfile",
+                true, "tableserver", "tableserver_cn", "tableserver_ou", "hostname", "userfile", "exportpath", "123",
+                "0", "456", "22", Server.SERVER_TYPE_BYTEMINE_APPLIANCE, "", "90", "1190", 0, false, "ccd (vpn)",
+                "10.1.2.", 24, 0, false, false, "", "", "");
+        server = Server.getServerById(serverId);
+
+        activeId = UserAction.createUserAndCertificate("active", "secret", "active", "technik", "a", "90", "ccccyubikey");
+        revokedId = UserAction.createUserAndCertificate("revoked", "secret", "revoked", "technik", "a", "90");
+        noCertId = new User("nocert", "secret", -1).getUserid();
+        noPasswordId = new User("nopassword", -1).getUserid();
+        // not connected to the server
+        UserAction.createUserAndCertificate("other", "secret", "other", "technik", "a", "90");
+
+        Vector<String> userIds = new Vector<String>();
+        userIds.add(Integer.toString(activeId));
+        userIds.add(Integer.toString(revokedId));
+        userIds.add(Integer.toString(noCertId));
+        userIds.add(Integer.toString(noPasswordId));
+        ServerQueries.reconnectUsersAndServer(Integer.toString(serverId), userIds);
+
+        // revoke the certificate of one user
+        X509 x509 = X509.getX509ById(User.getUserByID(revokedId).getX509id());
+        new CRLEntry(x509.getSerial());
+    }
+
+    @AfterClass
+    public static void tearDownAfterClass() {
+        ManagerTestSuite.tearDownTest();
+        System.err.println("\n\n\n>>> Teared down UserTableTest");
+    }
+
+
+    @Test
+    public void testPasswordsWithoutRevokedUsers() throws Exception {
+        Hashtable<String, String> table = UserQueries.getUserTableForServer(server, false, false);
+
+        assertEquals(2, table.size());
+        assertEquals(getPassword(activeId) + ":ccccyubikey", table.get("active"));
+        assertEquals(getPassword(noCertId), table.get("nocert"));
+        assertFalse(table.containsKey("revoked"));
+        // users without password are never exported
+        assertFalse(table.containsKey("nopassword"));
+        assertFalse(table.containsKey("other"));
+
+        // the default does not export revoked users
+        assertEquals(table, UserQueries.getUserTableForServer(server, false));
+    }
+
+
+    @Test
+    public void testPasswordsWithRevokedUsers() throws Exception {
+        Hashtable<String, String> table = UserQueries.getUserTableForServer(server, false, true);
+
+        assertEquals(3, table.size());
+        assertEquals(getPassword(activeId) + ":ccccyubikey", table.get("active"));
+        assertEquals(getPassword(revokedId), table.get("revoked"));
+        assertEquals(getPassword(noCertId), table.get("nocert"));
+        assertFalse(table.containsKey("nopassword"));
+    }
+
+
+    @Test
+    public void testImportListWithoutRevokedUsers() throws Exception {
+        Hashtable<String, String> table = UserQueries.getUserTableForServer(server, true, false);
+
+        assertEquals(3, table.size());
+        assertEquals(Integer.toString(activeId), table.get("active"));
+        assertEquals(Integer.toString(noCertId), table.get("nocert"));
+        assertEquals(Integer.toString(noPasswordId), table.get("nopassword"));
+        assertFalse(table.containsKey("revoked"));
+    }
+
+
+    @Test
+    public void testImportListWithRevokedUsers() throws Exception {
+        Hashtable<String, String> table = UserQueries.getUserTableForServer(server, true, true);
+
+        assertEquals(4, table.size());
+        assertEquals(Integer.toString(revokedId), table.get("revoked"));
+        assertEquals(Integer.toString(noPasswordId), table.get("nopassword"));
+    }
+
+
+    private static String getPassword(int userid) {
+        return User.getUserByID(userid).getPassword();
+    }
+}
@@ -0,0 +1,48 @@
+/*************************************************************************
+ * Written by / Copyright (C) 2009-2012 bytemine GmbH                     *
+ * Author: Daniel Rauer                     E-Mail:    rauer@bytemine.net *
+ *                                                                        *
+ * http://www.bytemine.net/                                               *
+ *************************************************************************/
+
+package net.bytemine.manager.tests;
+
+import net.bytemine.openvpn.UserfileDiff;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class UserfileDiffTest {
+
+    @Test
+    public void testDiff() {
+        String local = "alice:hash1\nbob:hash2\ncarol:hash3\n";
+        String server = "bob:hash2\r\ncarol:oldhash\r\ndave:hash4\r\n\r\n";
+
+        UserfileDiff diff = UserfileDiff.compare(local, server);
+
+        assertArrayEquals(new String[] {"alice"}, diff.getAdded().toArray());
+        assertArrayEquals(new String[] {"dave"}, diff.getRemoved().toArray());
+        assertArrayEquals(new String[] {"carol"}, diff.getChanged().toArray());
+    }
+
+    @Test
+    public void testEmptyServerFile() {
+        UserfileDiff diff = UserfileDiff.compare("alice:hash1\nbob:hash2", "");
+
+        assertEquals(2, diff.getAdded().size());
+        assertEquals(0, diff.getRemoved().size());
+        assertEquals(0, diff.getChanged().size());
+    }
+
+    @Test
+    public void testUnchanged() {
+        String userfile = "alice:$1$abc:def\nbob:hash2\n";
+        UserfileDiff diff = UserfileDiff.compare(userfile, userfile);
+
+        assertTrue(diff.getAdded().isEmpty());
+        assertTrue(diff.getRemoved().isEmpty());
+        assertTrue(diff.getChanged().isEmpty());
+    }
+}
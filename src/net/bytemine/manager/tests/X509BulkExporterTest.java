@@ -0,0 +1,145 @@
+/*************************************************************************
+ * Written by / Copyright (C) 2009-2012 bytemine GmbH                     *
+ * Author: Daniel Rauer                     E-Mail:    rauer@bytemine.net *
+ *                                                                        *
+ * http://www.bytemine.net/                                               *
+ *************************************************************************/
+
+package net.bytemine.manager.tests;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.sql.ResultSet;
+import java.sql.Statement;
+import java.util.HashSet;
+import java.util.Vector;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+
+import net.bytemine.manager.Constants;
+import net.bytemine.manager.action.X509BulkExporter;
+import net.bytemine.manager.bean.User;
+import net.bytemine.manager.bean.X509;
+import net.bytemine.manager.db.DBConnector;
+import net.bytemine.manager.db.UserDAO;
+import net.bytemine.manager.utility.X509Generator;
+import net.bytemine.manager.utility.X509Utils;
+import net.bytemine.utility.FileUtils;
+
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class X509BulkExporterTest {
+
+    private static final int USERS = 10;
+
+    private static Vector<User> users = new Vector<User>();
+    private static String exportPath;
+
+    @BeforeClass
+    public static void setUpBeforeClass() throws Exception {
+        System.err.println("\n\n\n>>> Setting up X509BulkExporterTest");
+        ManagerTestSuite.setUpTest();
+        ManagerTestSuite.rootCreation();
+
+        for (int i = 0; i < USERS; i++) {
+            User user = new User("0");
+            user.setUsername("exportuser" + i);
+            user.setPassword("secret");
+            user.setX509id(-1);
+            users.add(user);
+        }
+        UserDAO.getInstance().create(users);
+        new X509Generator().createClientCertsImmediately(users);
+
+        exportPath = System.getProperty("java.io.tmpdir") + File.separator + "bulkexport" + System.currentTimeMillis();
+    }
+
+    @AfterClass
+    public static void tearDownAfterClass() {
+        FileUtils.deleteDirectory(new File(exportPath));
+        ManagerTestSuite.tearDownTest();
+        System.err.println("\n\n\n>>> Teared down X509BulkExporterTest");
+    }
+
+
+    @Test
+    public void testExportToFiles() throws Exception {
+        String path = exportPath + File.separator + "files";
+        X509BulkExporter exporter = new X509BulkExporter(path, false);
+
+        assertEquals(countCertificates(), exporter.export());
+        assertTrue(exporter.getErrors().isEmpty());
+
+        String rootFileName = X509Utils.loadRootX509().getFileName();
+        assertTrue(new File(path, rootFileName).exists());
+        for (User user : users) {
+            String prefix = user.getUsername() + "_" + (user.getUserid() + "").hashCode() + ".";
+            File userDir = new File(path, user.getUsername());
+            assertTrue(new File(userDir, prefix + Constants.DEFAULT_CERT_EXTENSION).length() > 0);
+            assertTrue(new File(userDir, prefix + Constants.DEFAULT_KEY_EXTENSION).length() > 0);
+            assertTrue(new File(userDir, rootFileName).exists());
+        }
+    }
+
+
+    @Test
+    public void testExportToArchive() throws Exception {
+        String path = exportPath + File.separator + "archive";
+        X509BulkExporter exporter = new X509BulkExporter(path, true);
+
+        assertEquals(countCertificates(), exporter.export());
+        assertTrue(exporter.getTarget().endsWith(Constants.DEFAULT_EXPORT_ARCHIVE_FILENAME));
+
+        HashSet<String> entries = new HashSet<String>();
+        ZipInputStream zip = new ZipInputStream(new FileInputStream(exporter.getTarget()));
+        ZipEntry entry;
+        while ((entry = zip.getNextEntry()) != null)
+            entries.add(entry.getName());
+        zip.close();
+
+        String rootFileName = X509Utils.loadRootX509().getFileName();
+        assertTrue(entries.contains(rootFileName));
+        for (User user : users) {
+            String prefix = user.getUsername() + "/" + user.getUsername() + "_" + (user.getUserid() + "").hashCode() + ".";
+            assertTrue(entries.contains(prefix + Constants.DEFAULT_CERT_EXTENSION));
+            assertTrue(entries.contains(prefix + Constants.DEFAULT_KEY_EXTENSION));
+            assertTrue(entries.contains(user.getUsername() + "/" + rootFileName));
+        }
+        // only the archive is written
+        assertEquals(1, new File(path).list().length);
+    }
+
+
+    @Test
+    public void testErrorsAreCollected() throws Exception {
+        User broken = User.getUserByID(users.get(0).getUserid());
+        X509 x509 = X509.getX509ById(broken.getX509id());
+        Statement st = DBConnector.getInstance().getConnection().createStatement();
+        st.executeUpdate("UPDATE x509 SET certder=NULL, certserialized=NULL, content='broken' " +
+                "WHERE x509id=" + x509.getX509id());
+        st.close();
+
+        try {
+            X509BulkExporter exporter = new X509BulkExporter(exportPath + File.separator + "errors", false);
+            assertEquals(countCertificates() - 1, exporter.export());
+            assertEquals(1, exporter.getErrors().size());
+            assertTrue(exporter.getErrors().get(0).startsWith(x509.getFileName()));
+        } finally {
+            x509.getX509DAO().update(x509);
+        }
+    }
+
+
+    private static int countCertificates() throws Exception {
+        Statement st = DBConnector.getInstance().getConnection().createStatement();
+        ResultSet rs = st.executeQuery("SELECT COUNT(*) FROM x509");
+        int count = rs.getInt(1);
+        rs.close();
+        st.close();
+        return count;
+    }
+}
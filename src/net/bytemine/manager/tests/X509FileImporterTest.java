@@ -0,0 +1,120 @@
+/*************************************************************************
+ * Written by / Copyright (C) 2009-2012 bytemine GmbH                     *
+ * Author: Daniel Rauer                     E-Mail:    rauer@bytemine.net *
+ *                                                                        *
+ * http://www.bytemine.net/                                               *
+ *************************************************************************/
+
+package net.bytemine.manager.tests;
+
+import java.io.File;
+import java.security.PrivateKey;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Vector;
+
+import net.bytemine.manager.Configuration;
+import net.bytemine.manager.bean.User;
+import net.bytemine.manager.bean.X509;
+import net.bytemine.manager.db.UserDAO;
+import net.bytemine.manager.db.UserQueries;
+import net.bytemine.manager.db.X509DAO;
+import net.bytemine.manager.utility.X509FileImporter;
+import net.bytemine.manager.utility.X509Generator;
+import net.bytemine.manager.utility.X509Serializer;
+import net.bytemine.manager.utility.X509Utils;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class X509FileImporterTest {
+
+    private static final int COUNT = 5;
+
+    // the private keys and contents of the certificates by username
+    private static Map<String, PrivateKey> keys = new HashMap<String, PrivateKey>();
+    private static Map<String, String> contents = new HashMap<String, String>();
+    private static File importDir;
+
+    @BeforeClass
+    public static void setUpBeforeClass() throws Exception {
+        System.err.println("\n\n\n>>> Setting up X509FileImporterTest");
+        ManagerTestSuite.setUpTest();
+        ManagerTestSuite.rootCreation();
+
+        Vector<User> users = new Vector<User>();
+        for (int i = 0; i < COUNT; i++) {
+            User user = new User("0");
+            user.setUsername("importuser" + i);
+            user.setX509id(-1);
+            users.add(user);
+        }
+        UserDAO.getInstance().create(users);
+        new X509Generator().createClientCertsImmediately(users);
+
+        // an easy-rsa 3 PKI whose key files are not named like the certificates
+        importDir = new File(ManagerTestSuite.testdirpath, "pki");
+        for (User user : users) {
+            X509 x509 = X509.getX509ById(User.getUserByID(user.getUserid()).getX509id());
+            PrivateKey key = (PrivateKey) X509Serializer.getInstance().fromXML(x509.getKey());
+            keys.put(user.getUsername(), key);
+            contents.put(user.getUsername(), x509.getContent());
+
+            FileUtils.writeStringToFile(new File(importDir, "issued/" + user.getUsername() + ".crt"), x509.getContent());
+            // the last certificate is imported without key
+            if (!user.getUsername().equals("importuser" + (COUNT - 1)))
+                FileUtils.writeStringToFile(new File(importDir, "private/key" + (COUNT - users.indexOf(user)) + ".key"),
+                        X509Utils.addKeyHeader(key.getEncoded()));
+
+            // the import creates the users and certificates again
+            X509DAO.getInstance().delete(x509);
+            UserDAO.getInstance().delete(user);
+        }
+    }
+
+    @AfterClass
+    public static void tearDownAfterClass() {
+        ManagerTestSuite.tearDownTest();
+        System.err.println("\n\n\n>>> Teared down X509FileImporterTest");
+    }
+
+
+    @Test
+    public void testImportMatchesKeysByPublicKey() throws Exception {
+        Vector<String> x509ids = new X509FileImporter(importDir).importClientCertsAndKeys(true);
+        assertEquals(COUNT, x509ids.size());
+
+        for (int i = 0; i < COUNT; i++) {
+            String username = "importuser" + i;
+            int userid = UserQueries.getUserId(username);
+            assertTrue(userid != -1);
+
+            User user = User.getUserByID(userid);
+            assertTrue(x509ids.contains(user.getX509id() + ""));
+            X509 x509 = X509.getX509ById(user.getX509id());
+            assertEquals(contents.get(username), x509.getContent());
+            assertFalse(x509.isGenerated());
+
+            File exportDir = new File(Configuration.getInstance().CERT_EXPORT_PATH, username);
+            String prefix = username + "_" + (userid + "").hashCode();
+            assertTrue(new File(exportDir, prefix + ".crt").exists());
+
+            if (i < COUNT - 1) {
+                String keyContent = X509Utils.addKeyHeader(keys.get(username).getEncoded());
+                assertEquals(keyContent, x509.getKeyContent());
+                assertEquals(keyContent, FileUtils.readFileToString(new File(exportDir, prefix + ".key")));
+            } else {
+                assertEquals("", x509.getKeyContent());
+                assertFalse(new File(exportDir, prefix + ".key").exists());
+            }
+        }
+
+        // a second import updates the certificates
+        Vector<String> again = new X509FileImporter(importDir).importClientCertsAndKeys(true);
+        assertEquals(x509ids, again);
+    }
+}
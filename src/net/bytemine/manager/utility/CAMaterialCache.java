@@ -0,0 +1,179 @@
+/*************************************************************************
+ * Written by / Copyright (C) 2009-2012 bytemine GmbH                     *
+ * Author: Daniel Rauer                     E-Mail:    rauer@bytemine.net *
+ *                                                                        *
+ * http://www.bytemine.net/                                               *
+ *************************************************************************/
+
+package net.bytemine.manager.utility;
+
+import java.security.PrivateKey;
+import java.security.cert.X509Certificate;
+import java.sql.Connection;
+import java.util.ResourceBundle;
+import java.util.logging.Logger;
+
+import net.bytemine.manager.ManagerApp;
+import net.bytemine.manager.bean.X509;
+import net.bytemine.manager.db.DBConnector;
+import net.bytemine.manager.db.X509Queries;
+import net.bytemine.manager.i18n.ResourceBundleMgmt;
+
+
+/**
+ * Holds the decoded certificates and private keys of the root and
+ * the intermediate certificate, so they are not parsed from their
+ * serialized form for every generated certificate or CRL.
+ * The cache is invalidated by X509DAO when one of the rows changes,
+ * a replaced root or another database is detected on access.
+ * implemented as singleton
+ *
+ * @author Daniel Rauer
+ */
+public class CAMaterialCache {
+
+    private static Logger logger = Logger.getLogger(CAMaterialCache.class.getName());
+
+    private static CAMaterialCache instance = null;
+
+    private CAMaterial root = null;
+    private CAMaterial intermediate = null;
+    // the connection the material was loaded from
+    private Connection cacheConnection = null;
+
+
+    private CAMaterialCache() {
+    }
+
+
+    public static synchronized CAMaterialCache getInstance() {
+        if (instance == null)
+            instance = new CAMaterialCache();
+
+        return instance;
+    }
+
+
+    /**
+     * Returns the material of the root certificate
+     *
+     * @return the decoded root certificate and key
+     * @throws Exception if no root certificate exists
+     */
+    public synchronized CAMaterial getRoot() throws Exception {
+        checkConnection();
+        root = load(root, X509Queries.getRootCertId());
+        return root;
+    }
+
+
+    /**
+     * Returns the material of the intermediate certificate
+     *
+     * @return the decoded intermediate certificate and key
+     * @throws Exception if no intermediate certificate exists
+     */
+    public synchronized CAMaterial getIntermediate() throws Exception {
+        checkConnection();
+        intermediate = load(intermediate, X509Queries.getIntermediateCertId());
+        return intermediate;
+    }
+
+
+    /**
+     * Returns the material of the certificate signing the client certificates
+     *
+     * @return the intermediate material if intermediates are used, the root material otherwise
+     * @throws Exception
+     */
+    public CAMaterial getSigning() throws Exception {
+        return ManagerApp.intermediate ? getIntermediate() : getRoot();
+    }
+
+
+    /**
+     * Forgets the cached material of the certificate, if it is cached
+     *
+     * @param x509id The id of the changed certificate
+     */
+    public synchronized void invalidate(int x509id) {
+        if (root != null && root.x509id == x509id)
+            root = null;
+        if (intermediate != null && intermediate.x509id == x509id)
+            intermediate = null;
+    }
+
+
+    /**
+     * Forgets all cached material, e.g. after the tables were recreated
+     */
+    public synchronized void invalidate() {
+        root = null;
+        intermediate = null;
+    }
+
+
+    private void checkConnection() {
+        Connection conn = DBConnector.getInstance().getConnection();
+        if (conn != cacheConnection) {
+            // another database is used
+            invalidate();
+            cacheConnection = conn;
+        }
+    }
+
+
+    /**
+     * Loads the material of the certificate unless it is cached already
+     *
+     * @param cached The cached material or null
+     * @param x509Id The id of the current certificate or null
+     * @return the material of the current certificate
+     * @throws Exception
+     */
+    private static CAMaterial load(CAMaterial cached, String x509Id) throws Exception {
+        if (x509Id == null) {
+            ResourceBundle rb = ResourceBundleMgmt.getInstance().getUserBundle();
+            throw new Exception(rb.getString("dialog.newuser.certerror.text"));
+        }
+
+        int id = Integer.parseInt(x509Id);
+        if (cached != null && cached.x509id == id)
+            return cached;
+
+        X509 x509 = X509.getX509ById(id);
+        if (x509 == null)
+            throw new Exception("certificate " + id + " could not be loaded");
+
+        logger.info("decoding the CA certificate " + id);
+        return new CAMaterial(id, X509Utils.decodeCertificate(x509), X509Utils.extractRootPrivateKey(x509));
+    }
+
+
+    /**
+     * The decoded certificate and private key of a CA
+     */
+    public static class CAMaterial {
+        private final int x509id;
+        private final X509Certificate certificate;
+        private final PrivateKey privateKey;
+
+        private CAMaterial(int x509id, X509Certificate certificate, PrivateKey privateKey) {
+            this.x509id = x509id;
+            this.certificate = certificate;
+            this.privateKey = privateKey;
+        }
+
+        public int getX509id() {
+            return x509id;
+        }
+
+        public X509Certificate getCertificate() {
+            return certificate;
+        }
+
+        public PrivateKey getPrivateKey() {
+            return privateKey;
+        }
+    }
+}
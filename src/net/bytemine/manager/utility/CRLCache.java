@@ -0,0 +1,123 @@
+/*************************************************************************
+ * Written by / Copyright (C) 2009-2012 bytemine GmbH                     *
+ * Author: Daniel Rauer                     E-Mail:    rauer@bytemine.net *
+ *                                                                        *
+ * http://www.bytemine.net/                                               *
+ *************************************************************************/
+
+package net.bytemine.manager.utility;
+
+import java.util.Date;
+import java.util.ResourceBundle;
+import java.util.logging.Logger;
+
+import net.bytemine.manager.Configuration;
+import net.bytemine.manager.Constants;
+import net.bytemine.manager.bean.CRL;
+import net.bytemine.manager.db.CRLDAO;
+import net.bytemine.manager.db.CRLQueries;
+import net.bytemine.manager.db.ConfigurationQueries;
+import net.bytemine.manager.db.RevocationIndex;
+import net.bytemine.manager.i18n.ResourceBundleMgmt;
+
+
+/**
+ * Holds the current certificate revocation list.
+ * A new CRL is only generated when the set of revoked certificates
+ * has changed or the next update of the current CRL is near.
+ * implemented as singleton
+ *
+ * @author Daniel Rauer
+ */
+public class CRLCache {
+
+    private static Logger logger = Logger.getLogger(CRLCache.class.getName());
+
+    private static CRLCache instance = null;
+
+    private CRL cachedCrl = null;
+    // version of the revocation set the cached CRL was generated from
+    private String cachedVersion = null;
+
+
+    private CRLCache() {
+    }
+
+
+    public static synchronized CRLCache getInstance() {
+        if (instance == null)
+            instance = new CRLCache();
+
+        return instance;
+    }
+
+
+    /**
+     * Returns the current CRL, generates a new one if necessary
+     *
+     * @return the current CRL
+     * @throws Exception if no new CRL could be generated for a changed revocation set
+     */
+    public synchronized CRL getCurrentCRL() throws Exception {
+        String version = getRevocationSetVersion();
+
+        // another CRL may have been generated, e.g. by a revocation
+        int crlId = CRLQueries.getMaxCRLId();
+        int crlNumber = CRLQueries.getCurrentCrlNumber();
+        if (cachedCrl == null || cachedCrl.getCrlid() != crlId || cachedCrl.getCrlNumber() != crlNumber) {
+            cachedCrl = crlId > 0 ? CRLDAO.getInstance().read(new CRL(crlId)) : null;
+            cachedVersion = ConfigurationQueries.getValue(ConfigurationQueries.CRL_REVOCATION_VERSION);
+        }
+
+        if (cachedCrl == null || !version.equals(cachedVersion) || isExpiring(cachedCrl)) {
+            logger.info("generating a new CRL for revocation set " + version);
+            new X509Generator().createCRLImmediately();
+
+            // the generation reports its errors itself, only a newly stored CRL counts
+            if (CRLQueries.getCurrentCrlNumber() <= crlNumber) {
+                ResourceBundle rb = ResourceBundleMgmt.getInstance().getUserBundle();
+                throw new Exception(rb.getString("error.syncusers.crl"));
+            }
+            cachedCrl = CRLDAO.getInstance().read(new CRL(CRLQueries.getMaxCRLId()));
+            cachedVersion = ConfigurationQueries.getValue(ConfigurationQueries.CRL_REVOCATION_VERSION);
+        }
+
+        return cachedCrl;
+    }
+
+
+    /**
+     * Calculates the version of the current revocation set
+     *
+     * @return a hash over the serials of all revoked certificates
+     * @throws Exception
+     */
+    public static String getRevocationSetVersion() throws Exception {
+        return RevocationIndex.getInstance().getVersion();
+    }
+
+
+    /**
+     * Decides whether the next update of the CRL is near.
+     * This is the case when less than a quarter of the validity is left.
+     *
+     * @param crl The CRL to check
+     * @return true, if a new CRL should be generated
+     */
+    static boolean isExpiring(CRL crl) {
+        if (crl.getNextUpdate() == null)
+            return true;
+        Date nextUpdate = Constants.parseDetailedFormat(crl.getNextUpdate());
+        if (nextUpdate == null)
+            return true;
+
+        long validFor;
+        try {
+            validFor = Long.parseLong(Configuration.getInstance().X509_CLIENT_VALID_FOR) * 24 * 60 * 60 * 1000;
+        } catch (NumberFormatException e) {
+            return true;
+        }
+        long remaining = nextUpdate.getTime() - System.currentTimeMillis();
+        return remaining < Math.max(validFor / 4, 24 * 60 * 60 * 1000L);
+    }
+}
@@ -53,8 +53,6 @@ public class CRLExporter {
             throws Exception {
         String exportPath = Configuration.getInstance().CERT_EXPORT_PATH;
 
-        String crlSerialized = X509Serializer.getInstance().toXML(x509crl);
-
         CRL crl;
         int crlId = CRLQueries.getMaxCRLId();
         if (crlId <= 0)
@@ -70,7 +68,8 @@ public class CRLExporter {
         crl.setPath(exportPath);
         crl.setIssuer(issuer);
         crl.setVersion(Constants.DEFAULT_CRL_VERSION + "");
-        crl.setCrlSerialized(crlSerialized);
+        crl.setCrlDer(x509crl.getEncoded());
+        crl.setCrlSerialized(null);
         crl.setContent(contentStr);
         crl.setContentDisplay(x509crl.toString());
 
@@ -91,7 +90,7 @@ public class CRLExporter {
         CRL crl = new CRL(crlId);
         crl = CRLDAO.getInstance().read(crl);
         String content = crl.getContent();
-        return exportCRLToFile(content);
+        return exportCRLToFile(content, Constants.DEFAULT_CRL_FILENAME);
     }
     
     /**
@@ -103,28 +102,41 @@ public class CRLExporter {
     static String exportCRLToFile(X509CRL crl) throws Exception {
         String contentBuffer = crl.toString() +
                 X509Utils.addCRLHeader(crl.getEncoded());
-        return exportCRLToFile(contentBuffer);
+        return exportCRLToFile(contentBuffer, Constants.DEFAULT_CRL_FILENAME);
+    }
+
+    /**
+     * Exports the given delta crl to file
+     *
+     * @param crl The X509CRL object to export
+     * @throws Exception
+     */
+    static String exportDeltaCRLToFile(X509CRL crl) throws Exception {
+        String contentBuffer = crl.toString() +
+                X509Utils.addCRLHeader(crl.getEncoded());
+        return exportCRLToFile(contentBuffer, Constants.DEFAULT_DELTA_CRL_FILENAME);
     }
 
     /**
      * Exports the given content to file
      *
-     * @param content The content to export
+     * @param content  The content to export
+     * @param fileName The name of the file
      * @throws Exception
      */
-    private static String exportCRLToFile(String content) throws Exception {
+    private static String exportCRLToFile(String content, String fileName) throws Exception {
         ResourceBundle rb = ResourceBundleMgmt.getInstance().getUserBundle();
         String exportPath = Configuration.getInstance().CERT_EXPORT_PATH;
         preparePath(exportPath);
         
         try {
-            FileWriter fw = new FileWriter(exportPath + File.separator + Constants.DEFAULT_CRL_FILENAME);
+            FileWriter fw = new FileWriter(exportPath + File.separator + fileName);
             // write to file
             fw.write(content);
             fw.close();
         } catch (Exception e) {
             logger.log(Level.SEVERE, "Error writing crl to filesystem: " +
-                    exportPath + "/crl.pem", e);
+                    exportPath + "/" + fileName, e);
             throw new Exception(rb.getString("dialog.crl.exporterror"));
         }
         return content;
@@ -0,0 +1,145 @@
+/*************************************************************************
+ * Written by / Copyright (C) 2009-2012 bytemine GmbH                     *
+ * Author: Daniel Rauer                     E-Mail:    rauer@bytemine.net *
+ *                                                                        *
+ * http://www.bytemine.net/                                               *
+ *************************************************************************/
+
+package net.bytemine.manager.utility;
+
+import java.text.MessageFormat;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.ResourceBundle;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import net.bytemine.manager.Configuration;
+import net.bytemine.manager.ThreadMgmt;
+import net.bytemine.manager.bean.X509;
+import net.bytemine.manager.db.X509DAO;
+import net.bytemine.manager.db.X509Queries;
+import net.bytemine.manager.gui.ManagerGUI;
+import net.bytemine.manager.gui.StatusMessage;
+import net.bytemine.manager.i18n.ResourceBundleMgmt;
+
+
+/**
+ * Renews the certificates of users and servers before they expire.
+ * A background thread looks for the expiring certificates in regular
+ * intervals with one query on the indexed validtotime column and renews
+ * them in one batch, the old certificates are revoked with one CRL update.
+ * implemented as singleton
+ *
+ * @author Daniel Rauer
+ */
+public class CertificateRenewalScheduler {
+
+    private static Logger logger = Logger.getLogger(CertificateRenewalScheduler.class.getName());
+
+    // seconds after the start until the first check
+    private static final long INITIAL_DELAY = 60;
+    private static final long DAY = 24L * 60 * 60 * 1000;
+
+    private static CertificateRenewalScheduler instance = null;
+
+    private ScheduledExecutorService scheduler = null;
+
+
+    private CertificateRenewalScheduler() {
+    }
+
+
+    public static synchronized CertificateRenewalScheduler getInstance() {
+        if (instance == null)
+            instance = new CertificateRenewalScheduler();
+
+        return instance;
+    }
+
+
+    /**
+     * Starts the regular checks if the automatic renewal is enabled
+     */
+    public synchronized void start() {
+        if (scheduler != null || Configuration.getInstance().RENEW_DAYS_BEFORE_EXPIRY == 0)
+            return;
+
+        scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "certificate-renewal");
+            t.setDaemon(true);
+            t.setPriority(Thread.MIN_PRIORITY);
+            return t;
+        });
+        long interval = TimeUnit.HOURS.toSeconds(Configuration.getInstance().RENEW_CHECK_INTERVAL);
+        scheduler.scheduleWithFixedDelay(this::check, INITIAL_DELAY, interval, TimeUnit.SECONDS);
+    }
+
+
+    /**
+     * Stops the checks, a running renewal is finished
+     */
+    public synchronized void shutdown() {
+        if (scheduler == null)
+            return;
+        scheduler.shutdown();
+        scheduler = null;
+    }
+
+
+    /**
+     * Runs one check, errors must not end the schedule
+     */
+    private void check() {
+        try {
+            renewExpiring(Configuration.getInstance().RENEW_DAYS_BEFORE_EXPIRY);
+        } catch (Exception e) {
+            logger.log(Level.SEVERE, "error renewing the expiring certificates", e);
+        }
+    }
+
+
+    /**
+     * Renews all certificates of users and servers that expire
+     * within the given number of days, or are expired already
+     *
+     * @param days The number of days
+     * @return the number of renewed certificates
+     * @throws Exception
+     */
+    public int renewExpiring(int days) throws Exception {
+        if (!Configuration.getInstance().isRootCertExisting())
+            return 0;
+
+        List<Integer> x509ids = X509Queries.getExpiringX509Ids(System.currentTimeMillis() + days * DAY);
+        if (x509ids.isEmpty())
+            return 0;
+        logger.info(x509ids.size() + " certificates expire within " + days + " days");
+
+        List<X509> x509s = new ArrayList<X509>(x509ids.size());
+        for (int x509id : x509ids)
+            x509s.add(X509DAO.getInstance().read(new X509(x509id)));
+
+        ResourceBundle rb = ResourceBundleMgmt.getInstance().getUserBundle();
+        Thread t = Thread.currentThread();
+        ThreadMgmt.getInstance().addThread(t, rb.getString("statusBar.cert_renew_expiring.tooltip"));
+        try {
+            List<String> errors = new ArrayList<String>();
+            int renewed = new X509Generator().renewCertificatesImmediately(x509s, errors);
+            if (errors.isEmpty())
+                ManagerGUI.addStatusMessage(new StatusMessage(
+                        MessageFormat.format(rb.getString("statusBar.cert_renew_expiring.msg"), renewed)));
+            else
+                ManagerGUI.addStatusMessage(new StatusMessage(
+                        MessageFormat.format(rb.getString("statusBar.cert_renew_expiring.failed"),
+                                renewed, x509s.size(), String.join(", ", errors)),
+                        StatusMessage.TYPE_ERROR));
+            return renewed;
+        } finally {
+            ThreadMgmt.getInstance().removeThread(t);
+        }
+    }
+}
@@ -0,0 +1,182 @@
+/*************************************************************************
+ * Written by / Copyright (C) 2009-2012 bytemine GmbH                     *
+ * Author: Daniel Rauer                     E-Mail:    rauer@bytemine.net *
+ *                                                                        *
+ * http://www.bytemine.net/                                               *
+ *************************************************************************/
+
+package net.bytemine.manager.utility;
+
+import java.math.BigInteger;
+import java.security.PrivateKey;
+import java.security.PublicKey;
+import java.sql.Connection;
+import java.security.cert.X509Certificate;
+import java.util.Date;
+import java.util.concurrent.atomic.AtomicLong;
+
+import net.bytemine.manager.db.DBConnector;
+import net.bytemine.manager.db.X509Queries;
+
+import org.bouncycastle.asn1.ASN1Object;
+import org.bouncycastle.asn1.ASN1Sequence;
+import org.bouncycastle.asn1.DERIA5String;
+import org.bouncycastle.asn1.DERSequence;
+import org.bouncycastle.asn1.x509.AuthorityKeyIdentifier;
+import org.bouncycastle.asn1.x509.BasicConstraints;
+import org.bouncycastle.asn1.x509.ExtendedKeyUsage;
+import org.bouncycastle.asn1.x509.GeneralName;
+import org.bouncycastle.asn1.x509.GeneralNames;
+import org.bouncycastle.asn1.x509.KeyPurposeId;
+import org.bouncycastle.asn1.x509.KeyUsage;
+import org.bouncycastle.asn1.x509.SubjectKeyIdentifier;
+import org.bouncycastle.asn1.x509.SubjectPublicKeyInfo;
+import org.bouncycastle.asn1.x509.X509Extensions;
+import org.bouncycastle.asn1.x509.X509Name;
+import org.bouncycastle.jce.PrincipalUtil;
+import org.bouncycastle.jce.X509Principal;
+import org.bouncycastle.x509.X509V3CertificateGenerator;
+
+
+/**
+ * Signs client certificates for given public keys.
+ * The key pair is generated by the caller, so it may come from the KeyPairPool
+ * or be generated in parallel. The certificates carry the client extensions
+ * of the bytemine crypto library.
+ * An instance may be used by several threads at the same time.
+ *
+ * @author Daniel Rauer
+ */
+class ClientCertSigner {
+
+    // oid of the netscape comment extension
+    private static final String NETSCAPE_COMMENT = "2.16.840.1.113730.1.13";
+
+    // the last serial handed out, serials are unique even if
+    // many certificates are signed within the same millisecond
+    private static final AtomicLong lastSerial = new AtomicLong();
+    // the connection whose serials have been taken into account
+    private static volatile Connection seededConnection = null;
+
+    private final X509Certificate signingCert;
+    private final PrivateKey signingPrivKey;
+    private final String algorithm;
+    private final String versionComment;
+    private final AuthorityKeyIdentifier authorityKeyId;
+
+
+    /**
+     * @param signingCert    The certificate of the signing CA
+     * @param signingPrivKey The private key of the signing CA
+     * @param algorithm      The signature algorithm
+     * @param versionComment Written to the netscape comment
+     * @throws Exception
+     */
+    ClientCertSigner(X509Certificate signingCert, PrivateKey signingPrivKey,
+                     String algorithm, String versionComment) throws Exception {
+        this.signingCert = signingCert;
+        this.signingPrivKey = signingPrivKey;
+        this.algorithm = algorithm;
+        this.versionComment = versionComment;
+        this.authorityKeyId = createAuthorityKeyId(signingCert);
+    }
+
+
+    /**
+     * Signs a client certificate
+     *
+     * @param pubKey    The public key of the client
+     * @param subject   The subject
+     * @param validFrom The date the certificate is valid from
+     * @param validTo   The date the certificate is valid to
+     * @return the verified certificate
+     * @throws Exception
+     */
+    X509Certificate sign(PublicKey pubKey, String subject, Date validFrom, Date validTo) throws Exception {
+        X509V3CertificateGenerator certGen = new X509V3CertificateGenerator();
+        certGen.setSerialNumber(nextSerial());
+        // the subject of the signing certificate, so the chain is valid for intermediates, too
+        certGen.setIssuerDN(PrincipalUtil.getSubjectX509Principal(signingCert));
+        certGen.setNotBefore(validFrom);
+        certGen.setNotAfter(validTo);
+        certGen.setSubjectDN(new X509Principal(subject));
+        certGen.setPublicKey(pubKey);
+        certGen.setSignatureAlgorithm(algorithm);
+
+        certGen.addExtension(X509Extensions.BasicConstraints, false, new BasicConstraints(false));
+        certGen.addExtension(X509Extensions.SubjectKeyIdentifier, false,
+                new SubjectKeyIdentifier(createPublicKeyInfo(pubKey)));
+        certGen.addExtension(X509Extensions.AuthorityKeyIdentifier, false, authorityKeyId);
+        certGen.addExtension(X509Extensions.ExtendedKeyUsage, false,
+                new ExtendedKeyUsage(KeyPurposeId.id_kp_clientAuth));
+        certGen.addExtension(X509Extensions.KeyUsage, false, new KeyUsage(KeyUsage.digitalSignature));
+        certGen.addExtension(NETSCAPE_COMMENT, false, new DERIA5String(versionComment));
+
+        X509Certificate cert = certGen.generate(signingPrivKey, "BC");
+        cert.verify(signingCert.getPublicKey());
+        return cert;
+    }
+
+
+    X509Certificate getSigningCert() {
+        return signingCert;
+    }
+
+
+    /**
+     * Creates the authority key identifier of the signing certificate
+     *
+     * @param caCert The signing certificate
+     * @return the authority key identifier
+     * @throws Exception
+     */
+    private static AuthorityKeyIdentifier createAuthorityKeyId(X509Certificate caCert) throws Exception {
+        String issuer = PrincipalUtil.getSubjectX509Principal(caCert).toString();
+        GeneralName name = new GeneralName(new X509Name(issuer));
+        GeneralNames names = new GeneralNames(new DERSequence(name));
+        return new AuthorityKeyIdentifier(
+                createPublicKeyInfo(caCert.getPublicKey()), names, caCert.getSerialNumber());
+    }
+
+
+    private static SubjectPublicKeyInfo createPublicKeyInfo(PublicKey pubKey) throws Exception {
+        return new SubjectPublicKeyInfo((ASN1Sequence) ASN1Object.fromByteArray(pubKey.getEncoded()));
+    }
+
+
+    /**
+     * Returns a unique serial, based on the current time.
+     * The serial is higher than all serials in the database,
+     * even if the clock was set back since they were issued.
+     *
+     * @return the serial
+     * @throws Exception
+     */
+    static BigInteger nextSerial() throws Exception {
+        if (DBConnector.getInstance().getConnection() != seededConnection)
+            seedSerial();
+
+        while (true) {
+            long last = lastSerial.get();
+            long next = Math.max(System.currentTimeMillis(), last + 1);
+            if (lastSerial.compareAndSet(last, next))
+                return BigInteger.valueOf(next);
+        }
+    }
+
+
+    /**
+     * Continues after the highest serial of the database,
+     * once per database connection
+     *
+     * @throws Exception
+     */
+    private static synchronized void seedSerial() throws Exception {
+        Connection conn = DBConnector.getInstance().getConnection();
+        if (conn == seededConnection)
+            return;
+
+        lastSerial.accumulateAndGet(X509Queries.getMaxSerial(), Math::max);
+        seededConnection = conn;
+    }
+}
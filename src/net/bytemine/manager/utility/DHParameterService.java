@@ -0,0 +1,347 @@
+/*************************************************************************
+ * Written by / Copyright (C) 2009-2012 bytemine GmbH                     *
+ * Author: Daniel Rauer                     E-Mail:    rauer@bytemine.net *
+ *                                                                        *
+ * http://www.bytemine.net/                                               *
+ *************************************************************************/
+
+package net.bytemine.manager.utility;
+
+import java.io.File;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.Statement;
+import java.text.MessageFormat;
+import java.util.HashSet;
+import java.util.LinkedList;
+import java.util.Map;
+import java.util.ResourceBundle;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import net.bytemine.manager.Configuration;
+import net.bytemine.manager.Constants;
+import net.bytemine.manager.ThreadMgmt;
+import net.bytemine.manager.db.DBConnector;
+import net.bytemine.manager.gui.ManagerGUI;
+import net.bytemine.manager.gui.StatusMessage;
+import net.bytemine.manager.i18n.ResourceBundleMgmt;
+import net.bytemine.utility.FileUtils;
+
+
+/**
+ * Keeps Diffie Hellman parameters ready for the synchronisation.
+ * The parameters of every supported key strength are generated once
+ * in the background on the spare processors, the configured key strength
+ * first, and stored in the database and as dh<strength>.pem in the export path.
+ * Nobody waits for the generation, parameters that are not ready yet
+ * are simply not available.
+ * implemented as singleton
+ *
+ * @author Daniel Rauer
+ */
+public class DHParameterService {
+
+    private static Logger logger = Logger.getLogger(DHParameterService.class.getName());
+
+    private static DHParameterService instance = null;
+
+    // the ready parameters, per key strength
+    private final Map<Integer, String> parameters = new ConcurrentHashMap<Integer, String>();
+    // the key strengths waiting for generation, the next one first
+    private final LinkedList<Integer> queue = new LinkedList<Integer>();
+    // the key strengths being generated
+    private final Set<Integer> running = new HashSet<Integer>();
+    private ExecutorService pool = null;
+    // the key strength the synchronisation needs
+    private int keyStrength = 0;
+    // progress of the current generation
+    private int scheduled = 0;
+    private int generated = 0;
+
+
+    private DHParameterService() {
+    }
+
+
+    public static synchronized DHParameterService getInstance() {
+        if (instance == null)
+            instance = new DHParameterService();
+
+        return instance;
+    }
+
+
+    /**
+     * Loads the stored parameters and generates the missing ones
+     * in the background, the given key strength first
+     *
+     * @param keyStrength The key strength used by the synchronisation
+     */
+    public synchronized void start(int keyStrength) {
+        if (pool == null) {
+            load();
+            pool = createPool();
+        }
+        this.keyStrength = keyStrength;
+
+        if (Configuration.getInstance().DH_PARAMETER_PRECOMPUTE) {
+            for (String strength : Constants.AVAILABLE_KEYSTRENGTH)
+                schedule(Integer.parseInt(strength), false);
+        }
+        schedule(keyStrength, true);
+    }
+
+
+    /**
+     * Stops the generation, parameters being generated are discarded.
+     * The generated parameters are kept in the database for the next start.
+     */
+    public synchronized void shutdown() {
+        if (pool == null)
+            return;
+        pool.shutdownNow();
+        pool = null;
+        parameters.clear();
+        queue.clear();
+        running.clear();
+        scheduled = 0;
+        generated = 0;
+    }
+
+
+    /**
+     * Returns the parameters of the given key strength
+     *
+     * @param keyStrength The key strength
+     * @return the parameters in PEM format, or null if they are not generated yet
+     */
+    public String get(int keyStrength) {
+        return parameters.get(keyStrength);
+    }
+
+
+    /**
+     * Checks whether the parameters of the given key strength are ready
+     *
+     * @param keyStrength The key strength
+     * @return true, if the parameters are ready
+     */
+    public boolean isReady(int keyStrength) {
+        return parameters.containsKey(keyStrength);
+    }
+
+
+    /**
+     * Returns the progress of the generation
+     *
+     * @return the number of generated and of scheduled key strengths
+     */
+    public synchronized int[] getProgress() {
+        return new int[]{generated, scheduled};
+    }
+
+
+    /**
+     * Queues the key strength for generation if its parameters are missing
+     *
+     * @param keyStrength The key strength
+     * @param first       true, if it is generated before the other ones
+     */
+    private void schedule(int keyStrength, boolean first) {
+        if (isReady(keyStrength) || running.contains(keyStrength))
+            return;
+
+        if (queue.remove((Integer) keyStrength)) {
+            // already waiting, only move it
+            if (first)
+                queue.addFirst(keyStrength);
+            else
+                queue.addLast(keyStrength);
+            return;
+        }
+        if (first)
+            queue.addFirst(keyStrength);
+        else
+            queue.addLast(keyStrength);
+
+        scheduled++;
+        final ExecutorService current = pool;
+        current.execute(() -> generateNext(current));
+    }
+
+
+    /**
+     * Generates the parameters of the next queued key strength
+     *
+     * @param current The pool the task was started in
+     */
+    private void generateNext(ExecutorService current) {
+        int strength;
+        boolean needed;
+        synchronized (this) {
+            if (pool != current || queue.isEmpty())
+                return;
+            strength = queue.removeFirst();
+            running.add(strength);
+            needed = strength == keyStrength;
+        }
+
+        Thread t = Thread.currentThread();
+        ResourceBundle rb = ResourceBundleMgmt.getInstance().getUserBundle();
+        // only the parameters the synchronisation needs are shown as running task
+        if (needed)
+            ThreadMgmt.getInstance().addThread(t, rb.getString("statusBar.dhparameters.tooltip"));
+        try {
+            long start = System.currentTimeMillis();
+            String content = generate(strength);
+            logger.info("DH parameters of " + strength + " bit generated in "
+                    + (System.currentTimeMillis() - start) + " ms");
+
+            synchronized (this) {
+                if (pool != current)
+                    return;
+                store(strength, content);
+            }
+            exportToFile(strength, content);
+
+            int done;
+            int total;
+            synchronized (this) {
+                parameters.put(strength, content);
+                done = ++generated;
+                total = scheduled;
+            }
+
+            ManagerGUI.addStatusMessage(new StatusMessage(
+                    MessageFormat.format(rb.getString("statusBar.dhparameters.progress"), String.valueOf(strength), done, total),
+                    StatusMessage.TYPE_CONFIRM));
+        } catch (Exception e) {
+            logger.log(Level.SEVERE, "error generating dh parameters of " + strength + " bit", e);
+        } finally {
+            synchronized (this) {
+                running.remove(strength);
+            }
+            if (needed)
+                ThreadMgmt.getInstance().removeThread(t);
+        }
+    }
+
+
+    /**
+     * Generates Diffie Hellman parameters
+     *
+     * @param keyStrength The key strength
+     * @return the parameters in PEM format
+     * @throws Exception
+     */
+    static String generate(int keyStrength) throws Exception {
+        String generatorIdentifier =
+                "Manager version: " + Configuration.getInstance().MANAGER_VERSION + ", " +
+                "build: " + Configuration.getInstance().MANAGER_BUILD;
+        return new net.bytemine.crypto.x509.X509Generator(keyStrength, generatorIdentifier).createDHParameters();
+    }
+
+
+    /**
+     * Loads the stored parameters. Parameters that only exist as file
+     * in the export path are taken over into the database, stored
+     * parameters whose file is missing are exported again.
+     */
+    private void load() {
+        try {
+            DBConnector.getInstance().executeInTransaction(conn -> {
+                Statement st = conn.createStatement();
+                ResultSet rs = st.executeQuery("SELECT keystrength, content FROM dhparameters");
+                while (rs.next())
+                    parameters.put(rs.getInt("keystrength"), rs.getString("content"));
+                rs.close();
+                st.close();
+                return null;
+            });
+        } catch (Exception e) {
+            logger.log(Level.WARNING, "the stored dh parameters could not be loaded", e);
+        }
+
+        for (Map.Entry<Integer, String> entry : parameters.entrySet())
+            exportToFile(entry.getKey(), entry.getValue());
+
+        for (String value : Constants.AVAILABLE_KEYSTRENGTH) {
+            int strength = Integer.parseInt(value);
+            File dhFile = getFile(strength);
+            if (parameters.containsKey(strength) || !dhFile.exists())
+                continue;
+            try {
+                String content = FileUtils.readFile(dhFile);
+                store(strength, content);
+                parameters.put(strength, content);
+            } catch (Exception e) {
+                logger.log(Level.WARNING, "error taking over the dh parameters " + dhFile.getPath(), e);
+            }
+        }
+        logger.info(parameters.size() + " dh parameters loaded");
+    }
+
+
+    /**
+     * Stores the parameters in the database
+     *
+     * @param keyStrength The key strength
+     * @param content     The parameters in PEM format
+     * @throws Exception
+     */
+    private static void store(final int keyStrength, final String content) throws Exception {
+        DBConnector.getInstance().executeInTransaction(conn -> {
+            PreparedStatement pst = conn.prepareStatement("DELETE FROM dhparameters WHERE keystrength=?");
+            pst.setInt(1, keyStrength);
+            pst.executeUpdate();
+            pst.close();
+
+            pst = conn.prepareStatement("INSERT INTO dhparameters(keystrength, content) VALUES(?,?)");
+            pst.setInt(1, keyStrength);
+            pst.setString(2, content);
+            pst.executeUpdate();
+            pst.close();
+            return null;
+        });
+    }
+
+
+    /**
+     * Writes the dh<strength>.pem to the export path if it is missing
+     *
+     * @param keyStrength The key strength
+     * @param content     The parameters in PEM format
+     */
+    private static void exportToFile(int keyStrength, String content) {
+        if (X509Exporter.isDHParametersExisting(keyStrength))
+            return;
+        try {
+            X509Exporter.exportDHParameters(content, keyStrength);
+        } catch (Exception e) {
+            // the parameters stay available from the database
+            logger.warning("dh parameters of " + keyStrength + " bit could not be exported: " + e.getMessage());
+        }
+    }
+
+
+    private static File getFile(int keyStrength) {
+        return new File(Configuration.getInstance().CERT_EXPORT_PATH + "/dh" + keyStrength + ".pem");
+    }
+
+
+    private static ExecutorService createPool() {
+        final AtomicInteger number = new AtomicInteger(1);
+        return Executors.newFixedThreadPool(Configuration.getInstance().DH_PARAMETER_THREADS, r -> {
+            Thread t = new Thread(r, "dh-parameters-" + number.getAndIncrement());
+            t.setDaemon(true);
+            t.setPriority(Thread.MIN_PRIORITY);
+            return t;
+        });
+    }
+}
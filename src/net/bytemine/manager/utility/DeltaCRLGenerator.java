@@ -0,0 +1,110 @@
+/*************************************************************************
+ * Written by / Copyright (C) 2009-2012 bytemine GmbH                     *
+ * Author: Daniel Rauer                     E-Mail:    rauer@bytemine.net *
+ *                                                                        *
+ * http://www.bytemine.net/                                               *
+ *************************************************************************/
+
+package net.bytemine.manager.utility;
+
+import java.math.BigInteger;
+import java.security.cert.X509CRL;
+import java.security.cert.X509CRLEntry;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.logging.Logger;
+
+import net.bytemine.manager.Configuration;
+import net.bytemine.manager.Constants;
+import net.bytemine.manager.bean.CRL;
+import net.bytemine.manager.db.CRLDAO;
+import net.bytemine.manager.db.CRLQueries;
+import net.bytemine.manager.db.ConfigurationQueries;
+import net.bytemine.manager.db.RevocationIndex;
+
+import org.bouncycastle.asn1.x509.CRLNumber;
+import org.bouncycastle.asn1.x509.CRLReason;
+import org.bouncycastle.asn1.x509.X509Extensions;
+import org.bouncycastle.jce.PrincipalUtil;
+import org.bouncycastle.x509.X509V2CRLGenerator;
+import org.bouncycastle.x509.extension.AuthorityKeyIdentifierStructure;
+
+
+/**
+ * Generates delta CRLs (RFC 5280, 5.2.4) against the current complete CRL.
+ * A delta CRL lists the certificates revoked since the complete CRL and
+ * the re-enabled ones with the reason removeFromCRL, so only the changes
+ * are signed and published. It is written to delta-crl.pem,
+ * complete and delta CRLs share the CRL numbers.
+ *
+ * @author Daniel Rauer
+ */
+class DeltaCRLGenerator {
+
+    private static Logger logger = Logger.getLogger(DeltaCRLGenerator.class.getName());
+
+    private static final String ALGORITHM = "SHA1WithRSAEncryption";
+
+
+    /**
+     * Generates a delta CRL if the current complete CRL can be used as its base
+     *
+     * @return the delta CRL, or null if a complete CRL has to be generated
+     * @throws Exception
+     */
+    static X509CRL createDeltaCRL() throws Exception {
+        int crlId = CRLQueries.getMaxCRLId();
+        CRL base = crlId > 0 ? CRLDAO.getInstance().read(new CRL(crlId)) : null;
+        if (base == null || CRLCache.isExpiring(base))
+            return null;
+
+        Set<String> baseSerials = new HashSet<String>();
+        Set<? extends X509CRLEntry> baseEntries = X509Utils.decodeCRL(base).getRevokedCertificates();
+        if (baseEntries != null)
+            for (X509CRLEntry entry : baseEntries)
+                baseSerials.add(entry.getSerialNumber().toString());
+
+        Set<String> revoked = RevocationIndex.getInstance().getSerials();
+        Set<String> removed = new HashSet<String>(baseSerials);
+        removed.removeAll(revoked);
+        revoked.removeAll(baseSerials);
+
+        if (revoked.size() + removed.size() > Configuration.getInstance().CRL_DELTA_MAX_CHANGES) {
+            logger.info((revoked.size() + removed.size()) + " changes since the complete CRL, no delta CRL");
+            return null;
+        }
+
+        CAMaterialCache.CAMaterial root = CAMaterialCache.getInstance().getRoot();
+        int crlNumber = CRLQueries.getNextCrlNumber();
+        Date now = new Date();
+
+        X509V2CRLGenerator crlGen = new X509V2CRLGenerator();
+        crlGen.setIssuerDN(PrincipalUtil.getSubjectX509Principal(root.getCertificate()));
+        crlGen.setThisUpdate(now);
+        // the delta is not valid longer than its base
+        crlGen.setNextUpdate(Constants.parseDetailedFormat(base.getNextUpdate()));
+        crlGen.setSignatureAlgorithm(ALGORITHM);
+
+        for (String serial : revoked)
+            crlGen.addCRLEntry(new BigInteger(serial), now, CRLReason.privilegeWithdrawn);
+        for (String serial : removed)
+            crlGen.addCRLEntry(new BigInteger(serial), now, CRLReason.removeFromCRL);
+
+        crlGen.addExtension(X509Extensions.AuthorityKeyIdentifier, false,
+                new AuthorityKeyIdentifierStructure(root.getCertificate()));
+        crlGen.addExtension(X509Extensions.CRLNumber, false,
+                new CRLNumber(BigInteger.valueOf(crlNumber)));
+        crlGen.addExtension(X509Extensions.DeltaCRLIndicator, true,
+                new CRLNumber(BigInteger.valueOf(base.getCrlNumber())));
+
+        X509CRL deltaCrl = crlGen.generate(root.getPrivateKey(), "BC");
+
+        CRLExporter.exportDeltaCRLToFile(deltaCrl);
+        ConfigurationQueries.setValue(ConfigurationQueries.CRL_DELTA_NUMBER, String.valueOf(crlNumber));
+
+        logger.info("delta CRL " + crlNumber + " to CRL " + base.getCrlNumber() + ": "
+                + revoked.size() + " revoked, " + removed.size() + " removed");
+        return deltaCrl;
+    }
+}
@@ -0,0 +1,325 @@
+/*************************************************************************
+ * Written by / Copyright (C) 2009-2012 bytemine GmbH                     *
+ * Author: Daniel Rauer                     E-Mail:    rauer@bytemine.net *
+ *                                                                        *
+ * http://www.bytemine.net/                                               *
+ *************************************************************************/
+
+package net.bytemine.manager.utility;
+
+import java.security.KeyFactory;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.MessageDigest;
+import java.security.PrivateKey;
+import java.security.PublicKey;
+import java.security.SecureRandom;
+import java.security.interfaces.RSAPrivateCrtKey;
+import java.security.spec.PKCS8EncodedKeySpec;
+import java.security.spec.RSAPublicKeySpec;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.Statement;
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.Map;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import javax.crypto.Cipher;
+import javax.crypto.spec.GCMParameterSpec;
+import javax.crypto.spec.SecretKeySpec;
+
+import net.bytemine.manager.Configuration;
+import net.bytemine.manager.ThreadMgmt;
+import net.bytemine.manager.db.DBConnector;
+import net.bytemine.utility.Base64;
+
+
+/**
+ * Keeps generated RSA key pairs ready for new certificates.
+ * A background thread with low priority refills the pool of every
+ * requested key strength, it pauses while other tasks are running.
+ * On exit the remaining key pairs can be stored in the database,
+ * encrypted with a key derived from the private key of the root certificate.
+ * implemented as singleton
+ *
+ * @author Daniel Rauer
+ */
+public class KeyPairPool {
+
+    private static Logger logger = Logger.getLogger(KeyPairPool.class.getName());
+
+    private static final String CIPHER = "AES/GCM/NoPadding";
+    private static final int IV_LENGTH = 12;
+    // ms the refill waits while other tasks are running
+    private static final long BUSY_WAIT = 2000;
+
+    private static KeyPairPool instance = null;
+
+    // the ready key pairs, per key strength
+    private final HashMap<Integer, LinkedList<KeyPair>> pools = new HashMap<Integer, LinkedList<KeyPair>>();
+    private Thread refillThread = null;
+
+
+    private KeyPairPool() {
+    }
+
+
+    public static synchronized KeyPairPool getInstance() {
+        if (instance == null)
+            instance = new KeyPairPool();
+
+        return instance;
+    }
+
+
+    /**
+     * Returns a key pair of the given strength, from the pool
+     * or generated if the pool is empty
+     *
+     * @param keyStrength The key strength
+     * @return the key pair, it is never handed out twice
+     * @throws Exception
+     */
+    public KeyPair take(int keyStrength) throws Exception {
+        KeyPair keyPair;
+        synchronized (this) {
+            keyPair = getPool(keyStrength).poll();
+            // let the refill thread replace it
+            notifyAll();
+        }
+
+        if (keyPair == null)
+            keyPair = generate(keyStrength);
+        return keyPair;
+    }
+
+
+    /**
+     * Returns the number of ready key pairs
+     *
+     * @param keyStrength The key strength
+     * @return the number of key pairs
+     */
+    public synchronized int size(int keyStrength) {
+        LinkedList<KeyPair> pool = pools.get(keyStrength);
+        return pool == null ? 0 : pool.size();
+    }
+
+
+    /**
+     * Generates a new RSA key pair
+     *
+     * @param keyStrength The key strength
+     * @return the key pair
+     * @throws Exception
+     */
+    public static KeyPair generate(int keyStrength) throws Exception {
+        KeyPairGenerator keyPairGen = KeyPairGenerator.getInstance("RSA", "BC");
+        keyPairGen.initialize(keyStrength, new SecureRandom());
+        return keyPairGen.generateKeyPair();
+    }
+
+
+    /**
+     * Loads the stored key pairs and starts the refill thread
+     *
+     * @param keyStrength The key strength to fill the pool for
+     */
+    public synchronized void start(int keyStrength) {
+        if (refillThread != null || Configuration.getInstance().KEYPAIR_POOL_SIZE == 0)
+            return;
+
+        if (Configuration.getInstance().KEYPAIR_POOL_PERSIST)
+            load();
+        getPool(keyStrength);
+
+        refillThread = new Thread(this::refill, "keypair-pool");
+        refillThread.setDaemon(true);
+        refillThread.setPriority(Thread.MIN_PRIORITY);
+        refillThread.start();
+    }
+
+
+    /**
+     * Stops the refill thread and stores the ready key pairs if configured
+     */
+    public void shutdown() {
+        synchronized (this) {
+            if (refillThread == null)
+                return;
+            refillThread = null;
+            notifyAll();
+        }
+
+        if (Configuration.getInstance().KEYPAIR_POOL_PERSIST)
+            store();
+    }
+
+
+    /**
+     * Refills the pools until shutdown
+     */
+    private void refill() {
+        try {
+            while (true) {
+                int keyStrength;
+                synchronized (this) {
+                    Integer missing;
+                    while ((missing = getMissingKeyStrength()) == null && isRefilling())
+                        wait();
+                    if (!isRefilling())
+                        return;
+                    keyStrength = missing;
+                }
+
+                if (ThreadMgmt.getInstance().areThreadsRunning()) {
+                    // do not slow down the running tasks
+                    Thread.sleep(BUSY_WAIT);
+                    continue;
+                }
+
+                KeyPair keyPair = generate(keyStrength);
+                synchronized (this) {
+                    if (!isRefilling())
+                        return;
+                    getPool(keyStrength).add(keyPair);
+                }
+            }
+        } catch (InterruptedException e) {
+            logger.info("key pair pool stopped");
+        } catch (Exception e) {
+            logger.log(Level.SEVERE, "error generating key pairs for the pool", e);
+        }
+    }
+
+
+    /**
+     * The refill thread stops when it is not the current one anymore
+     */
+    private boolean isRefilling() {
+        return refillThread == Thread.currentThread();
+    }
+
+
+    /**
+     * Returns a key strength whose pool is not full
+     *
+     * @return the key strength or null
+     */
+    private Integer getMissingKeyStrength() {
+        for (Map.Entry<Integer, LinkedList<KeyPair>> entry : pools.entrySet())
+            if (entry.getValue().size() < Configuration.getInstance().KEYPAIR_POOL_SIZE)
+                return entry.getKey();
+        return null;
+    }
+
+
+    private LinkedList<KeyPair> getPool(int keyStrength) {
+        return pools.computeIfAbsent(keyStrength, strength -> new LinkedList<KeyPair>());
+    }
+
+
+    /**
+     * Stores the ready key pairs encrypted in the database
+     */
+    synchronized void store() {
+        try {
+            final SecretKeySpec secret = createSecret();
+            DBConnector.getInstance().executeInTransaction(conn -> {
+                Statement st = conn.createStatement();
+                st.executeUpdate("DELETE FROM keypairpool");
+                st.close();
+
+                PreparedStatement pst = conn.prepareStatement(
+                        "INSERT INTO keypairpool(keystrength, keydata) VALUES(?,?)");
+                for (Map.Entry<Integer, LinkedList<KeyPair>> entry : pools.entrySet()) {
+                    for (KeyPair keyPair : entry.getValue()) {
+                        pst.setInt(1, entry.getKey());
+                        pst.setString(2, encrypt(secret, keyPair.getPrivate()));
+                        pst.addBatch();
+                    }
+                }
+                pst.executeBatch();
+                pst.close();
+                return null;
+            });
+        } catch (Exception e) {
+            logger.log(Level.WARNING, "the key pair pool could not be stored", e);
+        }
+    }
+
+
+    /**
+     * Loads the stored key pairs into the pools and removes them
+     * from the database, so a key pair is never used twice
+     */
+    synchronized void load() {
+        try {
+            final SecretKeySpec secret = createSecret();
+            DBConnector.getInstance().executeInTransaction(conn -> {
+                Statement st = conn.createStatement();
+                ResultSet rs = st.executeQuery("SELECT keystrength, keydata FROM keypairpool");
+                while (rs.next()) {
+                    try {
+                        getPool(rs.getInt("keystrength")).add(decrypt(secret, rs.getString("keydata")));
+                    } catch (Exception e) {
+                        // e.g. the root certificate was replaced
+                        logger.warning("discarding a stored key pair that could not be decrypted");
+                    }
+                }
+                rs.close();
+                st.executeUpdate("DELETE FROM keypairpool");
+                st.close();
+                return null;
+            });
+        } catch (Exception e) {
+            logger.log(Level.WARNING, "the stored key pair pool could not be loaded", e);
+        }
+    }
+
+
+    /**
+     * Derives the encryption key from the private key of the root certificate
+     *
+     * @return the AES key
+     * @throws Exception if no root certificate exists
+     */
+    private static SecretKeySpec createSecret() throws Exception {
+        PrivateKey rootPrivKey = X509Utils.loadRootPrivateKey();
+        byte[] digest = MessageDigest.getInstance("SHA-256").digest(rootPrivKey.getEncoded());
+        return new SecretKeySpec(digest, "AES");
+    }
+
+
+    private static String encrypt(SecretKeySpec secret, PrivateKey privKey) throws Exception {
+        byte[] iv = new byte[IV_LENGTH];
+        new SecureRandom().nextBytes(iv);
+
+        Cipher cipher = Cipher.getInstance(CIPHER);
+        cipher.init(Cipher.ENCRYPT_MODE, secret, new GCMParameterSpec(128, iv));
+        byte[] encrypted = cipher.doFinal(privKey.getEncoded());
+
+        byte[] data = new byte[iv.length + encrypted.length];
+        System.arraycopy(iv, 0, data, 0, iv.length);
+        System.arraycopy(encrypted, 0, data, iv.length, encrypted.length);
+        return Base64.encodeBytes(data, Base64.DONT_BREAK_LINES);
+    }
+
+
+    private static KeyPair decrypt(SecretKeySpec secret, String keyData) throws Exception {
+        byte[] data = Base64.decode(keyData);
+
+        Cipher cipher = Cipher.getInstance(CIPHER);
+        cipher.init(Cipher.DECRYPT_MODE, secret, new GCMParameterSpec(128, data, 0, IV_LENGTH));
+        byte[] encoded = cipher.doFinal(data, IV_LENGTH, data.length - IV_LENGTH);
+
+        // the public key is part of the private crt key
+        KeyFactory keyFactory = KeyFactory.getInstance("RSA", "BC");
+        RSAPrivateCrtKey privKey = (RSAPrivateCrtKey) keyFactory.generatePrivate(new PKCS8EncodedKeySpec(encoded));
+        PublicKey pubKey = keyFactory.generatePublic(
+                new RSAPublicKeySpec(privKey.getModulus(), privKey.getPublicExponent()));
+        return new KeyPair(pubKey, privKey);
+    }
+}
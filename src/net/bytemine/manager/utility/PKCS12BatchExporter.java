@@ -0,0 +1,422 @@
+/*************************************************************************
+ * Written by / Copyright (C) 2009-2012 bytemine GmbH                     *
+ * Author: Daniel Rauer                     E-Mail:    rauer@bytemine.net *
+ *                                                                        *
+ * http://www.bytemine.net/                                               *
+ *************************************************************************/
+
+package net.bytemine.manager.utility;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.security.PrivateKey;
+import java.security.PublicKey;
+import java.security.SecureRandom;
+import java.security.cert.Certificate;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import javax.crypto.Cipher;
+import javax.crypto.Mac;
+import javax.crypto.SecretKey;
+import javax.crypto.SecretKeyFactory;
+import javax.crypto.spec.PBEKeySpec;
+import javax.crypto.spec.PBEParameterSpec;
+
+import net.bytemine.manager.Configuration;
+
+import org.bouncycastle.asn1.ASN1EncodableVector;
+import org.bouncycastle.asn1.DERBMPString;
+import org.bouncycastle.asn1.DERNull;
+import org.bouncycastle.asn1.DERObjectIdentifier;
+import org.bouncycastle.asn1.DEROctetString;
+import org.bouncycastle.asn1.DERSequence;
+import org.bouncycastle.asn1.DERSet;
+import org.bouncycastle.asn1.oiw.OIWObjectIdentifiers;
+import org.bouncycastle.asn1.pkcs.AuthenticatedSafe;
+import org.bouncycastle.asn1.pkcs.CertBag;
+import org.bouncycastle.asn1.pkcs.ContentInfo;
+import org.bouncycastle.asn1.pkcs.EncryptedData;
+import org.bouncycastle.asn1.pkcs.EncryptedPrivateKeyInfo;
+import org.bouncycastle.asn1.pkcs.MacData;
+import org.bouncycastle.asn1.pkcs.PKCS12PBEParams;
+import org.bouncycastle.asn1.pkcs.PKCSObjectIdentifiers;
+import org.bouncycastle.asn1.pkcs.Pfx;
+import org.bouncycastle.asn1.pkcs.SafeBag;
+import org.bouncycastle.asn1.x509.AlgorithmIdentifier;
+import org.bouncycastle.asn1.x509.DigestInfo;
+import org.bouncycastle.x509.extension.SubjectKeyIdentifierStructure;
+
+
+/**
+ * Builds the PKCS#12 containers of many certificates at once.
+ * The containers are built in parallel on a fork-join pool,
+ * the encoded CA certificate is shared by all containers of a batch.
+ * Most of the time of a container is spent in the key derivation
+ * of the key, the certificates and the MAC, so the PBE algorithm and
+ * iteration count can be chosen per batch. The containers are written
+ * like the ones of the PKCS12Exporter, but the BC keystore always uses
+ * 1024 iterations, so the PFX structure is built here.
+ *
+ * @author Daniel Rauer
+ */
+public class PKCS12BatchExporter {
+
+    private static Logger logger = Logger.getLogger(PKCS12BatchExporter.class.getName());
+
+    // the PKCS#12 PBE algorithms by name
+    private static final Map<String, DERObjectIdentifier> ALGORITHMS = new LinkedHashMap<String, DERObjectIdentifier>();
+    static {
+        ALGORITHMS.put("PBEWithSHAAnd3-KeyTripleDES-CBC", PKCSObjectIdentifiers.pbeWithSHAAnd3_KeyTripleDES_CBC);
+        ALGORITHMS.put("PBEWithSHAAnd2-KeyTripleDES-CBC", PKCSObjectIdentifiers.pbeWithSHAAnd2_KeyTripleDES_CBC);
+        ALGORITHMS.put("PBEWithSHAAnd128BitRC2-CBC", PKCSObjectIdentifiers.pbeWithSHAAnd128BitRC2_CBC);
+        ALGORITHMS.put("PBEWithSHAAnd40BitRC2-CBC", PKCSObjectIdentifiers.pbewithSHAAnd40BitRC2_CBC);
+    }
+
+    private static final int SALT_SIZE = 20;
+    // containers built by one task without forking
+    private static final int THRESHOLD = 4;
+
+    private static final SecureRandom random = new SecureRandom();
+    // builds the containers of all batches, one thread per processor
+    private static final ForkJoinPool pool = new ForkJoinPool(Runtime.getRuntime().availableProcessors());
+
+    private final String algorithm;
+    private final DERObjectIdentifier algorithmId;
+    private final int iterations;
+
+    private final List<Bundle> bundles = new ArrayList<Bundle>();
+    // the certificate bags of the CA certificates
+    private final Map<Certificate, SafeBag> caBags = new ConcurrentHashMap<Certificate, SafeBag>();
+
+    private long elapsed;
+    private final AtomicLong buildTime = new AtomicLong();
+
+
+    /**
+     * Builds the containers with the configured PBE algorithm and iteration count
+     *
+     * @throws Exception if the algorithm is not supported
+     */
+    public PKCS12BatchExporter() throws Exception {
+        this(Configuration.getInstance().PKCS12_PBE_ALGORITHM, Configuration.getInstance().PKCS12_PBE_ITERATIONS);
+    }
+
+
+    /**
+     * @param algorithm  The PBE algorithm of the key, the certificates and the MAC
+     * @param iterations The PBE iteration count
+     * @throws Exception if the algorithm is not supported
+     */
+    public PKCS12BatchExporter(String algorithm, int iterations) throws Exception {
+        this.algorithmId = getAlgorithmId(algorithm);
+        this.algorithm = algorithm;
+        this.iterations = Math.max(1, iterations);
+    }
+
+
+    /**
+     * Returns the names of the supported PBE algorithms
+     *
+     * @return the algorithm names
+     */
+    public static List<String> getAlgorithms() {
+        return new ArrayList<String>(ALGORITHMS.keySet());
+    }
+
+
+    private static DERObjectIdentifier getAlgorithmId(String algorithm) throws Exception {
+        for (Map.Entry<String, DERObjectIdentifier> entry : ALGORITHMS.entrySet())
+            if (entry.getKey().equalsIgnoreCase(algorithm))
+                return entry.getValue();
+        throw new Exception("unsupported PKCS#12 PBE algorithm: " + algorithm + ", use one of " + ALGORITHMS.keySet());
+    }
+
+
+    /**
+     * Adds a container to the batch
+     *
+     * @param exporter The exporter with the certificates, key and file name
+     * @param password The password of the container or null
+     * @param x509id   The id of the certificate
+     * @return the bundle with the result after export()
+     */
+    public Bundle add(PKCS12Exporter exporter, String password, int x509id) {
+        Bundle bundle = new Bundle(exporter, password == null ? "" : password, x509id);
+        bundles.add(bundle);
+        return bundle;
+    }
+
+
+    /**
+     * Returns the number of containers of the batch
+     *
+     * @return the number of containers
+     */
+    public int getSize() {
+        return bundles.size();
+    }
+
+
+    /**
+     * Builds and writes all containers of the batch
+     *
+     * @return the bundles, the failed ones have an error
+     */
+    public List<Bundle> export() {
+        long start = System.currentTimeMillis();
+        pool.invoke(new BuildTask(0, bundles.size()));
+        elapsed = System.currentTimeMillis() - start;
+
+        logger.info(getTimingSummary());
+        return Collections.unmodifiableList(bundles);
+    }
+
+
+    /**
+     * Returns the timing of the last export
+     *
+     * @return the number of containers, the time and the PBE parameters
+     */
+    public String getTimingSummary() {
+        return bundles.size() + " PKCS#12 containers (" + algorithm + ", " + iterations + " iterations) in "
+                + elapsed + "ms, " + getAverageBuildTime() + "ms per container, "
+                + pool.getParallelism() + " threads";
+    }
+
+
+    /**
+     * Returns the wall clock time of the last export
+     *
+     * @return the time in ms
+     */
+    public long getElapsed() {
+        return elapsed;
+    }
+
+
+    /**
+     * Returns the average time one container took to build and write
+     *
+     * @return the time in ms
+     */
+    public long getAverageBuildTime() {
+        return bundles.isEmpty() ? 0 : buildTime.get() / bundles.size() / 1000000;
+    }
+
+
+    public String getAlgorithm() {
+        return algorithm;
+    }
+
+
+    public int getIterations() {
+        return iterations;
+    }
+
+
+    /**
+     * Builds a range of the bundles, splits it while it is too large
+     */
+    private class BuildTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final int from;
+        private final int to;
+
+        private BuildTask(int from, int to) {
+            this.from = from;
+            this.to = to;
+        }
+
+        protected void compute() {
+            if (to - from <= THRESHOLD) {
+                for (int i = from; i < to; i++)
+                    build(bundles.get(i));
+            } else {
+                int middle = (from + to) >>> 1;
+                invokeAll(new BuildTask(from, middle), new BuildTask(middle, to));
+            }
+        }
+    }
+
+
+    /**
+     * Builds and writes the container of a bundle, the errors are kept in the bundle
+     *
+     * @param bundle The bundle
+     */
+    private void build(Bundle bundle) {
+        long start = System.nanoTime();
+        PKCS12Exporter exporter = bundle.exporter;
+        try {
+            byte[] pfx = createPfx(exporter, bundle.password.toCharArray());
+            File outputFile = new File(exporter.getExportPath() + "/" + exporter.getFileName());
+            FileOutputStream fOut = new FileOutputStream(outputFile);
+            try {
+                fOut.write(pfx);
+            } finally {
+                fOut.close();
+            }
+
+            // the database keeps the container without password, like the PKCS12Exporter
+            if (!"".equals(bundle.password))
+                pfx = createPfx(exporter, new char[0]);
+            bundle.content = new String(pfx);
+        } catch (Exception e) {
+            logger.log(Level.SEVERE, "error building the PKCS#12 container of " + exporter.getFriendlyName(), e);
+            bundle.error = e;
+        }
+        buildTime.addAndGet(System.nanoTime() - start);
+    }
+
+
+    /**
+     * Builds the PFX structure with the shrouded key, the client
+     * and the CA certificate
+     *
+     * @param exporter The exporter with the certificates and key
+     * @param password The password
+     * @return the DER encoded container
+     * @throws Exception
+     */
+    private byte[] createPfx(PKCS12Exporter exporter, char[] password) throws Exception {
+        Certificate clientCertificate = exporter.getClientCertificate();
+        DERSet attributes = createAttributes(exporter.getFriendlyName(), clientCertificate.getPublicKey());
+
+        // the key bag
+        PKCS12PBEParams keyParams = new PKCS12PBEParams(createSalt(), iterations);
+        AlgorithmIdentifier keyAlgId = new AlgorithmIdentifier(algorithmId, keyParams.getDERObject());
+        Cipher keyCipher = createCipher(Cipher.WRAP_MODE, keyParams, password);
+        EncryptedPrivateKeyInfo keyInfo = new EncryptedPrivateKeyInfo(keyAlgId, keyCipher.wrap(exporter.getClientKey()));
+        SafeBag keyBag = new SafeBag(PKCSObjectIdentifiers.pkcs8ShroudedKeyBag, keyInfo.getDERObject(), attributes);
+        byte[] keySafe = new DERSequence(keyBag).getDEREncoded();
+
+        // the encrypted certificate bags
+        ASN1EncodableVector certBags = new ASN1EncodableVector();
+        certBags.add(createCertBag(clientCertificate, attributes));
+        Certificate rootCertificate = exporter.getRootCertificate();
+        SafeBag caBag = caBags.get(rootCertificate);
+        if (caBag == null) {
+            caBag = createCertBag(rootCertificate, null);
+            caBags.put(rootCertificate, caBag);
+        }
+        certBags.add(caBag);
+
+        PKCS12PBEParams certParams = new PKCS12PBEParams(createSalt(), iterations);
+        AlgorithmIdentifier certAlgId = new AlgorithmIdentifier(algorithmId, certParams.getDERObject());
+        byte[] certSafe = createCipher(Cipher.ENCRYPT_MODE, certParams, password)
+                .doFinal(new DERSequence(certBags).getDEREncoded());
+        EncryptedData certData = new EncryptedData(PKCSObjectIdentifiers.data, certAlgId, new DEROctetString(certSafe));
+
+        ContentInfo[] contents = {
+                new ContentInfo(PKCSObjectIdentifiers.data, new DEROctetString(keySafe)),
+                new ContentInfo(PKCSObjectIdentifiers.encryptedData, certData.getDERObject())
+        };
+        byte[] authSafe = new AuthenticatedSafe(contents).getDEREncoded();
+
+        // the MAC over the content
+        byte[] macSalt = createSalt();
+        SecretKeyFactory macKeyFactory = SecretKeyFactory.getInstance(OIWObjectIdentifiers.idSHA1.getId(), "BC");
+        Mac mac = Mac.getInstance(OIWObjectIdentifiers.idSHA1.getId(), "BC");
+        mac.init(macKeyFactory.generateSecret(new PBEKeySpec(password)), new PBEParameterSpec(macSalt, iterations));
+        DigestInfo macDigest = new DigestInfo(
+                new AlgorithmIdentifier(OIWObjectIdentifiers.idSHA1, DERNull.INSTANCE), mac.doFinal(authSafe));
+
+        Pfx pfx = new Pfx(new ContentInfo(PKCSObjectIdentifiers.data, new DEROctetString(authSafe)),
+                new MacData(macDigest, macSalt, iterations));
+        return pfx.getDEREncoded();
+    }
+
+
+    private Cipher createCipher(int mode, PKCS12PBEParams params, char[] password) throws Exception {
+        SecretKeyFactory keyFactory = SecretKeyFactory.getInstance(algorithmId.getId(), "BC");
+        SecretKey key = keyFactory.generateSecret(new PBEKeySpec(password));
+        Cipher cipher = Cipher.getInstance(algorithmId.getId(), "BC");
+        cipher.init(mode, key, new PBEParameterSpec(params.getIV(), params.getIterations().intValue()));
+        return cipher;
+    }
+
+
+    private static SafeBag createCertBag(Certificate certificate, DERSet attributes) throws Exception {
+        CertBag certBag = new CertBag(PKCSObjectIdentifiers.x509Certificate, new DEROctetString(certificate.getEncoded()));
+        if (attributes == null)
+            return new SafeBag(PKCSObjectIdentifiers.certBag, certBag.getDERObject());
+        return new SafeBag(PKCSObjectIdentifiers.certBag, certBag.getDERObject(), attributes);
+    }
+
+
+    /**
+     * Creates the friendly name and local key id of the key and the client certificate
+     */
+    private static DERSet createAttributes(String friendlyName, PublicKey publicKey) throws Exception {
+        ASN1EncodableVector name = new ASN1EncodableVector();
+        name.add(PKCSObjectIdentifiers.pkcs_9_at_friendlyName);
+        name.add(new DERSet(new DERBMPString(friendlyName)));
+
+        ASN1EncodableVector keyId = new ASN1EncodableVector();
+        keyId.add(PKCSObjectIdentifiers.pkcs_9_at_localKeyId);
+        keyId.add(new DERSet(new SubjectKeyIdentifierStructure(publicKey)));
+
+        ASN1EncodableVector attributes = new ASN1EncodableVector();
+        attributes.add(new DERSequence(name));
+        attributes.add(new DERSequence(keyId));
+        return new DERSet(attributes);
+    }
+
+
+    private static byte[] createSalt() {
+        byte[] salt = new byte[SALT_SIZE];
+        random.nextBytes(salt);
+        return salt;
+    }
+
+
+    /**
+     * A container of the batch and its result
+     */
+    public static class Bundle {
+        private final PKCS12Exporter exporter;
+        private final String password;
+        private final int x509id;
+        private String content;
+        private Exception error;
+
+        private Bundle(PKCS12Exporter exporter, String password, int x509id) {
+            this.exporter = exporter;
+            this.password = password;
+            this.x509id = x509id;
+        }
+
+        public int getX509id() {
+            return x509id;
+        }
+
+        public String getFriendlyName() {
+            return exporter.getFriendlyName();
+        }
+
+        /**
+         * @return the container without password as stored in the database, null if it failed
+         */
+        public String getContent() {
+            return content;
+        }
+
+        /**
+         * @return the error or null
+         */
+        public Exception getError() {
+            return error;
+        }
+    }
+}
@@ -144,10 +144,7 @@ public class PKCS12Exporter {
 
         store.setKeyEntry(this.friendlyName, this.clientKey, "".toCharArray(), chain);
 
-        String prefix = this.friendlyName + "_" + this.userId.hashCode() + ".";
-        String filename = prefix + Constants.DEFAULT_PKCS12_EXTENSION;
-
-        File outputFile = new File(this.exportPath + "/" + filename);
+        File outputFile = new File(this.exportPath + "/" + getFileName());
         FileOutputStream fOut = new FileOutputStream(outputFile);
 
         store.store(fOut, passwordArray);
@@ -176,6 +173,37 @@ public class PKCS12Exporter {
     }
 
 
+    /**
+     * Returns the name of the .p12 file
+     *
+     * @return the file name
+     */
+    String getFileName() {
+        String prefix = this.friendlyName + "_" + this.userId.hashCode() + ".";
+        return prefix + Constants.DEFAULT_PKCS12_EXTENSION;
+    }
+
+    Certificate getRootCertificate() {
+        return rootCertificate;
+    }
+
+    Certificate getClientCertificate() {
+        return clientCertificate;
+    }
+
+    PrivateKey getClientKey() {
+        return clientKey;
+    }
+
+    String getFriendlyName() {
+        return friendlyName;
+    }
+
+    String getExportPath() {
+        return exportPath;
+    }
+
+
     public static void main(String[] args) {
         PKCS12 p = new PKCS12("10");
         p = PKCS12DAO.getInstance().read(p);
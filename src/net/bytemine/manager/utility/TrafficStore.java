@@ -0,0 +1,249 @@
+/*************************************************************************
+ * Written by / Copyright (C) 2009-2012 bytemine GmbH                     *
+ * Author: Daniel Rauer                     E-Mail:    rauer@bytemine.net *
+ *                                                                        *
+ * http://www.bytemine.net/                                               *
+ *************************************************************************/
+
+package net.bytemine.manager.utility;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import net.bytemine.manager.Configuration;
+import net.bytemine.manager.bean.TrafficSample;
+import net.bytemine.manager.db.TrafficQueries;
+import net.bytemine.openvpn.ClientStatus;
+import net.bytemine.openvpn.StatusListener;
+import net.bytemine.openvpn.StatusSnapshot;
+
+
+/**
+ * Records the traffic history of the VPN servers and clients.
+ * OpenVPN reports the bytes since the start of the server and of every
+ * session, so the store keeps the last counters and adds up the
+ * differences per minute. A minute is written when the next one starts,
+ * into the minute, hour and day resolution at once, old traffic is
+ * deleted once an hour. The writes run in a background thread, so the
+ * threads reporting the status never wait for the database.
+ * The history is read with TrafficQueries.
+ * implemented as singleton
+ *
+ * @author Daniel Rauer
+ */
+public class TrafficStore implements StatusListener {
+
+    private static Logger logger = Logger.getLogger(TrafficStore.class.getName());
+
+    private static final long PURGE_INTERVAL = TrafficSample.RESOLUTION_HOUR * 1000L;
+
+    private static TrafficStore instance = null;
+
+    // the last counters, per server
+    private final Map<String, Counters> counters = new HashMap<String, Counters>();
+    // the traffic of the current minute, per server and client
+    private Map<String, Series> minute = new HashMap<String, Series>();
+    private long minuteStart = 0;
+    private long lastPurge = 0;
+
+    // writes the finished minutes one after another
+    private final ExecutorService writer = Executors.newSingleThreadExecutor(r -> {
+        Thread t = new Thread(r, "traffic-store");
+        t.setDaemon(true);
+        return t;
+    });
+
+
+    private TrafficStore() {
+    }
+
+
+    public static synchronized TrafficStore getInstance() {
+        if (instance == null)
+            instance = new TrafficStore();
+
+        return instance;
+    }
+
+
+    public void statusReceived(StatusSnapshot snapshot) {
+        record(snapshot);
+    }
+
+
+    /**
+     * Adds the traffic since the last status of the server
+     *
+     * @param snapshot The status of a server
+     */
+    public synchronized void record(StatusSnapshot snapshot) {
+        if (!Configuration.getInstance().TRAFFIC_STATS_ENABLED)
+            return;
+
+        long start = TrafficQueries.periodStart(snapshot.getTime(), TrafficSample.RESOLUTION_MINUTE);
+        if (start > minuteStart) {
+            writeMinute();
+            minuteStart = start;
+        }
+        // a late status of another server counts into the current minute
+
+        String server = snapshot.getIdentifier();
+        Counters last = counters.get(server);
+        Counters current = new Counters();
+        long receivedByClients = 0;
+        long sentByClients = 0;
+        Map<String, Integer> sessions = new HashMap<String, Integer>();
+
+        for (ClientStatus client : snapshot.getClients()) {
+            String session = client.getClientId() >= 0
+                    ? "#" + client.getClientId()
+                    : client.getCommonName() + "|" + client.getRealAddress() + "|" + client.getConnectedSince();
+            long[] bytes = {client.getBytesReceived(), client.getBytesSent()};
+            current.sessions.put(session, bytes);
+
+            // the first status of a server only sets the counters
+            if (last == null)
+                continue;
+            long[] before = last.sessions.get(session);
+            long received = delta(before == null ? 0 : before[0], bytes[0]);
+            long sent = delta(before == null ? 0 : before[1], bytes[1]);
+            receivedByClients += received;
+            sentByClients += sent;
+
+            Integer count = sessions.get(client.getCommonName());
+            sessions.put(client.getCommonName(), count == null ? 1 : count + 1);
+            add(server, client.getCommonName(), received, sent, sessions.get(client.getCommonName()));
+        }
+
+        current.bytesIn = snapshot.getBytesIn();
+        current.bytesOut = snapshot.getBytesOut();
+        counters.put(server, current);
+        if (last == null)
+            return;
+
+        // the server counters include the traffic of clients that left meanwhile
+        long received = receivedByClients;
+        long sent = sentByClients;
+        if (current.bytesIn >= 0 && last.bytesIn >= 0)
+            received = delta(last.bytesIn, current.bytesIn);
+        if (current.bytesOut >= 0 && last.bytesOut >= 0)
+            sent = delta(last.bytesOut, current.bytesOut);
+        add(server, "", received, sent, Math.max(snapshot.getClientCount(), snapshot.getClients().size()));
+    }
+
+
+    /**
+     * Writes the traffic of the current minute and waits until
+     * all traffic is written, the next traffic of this minute is added to it
+     */
+    public void flush() {
+        Future<?> written;
+        synchronized (this) {
+            written = writeMinute();
+        }
+        try {
+            written.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+            logger.log(Level.WARNING, "error writing the traffic", e.getCause());
+        }
+    }
+
+
+    /**
+     * Forgets the counters of a server, its next status
+     * only sets the counters again
+     *
+     * @param server The identifier of the server
+     */
+    public synchronized void forget(String server) {
+        counters.remove(server);
+    }
+
+
+    /**
+     * @return the difference of the counters, a counter
+     *         lower than before was reset meanwhile
+     */
+    private static long delta(long before, long now) {
+        return now >= before ? now - before : now;
+    }
+
+
+    private void add(String server, String client, long received, long sent, int sessions) {
+        String key = server + "\n" + client;
+        Series series = minute.get(key);
+        if (series == null) {
+            series = new Series(server, client);
+            minute.put(key, series);
+        }
+        series.received += received;
+        series.sent += sent;
+        series.sessions = Math.max(series.sessions, sessions);
+    }
+
+
+    /**
+     * Hands the traffic of the current minute to the writer
+     *
+     * @return the future of the write
+     */
+    private Future<?> writeMinute() {
+        final List<TrafficSample> samples = new ArrayList<TrafficSample>(minute.size());
+        for (Series series : minute.values())
+            samples.add(new TrafficSample(series.server, series.client, minuteStart,
+                    TrafficSample.RESOLUTION_MINUTE, series.received, series.sent, series.sessions));
+        minute = new HashMap<String, Series>();
+
+        final long now = System.currentTimeMillis();
+        final boolean purge = now - lastPurge >= PURGE_INTERVAL;
+        if (purge)
+            lastPurge = now;
+
+        return writer.submit(() -> {
+            if (!samples.isEmpty()) {
+                TrafficQueries.addSamples(samples);
+                logger.fine("stored the traffic of " + samples.size() + " series");
+            }
+            if (purge)
+                TrafficQueries.purge(now);
+        });
+    }
+
+
+    /**
+     * The last counters of a server
+     */
+    private static class Counters {
+        private long bytesIn = -1;
+        private long bytesOut = -1;
+        // received and sent bytes, per session
+        private final Map<String, long[]> sessions = new HashMap<String, long[]>();
+    }
+
+
+    /**
+     * The traffic of a server or client in the current minute
+     */
+    private static class Series {
+        private final String server;
+        private final String client;
+        private long received = 0;
+        private long sent = 0;
+        private int sessions = 0;
+
+        private Series(String server, String client) {
+            this.server = server;
+            this.client = client;
+        }
+    }
+}
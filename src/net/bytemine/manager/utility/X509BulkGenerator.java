@@ -0,0 +1,423 @@
+/*************************************************************************
+ * Written by / Copyright (C) 2009-2012 bytemine GmbH                     *
+ * Author: Daniel Rauer                     E-Mail:    rauer@bytemine.net *
+ *                                                                        *
+ * http://www.bytemine.net/                                               *
+ *************************************************************************/
+
+package net.bytemine.manager.utility;
+
+import java.security.KeyPair;
+import java.security.PrivateKey;
+import java.security.cert.X509Certificate;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.ResourceBundle;
+import java.util.Vector;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import net.bytemine.manager.Configuration;
+import net.bytemine.manager.Constants;
+import net.bytemine.manager.bean.PKCS12;
+import net.bytemine.manager.bean.User;
+import net.bytemine.manager.bean.X509;
+import net.bytemine.manager.db.DBConnector;
+import net.bytemine.manager.db.PKCS12DAO;
+import net.bytemine.manager.db.UserDAO;
+import net.bytemine.manager.db.X509DAO;
+import net.bytemine.manager.i18n.ResourceBundleMgmt;
+import net.bytemine.utility.DateUtils;
+
+import org.bouncycastle.jce.PrincipalUtil;
+
+
+/**
+ * Generates the client certificates of many users at once.
+ * The work is done in stages:
+ * - the key pairs are taken from the KeyPairPool or generated and the certificates
+ *   signed by a pool with one thread per processor, the signing certificate and key
+ *   are decoded only once
+ * - the certificates are written to the db in batches, one transaction per batch
+ * - the files are exported by a separate pool while the next certificates
+ *   are generated, the PKCS#12 containers of a batch are built by the
+ *   PKCS12BatchExporter
+ * The certificates are signed like the ones of
+ * X509Generator.createClientCertImmediately(), see ClientCertSigner
+ *
+ * @author Daniel Rauer
+ */
+class X509BulkGenerator {
+
+    private static Logger logger = Logger.getLogger(X509BulkGenerator.class.getName());
+    private static ResourceBundle rb = ResourceBundleMgmt.getInstance().getUserBundle();
+
+    // number of certificates written to the db in one transaction
+    private static final int BATCH_SIZE = 200;
+    // number of threads exporting the files
+    private static final int EXPORT_THREADS = 2;
+
+    private final X509Generator generator;
+    private final ResourceBundle clientCertBundle;
+
+    // the signing material, decoded once per run
+    private ClientCertSigner signer;
+    private String issuer;
+    private Date validFrom;
+    private Date validTo;
+
+    private int type;
+    private boolean exportBinary;
+    private boolean exportText;
+
+    // PKCS#12 containers exported but not yet stored in the db
+    private final ConcurrentLinkedQueue<PKCS12> exportedPKCS12 = new ConcurrentLinkedQueue<PKCS12>();
+    // certificates whose PKCS#12 export failed
+    private final ConcurrentLinkedQueue<Integer> failedPKCS12 = new ConcurrentLinkedQueue<Integer>();
+    private final AtomicInteger failedExports = new AtomicInteger(0);
+
+
+    X509BulkGenerator(X509Generator generator, ResourceBundle clientCertBundle) {
+        this.generator = generator;
+        this.clientCertBundle = clientCertBundle;
+    }
+
+
+    /**
+     * Creates the client certificates of the users
+     *
+     * @param users           The users to create the certificates for
+     * @param pkcs12Passwords The PKCS12 passwords of the users by userid, may be empty
+     * @param validFor        Number of days the certificates will be valid or null
+     * @return the number of generated certificates
+     * @throws Exception if not all certificates could be generated
+     */
+    int createClientCerts(List<User> users, Map<Integer, String> pkcs12Passwords, String validFor)
+            throws Exception {
+        return createClientCerts(users, pkcs12Passwords, validFor, true);
+    }
+
+
+    /**
+     * Creates the client certificates of the users
+     *
+     * @param users           The users to create the certificates for
+     * @param pkcs12Passwords The PKCS12 passwords of the users by userid, may be empty
+     * @param validFor        Number of days the certificates will be valid or null
+     * @param pkcs12          false, if the certificates are stored as 'normal' x509
+     *                        certificates even if the certificate type is PKCS12
+     * @return the number of generated certificates
+     * @throws Exception if not all certificates could be generated
+     */
+    int createClientCerts(List<User> users, Map<Integer, String> pkcs12Passwords, String validFor, boolean pkcs12)
+            throws Exception {
+        if (users.isEmpty())
+            return 0;
+
+        long start = System.currentTimeMillis();
+        prepare(validFor, pkcs12);
+
+        int threads = Runtime.getRuntime().availableProcessors();
+        ExecutorService signingPool = createPool("cert-keygen-", threads);
+        ExecutorService exportPool = createPool("cert-export-", EXPORT_THREADS);
+        CompletionService<IssuedCert> completion = new ExecutorCompletionService<IssuedCert>(signingPool);
+
+        int failed = 0;
+        int generated = 0;
+        try {
+            for (final User user : users)
+                completion.submit(() -> issue(user));
+            signingPool.shutdown();
+
+            List<IssuedCert> batch = new ArrayList<IssuedCert>(BATCH_SIZE);
+            for (int i = 0; i < users.size(); i++) {
+                try {
+                    batch.add(completion.take().get());
+                } catch (ExecutionException e) {
+                    logger.log(Level.SEVERE, "error generating client certificate", e.getCause());
+                    failed++;
+                }
+
+                if (batch.size() == BATCH_SIZE || (i == users.size() - 1 && !batch.isEmpty())) {
+                    if (store(batch)) {
+                        generated += batch.size();
+                        export(exportPool, batch, pkcs12Passwords);
+                    } else
+                        failed += batch.size();
+                    batch = new ArrayList<IssuedCert>(BATCH_SIZE);
+                }
+            }
+
+            exportPool.shutdown();
+            exportPool.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+            storeExportResults();
+        } catch (InterruptedException e) {
+            signingPool.shutdownNow();
+            exportPool.shutdownNow();
+            throw e;
+        }
+
+        logger.info("generated " + generated + " client certificates with " + threads + " threads in "
+                + (System.currentTimeMillis() - start) + "ms");
+
+        if (failed > 0 || failedExports.get() > 0) {
+            logger.severe(failed + " of " + users.size() + " client certificates could not be generated, "
+                    + failedExports.get() + " could not be exported");
+            throw new Exception(rb.getString("error.importClients.generateerror"));
+        }
+        return generated;
+    }
+
+
+    /**
+     * Loads the signing certificate and key and everything
+     * that is the same for all certificates
+     *
+     * @param validFor Number of days the certificates will be valid or null
+     * @param pkcs12   false, if no PKCS12 containers are created
+     * @throws Exception
+     */
+    private void prepare(String validFor, boolean pkcs12) throws Exception {
+        CAMaterialCache.CAMaterial signing = CAMaterialCache.getInstance().getSigning();
+        X509Certificate signingCert = signing.getCertificate();
+        signer = new ClientCertSigner(
+                signingCert,
+                signing.getPrivateKey(),
+                clientCertBundle.getString("algorithm"),
+                generator.getGeneratorIdentifier());
+        issuer = PrincipalUtil.getSubjectX509Principal(signingCert).toString();
+
+        try {
+            Integer.parseInt(validFor);
+        } catch (Exception e) {
+            validFor = Configuration.getInstance().X509_CLIENT_VALID_FOR;
+        }
+        String validFromStr = Constants.PROPERTIES_DATE_FORMAT.format(new Date());
+        validFrom = Constants.PROPERTIES_DATE_FORMAT.parse(validFromStr);
+        validTo = Constants.PROPERTIES_DATE_FORMAT.parse(DateUtils.addDaysToDate(validFromStr, validFor));
+
+        exportBinary = Boolean.parseBoolean(clientCertBundle.getString("export_binary"));
+        exportText = Boolean.parseBoolean(clientCertBundle.getString("export_text"));
+        type = pkcs12 && Configuration.getInstance().CERTIFICATE_TYPE == Constants.CERTIFICATE_TYPE_PKCS12
+                ? X509.X509_TYPE_PKCS12 : X509.X509_TYPE_CLIENT;
+    }
+
+
+    /**
+     * Generates the key pair and the signed certificate of a user,
+     * executed by the signing pool
+     *
+     * @param user The user
+     * @return the issued certificate
+     * @throws Exception
+     */
+    private IssuedCert issue(User user) throws Exception {
+        KeyPair keyPair = KeyPairPool.getInstance().take(generator.getKeyStrength());
+        String subject = generator.createClientSubject(user);
+        X509Certificate cert = signer.sign(keyPair.getPublic(), subject, validFrom, validTo);
+
+        IssuedCert issued = new IssuedCert(user, subject, cert, keyPair.getPrivate());
+        issued.exporter = new X509Exporter(
+                type,
+                clientCertBundle.getString("export_cert_file"),
+                clientCertBundle.getString("export_key_file"),
+                Configuration.getInstance().CERT_EXPORT_PATH,
+                cert,
+                user
+        );
+        issued.keyContent = X509Utils.addKeyHeader(issued.privKey.getEncoded());
+        issued.content = issued.exporter.generateContent(exportBinary, exportText);
+        return issued;
+    }
+
+
+    /**
+     * Stores a batch of certificates and links them to their users,
+     * all in one transaction
+     *
+     * @param batch The issued certificates
+     * @return true, if the batch is stored
+     */
+    private boolean store(List<IssuedCert> batch) {
+        final Vector<X509> x509s = new Vector<X509>();
+        final Vector<User> users = new Vector<User>();
+        for (IssuedCert issued : batch)
+            users.add(issued.user);
+
+        // the PKCS#12 containers exported meanwhile are stored with this batch
+        final Vector<PKCS12> pkcs12s = new Vector<PKCS12>();
+        PKCS12 pkcs12;
+        while ((pkcs12 = exportedPKCS12.poll()) != null)
+            pkcs12s.add(pkcs12);
+
+        int[] previousX509ids = new int[users.size()];
+        for (int i = 0; i < users.size(); i++)
+            previousX509ids[i] = users.get(i).getX509id();
+
+        try {
+            for (IssuedCert issued : batch) {
+                issued.x509 = issued.exporter.prepareCertificate(
+                        issued.cert.getSerialNumber().longValue(), issuer, issued.subject, issued.content,
+                        issued.privKey, issued.keyContent, issued.cert.getNotBefore(), issued.cert.getNotAfter());
+                x509s.add(issued.x509);
+            }
+
+            DBConnector.getInstance().executeInTransaction(conn -> {
+                X509DAO.getInstance().create(x509s);
+                for (int i = 0; i < users.size(); i++)
+                    users.get(i).setX509id(x509s.get(i).getX509id());
+                UserDAO.getInstance().update(users);
+                PKCS12DAO.getInstance().create(pkcs12s);
+                return null;
+            });
+            return true;
+        } catch (Exception e) {
+            logger.log(Level.SEVERE, "error storing " + batch.size() + " client certificates", e);
+            for (int i = 0; i < users.size(); i++)
+                users.get(i).setX509id(previousX509ids[i]);
+            exportedPKCS12.addAll(pkcs12s);
+            return false;
+        }
+    }
+
+
+    /**
+     * Exports the certificate and key files or the PKCS#12 containers
+     * of a stored batch in the export pool
+     *
+     * @param exportPool      The export pool
+     * @param batch           The stored certificates
+     * @param pkcs12Passwords The PKCS12 passwords of the users by userid
+     */
+    private void export(ExecutorService exportPool, final List<IssuedCert> batch,
+                        final Map<Integer, String> pkcs12Passwords) {
+        if (Configuration.getInstance().CERTIFICATE_TYPE == Constants.CERTIFICATE_TYPE_BASE64) {
+            for (final IssuedCert issued : batch) {
+                exportPool.execute(() -> {
+                    try {
+                        if (generator.isExportCert())
+                            issued.exporter.exportCertToFile(issued.content, exportBinary);
+                        if (generator.isExportKey())
+                            issued.exporter.exportKeyToFile(issued.keyContent);
+                    } catch (Exception e) {
+                        logger.log(Level.SEVERE, "error exporting client certificate of " + issued.user.getUsername(), e);
+                        failedExports.incrementAndGet();
+                    }
+                });
+            }
+        } else if (type == X509.X509_TYPE_PKCS12 && generator.isExportCert()) {
+            exportPool.execute(() -> exportPKCS12(batch, pkcs12Passwords));
+        }
+    }
+
+
+    /**
+     * Builds the PKCS#12 containers of a batch on the fork-join pool,
+     * the containers are stored with the next batch
+     *
+     * @param batch           The stored certificates
+     * @param pkcs12Passwords The PKCS12 passwords of the users by userid
+     */
+    private void exportPKCS12(List<IssuedCert> batch, Map<Integer, String> pkcs12Passwords) {
+        PKCS12BatchExporter pkcs12Batch;
+        try {
+            pkcs12Batch = new PKCS12BatchExporter();
+        } catch (Exception e) {
+            logger.log(Level.SEVERE, "error preparing the PKCS#12 export", e);
+            for (IssuedCert issued : batch)
+                failedPKCS12.add(issued.x509.getX509id());
+            failedExports.addAndGet(batch.size());
+            return;
+        }
+
+        for (IssuedCert issued : batch) {
+            try {
+                pkcs12Batch.add(
+                        new PKCS12Exporter(issued.cert, issued.privKey, signer.getSigningCert(), issued.user, null),
+                        pkcs12Passwords.get(issued.user.getUserid()),
+                        issued.x509.getX509id());
+            } catch (Exception e) {
+                logger.log(Level.SEVERE, "error exporting PKCS#12 certificate of " + issued.user.getUsername(), e);
+                failedPKCS12.add(issued.x509.getX509id());
+                failedExports.incrementAndGet();
+            }
+        }
+
+        for (PKCS12BatchExporter.Bundle bundle : pkcs12Batch.export()) {
+            if (bundle.getError() == null) {
+                PKCS12 pkcs12 = new PKCS12("0");
+                pkcs12.setFriendlyName(bundle.getFriendlyName());
+                pkcs12.setContent(bundle.getContent());
+                pkcs12.setX509id(bundle.getX509id());
+                exportedPKCS12.add(pkcs12);
+            } else {
+                failedPKCS12.add(bundle.getX509id());
+                failedExports.incrementAndGet();
+            }
+        }
+    }
+
+
+    /**
+     * Stores the PKCS#12 containers exported after the last batch and
+     * stores the certificates whose PKCS#12 export failed as 'normal' x509 certificates
+     *
+     * @throws Exception
+     */
+    private void storeExportResults() throws Exception {
+        final Vector<PKCS12> pkcs12s = new Vector<PKCS12>(exportedPKCS12);
+        exportedPKCS12.clear();
+
+        DBConnector.getInstance().executeInTransaction(conn -> {
+            PKCS12DAO.getInstance().create(pkcs12s);
+            for (Integer x509id : failedPKCS12) {
+                X509 x509 = X509DAO.getInstance().read(new X509(x509id));
+                x509.setType(X509.X509_TYPE_CLIENT);
+                X509DAO.getInstance().update(x509);
+            }
+            return null;
+        });
+    }
+
+
+    private static ExecutorService createPool(final String name, int threads) {
+        final AtomicInteger threadNumber = new AtomicInteger(1);
+        return Executors.newFixedThreadPool(threads, r -> {
+            Thread t = new Thread(r, name + threadNumber.getAndIncrement());
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+
+    /**
+     * A generated certificate passed through the stages
+     */
+    private static class IssuedCert {
+        private final User user;
+        private final String subject;
+        private final X509Certificate cert;
+        private final PrivateKey privKey;
+        private X509Exporter exporter;
+        private String content;
+        private String keyContent;
+        private X509 x509;
+
+        private IssuedCert(User user, String subject, X509Certificate cert, PrivateKey privKey) {
+            this.user = user;
+            this.subject = subject;
+            this.cert = cert;
+            this.privKey = privKey;
+        }
+    }
+}
@@ -0,0 +1,487 @@
+/*************************************************************************
+ * Written by / Copyright (C) 2009-2012 bytemine GmbH                     *
+ * Author: Daniel Rauer                     E-Mail:    rauer@bytemine.net *
+ *                                                                        *
+ * http://www.bytemine.net/                                               *
+ *************************************************************************/
+
+package net.bytemine.manager.utility;
+
+import java.io.File;
+import java.math.BigInteger;
+import java.nio.file.Files;
+import java.security.Key;
+import java.security.MessageDigest;
+import java.security.PrivateKey;
+import java.security.cert.X509Certificate;
+import java.security.interfaces.RSAKey;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Hashtable;
+import java.util.List;
+import java.util.Map;
+import java.util.Vector;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import net.bytemine.manager.Configuration;
+import net.bytemine.manager.bean.User;
+import net.bytemine.manager.bean.X509;
+import net.bytemine.manager.db.DBConnector;
+import net.bytemine.manager.db.UserDAO;
+import net.bytemine.manager.db.UserQueries;
+import net.bytemine.manager.db.X509DAO;
+import net.bytemine.manager.db.X509Queries;
+import net.bytemine.openvpn.UserImport;
+import net.bytemine.utility.FileUtils;
+import net.bytemine.utility.HexUtils;
+import net.bytemine.utility.StringUtils;
+
+
+/**
+ * Imports many client certificates and keys at once, used by the
+ * X509FileImporter for the client certificates of a directory.
+ * The work is done in stages:
+ * - all certificate and key files are read and parsed by a pool with
+ *   one thread per processor
+ * - the keys are matched to the certificates by the fingerprint of the
+ *   public key, the filenames are only used for keys without fingerprint
+ * - the users and existing certificates are loaded with one query each,
+ *   missing users are created in one batch and the certificates are
+ *   written to the db in batches, one transaction per batch
+ * - the files are exported by the pool
+ *
+ * @author Daniel Rauer
+ */
+class X509BulkImporter {
+
+    private static Logger logger = Logger.getLogger(X509BulkImporter.class.getName());
+
+    // number of certificates written to the db in one transaction
+    private static final int BATCH_SIZE = 500;
+
+    private final boolean createUsersFromCN;
+    private final String exportPath = Configuration.getInstance().CERT_EXPORT_PATH;
+
+
+    X509BulkImporter(boolean createUsersFromCN) {
+        this.createUsersFromCN = createUsersFromCN;
+    }
+
+
+    /**
+     * Imports the client certificates and their keys
+     *
+     * @param certFiles The certificate files
+     * @param keyFiles  The key files
+     * @return the x509ids of the imported certificates
+     * @throws Exception
+     */
+    Vector<String> importClientCerts(List<File> certFiles, List<File> keyFiles) throws Exception {
+        Vector<String> importedX509ids = new Vector<String>();
+        if (certFiles.isEmpty())
+            return importedX509ids;
+
+        long start = System.currentTimeMillis();
+        int threads = Runtime.getRuntime().availableProcessors();
+        ExecutorService pool = createPool(threads);
+        try {
+            List<Future<ParsedKey>> keyFutures = new ArrayList<Future<ParsedKey>>(keyFiles.size());
+            for (final File keyFile : keyFiles)
+                keyFutures.add(pool.submit(() -> parseKey(keyFile)));
+            List<Future<ParsedCert>> certFutures = new ArrayList<Future<ParsedCert>>(certFiles.size());
+            for (final File certFile : certFiles)
+                certFutures.add(pool.submit(() -> parseCert(certFile)));
+
+            Map<String, ParsedKey> keysByFingerprint = new HashMap<String, ParsedKey>();
+            Map<String, ParsedKey> keysByName = new HashMap<String, ParsedKey>();
+            for (ParsedKey key : collect(keyFutures)) {
+                if (key.fingerprint != null)
+                    keysByFingerprint.put(key.fingerprint, key);
+                keysByName.put(FileUtils.removeExtension(key.file.getName()), key);
+            }
+
+            List<ParsedCert> certs = collect(certFutures);
+            for (ParsedCert cert : certs)
+                cert.key = findKey(cert, keysByFingerprint, keysByName);
+
+            List<ImportedCert> imported = prepare(certs);
+            store(imported);
+
+            final AtomicInteger failedExports = new AtomicInteger(0);
+            List<Future<?>> exports = new ArrayList<Future<?>>(imported.size());
+            for (final ImportedCert importedCert : imported) {
+                importedX509ids.add(importedCert.x509id + "");
+                exports.add(pool.submit(() -> {
+                    try {
+                        export(importedCert);
+                    } catch (Exception e) {
+                        logger.log(Level.SEVERE, "error exporting " + importedCert.cert.file.getName(), e);
+                        failedExports.incrementAndGet();
+                    }
+                }));
+            }
+            for (Future<?> export : exports)
+                export.get();
+
+            logger.info("imported " + imported.size() + " of " + certFiles.size() + " client certificates with "
+                    + threads + " threads in " + (System.currentTimeMillis() - start) + "ms, "
+                    + failedExports.get() + " could not be exported");
+        } finally {
+            pool.shutdownNow();
+        }
+
+        return importedX509ids;
+    }
+
+
+    /**
+     * Reads and parses a certificate file, executed by the pool
+     *
+     * @param file The certificate file
+     * @return the parsed certificate or null
+     * @throws Exception
+     */
+    private static ParsedCert parseCert(File file) throws Exception {
+        String content = StringUtils.bytes2String(Files.readAllBytes(file.toPath()));
+        X509Certificate cert = X509Utils.regainX509Certificate(content);
+        if (cert == null) {
+            logger.warning("File " + file.getName() + " is not recognized as certificate");
+            return null;
+        }
+        return new ParsedCert(file, content, cert, fingerprint(cert.getPublicKey()));
+    }
+
+
+    /**
+     * Reads and parses a key file, executed by the pool
+     *
+     * @param file The key file
+     * @return the parsed key or null
+     */
+    private static ParsedKey parseKey(File file) {
+        try {
+            String keyContent = StringUtils.bytes2String(Files.readAllBytes(file.toPath()));
+            PrivateKey privKey = X509Utils.regainPrivateKey(keyContent);
+            if (privKey == null) {
+                logger.warning("Key " + file.getPath() + " could not be read");
+                return null;
+            }
+            return new ParsedKey(file, keyContent, privKey, fingerprint(privKey));
+        } catch (Exception e) {
+            logger.warning("Key " + file.getPath() + " could not be read: " + e.getMessage());
+            return null;
+        }
+    }
+
+
+    /**
+     * Calculates the fingerprint of a RSA key from its modulus, which is
+     * the same for the public key of a certificate and its private key
+     *
+     * @param key The public or private key
+     * @return the fingerprint or null, if it is no RSA key
+     */
+    static String fingerprint(Key key) {
+        if (!(key instanceof RSAKey))
+            return null;
+        try {
+            BigInteger modulus = ((RSAKey) key).getModulus();
+            byte[] digest = MessageDigest.getInstance("SHA-1").digest(modulus.toByteArray());
+            return new BigInteger(1, digest).toString(16);
+        } catch (Exception e) {
+            logger.log(Level.WARNING, "error calculating the fingerprint of a key", e);
+            return null;
+        }
+    }
+
+
+    /**
+     * Finds the key of the certificate, by the fingerprint or, if
+     * a fingerprint is missing, by the name of the files
+     *
+     * @param cert              The certificate
+     * @param keysByFingerprint The keys by fingerprint
+     * @param keysByName        The keys by filename without extension
+     * @return the key or null
+     */
+    private static ParsedKey findKey(ParsedCert cert, Map<String, ParsedKey> keysByFingerprint,
+                                     Map<String, ParsedKey> keysByName) {
+        if (cert.fingerprint != null && keysByFingerprint.containsKey(cert.fingerprint))
+            return keysByFingerprint.get(cert.fingerprint);
+
+        ParsedKey key = keysByName.get(FileUtils.removeExtension(cert.file.getName()));
+        if (key != null && (key.fingerprint == null || cert.fingerprint == null))
+            return key;
+
+        if (key != null)
+            logger.warning("Key " + key.file.getPath() + " does not belong to the certificate "
+                    + cert.file.getName() + ", the certificate is imported without key");
+        else
+            logger.warning("No key found for the certificate " + cert.file.getName()
+                    + ", the certificate is imported without key");
+        return null;
+    }
+
+
+    /**
+     * Finds or creates the users and prepares the exports and rows
+     * of the certificates
+     *
+     * @param certs The parsed certificates
+     * @return the certificates to import
+     * @throws Exception
+     */
+    private List<ImportedCert> prepare(List<ParsedCert> certs) throws Exception {
+        Hashtable<String, User> users = UserQueries.getAllUsersByUsername();
+        Hashtable<String, Integer> existing = X509Queries.getCertificateIdsBySubject(X509.X509_TYPE_CLIENT);
+
+        // create the missing users in one batch
+        if (createUsersFromCN) {
+            Vector<User> newUsers = new Vector<User>();
+            for (ParsedCert cert : certs) {
+                String username = X509Utils.getCnFromSubject(cert.cert.getSubjectDN().toString());
+                if (users.containsKey(username))
+                    continue;
+                User user = new User("0");
+                user.setUsername(username);
+                user.setX509id(-1);
+                user.setCn("");
+                user.setOu("");
+                user.setYubikeyid("");
+                users.put(username, user);
+                newUsers.add(user);
+            }
+            UserDAO.getInstance().create(newUsers);
+            for (User user : newUsers) {
+                if (user.getUserid() == 0)
+                    throw new Exception("the users of the imported certificates could not be created");
+                UserImport.incGeneratedUsers();
+            }
+        }
+
+        // client certificates without user are numbered like in the X509Exporter
+        String seqNumber = X509Queries.retrieveCurrentSeqNumber(X509.X509_TYPE_CLIENT);
+
+        List<ImportedCert> imported = new ArrayList<ImportedCert>(certs.size());
+        for (ParsedCert cert : certs) {
+            String subject = cert.cert.getSubjectDN().toString();
+            User user = users.get(X509Utils.getCnFromSubject(subject));
+
+            X509Exporter exporter = new X509Exporter(
+                    X509.X509_TYPE_CLIENT,
+                    cert.file.getName(),
+                    cert.key != null ? cert.key.file.getName() : FileUtils.removeExtension(cert.file.getName()) + ".key",
+                    exportPath,
+                    cert.cert,
+                    user,
+                    null,
+                    seqNumber);
+            if (user == null)
+                seqNumber = StringUtils.fillLeadingZeros(HexUtils.incrementHex(seqNumber));
+
+            Integer x509id = existing.get(subject.replaceAll(", ", ","));
+            imported.add(new ImportedCert(cert, user, exporter, x509id != null ? x509id : -1));
+        }
+        return imported;
+    }
+
+
+    /**
+     * Stores the certificates and links them to their users,
+     * new certificates in batches, one transaction per batch
+     *
+     * @param imported The certificates to import
+     * @throws Exception
+     */
+    private void store(List<ImportedCert> imported) throws Exception {
+        List<ImportedCert> batch = new ArrayList<ImportedCert>(BATCH_SIZE);
+        for (ImportedCert importedCert : imported) {
+            ParsedCert cert = importedCert.cert;
+            PrivateKey privKey = cert.key != null ? cert.key.privKey : null;
+            String keyContent = cert.key != null ? cert.key.keyContent : "";
+
+            if (importedCert.x509id == -1) {
+                importedCert.x509 = importedCert.exporter.prepareCertificate(
+                        cert.cert.getSerialNumber().longValue(), cert.cert.getIssuerDN().toString(),
+                        cert.cert.getSubjectDN().toString(), cert.content, privKey, keyContent,
+                        cert.cert.getNotBefore(), cert.cert.getNotAfter(), false);
+                batch.add(importedCert);
+                if (batch.size() == BATCH_SIZE) {
+                    storeBatch(batch);
+                    batch = new ArrayList<ImportedCert>(BATCH_SIZE);
+                }
+            } else {
+                // the certificate is already existing, it is updated
+                importedCert.x509id = importedCert.exporter.storeCertificate(
+                        cert.cert.getSerialNumber().longValue(), cert.cert.getIssuerDN().toString(),
+                        cert.cert.getSubjectDN().toString(), cert.content, privKey, keyContent,
+                        cert.cert.getNotBefore(), cert.cert.getNotAfter(), false, importedCert.x509id);
+                link(importedCert);
+            }
+        }
+        storeBatch(batch);
+    }
+
+
+    /**
+     * Stores a batch of new certificates and links them to their users
+     *
+     * @param batch The certificates
+     * @throws Exception
+     */
+    private void storeBatch(final List<ImportedCert> batch) throws Exception {
+        if (batch.isEmpty())
+            return;
+
+        final Vector<X509> x509s = new Vector<X509>(batch.size());
+        for (ImportedCert importedCert : batch)
+            x509s.add(importedCert.x509);
+
+        DBConnector.getInstance().executeInTransaction(conn -> {
+            X509DAO.getInstance().create(x509s);
+            Vector<User> users = new Vector<User>();
+            for (ImportedCert importedCert : batch) {
+                importedCert.x509id = importedCert.x509.getX509id();
+                if (importedCert.user != null) {
+                    importedCert.user.setX509id(importedCert.x509id);
+                    users.add(importedCert.user);
+                }
+            }
+            UserDAO.getInstance().update(users);
+            return null;
+        });
+
+        for (ImportedCert importedCert : batch) {
+            UserImport.incImportedCerts();
+            if (importedCert.user == null)
+                UserImport.incNotLinkedCerts();
+        }
+    }
+
+
+    /**
+     * Links an updated certificate to its user
+     *
+     * @param importedCert The certificate
+     */
+    private static void link(ImportedCert importedCert) {
+        if (importedCert.user != null) {
+            importedCert.user.setX509id(importedCert.x509id);
+            UserDAO.getInstance().update(importedCert.user);
+        } else {
+            UserImport.incNotLinkedCerts();
+        }
+    }
+
+
+    /**
+     * Exports the certificate and key files, executed by the pool
+     *
+     * @param importedCert The stored certificate
+     * @throws Exception
+     */
+    private static void export(ImportedCert importedCert) throws Exception {
+        X509Exporter exporter = importedCert.exporter;
+        exporter.preparePath();
+        exporter.exportCertToFile(exporter.generateContent(false, false), false);
+
+        // do not export empty keys
+        ParsedKey key = importedCert.cert.key;
+        if (key != null)
+            exporter.exportKeyToFile(X509Utils.addKeyHeader(key.privKey.getEncoded()));
+    }
+
+
+    /**
+     * Waits for the parsing tasks, files that could not be parsed are skipped
+     *
+     * @param futures The parsing tasks
+     * @return the parsed files
+     * @throws InterruptedException
+     */
+    private static <T> List<T> collect(List<Future<T>> futures) throws InterruptedException {
+        List<T> parsed = new ArrayList<T>(futures.size());
+        for (Future<T> future : futures) {
+            try {
+                T result = future.get();
+                if (result != null)
+                    parsed.add(result);
+            } catch (ExecutionException e) {
+                logger.log(Level.SEVERE, "error reading a certificate", e.getCause());
+            }
+        }
+        return parsed;
+    }
+
+
+    private static ExecutorService createPool(int threads) {
+        final AtomicInteger threadNumber = new AtomicInteger(1);
+        return Executors.newFixedThreadPool(threads, r -> {
+            Thread t = new Thread(r, "cert-import-" + threadNumber.getAndIncrement());
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+
+    /**
+     * A key file read from the directory
+     */
+    private static class ParsedKey {
+        private final File file;
+        private final String keyContent;
+        private final PrivateKey privKey;
+        private final String fingerprint;
+
+        private ParsedKey(File file, String keyContent, PrivateKey privKey, String fingerprint) {
+            this.file = file;
+            this.keyContent = keyContent;
+            this.privKey = privKey;
+            this.fingerprint = fingerprint;
+        }
+    }
+
+
+    /**
+     * A certificate file read from the directory
+     */
+    private static class ParsedCert {
+        private final File file;
+        private final String content;
+        private final X509Certificate cert;
+        private final String fingerprint;
+        private ParsedKey key;
+
+        private ParsedCert(File file, String content, X509Certificate cert, String fingerprint) {
+            this.file = file;
+            this.content = content;
+            this.cert = cert;
+            this.fingerprint = fingerprint;
+        }
+    }
+
+
+    /**
+     * A certificate passed through the db and export stages
+     */
+    private static class ImportedCert {
+        private final ParsedCert cert;
+        private final User user;
+        private final X509Exporter exporter;
+        private int x509id;
+        private X509 x509;
+
+        private ImportedCert(ParsedCert cert, User user, X509Exporter exporter, int x509id) {
+            this.cert = cert;
+            this.user = user;
+            this.exporter = exporter;
+            this.x509id = x509id;
+        }
+    }
+}
@@ -57,6 +57,22 @@ public class X509Exporter {
 
     public X509Exporter(int type, String certFilename, String keyFilename, String path, X509Certificate cert, User user, int serverid)
             throws Exception {
+        this(type, certFilename, keyFilename, path, cert, user,
+                type == X509.X509_TYPE_SERVER ? Server.getServerById(serverid) : null,
+                isUnassignedClient(type, user) ? X509Queries.retrieveCurrentSeqNumber(type) : null);
+        preparePath(this.path);
+    }
+
+
+    /**
+     * Prepares the export without loading anything from the database,
+     * the export directory is not created
+     *
+     * @param server    The server of a server certificate
+     * @param seqNumber The current sequential number of client certificates without user
+     */
+    public X509Exporter(int type, String certFilename, String keyFilename, String path, X509Certificate cert, User user,
+                        Server server, String seqNumber) {
 
         this.type = type;
         this.certificate = cert;
@@ -76,7 +92,7 @@ public class X509Exporter {
                     generateNewClientFilenames(user);
                 } else {
                     this.path = this.path + File.separator + Constants.EXPORT_UNASSIGNED_DIRECTORY;
-                    this.seqNumber = X509Queries.retrieveCurrentSeqNumber(this.type);
+                    this.seqNumber = seqNumber;
                     this.newCertFilename = generateNewFilename(certFilename);
                     this.newKeyFilename = generateNewFilename(keyFilename);
                     logger.info("storing client certificate without user: " + this.path + File.separator + newCertFilename);
@@ -89,7 +105,7 @@ public class X509Exporter {
                     generateNewPKCS12ClientFilenames(user);
                 } else {
                     this.path = this.path + File.separator + Constants.EXPORT_UNASSIGNED_DIRECTORY;
-                    this.seqNumber = X509Queries.retrieveCurrentSeqNumber(this.type);
+                    this.seqNumber = seqNumber;
                     this.newCertFilename = generateNewFilename(certFilename);
                     this.newKeyFilename = "";
                     logger.info("storing PKCS#12 client certificate without user: " + this.path + File.separator + newCertFilename);
@@ -97,8 +113,8 @@ public class X509Exporter {
                 }
                 break;
             case X509.X509_TYPE_SERVER:
-                this.seqNumber = serverid + "";
-                this.path = this.path + "_" + Server.getServerById(serverid).getName() + File.separator;
+                this.seqNumber = server.getServerid() + "";
+                this.path = this.path + "_" + server.getName() + File.separator;
                 String prefix = certFilename;
                 if (prefix.contains("_"))
                     prefix = prefix.substring(0, prefix.indexOf("_"));
@@ -108,7 +124,7 @@ public class X509Exporter {
                 this.newKeyFilename = generateNewFilename(keyFilename, prefix + "_");
                 break;
         }
-        preparePath(this.path);
+        this.path = FileUtils.unifyPath(this.path);
 
         String bundleName = "";
         try {
@@ -159,12 +175,37 @@ public class X509Exporter {
 
         if (!new File(this.path).exists()) {
             boolean success = (new File(this.path)).mkdirs();
-            if (!success)
+            // another export may have created it meanwhile
+            if (!success && !new File(this.path).isDirectory())
                 throw new Exception(rb.getString("dialog.cert.exporterror"));
         }
     }
 
 
+    /**
+     * Creates the export directory, for exporters
+     * that were prepared without the database
+     *
+     * @throws Exception
+     */
+    void preparePath() throws Exception {
+        preparePath(this.path);
+    }
+
+
+    /**
+     * Decides whether the sequential number of client certificates
+     * without user is needed
+     *
+     * @param type The certificate type
+     * @param user The user or null
+     * @return true, if it is a client certificate without user
+     */
+    private static boolean isUnassignedClient(int type, User user) {
+        return user == null && (type == X509.X509_TYPE_CLIENT || type == X509.X509_TYPE_PKCS12);
+    }
+
+
     /**
      * stores a new certificate into the db
      *
@@ -184,7 +225,7 @@ public class X509Exporter {
     int storeCertificate(
             long currentTime, String issuer, String subject,
             String content, PrivateKey privKey, String keyContent,
-            Date validFrom, Date validTo, boolean generated) {
+            Date validFrom, Date validTo, boolean generated) throws CertificateEncodingException {
 
         return storeCertificate(
                 Constants.DEFAULT_X509_VERSION, currentTime, issuer, subject,
@@ -212,7 +253,7 @@ public class X509Exporter {
     int storeCertificate(
             long currentTime, String issuer, String subject,
             String content, PrivateKey privKey, String keyContent,
-            Date validFrom, Date validTo, boolean generated, int x509id) {
+            Date validFrom, Date validTo, boolean generated, int x509id) throws CertificateEncodingException {
 
         return storeCertificate(
                 Constants.DEFAULT_X509_VERSION, currentTime, issuer, subject,
@@ -241,7 +282,7 @@ public class X509Exporter {
     private int storeCertificate(
             int version, long currentTime, String issuer, String subject,
             String content, PrivateKey privKey, String keyContent,
-            Date validFrom, Date validTo, boolean generated) {
+            Date validFrom, Date validTo, boolean generated) throws CertificateEncodingException {
         return storeCertificate(
                 version, currentTime, issuer, subject, content, privKey, keyContent,
                 validFrom, validTo, generated, -1);
@@ -268,15 +309,92 @@ public class X509Exporter {
     private int storeCertificate(
             int version, long currentTime, String issuer, String subject,
             String content, PrivateKey privKey, String keyContent,
-            Date validFrom, Date validTo, boolean generated, int x509id) {
+            Date validFrom, Date validTo, boolean generated, int x509id) throws CertificateEncodingException {
+
+        X509 x509;
+        if (x509id == -1) {
+            // create new x509 and store it to db
+            x509 = new X509(String.valueOf(currentTime));
+        } else {
+            // update the x509
+            x509 = new X509(x509id);
+            x509 = X509DAO.getInstance().read(x509);
+        }
+        fillCertificate(x509, version, currentTime, issuer, subject, content,
+                privKey, keyContent, validFrom, validTo, generated);
+
+        // update 
+        x509.update();
+
+        return x509.getX509id();
+    }
+
+
+    /**
+     * prepares a new certificate without storing it into the db,
+     * used to write many certificates at once with X509DAO.create(List)
+     *
+     * @param currentTime the time of creation
+     * @param issuer      The issuer
+     * @param subject     The subject
+     * @param content     The certificate as written to file
+     * @param privKey     The private key
+     * @param keyContent  The key as written to file
+     * @param validFrom   The date the certificate is valid from
+     * @param validTo     The date the certificate is valid to
+     * @return the x509, not yet persistent
+     */
+    X509 prepareCertificate(
+            long currentTime, String issuer, String subject,
+            String content, PrivateKey privKey, String keyContent,
+            Date validFrom, Date validTo) throws CertificateEncodingException {
 
+        return prepareCertificate(currentTime, issuer, subject, content, privKey, keyContent,
+                validFrom, validTo, true);
+    }
+
+
+    /**
+     * prepares a new certificate without storing it into the db,
+     * used to write many certificates at once with X509DAO.create(List)
+     *
+     * @param currentTime the time of creation
+     * @param issuer      The issuer
+     * @param subject     The subject
+     * @param content     The certificate as written to file
+     * @param privKey     The private key
+     * @param keyContent  The key as written to file
+     * @param validFrom   The date the certificate is valid from
+     * @param validTo     The date the certificate is valid to
+     * @param generated   true, if the certificate is generated, false if it is imported
+     * @return the x509, not yet persistent
+     */
+    X509 prepareCertificate(
+            long currentTime, String issuer, String subject,
+            String content, PrivateKey privKey, String keyContent,
+            Date validFrom, Date validTo, boolean generated) throws CertificateEncodingException {
+
+        X509 x509 = new X509(0);
+        x509.setSerial(String.valueOf(currentTime));
+        fillCertificate(x509, Constants.DEFAULT_X509_VERSION, currentTime, issuer, subject, content,
+                privKey, keyContent, validFrom, validTo, generated);
+        return x509;
+    }
+
+
+    /**
+     * sets the data of the certificate to the x509
+     */
+    private void fillCertificate(
+            X509 x509, int version, long currentTime, String issuer, String subject,
+            String content, PrivateKey privKey, String keyContent,
+            Date validFrom, Date validTo, boolean generated) throws CertificateEncodingException {
 
         Date createDate = new Date(currentTime);
         String createDateStr = Constants.formatDetailedFormat(createDate);
         String validFromStr = Constants.formatDetailedFormat(validFrom);
         String validToStr = Constants.formatDetailedFormat(validTo);
 
-        String certSerialized = X509Serializer.getInstance().toXML(certificate);
         String key = "";
         if (privKey != null)
             key = X509Serializer.getInstance().toXML(privKey);
@@ -284,16 +402,6 @@ public class X509Exporter {
         issuer = issuer.replaceAll(", ", ",");
         subject = subject.replaceAll(", ", ",");
 
-        X509 x509;
-        if (x509id == -1) {
-            // create new x509 and store it to db
-            x509 = new X509(String.valueOf(currentTime));
-        } else {
-            // update the x509
-            x509 = new X509(x509id);
-            x509 = X509DAO.getInstance().read(x509);
-        }
-
         x509.setVersion(String.valueOf(version));
         x509.setFileName(newCertFilename);
         x509.setPath(path);
@@ -301,7 +409,8 @@ public class X509Exporter {
         x509.setSubject(subject);
         x509.setContent(content);
         x509.setContentDisplay(certificate.toString());
-        x509.setCertSerialized(certSerialized);
+        x509.setCertDer(certificate.getEncoded());
+        x509.setCertSerialized(null);
         x509.setKey(key);
         x509.setKeyContent(keyContent);
         x509.setType(type);
@@ -309,11 +418,6 @@ public class X509Exporter {
         x509.setValidFrom(validFromStr);
         x509.setValidTo(validToStr);
         x509.setGenerated(generated);
-
-        // update 
-        x509.update();
-
-        return x509.getX509id();
     }
 
 
@@ -339,15 +443,7 @@ public class X509Exporter {
         ResourceBundle rb = ResourceBundleMgmt.getInstance().getUserBundle();
         try {
             FileWriter fw = new FileWriter(this.path + newCertFilename);
-
-            if (exportBinary) {
-                // write in binary form
-                String encoded = StringUtils.bytes2String(certificate.getEncoded());
-                fw.write(encoded);
-            } else {
-                // write to file
-                fw.write(content);
-            }
+            fw.write(getCertFileContent(content, exportBinary));
             fw.close();
         } catch (IOException | CertificateEncodingException e) {
             logger.log(Level.SEVERE, "Error writing key to filesystem", e);
@@ -356,6 +452,24 @@ public class X509Exporter {
     }
 
     
+    /**
+     * Returns the content of the certificate file
+     *
+     * @param content      The certificate content
+     * @param exportBinary binary certificate will be exported
+     *                     as binary(true) or
+     *                     as base64-text(false)
+     * @return the content as written by exportCertToFile()
+     * @throws CertificateEncodingException
+     */
+    public String getCertFileContent(String content, boolean exportBinary) throws CertificateEncodingException {
+        if (exportBinary)
+            // write in binary form
+            return StringUtils.bytes2String(certificate.getEncoded());
+        return content;
+    }
+
+
     /**
      * Generate the certificates content
      * @param exportBinary binary certificate will be exported
@@ -564,4 +678,12 @@ public class X509Exporter {
         return path;
     }
 
+    public String getCertFilename() {
+        return newCertFilename;
+    }
+
+    public String getKeyFilename() {
+        return newKeyFilename;
+    }
+
 }
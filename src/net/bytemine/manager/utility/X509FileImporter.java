@@ -12,7 +12,10 @@ import java.io.FileInputStream;
 import java.security.PrivateKey;
 import java.security.Security;
 import java.security.cert.X509Certificate;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Date;
+import java.util.List;
 import java.util.MissingResourceException;
 import java.util.ResourceBundle;
 import java.util.Vector;
@@ -56,12 +59,19 @@ public class X509FileImporter {
     private String clientKeyExtension = "key";
     private String currentCertFilename;
     private String currentKeyFilename;
+    // the root key relative to the path, if it is not found in the path itself
+    private String rootKeyPath = null;
 
     private String path;
     private Vector<String> certExtensions = new Vector<String>();
     private Vector<String> importedX509ids = new Vector<String>();
 
+    // subdirectories of an easy-rsa 3 PKI containing certificates and keys
+    private static final String[] EASYRSA_DIRECTORIES = {"issued", "private"};
+
     private File selectedFile;
+    // the files of the selected directory, listed only once
+    private List<File> files = null;
     private boolean certExisting = false;
     private boolean keyExisting = false;
     private boolean exportRootKey = false;
@@ -197,7 +207,32 @@ public class X509FileImporter {
 
 
     /**
-     * Does all the import jobs for importing client certs and keys
+     * Lists the files of the selected directory once. The subdirectories
+     * 'issued' and 'private' of an easy-rsa 3 PKI are included, their
+     * client certificates and keys are imported too.
+     *
+     * @return the files
+     */
+    private List<File> listFiles() {
+        if (files == null) {
+            files = new ArrayList<File>();
+            File[] listed = selectedFile.listFiles();
+            if (listed != null)
+                files.addAll(Arrays.asList(listed));
+            for (String subdirectory : EASYRSA_DIRECTORIES) {
+                listed = new File(selectedFile, subdirectory).listFiles();
+                if (listed != null)
+                    files.addAll(Arrays.asList(listed));
+            }
+        }
+        return files;
+    }
+
+
+    /**
+     * Does all the import jobs for importing client certs and keys.
+     * The client certificates and keys are imported at once by the
+     * X509BulkImporter, their keys are found by the public key
      *
      * @return A vector with all imported x509 ids
      * @throws java.lang.Exception
@@ -210,14 +245,24 @@ public class X509FileImporter {
                 createX509Generator(isRootExisting);
             }
 
-
-            String[] filenames = selectedFile.list();
-            assert filenames != null;
-            for (String filename : filenames) {
+            List<File> clientCertFiles = new ArrayList<File>();
+            List<File> clientKeyFiles = new ArrayList<File>();
+            for (File file : listFiles()) {
+                if (file.isDirectory())
+                    continue;
+                String filename = file.getName();
 
                 int type = detectType(filename);
 
-                if (type != -1 && fileIsCertificate(filename)) {
+                if (type == X509.X509_TYPE_CLIENT) {
+                    if (clientCertExtension.equals(FileUtils.getExtension(filename)))
+                        clientCertFiles.add(file);
+                    else
+                        clientKeyFiles.add(file);
+                } else if (!file.getParentFile().equals(selectedFile)) {
+                    // only client certificates are imported from the subdirectories
+                    logger.info("File " + filename + " is not imported from " + file.getParent());
+                } else if (type != -1 && fileIsCertificate(filename)) {
                     boolean isRootExisting = Configuration.getInstance().isRootCertExisting();
                     if (type != X509.X509_TYPE_ROOT || !isRootExisting) {
                         int x509id = importCertAndKey(type, createUsersFromCN);
@@ -229,6 +274,9 @@ public class X509FileImporter {
                     logger.info("File " + filename + " is not recognized as certificate");
             }
 
+            importedX509ids.addAll(
+                    new X509BulkImporter(createUsersFromCN).importClientCerts(clientCertFiles, clientKeyFiles));
+
             boolean isRootExisting = Configuration.getInstance().isRootCertExisting();
             createX509Generator(isRootExisting);
 
@@ -261,7 +309,7 @@ public class X509FileImporter {
     public boolean importRootCertAndKey() throws Exception {
         if (searchRootCert()) {
             currentCertFilename = rootCertName;
-            currentKeyFilename = rootKeyName;
+            currentKeyFilename = rootKeyPath != null ? rootKeyPath : rootKeyName;
 
             importCertAndKey(X509.X509_TYPE_ROOT, false);
             return true;
@@ -363,7 +411,9 @@ public class X509FileImporter {
 
             String exportPath = Configuration.getInstance().CERT_EXPORT_PATH;
 
-            X509Exporter exporter = new X509Exporter(type, currentCertFilename, currentKeyFilename, exportPath, cert, user);
+            // the key may be read from a subdirectory
+            String keyFilename = new File(currentKeyFilename).getName();
+            X509Exporter exporter = new X509Exporter(type, currentCertFilename, keyFilename, exportPath, cert, user);
             // is certificate already existing
             x509id = X509Queries.getCertificateBySubject(subject, type);
             if (x509id == -1)
@@ -501,20 +551,23 @@ public class X509FileImporter {
 
     /**
      * Searches for ca.crt and ca.key in the directory
-     * or only for the key, if crt-file is specified
+     * or only for the key, if crt-file is specified.
+     * The key of an easy-rsa 3 PKI is found in the subdirectory 'private'.
      *
      * @throws java.lang.Exception
      */
     private boolean searchRootCert() throws Exception {
         // a directory was selected
         if (selectedFile.isDirectory()) {
-            String[] filenames = selectedFile.list();
-            assert filenames != null;
-            for (String filename : filenames) {
-                if (filename.equals(rootCertName))
+            for (File file : listFiles()) {
+                boolean inSelected = file.getParentFile().equals(selectedFile);
+                if (inSelected && file.getName().equals(rootCertName))
                     certExisting = true;
-                else if (filename.equals(rootKeyName))
+                else if (file.getName().equals(rootKeyName) && !keyExisting) {
                     keyExisting = true;
+                    if (!inSelected)
+                        rootKeyPath = file.getParentFile().getName() + File.separator + rootKeyName;
+                }
             }
         }
         // the certificate file was selected
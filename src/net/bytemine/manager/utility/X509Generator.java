@@ -7,12 +7,17 @@
 
 package net.bytemine.manager.utility;
 
+import java.security.KeyPair;
 import java.security.Security;
 
 import java.security.cert.X509CRL;
 import java.security.cert.X509Certificate;
+import java.util.ArrayList;
 import java.util.Calendar;
 import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.MissingResourceException;
 import java.util.ResourceBundle;
 import java.util.Vector;
@@ -30,6 +35,8 @@ import net.bytemine.manager.bean.Server;
 import net.bytemine.manager.bean.User;
 import net.bytemine.manager.bean.X509;
 import net.bytemine.manager.db.CRLQueries;
+import net.bytemine.manager.db.ConfigurationQueries;
+import net.bytemine.manager.db.RevocationIndex;
 import net.bytemine.manager.db.ServerDAO;
 import net.bytemine.manager.db.ServerQueries;
 import net.bytemine.manager.db.UserDAO;
@@ -76,6 +83,8 @@ public class X509Generator {
     private boolean exportText = false;
     // key strength
     private int keyStrength;
+    // written to the netscape comment of the certificates
+    private String generatorIdentifier;
 
 
     public X509Generator() {
@@ -117,7 +126,7 @@ public class X509Generator {
             keyStrength = Integer.parseInt(rootCertBundle.getString("key_strength"));
         }
 
-        String generatorIdentifier = 
+        generatorIdentifier =
                 "Manager version: " + Configuration.getInstance().MANAGER_VERSION + ", " +
                 "build: " + Configuration.getInstance().MANAGER_BUILD;
         generator = new net.bytemine.crypto.x509.X509Generator(keyStrength, generatorIdentifier);
@@ -264,8 +273,7 @@ public class X509Generator {
      */
     private void createIntermediateCertImmediately(final X509Certificate rootCert) {
         try {
-            X509 rootX509 = X509Utils.loadRootX509();
-            PrivateKey rootPrivKey = X509Utils.extractRootPrivateKey(rootX509);
+            PrivateKey rootPrivKey = CAMaterialCache.getInstance().getRoot().getPrivateKey();
 
             X509Certificate cert = generator.createIntermediateCert(rootCert, rootPrivKey);
             if (cert == null)
@@ -356,116 +364,102 @@ public class X509Generator {
      */
     public void createServerCertImmediately(Server server, String validFor) {
         try {
-            X509 rootX509 = X509Utils.loadRootX509();
-            X509Certificate rootCert = (X509Certificate)
-                    X509Serializer.getInstance().fromXML(
-                            rootX509.getCertSerialized()
-                    );
-            PrivateKey rootPrivKey = X509Utils.extractRootPrivateKey(rootX509);
-
-            String subject = Configuration.getInstance().X509_SERVER_SUBJECT;
-            subject = modifySubject(subject, StringUtils.isEmptyOrWhitespaces(server.getCn()) ? server.getName() : server.getCn(), (server.getOu()==null || server.getOu().equals("")) ? null : server.getOu());
-            String validFrom = Constants.PROPERTIES_DATE_FORMAT.format(new Date());
-            
-            try {
-                Integer.parseInt(validFor);
-            } catch(Exception e) {
-                validFor = null;
-            }
-            if (validFor == null || StringUtils.isEmptyOrWhitespaces(validFor))
-                validFor = Configuration.getInstance().X509_SERVER_VALID_FOR;
+            issueServerCert(server, validFor, true);
+        } catch (Exception e) {
+            new VisualException(e);
+        }
+    }
 
-            X509Certificate cert = generator.createServerCert(rootCert, rootPrivKey,
-                                            Constants.PROPERTIES_DATE_FORMAT.parse(validFrom),
-                                            Constants.PROPERTIES_DATE_FORMAT.parse(DateUtils.addDaysToDate(validFrom, validFor)), subject);
-            if (cert == null)
-                throw new Exception(rb.getString("error.x509.generate.server"));
-            
-            PrivateKey privKey = generator.getPrivateKey();
 
-            String issuer = PrincipalUtil.getIssuerX509Principal(rootCert).toString();
-            String contentStr;
-            String keyStr;
+    /**
+     * Creates and stores a server certificate
+     *
+     * @param server The server to create a certificate for
+     * @param validFor Number of days the certificate will be valid
+     * @param interactive false, if errors must not be shown in dialogs
+     * @throws Exception
+     */
+    private void issueServerCert(Server server, String validFor, boolean interactive) throws Exception {
+        CAMaterialCache.CAMaterial root = CAMaterialCache.getInstance().getRoot();
+        X509Certificate rootCert = root.getCertificate();
+        PrivateKey rootPrivKey = root.getPrivateKey();
+
+        String subject = Configuration.getInstance().X509_SERVER_SUBJECT;
+        subject = modifySubject(subject, StringUtils.isEmptyOrWhitespaces(server.getCn()) ? server.getName() : server.getCn(), (server.getOu()==null || server.getOu().equals("")) ? null : server.getOu());
+        String validFrom = Constants.PROPERTIES_DATE_FORMAT.format(new Date());
+        
+        try {
+            Integer.parseInt(validFor);
+        } catch(Exception e) {
+            validFor = null;
+        }
+        if (validFor == null || StringUtils.isEmptyOrWhitespaces(validFor))
+            validFor = Configuration.getInstance().X509_SERVER_VALID_FOR;
+
+        X509Certificate cert = generator.createServerCert(rootCert, rootPrivKey,
+                                        Constants.PROPERTIES_DATE_FORMAT.parse(validFrom),
+                                        Constants.PROPERTIES_DATE_FORMAT.parse(DateUtils.addDaysToDate(validFrom, validFor)), subject);
+        if (cert == null)
+            throw new Exception(rb.getString("error.x509.generate.server"));
+        
+        PrivateKey privKey = generator.getPrivateKey();
 
-            exportBinary = Boolean.parseBoolean(serverCertBundle.getString("export_binary"));
-            exportText = Boolean.parseBoolean(serverCertBundle.getString("export_text"));
+        String issuer = PrincipalUtil.getIssuerX509Principal(rootCert).toString();
+        String contentStr;
+        String keyStr;
 
-            X509Exporter exporter = new X509Exporter(
-                    X509.X509_TYPE_SERVER,
-                    serverCertBundle.getString("export_cert_file"),
-                    serverCertBundle.getString("export_key_file"),
-                    Configuration.getInstance().CERT_EXPORT_PATH,
-                    cert,
-                    null,
-                    server.getServerid()
-            );
+        exportBinary = Boolean.parseBoolean(serverCertBundle.getString("export_binary"));
+        exportText = Boolean.parseBoolean(serverCertBundle.getString("export_text"));
 
-            contentStr = exporter.generateContent(exportBinary, exportText);
+        X509Exporter exporter = new X509Exporter(
+                X509.X509_TYPE_SERVER,
+                serverCertBundle.getString("export_cert_file"),
+                serverCertBundle.getString("export_key_file"),
+                Configuration.getInstance().CERT_EXPORT_PATH,
+                cert,
+                null,
+                server.getServerid()
+        );
 
-            // export the certificate to file system
-            if (exportCert) {
-                try {
-                    exporter.exportCertToFile(contentStr, exportBinary);
-                } catch (Exception e) {
-                    new VisualException(e);
-                }
+        contentStr = exporter.generateContent(exportBinary, exportText);
+
+        // export the certificate to file system
+        if (exportCert) {
+            try {
+                exporter.exportCertToFile(contentStr, exportBinary);
+            } catch (Exception e) {
+                if (!interactive)
+                    throw e;
+                new VisualException(e);
             }
+        }
 
-            keyStr = X509Utils.addKeyHeader(privKey.getEncoded());
+        keyStr = X509Utils.addKeyHeader(privKey.getEncoded());
 
-            // export the private key to file system
-            if (exportKey)
-                exporter.exportKeyToFile(keyStr);
+        // export the private key to file system
+        if (exportKey)
+            exporter.exportKeyToFile(keyStr);
 
-            // store the certificate in db
-            int x509id = exporter.storeCertificate(
-                    cert.getSerialNumber().longValue(), issuer, subject, contentStr,
-                    privKey, keyStr, cert.getNotBefore(), cert.getNotAfter(), true);
+        // store the certificate in db
+        int x509id = exporter.storeCertificate(
+                cert.getSerialNumber().longValue(), issuer, subject, contentStr,
+                privKey, keyStr, cert.getNotBefore(), cert.getNotAfter(), true);
 
-            server.setX509id(x509id);
-            ServerDAO.getInstance().update(server);
+        server.setX509id(x509id);
+        ServerDAO.getInstance().update(server);
 
-            ManagerGUI.refreshX509Table();
-            ManagerGUI.refreshServerTable();
-        } catch (Exception e) {
-            new VisualException(e);
-        }
+        ManagerGUI.refreshX509Table();
+        ManagerGUI.refreshServerTable();
     }
 
 
     /**
      * Creates Diffie Hellman parameters
-     * Runs in own Thread
+     * The DHParameterService generates them in the background
      *
      */
     public void createAndExportDHParameters() {
-
-        SwingWorker<String, Void> generatorWorker = new SwingWorker<String, Void>() {
-            Thread t;
-
-            protected String doInBackground() {
-                try {
-                    t = Thread.currentThread();
-                    ThreadMgmt.getInstance().addThread(t, rb.getString("statusBar.dhparameters.tooltip"));
-
-                    String content = generator.createDHParameters();
-                    X509Exporter.exportDHParameters(content, keyStrength);
-
-                    ManagerGUI.addStatusMessage(new StatusMessage(rb.getString("statusBar.dhparameters.generated"), StatusMessage.TYPE_CONFIRM));
-                } catch (Exception e) {
-                    logger.log(Level.SEVERE, "error generating dh parameters", e);
-                }
-                return "";
-            }
-
-
-            protected void done() {
-                ThreadMgmt.getInstance().removeThread(t);
-            }
-        };
-
-        if (!X509Exporter.isDHParametersExisting(keyStrength))
-            generatorWorker.execute();
+        DHParameterService.getInstance().start(keyStrength);
     }
 
 
@@ -504,6 +498,60 @@ public class X509Generator {
      * @throws java.lang.Exception
      */
     public void createClientCertImmediately(User user) throws Exception {
+        createClientCertImmediately(user, askPKCS12Password(user));
+    }
+
+
+    /**
+     * Creates the client certificates of many users at once,
+     * the key pairs are generated in parallel and the
+     * certificates are stored in batches
+     *
+     * @param users The users to create the certificates for
+     * @return the number of generated certificates
+     * @throws java.lang.Exception if not all certificates could be generated
+     */
+    public int createClientCertsImmediately(List<User> users) throws Exception {
+        // ask for all passwords before the generation starts
+        HashMap<Integer, String> passwords = new HashMap<Integer, String>();
+        for (User user : users) {
+            String password = askPKCS12Password(user);
+            if (password != null)
+                passwords.put(user.getUserid(), password);
+        }
+
+        return createClientCertsImmediately(users, passwords, true);
+    }
+
+
+    /**
+     * Creates the client certificates of many users at once
+     * without asking for PKCS12 passwords
+     *
+     * @param users The users to create the certificates for
+     * @param pkcs12Passwords The PKCS12 passwords of the users by userid, may be empty
+     * @param pkcs12 false, if no PKCS12 containers are created
+     *               even if the certificate type is PKCS12
+     * @return the number of generated certificates
+     * @throws java.lang.Exception if not all certificates could be generated
+     */
+    public int createClientCertsImmediately(List<User> users, Map<Integer, String> pkcs12Passwords, boolean pkcs12)
+            throws Exception {
+        try {
+            return new X509BulkGenerator(this, clientCertBundle).createClientCerts(users, pkcs12Passwords, null, pkcs12);
+        } finally {
+            ManagerGUI.refreshX509Table();
+        }
+    }
+
+
+    /**
+     * Shows the PKCS12 password dialog if a password is set per certificate
+     *
+     * @param user The user to create the certificate for
+     * @return the password or null
+     */
+    private String askPKCS12Password(User user) {
         String password = null;
         if (Configuration.getInstance().PKCS12_PASSWORD_TYPE
                         == Constants.PKCS12_SINGLE_PASSWORD) {
@@ -518,8 +566,7 @@ public class X509Generator {
                 if (password == null && Dialogs.showReallySkipPkcs12Password(ManagerGUI.mainFrame)) break;
             }
         }
-        
-        createClientCertImmediately(user, password);
+        return password;
     }
     
     
@@ -545,16 +592,12 @@ public class X509Generator {
      */
     public void createClientCertImmediately(User user, String pkcs12Password, String validFor) {
         try {
-            X509 signingX509 = ManagerApp.intermediate ? X509Utils.loadIntermediateX509() : X509Utils.loadRootX509();
-            X509Certificate signingCert = (X509Certificate)
-                    X509Serializer.getInstance().fromXML(
-                            signingX509.getCertSerialized()
-                    );
-            PrivateKey signingPrivKey = X509Utils.extractRootPrivateKey(signingX509);
+            CAMaterialCache.CAMaterial signing = CAMaterialCache.getInstance().getSigning();
+            X509Certificate signingCert = signing.getCertificate();
+            PrivateKey signingPrivKey = signing.getPrivateKey();
 
             String issuer = PrincipalUtil.getSubjectX509Principal(signingCert).toString();
-            String subject = Configuration.getInstance().X509_CLIENT_SUBJECT;
-            subject = modifySubject(subject, StringUtils.isEmptyOrWhitespaces(user.getCn()) ? user.getUsername() : user.getCn(), (user.getOu()==null || user.getOu().equals("")) ? null : user.getOu());
+            String subject = createClientSubject(user);
             String validFrom = Constants.PROPERTIES_DATE_FORMAT.format(new Date());
             
             try {
@@ -565,15 +608,18 @@ public class X509Generator {
             if (validFor == null || StringUtils.isEmptyOrWhitespaces(validFor))
                 validFor = Configuration.getInstance().X509_CLIENT_VALID_FOR;
 
-            X509Certificate cert = generator.createClientCert(
-                    signingCert, signingPrivKey,
+            // the key pair is usually ready in the pool
+            KeyPair keyPair = KeyPairPool.getInstance().take(keyStrength);
+            ClientCertSigner signer = new ClientCertSigner(
+                    signingCert, signingPrivKey, clientCertBundle.getString("algorithm"), generatorIdentifier);
+            X509Certificate cert = signer.sign(
+                    keyPair.getPublic(), subject,
                     Constants.PROPERTIES_DATE_FORMAT.parse(validFrom),
-                    Constants.PROPERTIES_DATE_FORMAT.parse(DateUtils.addDaysToDate(validFrom, validFor)),
-                    subject);
+                    Constants.PROPERTIES_DATE_FORMAT.parse(DateUtils.addDaysToDate(validFrom, validFor)));
             if (cert == null)
                 throw new Exception(rb.getString("error.x509.generate.client"));
             
-            PrivateKey privKey = generator.getPrivateKey();
+            PrivateKey privKey = keyPair.getPrivate();
 
             String contentStr;
             String keyStr;
@@ -724,6 +770,113 @@ public class X509Generator {
     }
 
 
+    /**
+     * Renews the given certificates at once. The client certificates are
+     * generated in parallel by the X509BulkGenerator, the old certificates
+     * are revoked with a single CRL update and deleted afterwards.
+     * Certificates that could not be renewed are kept.
+     * Runs unattended, no dialogs are shown: if a PKCS12 password is needed
+     * per certificate the client certificates are renewed without PKCS12
+     * containers, errors are added to the given list.
+     *
+     * @param x509s The certificates to renew
+     * @param errors Collects the names of the certificates that could not
+     *               be renewed and the other errors
+     * @return the number of renewed certificates
+     */
+    public int renewCertificatesImmediately(List<X509> x509s, List<String> errors) throws Exception {
+        List<X509> renewed = new ArrayList<X509>();
+        List<X509> clientX509s = new ArrayList<X509>();
+        List<User> users = new ArrayList<User>();
+
+        for (X509 x509 : x509s) {
+            if (x509.getType() == X509.X509_TYPE_SERVER) {
+                // only few servers, they are renewed one by one
+                Server server = ServerQueries.getServerByX509id(x509.getX509id());
+                if (server == null)
+                    continue;
+                try {
+                    issueServerCert(server, x509.validForDays(), false);
+                    renewed.add(x509);
+                } catch (Exception e) {
+                    logger.log(Level.SEVERE, "error renewing the certificate of server " + server.getName(), e);
+                    errors.add(server.getName());
+                }
+            } else {
+                User user = UserQueries.getUserByX509id(x509.getX509id());
+                if (user == null)
+                    continue;
+                users.add(user);
+                clientX509s.add(x509);
+            }
+        }
+
+        if (!users.isEmpty()) {
+            boolean pkcs12 = Configuration.getInstance().PKCS12_PASSWORD_TYPE != Constants.PKCS12_SINGLE_PASSWORD;
+            if (!pkcs12)
+                logger.info("renewing " + users.size() + " client certificates without PKCS12 containers, "
+                        + "the passwords are set per certificate");
+            try {
+                createClientCertsImmediately(users, new HashMap<Integer, String>(), pkcs12);
+            } catch (Exception e) {
+                logger.log(Level.SEVERE, "not all client certificates could be renewed", e);
+            }
+            // the users of renewed certificates point to the new ones
+            for (int i = 0; i < users.size(); i++) {
+                if (users.get(i).getX509id() != clientX509s.get(i).getX509id())
+                    renewed.add(clientX509s.get(i));
+                else
+                    errors.add(users.get(i).getUsername());
+            }
+        }
+
+        try {
+            X509Utils.revokeCertificates(renewed);
+        } catch (Exception e) {
+            logger.log(Level.SEVERE, "error at revoking old certificates on renewal", e);
+            errors.add(e.getMessage());
+        }
+        for (X509 x509 : renewed)
+            X509DAO.getInstance().delete(x509);
+
+        logger.info(renewed.size() + " of " + x509s.size() + " certificates renewed");
+        ManagerGUI.refreshX509Table();
+        return renewed.size();
+    }
+
+
+    /**
+     * Creates the subject of a client certificate
+     *
+     * @param user The user
+     * @return the subject with the cn or username and ou of the user
+     */
+    String createClientSubject(User user) {
+        String subject = Configuration.getInstance().X509_CLIENT_SUBJECT;
+        return modifySubject(subject, StringUtils.isEmptyOrWhitespaces(user.getCn()) ? user.getUsername() : user.getCn(), (user.getOu()==null || user.getOu().equals("")) ? null : user.getOu());
+    }
+
+
+    int getKeyStrength() {
+        return keyStrength;
+    }
+
+
+    String getGeneratorIdentifier() {
+        return generatorIdentifier;
+    }
+
+
+    boolean isExportCert() {
+        return exportCert;
+    }
+
+
+    boolean isExportKey() {
+        return exportKey;
+    }
+
+
     /**
      * Inserts the name and ou into the subject, between 'CN=' and ',E' and for OU
      *
@@ -751,6 +904,25 @@ public class X509Generator {
      * creates a Certificate Revocation List
      */
     public void createCRL() {
+        createCRL(false);
+    }
+
+
+    /**
+     * updates the Certificate Revocation List after revocations,
+     * a delta CRL is issued if configured
+     */
+    public void updateCRL() {
+        createCRL(Configuration.getInstance().CRL_DELTA);
+    }
+
+
+    /**
+     * creates a Certificate Revocation List in a new Thread
+     *
+     * @param delta true, if a delta CRL should be issued if possible
+     */
+    private void createCRL(final boolean delta) {
         SwingWorker<String, Void> generateWorker = new SwingWorker<String, Void>() {
             Thread t;
 
@@ -758,7 +930,10 @@ public class X509Generator {
                 t = Thread.currentThread();
                 ThreadMgmt.getInstance().addThread(t, rb.getString("statusBar.crl.tooltip"));
 
-                createCRLImmediately();
+                if (delta)
+                    updateCRLImmediately();
+                else
+                    createCRLImmediately();
                 return "";
             }
 
@@ -772,52 +947,88 @@ public class X509Generator {
 
 
     /**
-     * creates a Certificate Revocation List
+     * issues a delta CRL against the current CRL, creates
+     * a complete CRL if the current one can not be the base
      */
-    public void createCRLImmediately() {
+    public void updateCRLImmediately() {
         try {
-            // load root certificate
-            X509 rootX509 = X509Utils.loadRootX509();
-            if (rootX509 == null) {
-                new VisualException(rb.getString("error.general.text"));
-                return;
-            }
-            X509Certificate rootCert = (X509Certificate)
-                    X509Serializer.getInstance().fromXML(
-                            rootX509.getCertSerialized()
-                    );
-            // extract the private key from the certificate
-            PrivateKey rootPrivKey = X509Utils.extractRootPrivateKey(rootX509);
-            String issuer = PrincipalUtil.getSubjectX509Principal(rootCert).toString();
-
-            Date now = new Date();
-            Calendar nowCal = Calendar.getInstance();
-            nowCal.add(Calendar.DAY_OF_YEAR, Integer.parseInt(Configuration.getInstance().X509_CLIENT_VALID_FOR));
-            Date nextUpdate = nowCal.getTime();
-
-            String createDateStr = Constants.formatDetailedFormat(now);
-            String nextUpdateStr = Constants.formatDetailedFormat(nextUpdate);
-
-            int crlNumber = CRLQueries.getNextCrlNumber();
-            // certificates to revoke
-            Vector<String> revocationSerials = CRLQueries.getRevocationSerials();
+            issueUpdatedCRL();
+        } catch (Exception e) {
+            new VisualException(e);
+        }
+    }
 
-            // generate
-            X509CRL x509crl = generator.createCRLImmediately(rootCert, rootPrivKey, crlNumber, revocationSerials, Integer.parseInt(Configuration.getInstance().X509_CLIENT_VALID_FOR));
 
-            // export
-            String contentStr = CRLExporter.exportCRLToFile(x509crl);
+    /**
+     * issues a delta CRL or a complete CRL, errors are thrown
+     *
+     * @throws Exception if no CRL could be generated
+     */
+    void issueUpdatedCRL() throws Exception {
+        try {
+            if (DeltaCRLGenerator.createDeltaCRL() != null) {
+                ManagerGUI.addStatusMessage(new StatusMessage(rb.getString("statusBar.crl.update")));
+                return;
+            }
+        } catch (Exception e) {
+            logger.log(Level.WARNING, "error generating delta CRL, creating a complete CRL", e);
+        }
+        issueCRL();
+    }
 
-            // create crl object
-            CRLExporter.storeCRL(crlNumber, contentStr, x509crl, createDateStr, nextUpdateStr, issuer);
 
-            ManagerGUI.addStatusMessage(new StatusMessage(rb.getString("statusBar.crl.update")));
+    /**
+     * creates a Certificate Revocation List
+     */
+    public void createCRLImmediately() {
+        try {
+            issueCRL();
         } catch (Exception e) {
             new VisualException(e);
         }
     }
 
 
+    /**
+     * creates a Certificate Revocation List, errors are thrown
+     *
+     * @throws Exception if the CRL could not be generated
+     */
+    void issueCRL() throws Exception {
+        // load root certificate and private key
+        CAMaterialCache.CAMaterial root = CAMaterialCache.getInstance().getRoot();
+        X509Certificate rootCert = root.getCertificate();
+        PrivateKey rootPrivKey = root.getPrivateKey();
+        String issuer = PrincipalUtil.getSubjectX509Principal(rootCert).toString();
+
+        Date now = new Date();
+        Calendar nowCal = Calendar.getInstance();
+        nowCal.add(Calendar.DAY_OF_YEAR, Integer.parseInt(Configuration.getInstance().X509_CLIENT_VALID_FOR));
+        Date nextUpdate = nowCal.getTime();
+
+        String createDateStr = Constants.formatDetailedFormat(now);
+        String nextUpdateStr = Constants.formatDetailedFormat(nextUpdate);
+
+        int crlNumber = CRLQueries.getNextCrlNumber();
+        // certificates to revoke
+        Vector<String> revocationSerials = new Vector<String>(RevocationIndex.getInstance().getSerials());
+        String revocationVersion = RevocationIndex.getInstance().getVersion();
+
+        // generate
+        X509CRL x509crl = generator.createCRLImmediately(rootCert, rootPrivKey, crlNumber, revocationSerials, Integer.parseInt(Configuration.getInstance().X509_CLIENT_VALID_FOR));
+
+        // export
+        String contentStr = CRLExporter.exportCRLToFile(x509crl);
+
+        // create crl object
+        CRLExporter.storeCRL(crlNumber, contentStr, x509crl, createDateStr, nextUpdateStr, issuer);
+        // remember the revocation set the CRL was generated from
+        ConfigurationQueries.setValue(ConfigurationQueries.CRL_REVOCATION_VERSION, revocationVersion);
+
+        ManagerGUI.addStatusMessage(new StatusMessage(rb.getString("statusBar.crl.update")));
+    }
+
+
     public static void main(String[] args) {
 
         try {
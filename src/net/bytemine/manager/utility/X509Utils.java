@@ -7,19 +7,27 @@
 
 package net.bytemine.manager.utility;
 
+import java.io.ByteArrayInputStream;
 import java.security.PrivateKey;
 
+import java.security.cert.CertificateFactory;
+import java.security.cert.X509CRL;
 import java.security.cert.X509Certificate;
 import java.util.Date;
+import java.util.List;
 import java.util.ResourceBundle;
+import java.util.logging.Level;
+import java.util.logging.Logger;
 
 import net.bytemine.manager.Configuration;
 import net.bytemine.manager.Constants;
+import net.bytemine.manager.bean.CRL;
 import net.bytemine.manager.bean.CRLEntry;
 import net.bytemine.manager.bean.User;
 import net.bytemine.manager.bean.X509;
 import net.bytemine.manager.db.CRLEntryDAO;
 import net.bytemine.manager.db.CRLQueries;
+import net.bytemine.manager.db.DBConnector;
 import net.bytemine.manager.db.UserDAO;
 import net.bytemine.manager.db.X509DAO;
 import net.bytemine.manager.db.X509Queries;
@@ -33,7 +41,9 @@ import net.bytemine.manager.i18n.ResourceBundleMgmt;
  * @author Daniel Rauer
  */
 public class X509Utils extends net.bytemine.utility.X509Utils {
-    
+
+    private static Logger logger = Logger.getLogger(X509Utils.class.getName());
+
     /**
      * generates the root certificate
      */
@@ -110,10 +120,44 @@ public class X509Utils extends net.bytemine.utility.X509Utils {
         CRLEntryDAO.getInstance().update(entry);
 
         X509Generator gen = new X509Generator();
-        gen.createCRL();
+        gen.updateCRL();
     }
     
     
+    /**
+     * withdraws privileges from the given certificates
+     * and updates the CRL once for all of them
+     *
+     * @param x509s The x509s to revoke
+     * @throws Exception if the revocations or the CRL could not be stored
+     */
+    public static void revokeCertificates(final List<X509> x509s) throws Exception {
+        if (x509s.isEmpty())
+            return;
+
+        final int crlId = CRLQueries.getMaxCRLId();
+        final String createDateStr = Constants.formatDetailedFormat(new Date());
+
+        DBConnector.getInstance().executeInTransaction(conn -> {
+            for (X509 x509 : x509s) {
+                CRLEntry entry = new CRLEntry(x509.getSerial());
+                entry.setRevocationDate(createDateStr);
+                entry.setX509id(x509.getX509id());
+                entry.setCrlid(crlId);
+                entry.setUsername(getCnFromSubject(x509.getSubject()));
+                CRLEntryDAO.getInstance().update(entry);
+            }
+            return null;
+        });
+
+        X509Generator gen = new X509Generator();
+        if (Configuration.getInstance().CRL_DELTA)
+            gen.issueUpdatedCRL();
+        else
+            gen.issueCRL();
+    }
+
+
     /**
      * Re-enable a revoked certificate
      * @param x509 The x509
@@ -126,7 +170,7 @@ public class X509Utils extends net.bytemine.utility.X509Utils {
             CRLEntryDAO.getInstance().delete(entry);
             
             X509Generator gen = new X509Generator();
-            gen.createCRL();
+            gen.updateCRL();
         }
     }
     
@@ -147,13 +191,7 @@ public class X509Utils extends net.bytemine.utility.X509Utils {
      * @return The root certificate as X509Certificate
      */
     static X509Certificate loadRootCertificate() throws Exception {
-        ResourceBundle rb = ResourceBundleMgmt.getInstance().getUserBundle();
-
-        String rootId = X509Queries.getRootCertId();
-        if (rootId == null)
-            throw new Exception(rb.getString("dialog.newuser.certerror.text"));
-
-        return loadCertificate(Integer.parseInt(rootId));
+        return CAMaterialCache.getInstance().getRoot().getCertificate();
     }
 
 
@@ -163,16 +201,7 @@ public class X509Utils extends net.bytemine.utility.X509Utils {
      * @return The root certificates private key
      */
     public static PrivateKey loadRootPrivateKey() throws Exception {
-        String rootId = X509Queries.getRootCertId();
-        if (rootId == null)
-            throw new Exception("no root certificate could be found");
-
-        X509 rootX509 = X509.getX509ById(Integer.parseInt(rootId));
-
-        return (PrivateKey)
-                X509Serializer.getInstance().fromXML(
-                        rootX509.getKey()
-                );
+        return CAMaterialCache.getInstance().getRoot().getPrivateKey();
     }
 
 
@@ -182,16 +211,7 @@ public class X509Utils extends net.bytemine.utility.X509Utils {
      * @return The intermediate certificates private key
      */
     public static PrivateKey loadIntermediatePrivateKey() throws Exception {
-        String interId = X509Queries.getIntermediateCertId();
-        if (interId == null)
-            throw new Exception("no intermdiate certificate could be found");
-
-        X509 interX509 = X509.getX509ById(Integer.parseInt(interId));
-
-        return (PrivateKey)
-                X509Serializer.getInstance().fromXML(
-                        interX509.getKey()
-                );
+        return CAMaterialCache.getInstance().getIntermediate().getPrivateKey();
     }
 
 
@@ -209,22 +229,6 @@ public class X509Utils extends net.bytemine.utility.X509Utils {
     }
 
 
-    /**
-     * loads the certificate with the given id
-     *
-     * @param x509Id The id of the certificate to load
-     * @return The certificate as X509Certificate
-     */
-    private static X509Certificate loadCertificate(int x509Id) throws Exception {
-        X509 rootX509 = X509.getX509ById(x509Id);
-
-        return (X509Certificate)
-                X509Serializer.getInstance().fromXML(
-                        rootX509.getCertSerialized()
-                );
-    }
-
-
     /**
      * loads the root x509 object
      *
@@ -241,6 +245,66 @@ public class X509Utils extends net.bytemine.utility.X509Utils {
     }
 
 
+    /**
+     * decodes the certificate of the x509 from its DER encoding,
+     * rows written before the DER column existed are read from
+     * the serialized xml or the PEM content
+     *
+     * @param x509 The x509
+     * @return The certificate
+     * @throws Exception if the certificate could not be decoded
+     */
+    public static X509Certificate decodeCertificate(X509 x509) throws Exception {
+        if (x509.getCertDer() != null)
+            return (X509Certificate) CertificateFactory.getInstance("X.509").generateCertificate(
+                    new ByteArrayInputStream(x509.getCertDer()));
+
+        if (x509.getCertSerialized() != null) {
+            try {
+                return (X509Certificate) X509Serializer.getInstance().fromXML(x509.getCertSerialized());
+            } catch (Exception e) {
+                logger.log(Level.WARNING, "serialized certificate " + x509.getX509id() + " could not be read", e);
+            }
+        }
+
+        X509Certificate cert = x509.getContent() == null ? null : regainX509Certificate(x509.getContent());
+        if (cert == null)
+            throw new Exception("certificate " + x509.getX509id() + " could not be decoded");
+        return cert;
+    }
+
+
+    /**
+     * decodes the X509CRL of the crl from its DER encoding,
+     * rows written before the DER column existed are read from
+     * the serialized xml or the PEM content
+     *
+     * @param crl The crl
+     * @return The X509CRL
+     * @throws Exception if the crl could not be decoded
+     */
+    public static X509CRL decodeCRL(CRL crl) throws Exception {
+        if (crl.getCrlDer() != null)
+            return (X509CRL) CertificateFactory.getInstance("X.509").generateCRL(
+                    new ByteArrayInputStream(crl.getCrlDer()));
+
+        if (crl.getCrlSerialized() != null) {
+            try {
+                return (X509CRL) X509Serializer.getInstance().fromXML(crl.getCrlSerialized());
+            } catch (Exception e) {
+                logger.log(Level.WARNING, "serialized crl " + crl.getCrlid() + " could not be read", e);
+            }
+        }
+
+        // the content starts with the text form of the crl
+        int pemStart = crl.getContent() == null ? -1 : crl.getContent().indexOf("-----BEGIN");
+        if (pemStart == -1)
+            throw new Exception("crl " + crl.getCrlid() + " could not be decoded");
+        return (X509CRL) CertificateFactory.getInstance("X.509").generateCRL(
+                new ByteArrayInputStream(crl.getContent().substring(pemStart).getBytes()));
+    }
+
+
     /**
      * loads the intermediate x509 object
      *
@@ -8,49 +8,141 @@
 
 package net.bytemine.openvpn;
 
-import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Vector;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
 
+import javax.swing.SwingUtilities;
+
+import net.bytemine.manager.Configuration;
+import net.bytemine.manager.ThreadMgmt;
+import net.bytemine.manager.bean.Server;
+import net.bytemine.manager.db.ServerDAO;
 import net.bytemine.manager.db.ServerQueries;
+import net.bytemine.manager.gui.BatchSyncFrame;
+import net.bytemine.manager.gui.ManagerGUI;
 
 
 /**
- * Batch worker for user synchronization
+ * Batch worker for user synchronization.
+ * The servers are synchronized by a bounded pool of worker threads,
+ * servers on the same host are synchronized one after another
+ * as they share the ssh session of the host.
+ *
  * @author Daniel Rauer
  *
  */
 public class BatchUserSync {
-    
+
+    private static Logger logger = Logger.getLogger(BatchUserSync.class.getName());
+
     private static BatchUserSync instance = null;
-    private Vector<String> serversToSync = new Vector<>();
-    
+    private BatchSyncFrame batchFrame = null;
+    private final AtomicInteger pendingHosts = new AtomicInteger(0);
+
     private BatchUserSync() {
     }
-    
-    
+
+
     public static BatchUserSync getInstance() {
         if (instance == null)
             instance = new BatchUserSync();
-        
+
         return instance;
     }
-    
-    public void startBatchSync() {
-        Vector<String[]> servers = ServerQueries.getServerOverview();
-        servers.stream().map(server -> server[0]).forEach(serverId -> serversToSync.add(serverId));
-        startNextSync();
-    }
 
-    void startNextSync() {
-        if (serversToSync.isEmpty())
+
+    /**
+     * Synchronizes all servers
+     */
+    public synchronized void startBatchSync() {
+        if (pendingHosts.get() > 0) {
+            // a batch is still running
+            batchFrame.toFront();
+            return;
+        }
+
+        // group the servers by host
+        LinkedHashMap<String, List<Server>> serversByHost = new LinkedHashMap<>();
+        Vector<Server> servers = new Vector<>();
+        for (String[] overview : ServerQueries.getServerOverview()) {
+            Server server = ServerDAO.getInstance().read(new Server(overview[0]));
+            if (server == null)
+                continue;
+            servers.add(server);
+            serversByHost.computeIfAbsent(server.getHostname(), host -> new Vector<>()).add(server);
+        }
+        if (servers.isEmpty())
             return;
-        
-        String serverId = serversToSync.get(0);
+
+        batchFrame = new BatchSyncFrame(ManagerGUI.mainFrame, servers);
+        batchFrame.show();
+
+        int threads = Math.min(Configuration.getInstance().BATCH_SYNC_THREADS, serversByHost.size());
+        logger.info("Synchronizing " + servers.size() + " servers on " + serversByHost.size()
+                + " hosts with " + threads + " threads");
+
+        AtomicInteger threadNumber = new AtomicInteger(1);
+        ExecutorService executor = Executors.newFixedThreadPool(threads, r -> {
+            Thread t = new Thread(r, "batch-sync-" + threadNumber.getAndIncrement());
+            t.setDaemon(true);
+            return t;
+        });
+
+        pendingHosts.set(serversByHost.size());
+        final BatchSyncFrame frame = batchFrame;
+        for (List<Server> hostServers : serversByHost.values())
+            executor.execute(() -> syncHost(hostServers, frame));
+        executor.shutdown();
+    }
+
+
+    /**
+     * Synchronizes the servers of one host one after another
+     *
+     * @param servers The servers of the host
+     * @param frame   The frame showing the progress
+     */
+    private void syncHost(List<Server> servers, BatchSyncFrame frame) {
+        Thread t = Thread.currentThread();
+        ThreadMgmt.getInstance().addThread(t);
         try {
-            new UserSync(serverId);
-        } catch (Exception e) {
-            e.printStackTrace();
+            for (Server server : servers) {
+                frame.started(server);
+                UserSync sync = new UserSync(server, frame);
+                try {
+                    sync.synchronize();
+                    frame.finished(server, true, sync.getSummary());
+                } catch (Exception e) {
+                    logger.log(Level.SEVERE, "batch synchronisation of server " + server.getName() + " failed", e);
+                    frame.finished(server, false, e.getMessage());
+                } finally {
+                    sync.disconnect();
+                }
+            }
+        } finally {
+            ThreadMgmt.getInstance().removeThread(t);
+            if (pendingHosts.decrementAndGet() == 0)
+                batchFinished(frame);
         }
-        serversToSync.remove(0);
+    }
+
+
+    /**
+     * Called when all hosts are synchronized
+     *
+     * @param frame The frame showing the progress
+     */
+    private void batchFinished(BatchSyncFrame frame) {
+        frame.done();
+        SwingUtilities.invokeLater(() -> {
+            ManagerGUI.refreshAllTables();
+            ManagerGUI.reloadServerUserTree();
+        });
     }
 }
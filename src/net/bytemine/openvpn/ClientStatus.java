@@ -0,0 +1,114 @@
+/*************************************************************************
+ * Written by / Copyright (C) 2009-2012 bytemine GmbH                     *
+ * Author: Daniel Rauer                     E-Mail:    rauer@bytemine.net *
+ *                                                                        *
+ * http://www.bytemine.net/                                               *
+ *************************************************************************/
+
+package net.bytemine.openvpn;
+
+import java.util.Date;
+
+
+/**
+ * The status of a single VPN client, as reported by
+ * the management interface of the server
+ *
+ * @author Daniel Rauer
+ */
+public class ClientStatus {
+
+    private String commonName;
+    private String realAddress;
+    private String virtualAddress;
+    private long bytesReceived;
+    private long bytesSent;
+    // the times in ms, 0 if unknown
+    private long connectedSince;
+    private long lastRef;
+    // the client id of OpenVPN 2.3 and newer, -1 if unknown
+    private long clientId = -1;
+
+
+    /**
+     * Returns the values in the order of the columns of the
+     * status table, like SSHStatusModel.toStringArray()
+     *
+     * @return the values as strings
+     */
+    public String[] toStringArray() {
+        String[] array = new String[6];
+        array[0] = getCommonName();
+        array[1] = getRealAddress();
+        array[2] = getVirtualAddress();
+        array[3] = String.valueOf(getBytesReceived());
+        array[4] = String.valueOf(getBytesSent());
+        array[5] = connectedSince > 0 ? new Date(connectedSince).toString() : "";
+        return array;
+    }
+
+
+    public String getCommonName() {
+        return commonName;
+    }
+
+    public void setCommonName(String commonName) {
+        this.commonName = commonName;
+    }
+
+    public String getRealAddress() {
+        return realAddress;
+    }
+
+    public void setRealAddress(String realAddress) {
+        this.realAddress = realAddress;
+    }
+
+    public String getVirtualAddress() {
+        return virtualAddress;
+    }
+
+    public void setVirtualAddress(String virtualAddress) {
+        this.virtualAddress = virtualAddress;
+    }
+
+    public long getBytesReceived() {
+        return bytesReceived;
+    }
+
+    public void setBytesReceived(long bytesReceived) {
+        this.bytesReceived = bytesReceived;
+    }
+
+    public long getBytesSent() {
+        return bytesSent;
+    }
+
+    public void setBytesSent(long bytesSent) {
+        this.bytesSent = bytesSent;
+    }
+
+    public long getConnectedSince() {
+        return connectedSince;
+    }
+
+    public void setConnectedSince(long connectedSince) {
+        this.connectedSince = connectedSince;
+    }
+
+    public long getLastRef() {
+        return lastRef;
+    }
+
+    public void setLastRef(long lastRef) {
+        this.lastRef = lastRef;
+    }
+
+    public long getClientId() {
+        return clientId;
+    }
+
+    public void setClientId(long clientId) {
+        this.clientId = clientId;
+    }
+}
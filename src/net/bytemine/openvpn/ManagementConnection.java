@@ -0,0 +1,225 @@
+/*************************************************************************
+ * Written by / Copyright (C) 2009-2012 bytemine GmbH                     *
+ * Author: Daniel Rauer                     E-Mail:    rauer@bytemine.net *
+ *                                                                        *
+ * http://www.bytemine.net/                                               *
+ *************************************************************************/
+
+package net.bytemine.openvpn;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.LinkedList;
+import java.util.List;
+
+
+/**
+ * A non-blocking connection to the management interface of one server,
+ * driven by the selector thread of the StatusCollector
+ *
+ * @author Daniel Rauer
+ */
+class ManagementConnection {
+
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+    private static final String PASSWORD_PROMPT = "ENTER PASSWORD:";
+    private static final String GREETING = ">INFO:";
+    private static final int BUFFER_SIZE = 8192;
+
+    private final Server server;
+    private final String password;
+    private final ManagementParser parser;
+
+    private SocketChannel channel = null;
+    private SelectionKey key = null;
+    // true after the greeting, commands are accepted from then on
+    private boolean connected = false;
+
+    private final ByteBuffer readBuffer = ByteBuffer.allocate(BUFFER_SIZE);
+    // the bytes of the current, incomplete line
+    private byte[] line = new byte[256];
+    private int lineLength = 0;
+    private final LinkedList<ByteBuffer> writeQueue = new LinkedList<ByteBuffer>();
+
+    // scheduling, times in ms, maintained by the StatusCollector
+    long nextConnect = 0;
+    long nextPoll = 0;
+    long waitingSince = 0;
+
+
+    ManagementConnection(Server server, String password) {
+        this.server = server;
+        this.password = password;
+        this.parser = new ManagementParser(server.getIdentifier());
+    }
+
+
+    /**
+     * Starts to connect, the connection is finished by finishConnect()
+     *
+     * @param selector The selector of the collector
+     * @throws IOException
+     */
+    void connect(Selector selector) throws IOException {
+        InetSocketAddress address = new InetSocketAddress(server.getHostname(), server.getPort());
+        if (address.isUnresolved())
+            throw new IOException("unknown host " + server.getHostname());
+
+        channel = SocketChannel.open();
+        channel.configureBlocking(false);
+        key = channel.register(selector, SelectionKey.OP_CONNECT, this);
+        if (channel.connect(address))
+            key.interestOps(SelectionKey.OP_READ);
+    }
+
+
+    /**
+     * Finishes the connection when the channel is connectable,
+     * the server greets after the password is accepted
+     *
+     * @throws IOException
+     */
+    void finishConnect() throws IOException {
+        if (channel.finishConnect())
+            key.interestOps(SelectionKey.OP_READ);
+    }
+
+
+    /**
+     * Reads the available bytes and parses the complete lines
+     *
+     * @return the completed snapshots, usually none or one
+     * @throws IOException if the connection is lost
+     */
+    List<StatusSnapshot> read() throws IOException {
+        List<StatusSnapshot> snapshots = new ArrayList<StatusSnapshot>(1);
+        int read;
+        while ((read = channel.read(readBuffer)) > 0) {
+            readBuffer.flip();
+            while (readBuffer.hasRemaining()) {
+                byte b = readBuffer.get();
+                if (b == '\n') {
+                    int length = lineLength > 0 && line[lineLength - 1] == '\r' ? lineLength - 1 : lineLength;
+                    lineLength = 0;
+                    String text = new String(line, 0, length, UTF8);
+                    if (!connected && text.startsWith(GREETING))
+                        connected = true;
+                    StatusSnapshot snapshot = parser.parseLine(text);
+                    if (snapshot != null)
+                        snapshots.add(snapshot);
+                } else {
+                    if (lineLength == line.length) {
+                        byte[] larger = new byte[line.length * 2];
+                        System.arraycopy(line, 0, larger, 0, lineLength);
+                        line = larger;
+                    }
+                    line[lineLength++] = b;
+                }
+            }
+            readBuffer.clear();
+        }
+        if (read == -1)
+            throw new IOException("connection closed by " + server.getIdentifier());
+
+        // the password prompt is not terminated by a line break
+        if (lineLength == PASSWORD_PROMPT.length()
+                && PASSWORD_PROMPT.equals(new String(line, 0, lineLength, UTF8))) {
+            lineLength = 0;
+            if (password == null)
+                throw new IOException("management interface of " + server.getIdentifier() + " needs a password");
+            send(password, ManagementParser.PASSWORD);
+        }
+        return snapshots;
+    }
+
+
+    /**
+     * Sends 'status 3' and 'load-stats'
+     *
+     * @throws IOException
+     */
+    void poll() throws IOException {
+        send(ManagementParser.STATUS, ManagementParser.STATUS);
+        send(ManagementParser.LOAD_STATS, ManagementParser.LOAD_STATS);
+    }
+
+
+    /**
+     * Queues a command and writes as much as possible
+     *
+     * @param text    The text to send
+     * @param command The command whose reply is expected
+     * @throws IOException
+     */
+    private void send(String text, String command) throws IOException {
+        parser.commandSent(command);
+        writeQueue.add(ByteBuffer.wrap((text + "\n").getBytes(UTF8)));
+        flush();
+    }
+
+
+    /**
+     * Writes the queued commands, the rest is written
+     * when the channel is writable again
+     *
+     * @throws IOException
+     */
+    void flush() throws IOException {
+        while (!writeQueue.isEmpty()) {
+            ByteBuffer buffer = writeQueue.getFirst();
+            channel.write(buffer);
+            if (buffer.hasRemaining())
+                break;
+            writeQueue.removeFirst();
+        }
+        key.interestOps(writeQueue.isEmpty()
+                ? SelectionKey.OP_READ
+                : SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+    }
+
+
+    /**
+     * Closes the connection, it may be connected again
+     */
+    void close() {
+        connected = false;
+        parser.reset();
+        writeQueue.clear();
+        lineLength = 0;
+        readBuffer.clear();
+        if (key != null)
+            key.cancel();
+        if (channel != null) {
+            try {
+                channel.close();
+            } catch (IOException e) {
+                // closed anyway
+            }
+        }
+        channel = null;
+        key = null;
+    }
+
+
+    boolean isOpen() {
+        return channel != null;
+    }
+
+    boolean isConnected() {
+        return connected;
+    }
+
+    boolean isWaiting() {
+        return parser.isWaiting();
+    }
+
+    Server getServer() {
+        return server;
+    }
+}
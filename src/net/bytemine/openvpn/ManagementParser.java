@@ -0,0 +1,247 @@
+/*************************************************************************
+ * Written by / Copyright (C) 2009-2012 bytemine GmbH                     *
+ * Author: Daniel Rauer                     E-Mail:    rauer@bytemine.net *
+ *                                                                        *
+ * http://www.bytemine.net/                                               *
+ *************************************************************************/
+
+package net.bytemine.openvpn;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Logger;
+
+
+/**
+ * Parses the replies of the OpenVPN management interface line by line.
+ * The replies come in the order of the commands, so the parser keeps
+ * the sent commands and knows which reply a line belongs to.
+ * The columns of 'status 3' are found by the HEADER lines, so the
+ * different column sets of the OpenVPN versions are understood.
+ *
+ * @author Daniel Rauer
+ */
+class ManagementParser {
+
+    private static Logger logger = Logger.getLogger(ManagementParser.class.getName());
+
+    static final String STATUS = "status 3";
+    static final String LOAD_STATS = "load-stats";
+    static final String PASSWORD = "password";
+
+    private final String identifier;
+    // the commands whose replies are outstanding, the oldest first
+    private final LinkedList<String> expected = new LinkedList<String>();
+
+    // the status being parsed
+    private List<ClientStatus> clients = new ArrayList<ClientStatus>();
+    private Map<String, ClientStatus> clientsByAddress = new HashMap<String, ClientStatus>();
+    private long time = 0;
+    private boolean statusComplete = false;
+
+    // column name -> index, from the HEADER lines
+    private Map<String, Integer> clientColumns = new HashMap<String, Integer>();
+    private Map<String, Integer> routingColumns = new HashMap<String, Integer>();
+
+
+    ManagementParser(String identifier) {
+        this.identifier = identifier;
+    }
+
+
+    /**
+     * Registers a sent command, its reply is expected next
+     *
+     * @param command The command
+     */
+    void commandSent(String command) {
+        expected.add(command);
+    }
+
+
+    /**
+     * @return true, if replies are outstanding
+     */
+    boolean isWaiting() {
+        return !expected.isEmpty();
+    }
+
+
+    /**
+     * Forgets the outstanding replies, when the connection is lost
+     */
+    void reset() {
+        expected.clear();
+        startStatus();
+    }
+
+
+    /**
+     * Parses a line
+     *
+     * @param line The line without line break
+     * @return the snapshot if the line completed a status, otherwise null
+     * @throws IOException if the management password is rejected
+     */
+    StatusSnapshot parseLine(String line) throws IOException {
+        // real-time notifications like the >INFO greeting
+        if (line.startsWith(">"))
+            return null;
+
+        if (expected.isEmpty()) {
+            logger.fine("unexpected line from " + identifier + ": " + line);
+            return null;
+        }
+
+        String command = expected.getFirst();
+        if (PASSWORD.equals(command)) {
+            expected.removeFirst();
+            if (line.startsWith("ERROR"))
+                throw new IOException("management password of " + identifier + " rejected");
+            return null;
+        }
+        if (LOAD_STATS.equals(command)) {
+            expected.removeFirst();
+            return parseLoadStats(line);
+        }
+        parseStatusLine(line);
+        return null;
+    }
+
+
+    /**
+     * Parses a line of the multi-line reply of 'status 3'
+     *
+     * @param line The line
+     */
+    private void parseStatusLine(String line) {
+        if (line.startsWith("ERROR")) {
+            logger.warning("status of " + identifier + " failed: " + line);
+            expected.removeFirst();
+            startStatus();
+            return;
+        }
+
+        String[] fields = line.split("\t", -1);
+        String type = fields[0];
+        if ("END".equals(type)) {
+            expected.removeFirst();
+            statusComplete = true;
+        } else if ("TIME".equals(type)) {
+            time = parseLong(field(fields, 2)) * 1000;
+        } else if ("HEADER".equals(type) && fields.length > 1) {
+            Map<String, Integer> columns = new HashMap<String, Integer>();
+            // the header columns are shifted by the HEADER field
+            for (int i = 2; i < fields.length; i++)
+                columns.put(fields[i], i - 1);
+            if ("CLIENT_LIST".equals(fields[1]))
+                clientColumns = columns;
+            else if ("ROUTING_TABLE".equals(fields[1]))
+                routingColumns = columns;
+        } else if ("CLIENT_LIST".equals(type)) {
+            ClientStatus client = new ClientStatus();
+            client.setCommonName(column(fields, clientColumns, "Common Name", 1));
+            client.setRealAddress(column(fields, clientColumns, "Real Address", 2));
+            client.setVirtualAddress(column(fields, clientColumns, "Virtual Address", 3));
+            client.setBytesReceived(parseLong(column(fields, clientColumns, "Bytes Received", 4)));
+            client.setBytesSent(parseLong(column(fields, clientColumns, "Bytes Sent", 5)));
+            client.setConnectedSince(parseLong(column(fields, clientColumns, "Connected Since (time_t)", 7)) * 1000);
+            String clientId = column(fields, clientColumns, "Client ID", -1);
+            if (clientId != null && !clientId.isEmpty())
+                client.setClientId(parseLong(clientId));
+            clients.add(client);
+            clientsByAddress.put(client.getRealAddress(), client);
+        } else if ("ROUTING_TABLE".equals(type)) {
+            ClientStatus client = clientsByAddress.get(column(fields, routingColumns, "Real Address", 3));
+            if (client != null) {
+                String virtualAddress = column(fields, routingColumns, "Virtual Address", 1);
+                if (client.getVirtualAddress() == null || client.getVirtualAddress().isEmpty())
+                    client.setVirtualAddress(virtualAddress);
+                client.setLastRef(parseLong(column(fields, routingColumns, "Last Ref (time_t)", 5)) * 1000);
+            }
+        }
+        // TITLE, GLOBAL_STATS and unknown lines are not needed
+    }
+
+
+    /**
+     * Parses the reply of 'load-stats', it completes the snapshot
+     * SUCCESS: nclients=1,bytesin=5523,bytesout=6218
+     *
+     * @param line The line
+     * @return the snapshot or null, if no status was received before
+     */
+    private StatusSnapshot parseLoadStats(String line) {
+        int clientCount = clients.size();
+        long bytesIn = -1;
+        long bytesOut = -1;
+        if (line.startsWith("SUCCESS:")) {
+            for (String pair : line.substring("SUCCESS:".length()).trim().split(",")) {
+                int separator = pair.indexOf('=');
+                if (separator == -1)
+                    continue;
+                String key = pair.substring(0, separator);
+                long value = parseLong(pair.substring(separator + 1));
+                if ("nclients".equals(key))
+                    clientCount = (int) value;
+                else if ("bytesin".equals(key))
+                    bytesIn = value;
+                else if ("bytesout".equals(key))
+                    bytesOut = value;
+            }
+        } else {
+            // older servers do not know load-stats
+            logger.fine("load-stats of " + identifier + " failed: " + line);
+        }
+
+        StatusSnapshot snapshot = null;
+        if (statusComplete)
+            snapshot = new StatusSnapshot(identifier, time > 0 ? time : System.currentTimeMillis(),
+                    clients, clientCount, bytesIn, bytesOut);
+        startStatus();
+        return snapshot;
+    }
+
+
+    private void startStatus() {
+        clients = new ArrayList<ClientStatus>();
+        clientsByAddress = new HashMap<String, ClientStatus>();
+        time = 0;
+        statusComplete = false;
+    }
+
+
+    /**
+     * Returns the value of a column, found by the header
+     * or by the default index of OpenVPN 2.2
+     */
+    private static String column(String[] fields, Map<String, Integer> columns, String name, int defaultIndex) {
+        Integer index = columns.get(name);
+        if (index == null) {
+            if (!columns.isEmpty())
+                return null;
+            index = defaultIndex;
+        }
+        return field(fields, index);
+    }
+
+
+    private static String field(String[] fields, int index) {
+        return index >= 0 && index < fields.length ? fields[index] : null;
+    }
+
+
+    private static long parseLong(String value) {
+        if (value == null)
+            return 0;
+        try {
+            return Long.parseLong(value.trim());
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+}
@@ -11,12 +11,15 @@ import com.jcraft.jsch.Channel;
 import com.jcraft.jsch.ChannelExec;
 import com.jcraft.jsch.Session;
 
+import java.io.BufferedOutputStream;
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.net.ConnectException;
+import java.util.LinkedHashMap;
+import java.util.Map;
 import java.util.ResourceBundle;
 import java.util.logging.Level;
 import java.util.logging.Logger;
@@ -50,9 +53,11 @@ public class ScpTool {
 
 
     private Session getSession() throws ConnectException {
-        sshSession = SSHSessionPool.getInstance().getSession(server.getHostname());
-        if (sshSession == null || !sshSession.isConnected())
-            this.sshSession = sshConnector.createSessionImmediately();
+        if (sshSession == null || !sshSession.isConnected()) {
+            if (sshSession != null)
+                SSHSessionPool.getInstance().release(sshSession);
+            this.sshSession = SSHSessionPool.getInstance().lease(sshConnector.getPoolKey(), sshConnector);
+        }
         return sshSession;
     }
 
@@ -65,6 +70,7 @@ public class ScpTool {
      */
     byte[] getFromServer(String sourceFile) throws Exception {
 
+        Channel channel = null;
         try {
             logger.info("ScpTool.getFrom start");
 
@@ -72,7 +78,7 @@ public class ScpTool {
 
             // exec 'scp -f rfile'
             String command = "scp -f \"" + sourceFile + "\"";
-            Channel channel = getSession().openChannel("exec");
+            channel = SSHSessionPool.getInstance().openChannel(getSession(), "exec");
             ((ChannelExec) channel).setCommand(command);
 
             OutputStream out = channel.getOutputStream();
@@ -137,13 +143,14 @@ public class ScpTool {
                 out.flush();
             }
 
-            channel.disconnect();
-
             logger.info("ScpTool.getFrom end");
             return os.toByteArray();
         } catch (Exception e) {
             logger.log(Level.SEVERE, e.getMessage(), e);
             throw new Exception(rb.getString("error.syncusers.scpFrom"));
+        } finally {
+            if (channel != null)
+                SSHSessionPool.getInstance().closeChannel(sshSession, channel);
         }
     }
 
@@ -156,12 +163,13 @@ public class ScpTool {
      */
     void postToServer(String content, String targetFile) throws Exception {
 
+        Channel channel = null;
         try {
             logger.info("ScpTool.postTo start");
 
             // exec 'scp -t rfile' remotely
             String command = "scp -t \"" + targetFile + "\"";
-            Channel channel = getSession().openChannel("exec");
+            channel = SSHSessionPool.getInstance().openChannel(getSession(), "exec");
             ((ChannelExec) channel).setCommand(command);
 
             OutputStream out = channel.getOutputStream();
@@ -201,20 +209,119 @@ public class ScpTool {
 
             out.close();
 
-            channel.disconnect();
+            logger.info("ScpTool.postTo end");
+        } catch (Exception e) {
+            logger.log(Level.SEVERE, e.getMessage(), e);
+            throw e;
+        } finally {
+            if (channel != null)
+                SSHSessionPool.getInstance().closeChannel(sshSession, channel);
+        }
+    }
+
+
+    /**
+     * Writes several files to a server via scp.
+     * All files of a directory are streamed through one scp session,
+     * the acknowledgements of the server are read after all files
+     * have been sent.
+     *
+     * @param files The contents to write, keyed by the filename of the target file
+     * @throws java.lang.Exception
+     */
+    void postToServer(Map<String, String> files) throws Exception {
+        if (files.isEmpty())
+            return;
+
+        // group the files by target directory
+        LinkedHashMap<String, LinkedHashMap<String, byte[]>> directories = new LinkedHashMap<>();
+        for (Map.Entry<String, String> file : files.entrySet()) {
+            String targetFile = file.getKey();
+            int index = targetFile.lastIndexOf("/");
+            String directory = index < 0 ? "." : (index == 0 ? "/" : targetFile.substring(0, index));
+            String filename = targetFile.substring(index + 1);
+            directories.computeIfAbsent(directory, d -> new LinkedHashMap<>())
+                    .put(filename, file.getValue().getBytes());
+        }
+
+        for (Map.Entry<String, LinkedHashMap<String, byte[]>> directory : directories.entrySet())
+            postToDirectory(directory.getKey(), directory.getValue());
+    }
+
+
+    /**
+     * Writes several files into one directory via one scp session
+     *
+     * @param directory The target directory
+     * @param files     The contents to write, keyed by filename
+     * @throws java.lang.Exception
+     */
+    private void postToDirectory(String directory, Map<String, byte[]> files) throws Exception {
+        Channel channel = null;
+        try {
+            logger.info("ScpTool.postTo start: " + files.size() + " files to " + directory);
+
+            // exec 'scp -t -d directory' remotely
+            String command = "scp -t -d \"" + directory + "\"";
+            channel = SSHSessionPool.getInstance().openChannel(getSession(), "exec");
+            ((ChannelExec) channel).setCommand(command);
+
+            OutputStream out = new BufferedOutputStream(channel.getOutputStream(), 32 * 1024);
+            InputStream in = channel.getInputStream();
+
+            channel.connect();
+
+            checkAck(in);
+
+            // send all files without waiting for the acknowledgements
+            for (Map.Entry<String, byte[]> file : files.entrySet()) {
+                byte[] content = file.getValue();
+                command = "C0644 " + content.length + " " + file.getKey() + "\n";
+                out.write(command.getBytes());
+                out.write(content);
+                // send '\0'
+                out.write(0);
+            }
+            out.flush();
+
+            // one acknowledgement for the header and one for the content of every file
+            for (String filename : files.keySet()) {
+                if (checkAck(in) != 0 || checkAck(in) != 0)
+                    throw new IOException("no acknowledgement for " + directory + "/" + filename);
+            }
+
+            out.close();
 
             logger.info("ScpTool.postTo end");
         } catch (Exception e) {
             logger.log(Level.SEVERE, e.getMessage(), e);
             throw e;
+        } finally {
+            if (channel != null)
+                SSHSessionPool.getInstance().closeChannel(sshSession, channel);
         }
     }
 
 
+    /**
+     * Returns the leased session to the pool, the session
+     * stays connected for further transfers
+     */
+    public void releaseSession() {
+        if (sshSession != null)
+            SSHSessionPool.getInstance().release(sshSession);
+        sshSession = null;
+    }
+
+
+    /**
+     * Releases the session and removes it from the pool, e.g. to abort
+     * a running transfer. The session is disconnected as soon as
+     * no other tool is using it.
+     */
     public void disconnectSession() {
-        int i = 1;
-        disconnectSSHSession(i, this.sshSession);
-        SSHSessionPool.getInstance().removeSession(server.getHostname());
+        releaseSession();
+        SSHSessionPool.getInstance().removeSession(sshConnector.getPoolKey());
     }
 
     public static void disconnectSSHSession(int i, Session sshSession) {
@@ -7,65 +7,289 @@
 
 package net.bytemine.openvpn;
 
-import java.io.*;
-import java.net.*;
-import java.util.Date;
-import java.util.Timer;
-import java.util.TimerTask;
+import java.io.IOException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.logging.Level;
+import java.util.logging.Logger;
 
 /**
+ * Collects the status of many VPN servers from their management interfaces.
+ * One thread keeps a persistent, non-blocking connection to every server,
+ * sends 'status 3' and 'load-stats' every interval, parses the replies while
+ * they arrive and publishes the status as snapshots to the listeners.
+ * Lost connections are opened again after one interval.
+ * The port of the servers is the port of the management interface.
+ *
  * @author fkr
  */
 public class StatusCollector extends Thread {
 
-    private Server server;
-    private int interval = 10;
+    private static Logger logger = Logger.getLogger(StatusCollector.class.getName());
 
-    private Socket connectionSocket;
+    // seconds
+    private volatile int interval = 10;
 
-    public StatusCollector(Server server) {
-        this.server = server;
-        this.connectionSocket = null;
+    private final Selector selector;
+    // only used by the collector thread
+    private final Map<String, ManagementConnection> connections = new HashMap<String, ManagementConnection>();
+    // changes of the servers, executed by the collector thread
+    private final ConcurrentLinkedQueue<Runnable> tasks = new ConcurrentLinkedQueue<Runnable>();
+
+    private final Map<String, StatusSnapshot> snapshots = new ConcurrentHashMap<String, StatusSnapshot>();
+    private final Map<String, Boolean> connected = new ConcurrentHashMap<String, Boolean>();
+    private final List<StatusListener> listeners = new CopyOnWriteArrayList<StatusListener>();
+    private volatile boolean running = true;
+
+
+    public StatusCollector() throws IOException {
+        super("status-collector");
+        setDaemon(true);
+        this.selector = Selector.open();
     }
 
-    public void connect() throws Exception {
+
+    /**
+     * Adds a server, its management interface does not need a password
+     *
+     * @param server The server with the host and port of the management interface
+     */
+    public void addServer(Server server) {
+        addServer(server, null);
+    }
+
+
+    /**
+     * Adds a server, an existing server with the same identifier is replaced
+     *
+     * @param server   The server with the host and port of the management interface
+     * @param password The password of the management interface or null
+     */
+    public void addServer(final Server server, final String password) {
+        execute(() -> {
+            closeConnection(server.getIdentifier());
+            connections.put(server.getIdentifier(), new ManagementConnection(server, password));
+        });
+    }
+
+
+    /**
+     * Removes a server and closes its connection
+     *
+     * @param identifier The identifier of the server
+     */
+    public void removeServer(final String identifier) {
+        execute(() -> {
+            closeConnection(identifier);
+            snapshots.remove(identifier);
+        });
+    }
+
+
+    public void addListener(StatusListener listener) {
+        listeners.add(listener);
+    }
+
+
+    public void removeListener(StatusListener listener) {
+        listeners.remove(listener);
+    }
+
+
+    /**
+     * Returns the last status of a server
+     *
+     * @param identifier The identifier of the server
+     * @return the snapshot or null, if no status was received yet
+     */
+    public StatusSnapshot getStatus(String identifier) {
+        return snapshots.get(identifier);
+    }
+
+
+    /**
+     * @param identifier The identifier of the server
+     * @return true, if the management interface of the server is connected
+     */
+    public boolean isConnected(String identifier) {
+        return connected.containsKey(identifier);
+    }
+
+
+    /**
+     * Stops the collector and closes all connections
+     */
+    public void shutdown() {
+        running = false;
+        selector.wakeup();
+    }
+
+
+    public void run() {
         try {
-            this.connectionSocket = new Socket(server.getHostname(), server.getPort());
-        } catch (UnknownHostException e) {
-            throw new Exception(e);
+            while (running) {
+                Runnable task;
+                while ((task = tasks.poll()) != null)
+                    task.run();
+
+                long wait = schedule(System.currentTimeMillis());
+                selector.select(Math.max(1, wait));
+
+                Iterator<SelectionKey> selected = selector.selectedKeys().iterator();
+                while (selected.hasNext()) {
+                    SelectionKey key = selected.next();
+                    selected.remove();
+                    handle(key);
+                }
+            }
+        } catch (Exception e) {
+            logger.log(Level.SEVERE, "status collector stopped", e);
+        } finally {
+            for (String identifier : connections.keySet().toArray(new String[0]))
+                closeConnection(identifier);
+            try {
+                selector.close();
+            } catch (IOException e) {
+                logger.log(Level.WARNING, "error closing the selector", e);
+            }
+        }
+    }
+
+
+    /**
+     * Connects, polls and checks the connections that are due
+     *
+     * @param now The current time in ms
+     * @return the ms until the next connection is due
+     */
+    private long schedule(long now) {
+        long intervalMillis = interval * 1000L;
+        // a reply must arrive within two intervals
+        long timeout = Math.max(2 * intervalMillis, 10000);
+        long next = now + intervalMillis;
+
+        for (ManagementConnection connection : connections.values()) {
+            String identifier = connection.getServer().getIdentifier();
+            try {
+                if (!connection.isOpen()) {
+                    if (connection.nextConnect <= now) {
+                        connection.waitingSince = now;
+                        connection.connect(selector);
+                    } else {
+                        next = Math.min(next, connection.nextConnect);
+                        continue;
+                    }
+                }
+
+                if (!connection.isConnected() || connection.isWaiting()) {
+                    // connecting, waiting for the greeting or for a reply
+                    if (now - connection.waitingSince > timeout)
+                        throw new IOException("no reply from " + identifier);
+                    next = Math.min(next, connection.waitingSince + timeout + 1);
+                } else if (connection.nextPoll <= now) {
+                    connection.waitingSince = now;
+                    connection.nextPoll = now + intervalMillis;
+                    connection.poll();
+                    next = Math.min(next, connection.waitingSince + timeout + 1);
+                } else {
+                    next = Math.min(next, connection.nextPoll);
+                }
+            } catch (IOException e) {
+                lost(connection, now, e);
+            }
         }
+        return next - now;
     }
 
-    public void disconnect() throws Exception {
+
+    /**
+     * Handles a selected connection
+     *
+     * @param key The selection key of the connection
+     */
+    private void handle(SelectionKey key) {
+        ManagementConnection connection = (ManagementConnection) key.attachment();
+        long now = System.currentTimeMillis();
         try {
-            this.connectionSocket.close();
+            // closed meanwhile
+            if (!key.isValid())
+                return;
+            if (key.isConnectable())
+                connection.finishConnect();
+            if (key.isValid() && key.isWritable())
+                connection.flush();
+            if (key.isValid() && key.isReadable()) {
+                boolean wasConnected = connection.isConnected();
+                for (StatusSnapshot snapshot : connection.read())
+                    publish(snapshot);
+                if (!wasConnected && connection.isConnected()) {
+                    logger.info("management interface of " + connection.getServer().getIdentifier() + " connected");
+                    connected.put(connection.getServer().getIdentifier(), Boolean.TRUE);
+                    connection.nextPoll = now;
+                }
+            }
         } catch (IOException e) {
-            throw new Exception(e);
+            lost(connection, now, e);
         }
     }
 
 
-    public void run() {
+    private void publish(StatusSnapshot snapshot) {
+        snapshots.put(snapshot.getIdentifier(), snapshot);
+        for (StatusListener listener : listeners) {
+            try {
+                listener.statusReceived(snapshot);
+            } catch (Exception e) {
+                logger.log(Level.WARNING, "error in status listener", e);
+            }
+        }
+    }
+
+
+    /**
+     * Closes a lost connection, it is opened again after one interval
+     */
+    private void lost(ManagementConnection connection, long now, IOException e) {
+        String identifier = connection.getServer().getIdentifier();
+        logger.warning("management interface of " + identifier + " lost: " + e.getMessage());
+        connection.close();
+        connected.remove(identifier);
+        connection.nextConnect = now + interval * 1000L;
+    }
+
+
+    private void closeConnection(String identifier) {
+        ManagementConnection connection = connections.remove(identifier);
+        if (connection != null)
+            connection.close();
+        connected.remove(identifier);
+    }
 
-        TimerTask watcherTask = new StatusWatcher(this.connectionSocket);
-        Timer timer = new Timer();
-        // repeat every $interval seconds
-        timer.schedule(watcherTask, new Date(), this.interval * 1000);
 
+    private void execute(Runnable task) {
+        tasks.add(task);
+        selector.wakeup();
     }
 
 
     /**
-     * @return the intervall
+     * @return the interval in seconds
      */
-    public int getIntervall() {
+    public int getInterval() {
         return interval;
     }
 
     /**
-     * @param intervall the intervall to set
+     * @param interval the interval in seconds
      */
-    public void setIntervall(int intervall) {
-        this.interval = intervall;
+    public void setInterval(int interval) {
+        this.interval = interval;
     }
 }
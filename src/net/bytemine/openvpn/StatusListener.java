@@ -0,0 +1,26 @@
+/*************************************************************************
+ * Written by / Copyright (C) 2009-2012 bytemine GmbH                     *
+ * Author: Daniel Rauer                     E-Mail:    rauer@bytemine.net *
+ *                                                                        *
+ * http://www.bytemine.net/                                               *
+ *************************************************************************/
+
+package net.bytemine.openvpn;
+
+
+/**
+ * Receives the status snapshots collected by the StatusCollector.
+ * The listeners are called by the thread of the collector and
+ * must not block it.
+ *
+ * @author Daniel Rauer
+ */
+public interface StatusListener {
+
+    /**
+     * Called for every collected status
+     *
+     * @param snapshot The status of a server
+     */
+    void statusReceived(StatusSnapshot snapshot);
+}
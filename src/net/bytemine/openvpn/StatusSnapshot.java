@@ -0,0 +1,72 @@
+/*************************************************************************
+ * Written by / Copyright (C) 2009-2012 bytemine GmbH                     *
+ * Author: Daniel Rauer                     E-Mail:    rauer@bytemine.net *
+ *                                                                        *
+ * http://www.bytemine.net/                                               *
+ *************************************************************************/
+
+package net.bytemine.openvpn;
+
+import java.util.Collections;
+import java.util.List;
+
+
+/**
+ * The status of a VPN server at one point in time, collected
+ * with 'status 3' and 'load-stats' from its management interface
+ *
+ * @author Daniel Rauer
+ */
+public class StatusSnapshot {
+
+    private final String identifier;
+    private final long time;
+    private final List<ClientStatus> clients;
+    private final int clientCount;
+    private final long bytesIn;
+    private final long bytesOut;
+
+
+    /**
+     * @param identifier  The identifier of the server
+     * @param time        The time of the status in ms
+     * @param clients     The connected clients
+     * @param clientCount The number of clients reported by load-stats
+     * @param bytesIn     The bytes received by the server, -1 if unknown
+     * @param bytesOut    The bytes sent by the server, -1 if unknown
+     */
+    public StatusSnapshot(String identifier, long time, List<ClientStatus> clients,
+                          int clientCount, long bytesIn, long bytesOut) {
+        this.identifier = identifier;
+        this.time = time;
+        this.clients = Collections.unmodifiableList(clients);
+        this.clientCount = clientCount;
+        this.bytesIn = bytesIn;
+        this.bytesOut = bytesOut;
+    }
+
+
+    public String getIdentifier() {
+        return identifier;
+    }
+
+    public long getTime() {
+        return time;
+    }
+
+    public List<ClientStatus> getClients() {
+        return clients;
+    }
+
+    public int getClientCount() {
+        return clientCount;
+    }
+
+    public long getBytesIn() {
+        return bytesIn;
+    }
+
+    public long getBytesOut() {
+        return bytesOut;
+    }
+}
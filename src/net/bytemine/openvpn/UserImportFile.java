@@ -26,6 +26,7 @@ import net.bytemine.manager.ThreadMgmt;
 import net.bytemine.manager.action.X509Action;
 import net.bytemine.manager.bean.User;
 import net.bytemine.manager.bean.X509;
+import net.bytemine.manager.db.DBConnector;
 import net.bytemine.manager.db.UserDAO;
 import net.bytemine.manager.db.UserQueries;
 import net.bytemine.manager.db.X509DAO;
@@ -354,7 +355,8 @@ public class UserImportFile extends UserImport {
 
         // import userfile
         String content = readUserfile();
-        return importUsersFromFile(content);
+        // commit all imported users at once
+        return DBConnector.getInstance().executeInTransaction(conn -> importUsersFromFile(content));
     }
 
 
@@ -375,20 +377,20 @@ public class UserImportFile extends UserImport {
             throw new VisualException(rb.getString("error.importClients.noroot"));
         }
 
+        Vector<User> users = new Vector<User>();
         for (String username : usersWithoutCertificate.keySet()) {
-            try {
-                UserImport.incGeneratedCerts();
+            UserImport.incGeneratedCerts();
 
-                User user = new User(usersWithoutCertificate.get(username));
-                user = UserDAO.getInstance().read(user);
-
-                logger.info("generating certificate for imported user: " + username);
-                generator.createClientCertImmediately(user);
+            User user = new User(usersWithoutCertificate.get(username));
+            users.add(UserDAO.getInstance().read(user));
+        }
 
-            } catch (Exception e) {
-                logger.log(Level.SEVERE, "error generating client certificate", e);
-                throw new Exception(rb.getString("error.importClients.generateerror"));
-            }
+        try {
+            logger.info("generating certificates for " + users.size() + " imported users");
+            generator.createClientCertsImmediately(users);
+        } catch (Exception e) {
+            logger.log(Level.SEVERE, "error generating client certificates", e);
+            throw new Exception(rb.getString("error.importClients.generateerror"));
         }
 
         //#FIXME
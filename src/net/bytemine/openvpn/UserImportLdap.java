@@ -27,6 +27,7 @@ import net.bytemine.manager.gui.StatusFrame;
 import net.bytemine.manager.i18n.ResourceBundleMgmt;
 import net.bytemine.manager.utility.LdapConnector;
 import net.bytemine.manager.utility.X509FileImporter;
+import net.bytemine.manager.utility.X509Generator;
 import net.bytemine.manager.utility.X509LdapImporter;
 import net.bytemine.manager.utility.X509Utils;
 import net.bytemine.utility.Base64;
@@ -82,7 +83,9 @@ public class UserImportLdap extends UserImport {
                         statusFrame.updateStatus(rb.getString("status.msg.ldap.initialize"));
 
                         //import
-                        loadAndImport();
+                        Hashtable<String, String> users = loadAndImport();
+                        if (isCreateCertificatesForUsers())
+                            createClientCertificates(users);
 
                         // update messages, show statistic
                         statusFrame.updateStatus(rb.getString("status.msg.ldap.done"));
@@ -146,20 +149,55 @@ public class UserImportLdap extends UserImport {
      * Loads users and certificates from ldap
      * and imports them
      *
+     * @return A Hashtable with <username,userid> of the loaded users
      * @throws java.lang.Exception
      */
-    private void loadAndImport() throws Exception {
+    private Hashtable<String, String> loadAndImport() throws Exception {
         LdapConnector lc = new LdapConnector();
+        Hashtable<String, String> users;
         if (lc.isLoadCertificateFromLDAP()) {
             Hashtable<String, byte[]> usersAndCertificates = lc.getAllPersonWithCertificates();
-            Hashtable<String, String> users = importUsersFromLdap(usersAndCertificates.keySet());
+            users = importUsersFromLdap(usersAndCertificates.keySet());
             importCertificates(users, usersAndCertificates);
         } else {
             Set<String> usernames = lc.getAllPerson();
-            Hashtable<String, String> users = importUsersFromLdap(usernames);
+            users = importUsersFromLdap(usernames);
             importCertificatesFromFilesystem(users, lc.getCertImportDir());
         }
+        return users;
+    }
+
 
+    /**
+     * Generates certificates for the loaded users
+     * that could not be linked with a certificate
+     *
+     * @param users Hashtable with <username,userid>
+     * @throws java.lang.Exception
+     */
+    private void createClientCertificates(Hashtable<String, String> users) throws Exception {
+        Vector<User> usersWithoutCertificate = new Vector<User>();
+        for (String userid : users.values()) {
+            User user = UserDAO.getInstance().read(new User(userid));
+            if (user != null && user.getX509id() <= 0)
+                usersWithoutCertificate.add(user);
+        }
+        if (usersWithoutCertificate.isEmpty())
+            return;
+
+        if (!Configuration.getInstance().isRootCertExisting()) {
+            // the root import dialog is shown when the import is done
+            UserImport.incNotLinkedUsers(usersWithoutCertificate.size());
+            return;
+        }
+
+        try {
+            logger.info("generating certificates for " + usersWithoutCertificate.size() + " ldap users");
+            UserImport.generatedCerts += new X509Generator().createClientCertsImmediately(usersWithoutCertificate);
+        } catch (Exception e) {
+            logger.log(Level.SEVERE, "error generating client certificates", e);
+            throw new Exception(rb.getString("error.importClients.generateerror"));
+        }
     }
 
 
@@ -7,10 +7,13 @@
 
 package net.bytemine.openvpn;
 
-import java.io.File;
+import java.text.MessageFormat;
 
+import java.util.Collection;
 import java.util.Hashtable;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
 import java.util.ResourceBundle;
 import java.util.Vector;
 import java.util.logging.Level;
@@ -26,10 +29,12 @@ import net.bytemine.manager.bean.Server;
 import net.bytemine.manager.bean.User;
 import net.bytemine.manager.bean.X509;
 import net.bytemine.manager.db.*;
+import net.bytemine.manager.gui.BatchSyncFrame;
 import net.bytemine.manager.gui.ManagerGUI;
 import net.bytemine.manager.gui.StatusFrame;
 import net.bytemine.manager.i18n.ResourceBundleMgmt;
-import net.bytemine.manager.utility.X509Generator;
+import net.bytemine.manager.utility.CRLCache;
+import net.bytemine.manager.utility.DHParameterService;
 import net.bytemine.manager.utility.X509Utils;
 import net.bytemine.openvpn.ssh.SSHTool;
 import net.bytemine.utility.*;
@@ -53,6 +58,7 @@ public class UserSync {
     private int updatedUsers = 0;
     private int addUsers = 0;        // (new) users added to a server
     private int delUsers = 0;        // users deleted from a server
+    private int changedUsers = 0;    // users with a changed password on a server
 
     private int exportedCrls = 0;
     private int exportedRootCerts = 0;
@@ -61,7 +67,28 @@ public class UserSync {
 
     private int ccfiles = 0;
 
-    final StatusFrame statusFrame;
+    // the userfile loaded from the server during this synchronisation
+    private String serverUserfile = null;
+
+    // files to copy to the server, keyed by the target filename
+    private LinkedHashMap<String, String> filesToPost = new LinkedHashMap<>();
+    private Hashtable<String, String> fileTypes = new Hashtable<>();
+
+    private static final String FILE_SERVER_CERT = "servercert";
+    private static final String FILE_ROOT_CERT = "rootcert";
+    private static final String FILE_CRL = "crl";
+    private static final String FILE_PASSWD = "passwd";
+    private static final String FILE_CC = "cc";
+    private static final String FILE_OTHER = "other";
+
+    // skip the server if no file changed since the last synchronisation
+    private boolean skipUnchanged = false;
+    private boolean unchanged = false;
+
+    private final StatusFrame statusFrame;
+    private BatchSyncFrame batchFrame;
+    // serializes database writes of parallel synchronisations
+    private static final Object DB_WRITE_LOCK = new Object();
     final ResourceBundle rb = ResourceBundleMgmt.getInstance().getUserBundle();
     // XXX TODO
     final boolean updatePassword = false;
@@ -83,8 +110,6 @@ public class UserSync {
             // status frame
             statusFrame.show();
 
-            logger.info("Synching server: " + serverId);
-
             SwingWorker<String, Void> copyWorker = new SwingWorker<String, Void>() {
                 Thread t;
 
@@ -93,41 +118,8 @@ public class UserSync {
                         t = Thread.currentThread();
                         ThreadMgmt.getInstance().addThread(t);
 
-                        statusFrame.updateStatus(rb.getString("status.msg.sync.initialize") + server.getHostname() + " ...");
-                        scpTool = new ScpTool(server);
-                        sshTool = new SSHTool(server);
-                        statusFrame.setScpTool(scpTool);
-
-                        // prepare for synchronisation
-                        prepareServerFileSystem();
-
-                        // do all the synchronisation
-                        syncUsers();
-
-                        // FIXME: atm: only for testing
-                        // updateServerConfigOnServer(new ServerConfig(server).createConfig());
-
-                        // update messages, show statistic
-                        statusFrame.updateStatus(rb.getString("status.msg.sync.done"));
-
-                        String newUsersStr = (newUsers < 10 ? "  " + newUsers : newUsers + "");
-                        String updatedUsersStr = (updatedUsers < 10 ? "  " + updatedUsers : updatedUsers + "");
-
-                        statusFrame.addDetailsText(newUsersStr + " " + rb.getString("status.msg.sync.newusers"));
-                        statusFrame.addDetailsText("  " + addUsers + " " + rb.getString("status.msg.sync.addusers"));
-                        statusFrame.addDetailsText("  " + delUsers + " " + rb.getString("status.msg.sync.delusers"));
-                        if (updatePassword)
-                            statusFrame.addDetailsText(updatedUsersStr + " " + rb.getString("status.msg.sync.updatedusers"));
-                        statusFrame.addDetailsText("");
-                        statusFrame.addDetailsText("  " + rb.getString("status.msg.sync.exportedfiles"));
-                        statusFrame.addDetailsText("     " + exportedRootCerts + " " + rb.getString("status.msg.sync.exportedRootcerts"));
-                        statusFrame.addDetailsText("     " + exportedServerCerts + " " + rb.getString("status.msg.sync.exportedservercerts"));
-                        statusFrame.addDetailsText("     " + exportedCrls + " " + rb.getString("status.msg.sync.exportedcrls"));
-                        if (exportedPasswds > 0)
-                            statusFrame.addDetailsText("     " + exportedPasswds + " " + rb.getString("status.msg.sync.exportedPasswds"));
-                        if (server.getVpncc())
-                            statusFrame.addDetailsText("     " + ccfiles + " " + rb.getString("status.msg.sync.ccfiles"));
-                        statusFrame.showDetails();
+                        synchronize();
+                        showStatistics();
                     } catch (Exception e) {
                         logger.log(Level.SEVERE, "", e);
                         String error = "<html>" + rb.getString("error.syncusers.scpTo") + ":<br><br><small>" +
@@ -141,16 +133,12 @@ public class UserSync {
 
                 protected void done() {
                     statusFrame.done();
-                    if (scpTool != null)
-                        scpTool.disconnectSession();
+                    disconnect();
 
                     ManagerGUI.refreshAllTables();
                     ManagerGUI.reloadServerUserTree();
 
                     ThreadMgmt.getInstance().removeThread(t);
-
-                    BatchUserSync userSync = BatchUserSync.getInstance();
-                    userSync.startNextSync();
                 }
             };
 
@@ -165,6 +153,114 @@ public class UserSync {
     }
 
 
+    /**
+     * Prepares the synchronisation of the server as part of a batch.
+     * The synchronisation is started with synchronize(), the progress
+     * is reported to the batch frame.
+     *
+     * @param server     The server to be synced
+     * @param batchFrame The frame showing the progress of the batch
+     */
+    UserSync(Server server, BatchSyncFrame batchFrame) {
+        this.server = server;
+        this.serverId = server.getServerid() + "";
+        this.batchFrame = batchFrame;
+        this.statusFrame = null;
+        this.skipUnchanged = true;
+    }
+
+
+    /**
+     * Synchronizes the server in the current thread
+     *
+     * @throws Exception if anything goes wrong
+     */
+    void synchronize() throws Exception {
+        logger.info("Synching server: " + serverId);
+
+        updateStatus(rb.getString("status.msg.sync.initialize") + server.getHostname() + " ...");
+        scpTool = new ScpTool(server);
+        sshTool = new SSHTool(server);
+        if (statusFrame != null)
+            statusFrame.setScpTool(scpTool);
+
+        // do all the synchronisation
+        syncUsers();
+
+        // FIXME: atm: only for testing
+        // updateServerConfigOnServer(new ServerConfig(server).createConfig());
+
+        updateStatus(rb.getString("status.msg.sync.done"));
+
+        if (batchFrame != null)
+            Configuration.getInstance().NOT_SYNCED_SERVERS.remove(serverId);
+    }
+
+
+    /**
+     * Returns the ssh session used for the synchronisation to the pool
+     */
+    void disconnect() {
+        if (scpTool != null)
+            scpTool.releaseSession();
+        if (sshTool != null)
+            sshTool.releaseSession();
+    }
+
+
+    /**
+     * Returns a one line summary of the synchronisation
+     *
+     * @return the summary
+     */
+    String getSummary() {
+        if (unchanged)
+            return rb.getString("status.batchsync.unchanged");
+        int exported = exportedRootCerts + exportedServerCerts + exportedCrls + exportedPasswds + ccfiles;
+        return MessageFormat.format(rb.getString("status.batchsync.result"), addUsers, delUsers, exported);
+    }
+
+
+    /**
+     * Shows the statistics of the synchronisation in the status frame
+     */
+    private void showStatistics() {
+        String newUsersStr = (newUsers < 10 ? "  " + newUsers : newUsers + "");
+        String updatedUsersStr = (updatedUsers < 10 ? "  " + updatedUsers : updatedUsers + "");
+
+        statusFrame.addDetailsText(newUsersStr + " " + rb.getString("status.msg.sync.newusers"));
+        statusFrame.addDetailsText("  " + addUsers + " " + rb.getString("status.msg.sync.addusers"));
+        statusFrame.addDetailsText("  " + delUsers + " " + rb.getString("status.msg.sync.delusers"));
+        if (changedUsers > 0)
+            statusFrame.addDetailsText("  " + changedUsers + " " + rb.getString("status.msg.sync.changedusers"));
+        if (updatePassword)
+            statusFrame.addDetailsText(updatedUsersStr + " " + rb.getString("status.msg.sync.updatedusers"));
+        statusFrame.addDetailsText("");
+        statusFrame.addDetailsText("  " + rb.getString("status.msg.sync.exportedfiles"));
+        statusFrame.addDetailsText("     " + exportedRootCerts + " " + rb.getString("status.msg.sync.exportedRootcerts"));
+        statusFrame.addDetailsText("     " + exportedServerCerts + " " + rb.getString("status.msg.sync.exportedservercerts"));
+        statusFrame.addDetailsText("     " + exportedCrls + " " + rb.getString("status.msg.sync.exportedcrls"));
+        if (exportedPasswds > 0)
+            statusFrame.addDetailsText("     " + exportedPasswds + " " + rb.getString("status.msg.sync.exportedPasswds"));
+        if (server.getVpncc())
+            statusFrame.addDetailsText("     " + ccfiles + " " + rb.getString("status.msg.sync.ccfiles"));
+        statusFrame.showDetails();
+    }
+
+
+    /**
+     * Shows the message in the status frame or the batch frame
+     *
+     * @param message The message to show
+     */
+    private void updateStatus(String message) {
+        if (statusFrame != null)
+            statusFrame.updateStatus(message);
+        else if (batchFrame != null)
+            batchFrame.updateStatus(server, message);
+    }
+
+
     /**
      * syncs users from local db with user file on server
      *
@@ -174,13 +270,23 @@ public class UserSync {
         boolean usePAM = Configuration.getInstance().USE_PAM;
         boolean importUsers = Configuration.getInstance().IMPORT_USERS_ON_SYNCHRONISATION;
 
-        if (!usePAM && isPasswdExisting() && importUsers) {
+        boolean importing = !usePAM && isPasswdExisting() && importUsers;
+        if (importing) {
+            // the passwd file has to exist on appliances before it is read
+            prepareServerFileSystem();
             try {
                 String content = getUserfileFromServer();
-                importUsersFromFile(content);
+                synchronized (DB_WRITE_LOCK) {
+                    // commit all imported users at once
+                    DBConnector.getInstance().executeInTransaction(conn -> {
+                        importUsersFromFile(content);
+                        return null;
+                    });
+                }
             } catch (Exception e) {
                 logger.log(Level.WARNING, "error while reading passwd-file", e);
-                statusFrame.addDetailsText(rb.getString("status.msg.sync.passwdmissing"));
+                if (statusFrame != null)
+                    statusFrame.addDetailsText(rb.getString("status.msg.sync.passwdmissing"));
             }
         }
 
@@ -190,11 +296,139 @@ public class UserSync {
         if (server.getVpncc())
             pushToCCD();
 
+        String newContent = null;
         if (!usePAM) {
-            String newContent = generateNewUserfile();
-            compareUserfiles(newContent);
+            newContent = generateNewUserfile();
             updateUserfileOnServer(newContent);
         }
+
+        Hashtable<String, String> localHashes = calculateHashes(filesToPost);
+        if (skipUnchanged && !importUsers
+                && localHashes.equals(SyncStateQueries.getFileHashes(server.getServerid()))) {
+            // nothing changed since the last synchronisation
+            logger.info("Server " + serverId + " is unchanged, skipping synchronisation");
+            unchanged = true;
+            filesToPost.clear();
+            return;
+        }
+
+        // prepare for synchronisation, creates the passwd file on appliances
+        if (!importing)
+            prepareServerFileSystem();
+
+        // only transfer the files differing from the server
+        Hashtable<String, String> remoteHashes = getRemoteHashes(filesToPost.keySet());
+        filesToPost.keySet().removeIf(file -> localHashes.get(file).equals(remoteHashes.get(file)));
+
+        if (newContent != null && filesToPost.containsKey(server.getUserfilePath()))
+            compareUserfiles(newContent);
+
+        postFilesToServer();
+
+        synchronized (DB_WRITE_LOCK) {
+            SyncStateQueries.storeFileHashes(server.getServerid(), localHashes);
+        }
+    }
+
+
+    /**
+     * Copies all collected files to the server in one transfer
+     *
+     * @throws Exception
+     */
+    private void postFilesToServer() throws Exception {
+        updateStatus(rb.getString("status.msg.sync.postfile") + ": " + filesToPost.size());
+        scpTool.postToServer(filesToPost);
+
+        for (String file : filesToPost.keySet()) {
+            String type = fileTypes.get(file);
+            if (FILE_SERVER_CERT.equals(type))
+                exportedServerCerts++;
+            else if (FILE_ROOT_CERT.equals(type))
+                exportedRootCerts++;
+            else if (FILE_CRL.equals(type))
+                exportedCrls++;
+            else if (FILE_PASSWD.equals(type))
+                exportedPasswds++;
+            else if (FILE_CC.equals(type))
+                ccfiles++;
+        }
+        filesToPost.clear();
+    }
+
+
+    /**
+     * Adds a file to the files copied to the server
+     *
+     * @param targetFile The filename on the server
+     * @param content    The content of the file
+     * @param type       The type of the file, used for the statistics
+     */
+    private void addFile(String targetFile, String content, String type) {
+        filesToPost.put(targetFile, content);
+        fileTypes.put(targetFile, type);
+    }
+
+
+    /**
+     * Calculates the SHA-1 hashes of the files
+     *
+     * @param files The contents of the files, keyed by filename
+     * @return a Hashtable with filename as key and hash as value
+     * @throws Exception
+     */
+    private static Hashtable<String, String> calculateHashes(Map<String, String> files) throws Exception {
+        Hashtable<String, String> hashes = new Hashtable<>();
+        for (Map.Entry<String, String> file : files.entrySet())
+            hashes.put(file.getKey(), ChecksumUtils.calculateSHA1Checksum(file.getValue().getBytes()));
+        return hashes;
+    }
+
+
+    /**
+     * Loads the SHA-1 hashes of the files on the server with one command.
+     * Missing files are not contained in the result.
+     *
+     * @param files The filenames on the server
+     * @return a Hashtable with filename as key and hash as value
+     */
+    private Hashtable<String, String> getRemoteHashes(Collection<String> files) {
+        Hashtable<String, String> hashes = new Hashtable<>();
+        if (files.isEmpty())
+            return hashes;
+
+        StringBuilder fileList = new StringBuilder();
+        for (String file : files)
+            fileList.append(" ").append(quote(file));
+
+        // sha1sum on linux, sha1 on the BSDs
+        String command = "sha1sum" + fileList + " 2>/dev/null || sha1 -r" + fileList + " 2>/dev/null";
+        try {
+            String manifest = sshTool.execForOutput(command);
+            for (String line : manifest.split("\n")) {
+                String[] parts = line.trim().split("\\s+", 2);
+                if (parts.length < 2)
+                    continue;
+                String file = parts[1].startsWith("*") ? parts[1].substring(1) : parts[1];
+                hashes.put(file, parts[0].toLowerCase());
+            }
+        } catch (Exception e) {
+            // transfer all files
+            logger.log(Level.WARNING, "could not load the file hashes from server " + serverId, e);
+        }
+        return hashes;
+    }
+
+
+    /**
+     * Quotes a filename for the shell of the server, the filenames
+     * of the client configurations contain the common names of the users
+     *
+     * @param file The filename
+     * @return the filename in single quotes
+     */
+    private static String quote(String file) {
+        return "'" + file.replace("'", "'\\''") + "'";
     }
 
     /**
@@ -233,22 +467,20 @@ public class UserSync {
      * @throws Exception
      */
     private String getUserfileFromServer() throws Exception {
-        statusFrame.updateStatus(rb.getString("status.msg.sync.getfile") + ": " + server.getUserfilePath());
+        updateStatus(rb.getString("status.msg.sync.getfile") + ": " + server.getUserfilePath());
         byte[] content = scpTool.getFromServer(server.getUserfilePath());
-        return (StringUtils.bytes2String(content));
+        serverUserfile = StringUtils.bytes2String(content);
+        return serverUserfile;
     }
 
 
     /**
-     * Copies the content to the specified file on the server
+     * Adds the userfile to the files copied to the server
      *
      * @param content The new content of the file
-     * @throws Exception
      */
-    private void updateUserfileOnServer(String content) throws Exception {
-        statusFrame.updateStatus(rb.getString("status.msg.sync.postfile") + ": " + server.getUserfilePath());
-        scpTool.postToServer(content, server.getUserfilePath());
-        exportedPasswds++;
+    private void updateUserfileOnServer(String content) {
+        addFile(server.getUserfilePath(), content, FILE_PASSWD);
     }
 
 
@@ -259,47 +491,13 @@ public class UserSync {
      * @throws Exception
      */
     private void compareUserfiles(String userfileLocal) throws Exception {
+        // the userfile may already have been loaded for the import
+        String userfileServer = serverUserfile != null ? serverUserfile : getUserfileFromServer();
 
-        byte[] tmp = scpTool.getFromServer(server.getUserfilePath());
-        String userfileServer = new String(tmp);
-
-        String userStrLocal = null;
-        String userStrServer = null;
-        boolean newUser = false;
-
-        try {
-            // detect 'added' users
-            for (String userEntryLocal : userfileLocal.split("\n")) {
-                newUser = true;
-                userStrLocal = userEntryLocal.split(":")[0];
-                for (String userEntryServer : userfileServer.split("\n")) {
-                    userStrServer = userEntryServer.split(":")[0];
-                    if (userStrLocal.equals(userStrServer)) {
-                        newUser = false;
-                        break;
-                    }
-                }
-                if (newUser)
-                    addUsers++;
-            }
-
-            // detect 'deleted' users
-            for (String userEntryServer : userfileServer.split("\n")) {
-                newUser = true;
-                userStrServer = userEntryServer.split(":")[0];
-                for (String userEntryLocal : userfileLocal.split("\n")) {
-                    userStrLocal = userEntryLocal.split(":")[0];
-                    if (userStrLocal.equals(userStrServer)) {
-                        newUser = false;
-                        break;
-                    }
-                }
-                if (newUser)
-                    delUsers++;
-            }
-        } catch (Exception e) {
-            logger.warning("Error in synchronisation - analyse passwds: " + e.toString());
-        }
+        UserfileDiff diff = UserfileDiff.compare(userfileLocal, userfileServer);
+        addUsers += diff.getAdded().size();
+        delUsers += diff.getRemoved().size();
+        changedUsers += diff.getChanged().size();
     }
 
 
@@ -323,12 +521,11 @@ public class UserSync {
 
             // export certificate
             logger.info("Sending server certificate to server: " + path + certFilename);
-            scpTool.postToServer(serverX509.getContent(), path + certFilename);
+            addFile(path + certFilename, serverX509.getContent(), FILE_SERVER_CERT);
 
             // export server key
             logger.info("Sending server key to server: " + path + keyFilename);
-            scpTool.postToServer(serverX509.getKeyContent(), path + keyFilename);
-            exportedServerCerts++;
+            addFile(path + keyFilename, serverX509.getKeyContent(), FILE_OTHER);
         } else
             // no server certificate existing!
             throw new Exception(rb.getString("error.syncusers.server"));
@@ -341,38 +538,40 @@ public class UserSync {
 
             // export certificate
             logger.info("Sending root certificate to server: " + path + certFilename);
-            scpTool.postToServer(rootX509.getContent(), path + certFilename);
-            exportedRootCerts++;
+            addFile(path + certFilename, rootX509.getContent(), FILE_ROOT_CERT);
         } else
             // no root certificate existing!
             throw new Exception(rb.getString("error.syncusers.root"));
 
-        // re-generate the CRL
-        X509Generator g = new X509Generator();
-        g.createCRLImmediately();
+        // the current CRL, only re-generated if the revocations have changed
+        CRL crl;
+        synchronized (DB_WRITE_LOCK) {
+            crl = CRLCache.getInstance().getCurrentCRL();
+        }
 
         // export CRL
-        int crlId = CRLQueries.getMaxCRLId();
-        if (crlId > 0) {
-            CRL crl = new CRL(crlId);
-            crl = CRLDAO.getInstance().read(crl);
-            if (crl != null && crl.getContent() != null) {
-                String filename = Constants.DEFAULT_CRL_FILENAME;
-                logger.info("Sending crl.pem to server: " + path + filename);
-                scpTool.postToServer(crl.getContent(), path + filename);
-                exportedCrls++;
-            }
+        if (crl != null && crl.getContent() != null) {
+            String filename = Constants.DEFAULT_CRL_FILENAME;
+            logger.info("Sending crl.pem to server: " + path + filename);
+            addFile(path + filename, crl.getContent(), FILE_CRL);
         }
 
-        // export DH
-        String exportPath = Configuration.getInstance().CERT_EXPORT_PATH;
+        // export DH, the parameters are generated in the background
         String keyStrength = Configuration.getInstance().X509_KEY_STRENGTH;
         String filename = "dh" + keyStrength + ".pem";
-        File dhFile = new File(exportPath + "/" + filename);
-        if (dhFile.exists()) {
+        String content = null;
+        try {
+            DHParameterService dhService = DHParameterService.getInstance();
+            dhService.start(Integer.parseInt(keyStrength));
+            content = dhService.get(Integer.parseInt(keyStrength));
+        } catch (NumberFormatException e) {
+            logger.warning("no valid key strength specified, no DH parameters are sent");
+        }
+        if (content != null) {
             logger.info("Sending DH parameters '" + filename + "' to server: " + path + filename);
-            String content = FileUtils.readFile(dhFile);
-            scpTool.postToServer(content, path + filename);
+            addFile(path + filename, content, FILE_OTHER);
+        } else {
+            logger.warning("DH parameters '" + filename + "' are not generated yet, not sent to server: " + path);
         }
     }
 
@@ -402,10 +601,8 @@ public class UserSync {
             String cn = User.getUserByID(Integer.parseInt(userId)).getCn();
             String file = createCC(Integer.toString(server.getServerid()), userId);
 
-            // copy the file to the server   
-            scpTool.postToServer(file, FileUtils.appendPathSeparator(server.getVpnccpath()) + cn);
-
-            ccfiles++;
+            // copy the file to the server with the other files
+            addFile(FileUtils.appendPathSeparator(server.getVpnccpath()) + cn, file, FILE_CC);
         }
     }
 
@@ -447,7 +644,7 @@ public class UserSync {
      * @param content The content of the file
      */
     private void importUsersFromFile(String content) {
-        statusFrame.updateStatus(rb.getString("status.msg.sync.syncusers"));
+        updateStatus(rb.getString("status.msg.sync.syncusers"));
 
         Hashtable<String, String> existingUsers = UserQueries.getUserTable(true);
 
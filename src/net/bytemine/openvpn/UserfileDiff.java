@@ -0,0 +1,118 @@
+/*************************************************************************
+ * Written by / Copyright (C) 2009-2012 bytemine GmbH                     *
+ * Author: Daniel Rauer                     E-Mail:    rauer@bytemine.net *
+ *                                                                        *
+ * http://www.bytemine.net/                                               *
+ *************************************************************************/
+
+package net.bytemine.openvpn;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Vector;
+
+
+/**
+ * Compares two userfiles (username:password per line).
+ * Each file is parsed once into a hashed map, so the
+ * comparison is linear in the number of users.
+ *
+ * @author Daniel Rauer
+ */
+public class UserfileDiff {
+
+    private Vector<String> added = new Vector<>();
+    private Vector<String> removed = new Vector<>();
+    private Vector<String> changed = new Vector<>();
+
+
+    private UserfileDiff() {
+    }
+
+
+    /**
+     * Compares the new userfile with the userfile on the server
+     *
+     * @param userfileLocal  The content of the new userfile
+     * @param userfileServer The content of the userfile on the server
+     * @return the differences
+     */
+    public static UserfileDiff compare(String userfileLocal, String userfileServer) {
+        UserfileDiff diff = new UserfileDiff();
+        Map<String, String> local = parse(userfileLocal);
+        Map<String, String> server = parse(userfileServer);
+
+        for (Map.Entry<String, String> entry : local.entrySet()) {
+            String serverPassword = server.get(entry.getKey());
+            if (serverPassword == null)
+                diff.added.add(entry.getKey());
+            else if (!entry.getValue().equals(serverPassword))
+                diff.changed.add(entry.getKey());
+        }
+
+        for (String username : server.keySet()) {
+            if (!local.containsKey(username))
+                diff.removed.add(username);
+        }
+
+        return diff;
+    }
+
+
+    /**
+     * Parses a userfile into a map with username as key and
+     * password as value. Empty lines are ignored.
+     *
+     * @param content The content of the userfile
+     * @return the parsed entries
+     */
+    static Map<String, String> parse(String content) {
+        Map<String, String> entries = new HashMap<>();
+        if (content == null)
+            return entries;
+
+        int length = content.length();
+        int start = 0;
+        while (start < length) {
+            int end = content.indexOf('\n', start);
+            if (end < 0)
+                end = length;
+
+            int lineEnd = end;
+            if (lineEnd > start && content.charAt(lineEnd - 1) == '\r')
+                lineEnd--;
+
+            if (lineEnd > start) {
+                int colon = content.indexOf(':', start);
+                if (colon < 0 || colon > lineEnd)
+                    entries.put(content.substring(start, lineEnd), "");
+                else
+                    entries.put(content.substring(start, colon), content.substring(colon + 1, lineEnd));
+            }
+            start = end + 1;
+        }
+        return entries;
+    }
+
+
+    /**
+     * @return the users only existing in the new userfile
+     */
+    public Vector<String> getAdded() {
+        return added;
+    }
+
+    /**
+     * @return the users only existing in the userfile on the server
+     */
+    public Vector<String> getRemoved() {
+        return removed;
+    }
+
+    /**
+     * @return the users existing in both files with different passwords
+     */
+    public Vector<String> getChanged() {
+        return changed;
+    }
+}
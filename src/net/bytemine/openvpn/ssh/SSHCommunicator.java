@@ -8,13 +8,12 @@
 
 package net.bytemine.openvpn.ssh;
 
-import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.InputStreamReader;
 import java.io.OutputStream;
 import java.util.Hashtable;
 import java.util.Iterator;
+import java.util.List;
 import java.util.ResourceBundle;
 import java.util.Vector;
 import java.util.logging.Level;
@@ -41,6 +40,9 @@ public class SSHCommunicator implements Runnable {
     private static Logger logger = Logger.getLogger(SSHCommunicator.class.getName());
     private static ResourceBundle rb = ResourceBundleMgmt.getInstance().getUserBundle();
 
+    // the maximum number of lines parsed at once
+    private static final int MAX_BATCH = 256;
+
     private Session session;
     private String wrapperCommand;
     private ControlCenterTab ccTab;
@@ -259,30 +261,25 @@ public class SSHCommunicator implements Runnable {
 
 
     /**
-     * read constantly from the server
+     * read constantly from the server, the reads block until lines
+     * arrive and all available lines are parsed as one batch
      */
     private void read() {
-        BufferedReader br = new BufferedReader(new InputStreamReader(in));
-        String line = null;
+        SSHLineReader reader = new SSHLineReader(in, MAX_BATCH);
         parser = new SSHParser();
         while (true) {
+            List<String> lines;
             try {
-                line = br.readLine();
+                lines = reader.readLines();
             } catch (IOException e) {
                 logger.log(Level.SEVERE, "error reading from ssh socket", e);
+                break;
             }
-            if (line != null) {
-                parser.parse(line, this);
-            }
-
-            if (channel.isClosed()) {
+            if (lines == null) {
                 logger.info("channel is closed");
                 break;
             }
-            try {
-                Thread.sleep(10);
-            } catch (InterruptedException e) {
-            }
+            parser.parse(lines, this);
         }
 
         if (!allClose)
@@ -139,7 +139,7 @@ public class SSHConnector {
             sshSession.setTimeout(15000);
             sshSession.connect();
 
-            SSHSessionPool.getInstance().addSession(sshSession.getHost(), sshSession);
+            SSHSessionPool.getInstance().addSession(sshSession);
             ControlCenterTab ccTab = ManagerGUI.getOpenCCTab(hostname);
             if (ccTab != null) {
                 ccTab.setSshSession(sshSession);
@@ -173,6 +173,16 @@ public class SSHConnector {
     }
 
 
+    /**
+     * Returns the key of the sessions created by this connector
+     *
+     * @return the key used by the session pool
+     */
+    public String getPoolKey() {
+        return SSHSessionPool.createKey(username, hostname, port);
+    }
+
+
     /**
      * Creates a ssh session in a new thread
      *
@@ -202,13 +212,11 @@ public class SSHConnector {
 
 
     /**
-     * disconnects the ssh session
+     * removes the ssh session from the pool, it is disconnected
+     * as soon as it is not leased any more
      */
     public void disconnectSession() {
-        if (sshSession.isConnected())
-            sshSession.disconnect();
-        SSHSessionPool.getInstance().removeSession(sshSession.getHost());
-
+        SSHSessionPool.getInstance().removeSession(getPoolKey());
     }
 
     /**
@@ -218,7 +226,7 @@ public class SSHConnector {
     public void connectSession() throws Exception {
         if (!sshSession.isConnected())
             sshSession.connect();
-        SSHSessionPool.getInstance().addSession(sshSession.getHost(), sshSession);
+        SSHSessionPool.getInstance().addSession(sshSession);
     }
 
 
@@ -228,7 +236,7 @@ public class SSHConnector {
      * @throws Exception
      */
     public Session reconnectSession() throws Exception {
-        SSHSessionPool.getInstance().removeSession(sshSession.getHost());
+        SSHSessionPool.getInstance().removeSession(getPoolKey());
 
         sshSession = createSessionImmediately();
         return sshSession;
@@ -0,0 +1,99 @@
+/*************************************************************************
+ * Written by / Copyright (C) 2009-2012 bytemine GmbH                     *
+ * Author: Daniel Rauer                     E-Mail:    rauer@bytemine.net *
+ *                                                                        *
+ * http://www.bytemine.net/                                               *
+ *************************************************************************/
+
+package net.bytemine.openvpn.ssh;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.List;
+
+
+/**
+ * Reads the lines of the ut shell in batches.
+ * A read blocks until at least one line is complete and then takes
+ * all further lines that are available without blocking, so a busy
+ * shell is read in large batches and a quiet one without delay.
+ * Lines end with \n, \r or \r\n like with BufferedReader.readLine().
+ *
+ * @author Daniel Rauer
+ */
+public class SSHLineReader {
+
+    private static final int BUFFER_SIZE = 8192;
+
+    private final Reader reader;
+    private final int maxLines;
+
+    private final char[] buffer = new char[BUFFER_SIZE];
+    private int position = 0;
+    private int limit = 0;
+    // the current, incomplete line
+    private final StringBuilder line = new StringBuilder(256);
+    // the last line ended with \r, a following \n belongs to it
+    private boolean skipLineFeed = false;
+    private boolean eof = false;
+
+
+    /**
+     * @param in       The stream of the shell
+     * @param maxLines The maximum number of lines of a batch
+     */
+    public SSHLineReader(InputStream in, int maxLines) {
+        this.reader = new InputStreamReader(in);
+        this.maxLines = maxLines;
+    }
+
+
+    /**
+     * Reads the next batch of lines
+     *
+     * @return the lines without line breaks, or null at the end of the stream
+     * @throws IOException
+     */
+    public List<String> readLines() throws IOException {
+        if (eof)
+            return null;
+
+        List<String> lines = new ArrayList<String>();
+        while (lines.size() < maxLines) {
+            if (position == limit) {
+                // block only as long as no line is complete
+                if (!lines.isEmpty() && !reader.ready())
+                    break;
+                int read = reader.read(buffer, 0, buffer.length);
+                if (read == -1) {
+                    eof = true;
+                    if (line.length() > 0) {
+                        lines.add(line.toString());
+                        line.setLength(0);
+                    }
+                    break;
+                }
+                position = 0;
+                limit = read;
+            }
+
+            while (position < limit && lines.size() < maxLines) {
+                char c = buffer[position++];
+                if (c == '\n' && skipLineFeed) {
+                    skipLineFeed = false;
+                } else if (c == '\n' || c == '\r') {
+                    skipLineFeed = c == '\r';
+                    lines.add(line.toString());
+                    line.setLength(0);
+                } else {
+                    skipLineFeed = false;
+                    line.append(c);
+                }
+            }
+        }
+        return lines.isEmpty() && eof ? null : lines;
+    }
+}
@@ -0,0 +1,256 @@
+/*************************************************************************
+ * Written by / Copyright (C) 2009-2012 bytemine GmbH                     *
+ * Author: Daniel Rauer                     E-Mail:    rauer@bytemine.net *
+ *                                                                        *
+ * http://www.bytemine.net/                                               *
+ *************************************************************************/
+
+package net.bytemine.openvpn.ssh;
+
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+
+/**
+ * Scans the lines of the ut shell for the SSHParser.
+ * A line is split into its space separated tokens in one pass, only
+ * the offsets of the tokens are kept and reused for the next line.
+ * The prefix, channel and keywords are detected on demand without
+ * creating strings, the patterns are compiled once.
+ *
+ * @author Daniel Rauer
+ */
+public class SSHLineScanner {
+
+    // the keywords of a line, in the order they are detected
+    public static final int KEYWORD_NONE = 0;
+    public static final int KEYWORD_CHANNELS = 1;
+    public static final int KEYWORD_STATUS = 2;
+    public static final int KEYWORD_KILL_SUCCESS = 3;
+    public static final int KEYWORD_KILL_FAILED = 4;
+    public static final int KEYWORD_LOG = 5;
+    public static final int KEYWORD_VERSION = 6;
+
+    // the errors of a line with the error prefix
+    public static final int ERROR_NONE = 0;
+    public static final int ERROR_OPEN_FAILED = 1;
+    public static final int ERROR_KILL_FAILED = 2;
+    public static final int ERROR_INSTANCE_FAILED = 3;
+
+    private static final Pattern OPEN_FAILED = Pattern.compile(SSHConstants.KEYWORD_PATTERN_OPEN_FAILED);
+    private static final Pattern OPEN_FAILED_TIME_OUT = Pattern.compile(SSHConstants.KEYWORD_PATTERN_OPEN_FAILED_TIME_OUT);
+    private static final Pattern KILL_FAILED = Pattern.compile(SSHConstants.KEYWORD_PATTERN_KILL_FAILED);
+    private static final Pattern INSTANCE_FAILED = Pattern.compile(SSHConstants.KEYWORD_PATTERN_INSTANCE_FAILED);
+    // a kill failed pattern matches only lines containing this
+    private static final String KILL_FAILED_TEXT = "common name ";
+
+    private static final String HEX_DIGITS = "0123456789ABCDEF";
+    // the names of the channels 00 to FF
+    private static final String[] CHANNELS = new String[256];
+
+    static {
+        for (int i = 0; i < CHANNELS.length; i++)
+            CHANNELS[i] = "" + HEX_DIGITS.charAt(i / 16) + HEX_DIGITS.charAt(i % 16);
+    }
+
+    // only the offsets of the first tokens are kept
+    private static final int MAX_TOKENS = 4;
+
+    private final Matcher openFailed = OPEN_FAILED.matcher("");
+    private final Matcher openFailedTimeOut = OPEN_FAILED_TIME_OUT.matcher("");
+    private final Matcher killFailed = KILL_FAILED.matcher("");
+    private final Matcher instanceFailed = INSTANCE_FAILED.matcher("");
+
+    private String line = "";
+    private final int[] tokenStart = new int[MAX_TOKENS];
+    private final int[] tokenEnd = new int[MAX_TOKENS];
+    private int tokenCount = 0;
+
+
+    /**
+     * Scans a line, the results are valid until the next line is scanned
+     *
+     * @param line The line
+     */
+    public void scan(String line) {
+        this.line = line;
+        tokenCount = 0;
+
+        boolean inToken = false;
+        int length = line.length();
+        for (int i = 0; i < length; i++) {
+            if (line.charAt(i) == ' ') {
+                if (inToken) {
+                    if (tokenCount <= MAX_TOKENS)
+                        tokenEnd[tokenCount - 1] = i;
+                    inToken = false;
+                }
+            } else if (!inToken) {
+                if (tokenCount < MAX_TOKENS)
+                    tokenStart[tokenCount] = i;
+                tokenCount++;
+                inToken = true;
+            }
+        }
+        if (inToken && tokenCount <= MAX_TOKENS)
+            tokenEnd[tokenCount - 1] = length;
+    }
+
+
+    /**
+     * @return the number of space separated tokens
+     */
+    public int getTokenCount() {
+        return tokenCount;
+    }
+
+
+    /**
+     * Detects the prefix of the first token, like &gt;00&gt;
+     *
+     * @return one of the SSHConstants.PREFIX_ values
+     */
+    public int getPrefix() {
+        if (tokenCount == 0 || tokenEnd[0] - tokenStart[0] < 4)
+            return SSHConstants.PREFIX_UNDEFINED;
+
+        char first = line.charAt(tokenStart[0]);
+        char last = line.charAt(tokenStart[0] + 3);
+        if (first != last)
+            return SSHConstants.PREFIX_UNDEFINED;
+        switch (first) {
+            case '<':
+                return SSHConstants.PREFIX_OUTPUT;
+            case '>':
+                return SSHConstants.PREFIX_INPUT;
+            case '_':
+                return SSHConstants.PREFIX_INPUT_NO_NEWLINE;
+            case '!':
+                return SSHConstants.PREFIX_ERROR;
+            case '.':
+                return SSHConstants.PREFIX_CLOSEDOWN;
+            default:
+                return SSHConstants.PREFIX_UNDEFINED;
+        }
+    }
+
+
+    /**
+     * @return the channel of the prefix, or null if the prefix is undefined
+     */
+    public String getChannel() {
+        if (getPrefix() == SSHConstants.PREFIX_UNDEFINED)
+            return null;
+
+        int start = tokenStart[0] + 1;
+        int high = HEX_DIGITS.indexOf(line.charAt(start));
+        int low = HEX_DIGITS.indexOf(line.charAt(start + 1));
+        if (high != -1 && low != -1)
+            return CHANNELS[high * 16 + low];
+        return line.substring(start, start + 2);
+    }
+
+
+    /**
+     * Detects the keyword of the line, the first matching keyword counts
+     *
+     * @return one of the KEYWORD_ values
+     */
+    public int getKeyword() {
+        if (tokenEquals(1, SSHConstants.KEYWORD_CHANNELS))
+            return KEYWORD_CHANNELS;
+        if (line.contains(SSHConstants.KEYWORD_STATUS))
+            return KEYWORD_STATUS;
+        if (line.contains(SSHConstants.KEYWORD_KILL_SUCCESS))
+            return KEYWORD_KILL_SUCCESS;
+        if (line.contains(KILL_FAILED_TEXT) && killFailed.reset(line).matches())
+            return KEYWORD_KILL_FAILED;
+        if (line.contains(SSHConstants.KEYWORD_LOG))
+            return KEYWORD_LOG;
+        if (line.contains(SSHConstants.KEYWORD_VERSION))
+            return KEYWORD_VERSION;
+        return KEYWORD_NONE;
+    }
+
+
+    /**
+     * Detects the status of the second token, like OK
+     *
+     * @return one of the SSHConstants.STATUS_CODE_ values
+     */
+    public int getStatus() {
+        if (tokenEquals(1, SSHConstants.KEYWORD_OK))
+            return SSHConstants.STATUS_CODE_OK;
+        if (tokenEquals(1, SSHConstants.KEYWORD_READY))
+            return SSHConstants.STATUS_CODE_READY;
+        if (tokenEquals(1, SSHConstants.KEYWORD_WAIT))
+            return SSHConstants.STATUS_CODE_WAIT;
+        if (tokenEquals(1, SSHConstants.KEYWORD_FAIL))
+            return SSHConstants.STATUS_CODE_FAIL;
+        return SSHConstants.STATUS_CODE_UNDEFINED;
+    }
+
+
+    /**
+     * Detects the error of a line with the error prefix
+     *
+     * @return one of the ERROR_ values
+     */
+    public int getError() {
+        if (openFailed.reset(line).matches() || openFailedTimeOut.reset(line).matches())
+            return ERROR_OPEN_FAILED;
+        if (line.contains(KILL_FAILED_TEXT) && killFailed.reset(line).matches())
+            return ERROR_KILL_FAILED;
+        if (instanceFailed.reset(line).matches())
+            return ERROR_INSTANCE_FAILED;
+        return ERROR_NONE;
+    }
+
+
+    /**
+     * @param index The index of the token, up to 3
+     * @param text  The text to compare
+     * @return true, if the token equals the text
+     */
+    public boolean tokenEquals(int index, String text) {
+        if (index >= Math.min(tokenCount, MAX_TOKENS))
+            return false;
+        int length = tokenEnd[index] - tokenStart[index];
+        return length == text.length() && line.regionMatches(tokenStart[index], text, 0, length);
+    }
+
+
+    /**
+     * @param index The index of the token, up to 3
+     * @return true, if the token consists of digits only
+     */
+    public boolean isNumber(int index) {
+        if (index >= Math.min(tokenCount, MAX_TOKENS))
+            return false;
+        for (int i = tokenStart[index]; i < tokenEnd[index]; i++) {
+            char c = line.charAt(i);
+            if (c < '0' || c > '9')
+                return false;
+        }
+        return true;
+    }
+
+
+    /**
+     * @param index The index of the token, up to 3
+     * @return the token, or null if the line has less tokens
+     */
+    public String getToken(int index) {
+        if (index >= Math.min(tokenCount, MAX_TOKENS))
+            return null;
+        return line.substring(tokenStart[index], tokenEnd[index]);
+    }
+
+
+    /**
+     * @return the scanned line
+     */
+    public String getLine() {
+        return line;
+    }
+}
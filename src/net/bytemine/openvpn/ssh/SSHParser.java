@@ -7,14 +7,18 @@
 
 package net.bytemine.openvpn.ssh;
 
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Hashtable;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.ResourceBundle;
 import java.util.StringTokenizer;
 import java.util.Vector;
+import java.util.logging.Level;
 import java.util.logging.Logger;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
 import java.util.stream.Collectors;
 
 
@@ -22,11 +26,19 @@ import net.bytemine.manager.gui.ControlCenterTab;
 import net.bytemine.manager.gui.ManagerGUI;
 import net.bytemine.manager.gui.StatusMessage;
 import net.bytemine.manager.i18n.ResourceBundleMgmt;
+import net.bytemine.manager.utility.TrafficStore;
+import net.bytemine.openvpn.ClientStatus;
+import net.bytemine.openvpn.StatusSnapshot;
 import net.bytemine.utility.StringUtils;
 
 
 /**
- * Parser to parse single lines from the SSHCommunicator
+ * Parser to parse single lines from the SSHCommunicator.
+ * The lines are scanned by a SSHLineScanner, which splits them without
+ * copying, and the parser only creates strings for the lines it acts on.
+ * A line runs through the same steps as the tokens of the line before:
+ * the prefix and channel, the open channel or status sequence, the keywords,
+ * the sequence again and the target channel of a status.
  *
  * @author Daniel Rauer
  */
@@ -48,8 +60,10 @@ public class SSHParser {
     private Hashtable<String, String[]> availableChannels = new Hashtable<String, String[]>();
     private Hashtable<String, SSHStatusModel> statusModels = new Hashtable<String, SSHStatusModel>();
     private SSHCommunicator communicator;
-    private Pattern channelPattern = Pattern.compile(SSHConstants.CHANNEL_PATTERN);
-    private Matcher channelMatcher;
+    private final SSHLineScanner scanner = new SSHLineScanner();
+    // the debug and log messages of the current batch, shown at its end
+    private final StringBuilder debugMessages = new StringBuilder();
+    private final Map<String, StringBuilder> logMessages = new LinkedHashMap<String, StringBuilder>();
 
     private boolean tellOutputToGUI = false;
     public static String output;
@@ -65,68 +79,53 @@ public class SSHParser {
      * @param communicator A SSHCommunicator to talk to
      */
     public void parse(String newLine, SSHCommunicator communicator) {
+        parse(Collections.singletonList(newLine), communicator);
+    }
+
+
+    /**
+     * parses a batch of lines, the debug and log messages
+     * of the batch are shown at once at its end
+     *
+     * @param lines The lines to parse
+     * @param communicator A SSHCommunicator to talk to
+     */
+    public void parse(List<String> lines, SSHCommunicator communicator) {
         this.communicator = communicator;
+        for (String newLine : lines)
+            parseLine(newLine);
+        showMessages();
+    }
+
+
+    /**
+     * parses a single line
+     *
+     * @param newLine The line to parse
+     */
+    private void parseLine(String newLine) {
         line = newLine;
 
         if (line.isEmpty())
             return;
-        int i = 0;
         channel = null;
         targetChannel = null;
 
         // remove null characters
-        line = line.replaceAll("\u0000", "");
-        logger.info(line);
-        communicator.getCcTab().displayDebugMessage(line);
-
-        StringTokenizer t = new StringTokenizer(line, " ");
-        while (t.hasMoreTokens()) {
-            String token = t.nextToken();
-
-            switch (i) {
-                case 0:
-                    detectPrefixAndChannel(token);
-                    break;
-                case 1:
-                    detectKeywords(token);
-                    break;
-                case 3:
-                    channelMatcher = channelPattern.matcher(token);
-                    if ((status == SSHConstants.STATUS_CODE_OK
-                            || status == SSHConstants.STATUS_CODE_FAIL
-                            || status == SSHConstants.STATUS_CODE_WAIT)
-                        && (!StringUtils.isEmptyOrWhitespaces(token) && channelMatcher.matches()))
-                    // only care for messages like >00> FAIL <command> 04
-                    targetChannel = token;
-                    break;
-            }
-            i++;
-
-            // line has undefined prefix, do not process
-            if (prefix == SSHConstants.PREFIX_UNDEFINED) {
-                break;
-            }
-
-            // error handling
-            if (prefix == SSHConstants.PREFIX_ERROR) {
-                detectError();
-                break;
-            }
-
-            // after first token detect potential channel entry like
-            // >00> 02 VPNM "mgmt udp-bridged"
-            if (channelSequence
-                    && prefix == SSHConstants.PREFIX_INPUT
-                    && SSHConstants.CHANNEL_COMMAND.equals(channel)) {
-                addAvailableChannel();
-                break;
-            }
-
-            // status information -> client list
-            if (statusSequence
-                    && prefix == SSHConstants.PREFIX_INPUT) {
-                evaluateClientList();
-                break;
+        if (line.indexOf('\u0000') != -1)
+            line = line.replace("\u0000", "");
+        if (logger.isLoggable(Level.FINE))
+            logger.fine(line);
+        appendMessage(debugMessages, line);
+
+        scanner.scan(line);
+        int tokens = scanner.getTokenCount();
+        if (tokens > 0) {
+            detectPrefixAndChannel();
+            if (!processSequence() && tokens > 1) {
+                detectKeywords();
+                if (!processSequence() && tokens > 3)
+                    detectTargetChannel();
             }
         }
 
@@ -164,19 +163,59 @@ public class SSHParser {
     }
 
 
+    /**
+     * processes a line of an error or of a running sequence
+     *
+     * @return true, if the line is processed completely
+     */
+    private boolean processSequence() {
+        // line has undefined prefix, do not process
+        if (prefix == SSHConstants.PREFIX_UNDEFINED)
+            return true;
+
+        // error handling
+        if (prefix == SSHConstants.PREFIX_ERROR) {
+            detectError();
+            return true;
+        }
+
+        // after first token detect potential channel entry like
+        // >00> 02 VPNM "mgmt udp-bridged"
+        if (channelSequence
+                && prefix == SSHConstants.PREFIX_INPUT
+                && SSHConstants.CHANNEL_COMMAND.equals(channel)) {
+            addAvailableChannel();
+            return true;
+        }
+
+        // status information -> client list
+        if (statusSequence
+                && prefix == SSHConstants.PREFIX_INPUT) {
+            evaluateClientList();
+            return true;
+        }
+        return false;
+    }
+
+
+    /**
+     * only care for messages like >00> FAIL <command> 04
+     */
+    private void detectTargetChannel() {
+        if ((status == SSHConstants.STATUS_CODE_OK
+                || status == SSHConstants.STATUS_CODE_FAIL
+                || status == SSHConstants.STATUS_CODE_WAIT)
+                && scanner.isNumber(3))
+            targetChannel = scanner.getToken(3);
+    }
+
+
     /**
      * detect, which type of error occurred
      */
     private void detectError() {
-        Pattern pOpen = Pattern.compile(SSHConstants.KEYWORD_PATTERN_OPEN_FAILED);
-        Pattern pOpenTimeOut = Pattern.compile(SSHConstants.KEYWORD_PATTERN_OPEN_FAILED_TIME_OUT);
-        Pattern pKill = Pattern.compile(SSHConstants.KEYWORD_PATTERN_KILL_FAILED);
-        Pattern pInstance = Pattern.compile(SSHConstants.KEYWORD_PATTERN_INSTANCE_FAILED);
-        Matcher mOpen = pOpen.matcher(line);
-        Matcher mOpenTimeOut = pOpenTimeOut.matcher(line);
-        Matcher mKill = pKill.matcher(line);
-        Matcher mInstance = pInstance.matcher(line);
-        if (mOpen.matches() || mOpenTimeOut.matches()) {
+        int error = scanner.getError();
+        if (error == SSHLineScanner.ERROR_OPEN_FAILED) {
             targetChannel = StringUtils.extractDigitsFromString(line.substring(4));
 
             if (waitingForOkStatusOnChannel.contains(targetChannel))
@@ -191,7 +230,7 @@ public class SSHParser {
 
             String message = rb.getString("ssh.status.channel") + " " + targetChannel + " " + rb.getString("ssh.status.error_opening");
             ManagerGUI.addStatusMessage(new StatusMessage(message, StatusMessage.TYPE_ERROR));
-        } else if (mKill.matches()) {
+        } else if (error == SSHLineScanner.ERROR_KILL_FAILED) {
             String targetChannel = StringUtils.extractDigitsFromString(line.substring(4));
             String username = StringUtils.extractBetweenQuotes(line);
 
@@ -199,7 +238,7 @@ public class SSHParser {
                     rb.getString("ssh.status.user") + " '" + username + "' " +
                     rb.getString("ssh.status.error_killing");
             ManagerGUI.addStatusMessage(new StatusMessage(message, StatusMessage.TYPE_ERROR));
-        } else if (mInstance.matches()) {
+        } else if (error == SSHLineScanner.ERROR_INSTANCE_FAILED) {
             String message = rb.getString("ssh.status.another_instance");
             ManagerGUI.addStatusMessage(new StatusMessage(message, StatusMessage.TYPE_ERROR));
         }
@@ -210,19 +249,19 @@ public class SSHParser {
      *  a new available channel was detected
      */
     private void addAvailableChannel() {
-        StringTokenizer t = new StringTokenizer(line, " ");
         // empty line signals end of channel sequence
-        if (t.countTokens() == 1) {
+        if (scanner.getTokenCount() == 1) {
             if (!waitingForReadyStatusOnChannel.contains(channel))
                 waitingForReadyStatusOnChannel.add(channel);
             channelSequence = false;
             tellAvailableChannelsToGUI();
             return;
         }
-        if (t.countTokens() == 2) {
+        if (scanner.getTokenCount() == 2) {
             return;
         }
 
+        StringTokenizer t = new StringTokenizer(line, " ");
         t.nextToken();
         String[] entry = new String[3];
         entry[0] = t.nextToken();
@@ -290,92 +329,44 @@ public class SSHParser {
 
 
     /**
-     * try to detect the prefix and the channel the message came from
-     *
-     * @param token the String token to get prefix and channel from.
+     * detect the prefix and the channel the message came from
      */
-    private void detectPrefixAndChannel(String token) {
-        if (token == null || token.length() < 4) {
-            prefix = SSHConstants.PREFIX_UNDEFINED;
-            channel = null;
-            return;
-        }
-
-        char[] chars = token.toCharArray();
-        channel = chars[1] + "" + chars[2];
-        if (chars[0] == '<' && chars[3] == '<')
-            prefix = SSHConstants.PREFIX_OUTPUT;
-        else if (chars[0] == '>' && chars[3] == '>')
-            prefix = SSHConstants.PREFIX_INPUT;
-        else if (chars[0] == '_' && chars[3] == '_')
-            prefix = SSHConstants.PREFIX_INPUT_NO_NEWLINE;
-        else if (chars[0] == '!' && chars[3] == '!')
-            prefix = SSHConstants.PREFIX_ERROR;
-        else if (chars[0] == '.' && chars[3] == '.')
-            prefix = SSHConstants.PREFIX_CLOSEDOWN;
-        else {
-            prefix = SSHConstants.PREFIX_UNDEFINED;
-            channel = null;
-        }
+    private void detectPrefixAndChannel() {
+        prefix = scanner.getPrefix();
+        channel = scanner.getChannel();
     }
 
 
     /**
-     * try to detect a keyword in the token
-     *
-     * @param token The token to analyze
-     */
-    private void detectKeywords(String token) {
-        if (token == null) {
-            return;
-        }
-
-        Pattern pKill = Pattern.compile(SSHConstants.KEYWORD_PATTERN_KILL_FAILED);
-        Matcher mKill = pKill.matcher(line);
-        
-        if (SSHConstants.KEYWORD_CHANNELS.equals(token)) {
-            channelSequence = true;
-        } else if (line.contains(SSHConstants.KEYWORD_STATUS)) {
-            // reset the status models
-            statusModels = new Hashtable<>();
-            statusSequence = true;
-        } else if (line.contains(SSHConstants.KEYWORD_KILL_SUCCESS)) {
-            updateStatus();
-        } else if (mKill.matches()) {
-            tellKillUnsuccesfulMessageToGUI(line);
-        } else if (line.contains(SSHConstants.KEYWORD_LOG)) {
-            tellNewLogMessageToGUI(line);
-        } else if (line.contains(SSHConstants.KEYWORD_VERSION)) {
-            tellVersionToGUI(line);
-        } else {
-            detectStatus(token);
-            if (tellOutputToGUI && line != null)
-            	tellNewOutputMessageToGUI(line);
-        }
-    }
-
-
-    /**
-     * detect the status from the token
-     *
-     * @param token The token to analyze
+     * detect a keyword in the second token or the line
      */
-    private void detectStatus(String token) {
-        switch (token) {
-            case SSHConstants.KEYWORD_OK:
-                status = SSHConstants.STATUS_CODE_OK;
+    private void detectKeywords() {
+        switch (scanner.getKeyword()) {
+            case SSHLineScanner.KEYWORD_CHANNELS:
+                channelSequence = true;
                 break;
-            case SSHConstants.KEYWORD_READY:
-                status = SSHConstants.STATUS_CODE_READY;
+            case SSHLineScanner.KEYWORD_STATUS:
+                // reset the status models
+                statusModels = new Hashtable<>();
+                statusSequence = true;
                 break;
-            case SSHConstants.KEYWORD_WAIT:
-                status = SSHConstants.STATUS_CODE_WAIT;
+            case SSHLineScanner.KEYWORD_KILL_SUCCESS:
+                updateStatus();
                 break;
-            case SSHConstants.KEYWORD_FAIL:
-                status = SSHConstants.STATUS_CODE_FAIL;
+            case SSHLineScanner.KEYWORD_KILL_FAILED:
+                tellKillUnsuccesfulMessageToGUI(line);
+                break;
+            case SSHLineScanner.KEYWORD_LOG:
+                tellNewLogMessageToGUI(line);
+                break;
+            case SSHLineScanner.KEYWORD_VERSION:
+                tellVersionToGUI(line);
                 break;
             default:
-                status = SSHConstants.STATUS_CODE_UNDEFINED;
+                // the status of the second token
+                status = scanner.getStatus();
+                if (tellOutputToGUI)
+                    tellNewOutputMessageToGUI(line);
                 break;
         }
     }
@@ -416,6 +407,25 @@ public class SSHParser {
         ControlCenterTab ccTab = ManagerGUI.getOpenCCTab(
                 this.communicator.getSession().getHost());
         ccTab.updateClientTable(clientList, channel);
+
+        recordTraffic();
+    }
+
+
+    /**
+     * Adds the traffic of the client list to the traffic history,
+     * the server is identified by host and channel
+     */
+    private void recordTraffic() {
+        String server = this.communicator.getSession().getHost();
+        if (channel != null)
+            server += "/" + channel;
+
+        List<ClientStatus> clients = new ArrayList<ClientStatus>(statusModels.size());
+        for (SSHStatusModel model : statusModels.values())
+            clients.add(model.toClientStatus());
+        TrafficStore.getInstance().record(new StatusSnapshot(server, System.currentTimeMillis(),
+                clients, clients.size(), -1, -1));
     }
 
 
@@ -447,12 +457,38 @@ public class SSHParser {
      * @param line A message
      */
     private void tellNewLogMessageToGUI(String line) {
-        ControlCenterTab ccTab = ManagerGUI.getOpenCCTab(
-                this.communicator.getSession().getHost());
+        StringBuilder messages = logMessages.get(channel);
+        if (messages == null) {
+            messages = new StringBuilder();
+            logMessages.put(channel, messages);
+        }
         // cut off prefix
-        line = cutOffLogPrefix(line);
+        appendMessage(messages, cutOffLogPrefix(line));
+    }
+
+
+    /**
+     * shows the debug and log messages of the batch
+     */
+    private void showMessages() {
+        if (debugMessages.length() > 0) {
+            communicator.getCcTab().displayDebugMessage(debugMessages.toString());
+            debugMessages.setLength(0);
+        }
+        if (!logMessages.isEmpty()) {
+            ControlCenterTab ccTab = ManagerGUI.getOpenCCTab(
+                    this.communicator.getSession().getHost());
+            for (Map.Entry<String, StringBuilder> messages : logMessages.entrySet())
+                ccTab.displayNewLogMessage(messages.getValue().toString(), messages.getKey());
+            logMessages.clear();
+        }
+    }
+
 
-        ccTab.displayNewLogMessage(line, channel);
+    private static void appendMessage(StringBuilder messages, String message) {
+        if (messages.length() > 0)
+            messages.append(SSHConstants.NEWLINE);
+        messages.append(message);
     }
 
 
@@ -7,14 +7,28 @@
 
 package net.bytemine.openvpn.ssh;
 
+import java.net.ConnectException;
 import java.util.Hashtable;
+import java.util.Iterator;
+import java.util.Timer;
+import java.util.TimerTask;
+import java.util.Vector;
+import java.util.logging.Level;
 import java.util.logging.Logger;
 
+import net.bytemine.manager.Configuration;
+
+import com.jcraft.jsch.Channel;
+import com.jcraft.jsch.JSchException;
 import com.jcraft.jsch.Session;
 
 
 /**
- * Manages a pool of ssh session
+ * Manages a pool of ssh sessions.
+ * Sessions are leased per user, host and port and stay connected
+ * after they are released. Idle sessions are kept alive and closed
+ * after the idle timeout. The number of channels opened on one
+ * session at the same time is limited.
  *
  * @author Daniel Rauer
  */
@@ -23,12 +37,22 @@ public class SSHSessionPool {
     private static Logger logger = Logger.getLogger(SSHSessionPool.class.getName());
 
     private static SSHSessionPool instance = null;
-    private Hashtable<String, Session> pool = new Hashtable<String, Session>();
+    private Hashtable<String, PooledSession> pool = new Hashtable<>();
+    // sessions removed from the pool while leased, disconnected when released
+    private Vector<PooledSession> retired = new Vector<>();
+    // one lock per key, sessions for the same key are created one after another
+    private Hashtable<String, Object> creationLocks = new Hashtable<>();
+    private Timer maintenanceTimer = null;
+
+    // time to wait for a free channel
+    private static final long CHANNEL_WAIT_TIMEOUT = 60000;
+    // consecutive failed keepalives until a session is removed
+    private static final int MAX_KEEPALIVE_FAILURES = 3;
 
     private SSHSessionPool() {
     }
 
-    public static SSHSessionPool getInstance() {
+    public static synchronized SSHSessionPool getInstance() {
         if (instance == null)
             instance = new SSHSessionPool();
 
@@ -36,18 +60,384 @@ public class SSHSessionPool {
     }
 
 
-    public void addSession(String name, Session session) {
-        logger.info("adding sshsession with key: " + name);
-        pool.put(name, session);
+    /**
+     * Builds the key of a session
+     *
+     * @param username The ssh user
+     * @param hostname The host
+     * @param port     The ssh port
+     * @return the key
+     */
+    public static String createKey(String username, String hostname, int port) {
+        return username + "@" + hostname + ":" + port;
+    }
+
+
+    /**
+     * Adds a connected session to the pool
+     *
+     * @param session The session
+     */
+    public synchronized void addSession(Session session) {
+        String key = createKey(session.getUserName(), session.getHost(), session.getPort());
+        logger.info("adding sshsession with key: " + key);
+
+        int keepAlive = Configuration.getInstance().SSH_KEEPALIVE_INTERVAL;
+        if (keepAlive > 0) {
+            try {
+                session.setServerAliveInterval(keepAlive * 1000);
+                session.setServerAliveCountMax(3);
+            } catch (JSchException e) {
+                logger.log(Level.WARNING, "keepalive could not be set for " + key, e);
+            }
+        }
+
+        PooledSession old = pool.get(key);
+        if (old != null && old.session == session)
+            return;
+
+        pool.put(key, new PooledSession(key, session));
+        if (old != null)
+            retire(old);
+
+        startMaintenance();
+    }
+
+
+    /**
+     * Removes the session with the given key from the pool.
+     * The session is disconnected when it is not leased,
+     * otherwise when the last lease is released.
+     *
+     * @param key The key of the session, see createKey()
+     */
+    public synchronized void removeSession(String key) {
+        logger.info("removing sshsession with key: " + key);
+        PooledSession pooled = pool.remove(key);
+        if (pooled != null)
+            retire(pooled);
+    }
+
+
+    /**
+     * Returns a connected session to the host
+     *
+     * @param hostname The host
+     * @return the session or null
+     */
+    public synchronized Session getSession(String hostname) {
+        for (PooledSession pooled : pool.values()) {
+            if (hostname.equals(pooled.session.getHost()) && pooled.session.isConnected())
+                return pooled.session;
+        }
+        return null;
+    }
+
+
+    /**
+     * Leases the session with the given key, the session is
+     * created by the connector if it is not existing or not connected.
+     * A leased session is not closed by the idle eviction.
+     *
+     * @param key       The key of the session
+     * @param connector The connector creating new sessions
+     * @return the connected session
+     * @throws ConnectException
+     */
+    public Session lease(String key, SSHConnector connector) throws ConnectException {
+        Object lock;
+        synchronized (this) {
+            lock = creationLocks.computeIfAbsent(key, k -> new Object());
+        }
+
+        synchronized (lock) {
+            synchronized (this) {
+                PooledSession pooled = pool.get(key);
+                if (pooled != null && pooled.session.isConnected()) {
+                    pooled.leases++;
+                    pooled.touch();
+                    return pooled.session;
+                }
+                if (pooled != null) {
+                    logger.info("sshsession " + key + " is disconnected, reconnecting");
+                    pool.remove(key);
+                    retire(pooled);
+                }
+            }
+
+            // adds the new session to the pool
+            Session session = connector.createSessionImmediately();
+            synchronized (this) {
+                PooledSession pooled = pool.get(key);
+                if (pooled == null || pooled.session != session) {
+                    if (pooled != null)
+                        retire(pooled);
+                    pooled = new PooledSession(key, session);
+                    pool.put(key, pooled);
+                }
+                pooled.leases++;
+                return session;
+            }
+        }
+    }
+
+
+    /**
+     * Leases an already pooled session, e.g. for a control center tab
+     *
+     * @param session The session
+     */
+    public synchronized void lease(Session session) {
+        PooledSession pooled = find(session);
+        if (pooled != null) {
+            pooled.leases++;
+            pooled.touch();
+        }
+    }
+
+
+    /**
+     * Releases a leased session, the session stays connected
+     * until the idle timeout has passed. A session removed from
+     * the pool is disconnected with its last lease.
+     *
+     * @param session The session
+     */
+    public synchronized void release(Session session) {
+        PooledSession pooled = find(session);
+        if (pooled != null) {
+            pooled.leases = Math.max(0, pooled.leases - 1);
+            pooled.touch();
+            if (pooled.leases == 0 && retired.remove(pooled)) {
+                logger.info("closing removed sshsession " + pooled.key);
+                pooled.session.disconnect();
+            }
+        }
+    }
+
+
+    /**
+     * Opens a channel on the session, waits if the maximum
+     * number of channels on the session is reached
+     *
+     * @param session The session
+     * @param type    The channel type, e.g. exec
+     * @return the channel, not connected yet
+     * @throws JSchException
+     */
+    public Channel openChannel(Session session, String type) throws JSchException {
+        PooledSession pooled;
+        synchronized (this) {
+            pooled = find(session);
+        }
+        if (pooled == null)
+            return session.openChannel(type);
+
+        int maxChannels = Math.max(1, Configuration.getInstance().SSH_MAX_CHANNELS);
+        synchronized (pooled) {
+            long deadline = System.currentTimeMillis() + CHANNEL_WAIT_TIMEOUT;
+            while (pooled.channels >= maxChannels) {
+                long wait = deadline - System.currentTimeMillis();
+                if (wait <= 0)
+                    throw new JSchException("no free channel on session " + pooled.key);
+                try {
+                    pooled.wait(wait);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new JSchException("interrupted while waiting for a channel on " + pooled.key);
+                }
+            }
+            Channel channel = session.openChannel(type);
+            pooled.channels++;
+            pooled.touch();
+            return channel;
+        }
+    }
+
+
+    /**
+     * Disconnects a channel opened with openChannel()
+     *
+     * @param session The session of the channel
+     * @param channel The channel
+     */
+    public void closeChannel(Session session, Channel channel) {
+        channel.disconnect();
+
+        PooledSession pooled;
+        synchronized (this) {
+            pooled = find(session);
+        }
+        if (pooled == null)
+            return;
+        synchronized (pooled) {
+            pooled.channels = Math.max(0, pooled.channels - 1);
+            pooled.touch();
+            pooled.notifyAll();
+        }
+    }
+
+
+    /**
+     * Returns the health of all pooled sessions
+     *
+     * @return a Vector with String arrays like
+     *         [0]:key, [1]:connected, [2]:leases, [3]:open channels,
+     *         [4]:idle seconds, [5]:age in seconds, [6]:failed keepalives
+     */
+    public synchronized Vector<String[]> getHealth() {
+        Vector<String[]> health = new Vector<>();
+        long now = System.currentTimeMillis();
+        for (PooledSession pooled : pool.values()) {
+            health.add(new String[]{
+                    pooled.key,
+                    pooled.session.isConnected() + "",
+                    pooled.leases + "",
+                    pooled.channels + "",
+                    (now - pooled.lastUsed) / 1000 + "",
+                    (now - pooled.created) / 1000 + "",
+                    pooled.keepAliveFailures + ""
+            });
+        }
+        return health;
+    }
+
+
+    /**
+     * Closes all pooled sessions
+     */
+    public synchronized void closeAll() {
+        for (PooledSession pooled : pool.values())
+            pooled.session.disconnect();
+        for (PooledSession pooled : retired)
+            pooled.session.disconnect();
+        pool.clear();
+        retired.clear();
+        if (maintenanceTimer != null) {
+            maintenanceTimer.cancel();
+            maintenanceTimer = null;
+        }
+    }
+
+
+    private PooledSession find(Session session) {
+        for (PooledSession pooled : pool.values()) {
+            if (pooled.session == session)
+                return pooled;
+        }
+        for (PooledSession pooled : retired) {
+            if (pooled.session == session)
+                return pooled;
+        }
+        return null;
     }
 
-    public void removeSession(String name) {
-        logger.info("removing sshsession with key: " + name);
-        pool.remove(name);
+
+    /**
+     * Stops pooling a session, it is disconnected now if it is
+     * not leased, otherwise kept until it is released
+     */
+    private void retire(PooledSession pooled) {
+        if (pooled.leases == 0)
+            pooled.session.disconnect();
+        else if (!retired.contains(pooled))
+            retired.add(pooled);
     }
 
-    public Session getSession(String name) {
-        return pool.get(name);
+
+    /**
+     * Starts the timer sending keepalives and evicting idle sessions
+     */
+    private void startMaintenance() {
+        if (maintenanceTimer != null)
+            return;
+
+        maintenanceTimer = new Timer("ssh-session-pool", true);
+        maintenanceTimer.schedule(new TimerTask() {
+            public void run() {
+                maintain();
+            }
+        }, 30000, 30000);
+    }
+
+
+    /**
+     * Removes disconnected sessions, closes idle sessions
+     * and sends keepalives to the remaining ones. Sessions whose
+     * keepalives fail repeatedly are removed, they are reconnected
+     * on the next lease.
+     * Called by the maintenance timer every 30 seconds
+     */
+    public void maintain() {
+        long idleTimeout = Configuration.getInstance().SSH_IDLE_TIMEOUT * 1000L;
+        long keepAlive = Configuration.getInstance().SSH_KEEPALIVE_INTERVAL * 1000L;
+        long now = System.currentTimeMillis();
+
+        Vector<PooledSession> toCheck = new Vector<>();
+        synchronized (this) {
+            for (Iterator<PooledSession> it = pool.values().iterator(); it.hasNext();) {
+                PooledSession pooled = it.next();
+                if (!pooled.session.isConnected()) {
+                    logger.info("removing disconnected sshsession " + pooled.key);
+                    it.remove();
+                    retire(pooled);
+                } else if (pooled.leases == 0 && pooled.channels == 0 && now - pooled.lastUsed > idleTimeout) {
+                    logger.info("closing idle sshsession " + pooled.key);
+                    it.remove();
+                    pooled.session.disconnect();
+                } else if (keepAlive > 0 && now - pooled.lastUsed > keepAlive)
+                    toCheck.add(pooled);
+            }
+        }
+
+        for (PooledSession pooled : toCheck) {
+            try {
+                pooled.session.sendKeepAliveMsg();
+                pooled.keepAliveFailures = 0;
+            } catch (Exception e) {
+                pooled.keepAliveFailures++;
+                logger.log(Level.WARNING, "keepalive failed for sshsession " + pooled.key, e);
+                if (pooled.keepAliveFailures >= MAX_KEEPALIVE_FAILURES) {
+                    synchronized (this) {
+                        if (pool.get(pooled.key) == pooled) {
+                            logger.info("removing sshsession " + pooled.key + " after "
+                                    + pooled.keepAliveFailures + " failed keepalives");
+                            pool.remove(pooled.key);
+                            retire(pooled);
+                        }
+                    }
+                }
+            }
+        }
+
+        if (logger.isLoggable(Level.FINE)) {
+            for (String[] health : getHealth())
+                logger.fine("sshsession " + health[0] + ": connected=" + health[1] + ", leases=" + health[2]
+                        + ", channels=" + health[3] + ", idle=" + health[4] + "s, age=" + health[5]
+                        + "s, failed keepalives=" + health[6]);
+        }
     }
 
+
+    /**
+     * A session with its usage data
+     */
+    private static class PooledSession {
+        private final String key;
+        private final Session session;
+        private final long created = System.currentTimeMillis();
+        private volatile long lastUsed = created;
+        private int leases = 0;
+        private volatile int channels = 0;
+        private volatile int keepAliveFailures = 0;
+
+        private PooledSession(String key, Session session) {
+            this.key = key;
+            this.session = session;
+        }
+
+        private void touch() {
+            lastUsed = System.currentTimeMillis();
+        }
+    }
 }
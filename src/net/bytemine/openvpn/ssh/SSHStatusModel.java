@@ -8,8 +8,13 @@
 
 package net.bytemine.openvpn.ssh;
 
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.Locale;
 import java.util.StringTokenizer;
 
+import net.bytemine.openvpn.ClientStatus;
+
 
 /**
  * Holds information of a single VPN user
@@ -82,6 +87,49 @@ public class SSHStatusModel {
         return array;
     }
 
+    /**
+     * Converts the model into a ClientStatus with parsed numbers and times
+     *
+     * @return the status of the client
+     */
+    public ClientStatus toClientStatus() {
+        ClientStatus status = new ClientStatus();
+        status.setCommonName(getCommonName());
+        status.setRealAddress(getRealAddress());
+        status.setVirtualAddress(getVirtualAddress());
+        status.setBytesReceived(parseLong(getBytesReceived()));
+        status.setBytesSent(parseLong(getBytesSent()));
+        status.setConnectedSince(parseTime(getConnectedSince()));
+        status.setLastRef(parseTime(getLastRef()));
+        return status;
+    }
+
+    private static long parseLong(String value) {
+        if (value == null)
+            return 0;
+        try {
+            return Long.parseLong(value.trim());
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+
+    /**
+     * Parses a time like 'Wed Oct 14 09:00:00 2026'
+     *
+     * @return the time in ms or 0, if unknown
+     */
+    private static long parseTime(String value) {
+        if (value == null)
+            return 0;
+        try {
+            SimpleDateFormat format = new SimpleDateFormat("EEE MMM d HH:mm:ss yyyy", Locale.US);
+            return format.parse(value.trim().replaceAll("\\s+", " ")).getTime();
+        } catch (ParseException e) {
+            return 0;
+        }
+    }
+
     
     
     public String getCommonName() {
@@ -53,20 +53,23 @@ public class SSHTool {
 
 
     private Session getSession() throws ConnectException {
-        sshSession = SSHSessionPool.getInstance().getSession(server.getHostname());
-        if (sshSession == null || !sshSession.isConnected())
-            this.sshSession = sshConnector.createSessionImmediately();
+        if (sshSession == null || !sshSession.isConnected()) {
+            if (sshSession != null)
+                SSHSessionPool.getInstance().release(sshSession);
+            this.sshSession = SSHSessionPool.getInstance().lease(sshConnector.getPoolKey(), sshConnector);
+        }
         return sshSession;
     }
     
     public void exec(String command) throws Exception {
         
+        Channel channel = null;
         try {
             logger.info("SSHTool.exec start with command: " + command);
 
             // exec 'scp -t rfile' remotely
             String exec = command;
-            Channel channel = getSession().openChannel("exec");
+            channel = SSHSessionPool.getInstance().openChannel(getSession(), "exec");
             ((ChannelExec) channel).setCommand(exec);
 
             OutputStream out = channel.getOutputStream();
@@ -86,19 +89,66 @@ public class SSHTool {
                 throw new Exception(err);
 
             out.close();
-            channel.disconnect();
             
             logger.info("SSHTool.exec end");
         } catch (Exception e) {
             new VisualException(e);
             throw e;
+        } finally {
+            if (channel != null)
+                SSHSessionPool.getInstance().closeChannel(sshSession, channel);
         }
     }
     
+    /**
+     * Executes the command and returns its standard output.
+     * Errors are not shown to the user but thrown to the caller.
+     *
+     * @param command The command to execute
+     * @return the output of the command
+     * @throws Exception
+     */
+    public String execForOutput(String command) throws Exception {
+        logger.info("SSHTool.execForOutput start with command: " + command);
+
+        Channel channel = SSHSessionPool.getInstance().openChannel(getSession(), "exec");
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        try {
+            ((ChannelExec) channel).setCommand(command);
+            ((ChannelExec) channel).setErrStream(new ByteArrayOutputStream());
+
+            InputStream in = channel.getInputStream();
+            channel.connect();
+
+            byte[] buf = new byte[8192];
+            int len;
+            while ((len = in.read(buf)) >= 0)
+                baos.write(buf, 0, len);
+        } finally {
+            SSHSessionPool.getInstance().closeChannel(sshSession, channel);
+        }
+
+        logger.info("SSHTool.execForOutput end");
+        return baos.toString();
+    }
+
+    /**
+     * Returns the leased session to the pool, the session
+     * stays connected for further commands
+     */
+    public void releaseSession() {
+        if (sshSession != null)
+            SSHSessionPool.getInstance().release(sshSession);
+        sshSession = null;
+    }
+
+    /**
+     * Releases the session and removes it from the pool, it is
+     * disconnected as soon as no other tool is using it
+     */
     public void disconnectSession() {
-        int i = 1;
-        ScpTool.disconnectSSHSession(i, this.sshSession);
-        SSHSessionPool.getInstance().removeSession(server.getHostname());
+        releaseSession();
+        SSHSessionPool.getInstance().removeSession(sshConnector.getPoolKey());
     }
 
 
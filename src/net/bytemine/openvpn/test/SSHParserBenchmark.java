@@ -0,0 +1,159 @@
+/*************************************************************************
+ * Written by / Copyright (C) 2009-2012 bytemine GmbH                     *
+ * Author: Daniel Rauer                     E-Mail:    rauer@bytemine.net *
+ *                                                                        *
+ * http://www.bytemine.net/                                               *
+ *************************************************************************/
+
+package net.bytemine.openvpn.test;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.StringTokenizer;
+import java.util.regex.Pattern;
+
+import net.bytemine.openvpn.ssh.SSHConstants;
+import net.bytemine.openvpn.ssh.SSHLineScanner;
+
+/**
+ * Measures the throughput of the line scanning of the SSHParser with
+ * recorded ut session transcripts, compared with the former way of
+ * tokenizing and compiling the patterns for every line.
+ * The GUI is not involved, only the detection of the prefix, channel,
+ * keywords and status is measured.
+ *
+ * usage: SSHParserBenchmark [seconds per run]
+ *
+ * @author Daniel Rauer
+ */
+public class SSHParserBenchmark {
+
+    private static final String[] TRANSCRIPTS = {"transcripts/session.txt", "transcripts/log.txt"};
+
+    // prevents the JIT from removing the work
+    private static long sink = 0;
+
+
+    public static void main(String[] args) throws Exception {
+        long seconds = args.length > 0 ? Long.parseLong(args[0]) : 5;
+        for (String transcript : TRANSCRIPTS) {
+            List<String> lines = loadTranscript(transcript);
+            System.out.println(transcript + ": " + lines.size() + " lines");
+
+            // warm up both
+            run(lines, true, 1);
+            run(lines, false, 1);
+            double scanner = run(lines, true, seconds);
+            double legacy = run(lines, false, seconds);
+            System.out.printf("  scanner: %,.0f lines/s%n", scanner);
+            System.out.printf("  legacy:  %,.0f lines/s (%.1fx slower)%n", legacy, scanner / legacy);
+        }
+        if (sink == 0)
+            System.out.println("no work done");
+    }
+
+
+    /**
+     * Loads a transcript from the classpath
+     *
+     * @param name The name, relative to this class
+     * @return the lines
+     * @throws IOException
+     */
+    public static List<String> loadTranscript(String name) throws IOException {
+        InputStream in = SSHParserBenchmark.class.getResourceAsStream(name);
+        if (in == null)
+            throw new IOException("transcript " + name + " not found");
+        List<String> lines = new ArrayList<String>();
+        BufferedReader reader = new BufferedReader(new InputStreamReader(in, "UTF-8"));
+        try {
+            String line;
+            while ((line = reader.readLine()) != null)
+                lines.add(line);
+        } finally {
+            reader.close();
+        }
+        return lines;
+    }
+
+
+    /**
+     * Scans the lines repeatedly for the given time
+     *
+     * @return the lines per second
+     */
+    private static double run(List<String> lines, boolean useScanner, long seconds) {
+        SSHLineScanner scanner = new SSHLineScanner();
+        long count = 0;
+        long start = System.nanoTime();
+        long end = start + seconds * 1000000000L;
+        long now;
+        do {
+            for (String line : lines) {
+                sink += useScanner ? scan(scanner, line) : scanLegacy(line);
+                count++;
+            }
+            now = System.nanoTime();
+        } while (now < end);
+        return count * 1e9 / (now - start);
+    }
+
+
+    private static int scan(SSHLineScanner scanner, String line) {
+        if (line.indexOf('\u0000') != -1)
+            line = line.replace("\u0000", "");
+        scanner.scan(line);
+        if (scanner.getTokenCount() < 2)
+            return scanner.getTokenCount();
+        int prefix = scanner.getPrefix();
+        if (prefix == SSHConstants.PREFIX_ERROR)
+            return scanner.getError();
+        int keyword = scanner.getKeyword();
+        if (keyword == SSHLineScanner.KEYWORD_NONE)
+            keyword = scanner.getStatus();
+        String channel = scanner.getChannel();
+        return prefix + keyword + (channel == null ? 0 : channel.length());
+    }
+
+
+    /**
+     * The former scanning of a line by the SSHParser
+     */
+    private static int scanLegacy(String line) {
+        line = line.replaceAll("\u0000", "");
+        StringTokenizer t = new StringTokenizer(line, " ");
+        if (t.countTokens() < 2)
+            return t.countTokens();
+        String first = t.nextToken();
+        String second = t.nextToken();
+        int prefix = first.length() < 4 ? 0 : first.charAt(0);
+        String channel = first.length() < 4 ? "" : first.charAt(1) + "" + first.charAt(2);
+        if (prefix == '!') {
+            return (Pattern.compile(SSHConstants.KEYWORD_PATTERN_OPEN_FAILED).matcher(line).matches() ? 1 : 0)
+                    + (Pattern.compile(SSHConstants.KEYWORD_PATTERN_OPEN_FAILED_TIME_OUT).matcher(line).matches() ? 1 : 0)
+                    + (Pattern.compile(SSHConstants.KEYWORD_PATTERN_KILL_FAILED).matcher(line).matches() ? 1 : 0)
+                    + (Pattern.compile(SSHConstants.KEYWORD_PATTERN_INSTANCE_FAILED).matcher(line).matches() ? 1 : 0);
+        }
+        boolean killFailed = Pattern.compile(SSHConstants.KEYWORD_PATTERN_KILL_FAILED).matcher(line).matches();
+        int keyword;
+        if (SSHConstants.KEYWORD_CHANNELS.equals(second))
+            keyword = 1;
+        else if (line.contains(SSHConstants.KEYWORD_STATUS))
+            keyword = 2;
+        else if (line.contains(SSHConstants.KEYWORD_KILL_SUCCESS))
+            keyword = 3;
+        else if (killFailed)
+            keyword = 4;
+        else if (line.contains(SSHConstants.KEYWORD_LOG))
+            keyword = 5;
+        else if (line.contains(SSHConstants.KEYWORD_VERSION))
+            keyword = 6;
+        else
+            keyword = second.hashCode() & 3;
+        return prefix + keyword + channel.length();
+    }
+}
@@ -7,6 +7,7 @@
 
 package net.bytemine.openvpn.test;
 
+import net.bytemine.openvpn.ClientStatus;
 import net.bytemine.openvpn.Server;
 import net.bytemine.openvpn.StatusCollector;
 
@@ -15,9 +16,17 @@ import net.bytemine.openvpn.StatusCollector;
  */
 public class StatusTester {
 
-    public static void main(String[] args) {
-        StatusCollector sc = new StatusCollector(new Server("Server name", "192.168.1.10", 22, "username"));
-        sc.run();
+    public static void main(String[] args) throws Exception {
+        StatusCollector sc = new StatusCollector();
+        // the port of the management interface
+        sc.addServer(new Server("Server name", "192.168.1.10", 7505, "username"));
+        sc.addListener(snapshot -> {
+            System.out.println(snapshot.getIdentifier() + ": " + snapshot.getClientCount() + " clients");
+            for (ClientStatus client : snapshot.getClients())
+                System.out.println(String.join(", ", client.toStringArray()));
+        });
+        sc.start();
+        sc.join();
     }
 
 }